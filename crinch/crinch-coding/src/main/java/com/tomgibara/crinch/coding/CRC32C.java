@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.util.zip.Checksum;
+
+/**
+ * Computes the CRC-32C (Castagnoli) checksum of a sequence of bytes. The
+ * implementation processes eight bytes at a time using the 'slicing-by-8'
+ * table technique.
+ *
+ * @author Tom Gibara
+ * @see http://tools.ietf.org/html/rfc3720#appendix-B.4
+ */
+
+public final class CRC32C implements Checksum {
+
+	// statics
+
+	private static final int POLY = 0x82f63b78; // reversed 0x1edc6f41
+
+	private static final int[][] TABLES = new int[8][256];
+
+	static {
+		int[] t0 = TABLES[0];
+		for (int n = 0; n < 256; n++) {
+			int c = n;
+			for (int k = 0; k < 8; k++) {
+				c = (c & 1) != 0 ? (c >>> 1) ^ POLY : c >>> 1;
+			}
+			t0[n] = c;
+		}
+		for (int n = 0; n < 256; n++) {
+			int c = t0[n];
+			for (int k = 1; k < 8; k++) {
+				c = t0[c & 0xff] ^ (c >>> 8);
+				TABLES[k][n] = c;
+			}
+		}
+	}
+
+	// fields
+
+	private int crc;
+
+	// constructors
+
+	public CRC32C() {
+		reset();
+	}
+
+	// checksum methods
+
+	@Override
+	public void update(int b) {
+		crc = TABLES[0][(crc ^ b) & 0xff] ^ (crc >>> 8);
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		if (b == null) throw new IllegalArgumentException("null b");
+		if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+		final int[] t0 = TABLES[0];
+		final int[] t1 = TABLES[1];
+		final int[] t2 = TABLES[2];
+		final int[] t3 = TABLES[3];
+		final int[] t4 = TABLES[4];
+		final int[] t5 = TABLES[5];
+		final int[] t6 = TABLES[6];
+		final int[] t7 = TABLES[7];
+		int c = crc;
+		for (; len >= 8; len -= 8, off += 8) {
+			int lo = c ^ (
+					(b[off    ] & 0xff)       |
+					(b[off + 1] & 0xff) <<  8 |
+					(b[off + 2] & 0xff) << 16 |
+					(b[off + 3]       ) << 24 );
+			int hi =
+					(b[off + 4] & 0xff)       |
+					(b[off + 5] & 0xff) <<  8 |
+					(b[off + 6] & 0xff) << 16 |
+					(b[off + 7]       ) << 24 ;
+			c =
+				t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24] ^
+				t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+		}
+		for (; len > 0; len--) {
+			c = t0[(c ^ b[off++]) & 0xff] ^ (c >>> 8);
+		}
+		crc = c;
+	}
+
+	public void update(byte[] b) {
+		update(b, 0, b.length);
+	}
+
+	@Override
+	public long getValue() {
+		return ~crc & 0xffffffffL;
+	}
+
+	@Override
+	public void reset() {
+		crc = 0xffffffff;
+	}
+
+	// convenience methods
+
+	/**
+	 * The checksum as an int.
+	 *
+	 * @return the current checksum
+	 */
+
+	public int checksum() {
+		return ~crc;
+	}
+
+}
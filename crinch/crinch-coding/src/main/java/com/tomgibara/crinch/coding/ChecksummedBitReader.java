@@ -0,0 +1,151 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitStreamException;
+import com.tomgibara.crinch.bits.ByteBasedBitReader;
+
+/**
+ * A {@link BitReader} that sources its bits from blocks written by a
+ * {@link ChecksummedBitWriter}. Every block is verified before any of its bits
+ * are made available. A {@link ChecksumException} is raised if a block is
+ * corrupt, or if the stream ends before its terminating block.
+ *
+ * @author Tom Gibara
+ */
+
+public class ChecksummedBitReader extends ByteBasedBitReader {
+
+	// fields
+
+	private final InputStream in;
+	private final byte[] header = new byte[4];
+	private final CRC32C crc = new CRC32C();
+	private byte[] block = new byte[0];
+	private int length = 0;
+	private int index = 0;
+	private long blockIndex = 0L;
+	private boolean ended = false;
+
+	// constructors
+
+	public ChecksummedBitReader(InputStream in) {
+		if (in == null) throw new IllegalArgumentException("null in");
+		this.in = in;
+	}
+
+	// byte based methods
+
+	@Override
+	protected int readByte() throws BitStreamException {
+		if (index == length && !readBlock()) return -1;
+		return block[index++] & 0xff;
+	}
+
+	@Override
+	protected long skipBytes(long count) throws BitStreamException {
+		long skipped = 0L;
+		// blocks must be read in full to be verified
+		while (skipped < count) {
+			if (index == length && !readBlock()) break;
+			int n = (int) Math.min(count - skipped, length - index);
+			index += n;
+			skipped += n;
+		}
+		return skipped;
+	}
+
+	@Override
+	protected long seekByte(long index) throws BitStreamException {
+		return -1L;
+	}
+
+	// accessors
+
+	/**
+	 * The InputStream from which this {@link BitReader} obtains blocks.
+	 *
+	 * @return an input stream, never null
+	 */
+
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	// methods
+
+	/**
+	 * Reads and verifies all of the remaining blocks in the stream. This may be
+	 * used to confirm that a stream is intact before its bits are read.
+	 *
+	 * @throws ChecksumException
+	 *             if the stream is incomplete or corrupt
+	 */
+
+	public void verify() throws ChecksumException {
+		while (readBlock()) index = length;
+	}
+
+	// private utility methods
+
+	// reads the next non-empty block, false at the end of the stream
+	private boolean readBlock() throws BitStreamException {
+		if (ended) return false;
+		if (!readFully(header, 4)) throw new ChecksumException("stream truncated before block " + blockIndex);
+		int length = readInt(header);
+		if (length < 0 || length > ChecksummedBitWriter.MAX_BLOCK_SIZE) throw new ChecksumException("invalid length for block " + blockIndex);
+		crc.reset();
+		crc.update(header, 0, 4);
+		if (block.length < length) block = new byte[length];
+		if (!readFully(block, length)) throw new ChecksumException("truncated block " + blockIndex);
+		crc.update(block, 0, length);
+		if (!readFully(header, 4)) throw new ChecksumException("missing checksum for block " + blockIndex);
+		if (readInt(header) != crc.checksum()) throw new ChecksumException("checksum mismatch in block " + blockIndex);
+		blockIndex++;
+		this.length = length;
+		index = 0;
+		if (length == 0) ended = true;
+		return !ended;
+	}
+
+	private boolean readFully(byte[] bytes, int length) throws BitStreamException {
+		try {
+			int offset = 0;
+			while (offset < length) {
+				int r = in.read(bytes, offset, length - offset);
+				if (r < 0) return false;
+				offset += r;
+			}
+			return true;
+		} catch (IOException e) {
+			throw new BitStreamException(e);
+		}
+	}
+
+	private static int readInt(byte[] bytes) {
+		return
+			(bytes[0] & 0xff) << 24 |
+			(bytes[1] & 0xff) << 16 |
+			(bytes[2] & 0xff) <<  8 |
+			(bytes[3] & 0xff);
+	}
+
+}
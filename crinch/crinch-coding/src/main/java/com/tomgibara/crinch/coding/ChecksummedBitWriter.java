@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.tomgibara.crinch.bits.BitStreamException;
+import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.bits.ByteBasedBitWriter;
+
+/**
+ * A {@link BitWriter} that writes its bits to an OutputStream in checksummed
+ * blocks. Each block consists of a four byte length, the bytes of the block,
+ * and a {@link CRC32C} checksum of both. The stream is terminated by an empty
+ * block, written by {@link #finish()}, so that streams which were not
+ * completely written can be detected by a {@link ChecksummedBitReader}.
+ *
+ * @author Tom Gibara
+ */
+
+public class ChecksummedBitWriter extends ByteBasedBitWriter {
+
+	// statics
+
+	/**
+	 * The number of bytes stored in a block if no block size is specified.
+	 */
+
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	static final int MAX_BLOCK_SIZE = 1 << 24;
+
+	// fields
+
+	private final OutputStream out;
+	private final byte[] block;
+	private final byte[] header = new byte[4];
+	private final CRC32C crc = new CRC32C();
+	private int length = 0;
+	private boolean finished = false;
+
+	// constructors
+
+	public ChecksummedBitWriter(OutputStream out) {
+		this(out, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ChecksummedBitWriter(OutputStream out, int blockSize) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (blockSize < 1) throw new IllegalArgumentException("non-positive blockSize");
+		if (blockSize > MAX_BLOCK_SIZE) throw new IllegalArgumentException("blockSize too large");
+		this.out = out;
+		block = new byte[blockSize];
+	}
+
+	// byte based methods
+
+	@Override
+	protected void writeByte(int value) throws BitStreamException {
+		if (finished) throw new BitStreamException("finished");
+		block[length++] = (byte) value;
+		if (length == block.length) writeBlock();
+	}
+
+	@Override
+	protected void fillBytes(int value, long count) throws BitStreamException {
+		if (finished) throw new BitStreamException("finished");
+		byte b = (byte) value;
+		while (count > 0) {
+			int n = (int) Math.min(count, block.length - length);
+			Arrays.fill(block, length, length + n, b);
+			length += n;
+			count -= n;
+			if (length == block.length) writeBlock();
+		}
+	}
+
+	// accessors
+
+	/**
+	 * The OutputStream to which this {@link BitWriter} writes blocks.
+	 *
+	 * @return an output stream, never null
+	 */
+
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * Whether the stream has been terminated.
+	 *
+	 * @return true if {@link #finish()} has been called
+	 */
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	// methods
+
+	/**
+	 * Flushes any buffered bits (padding with zeros to a byte boundary), writes
+	 * the final block and terminates the stream. No further bits may be
+	 * written after this method has been called. The underlying stream is
+	 * flushed but not closed.
+	 *
+	 * @return the number of bits of padding written
+	 * @throws BitStreamException
+	 *             if an exception occurs when writing
+	 */
+
+	public int finish() throws BitStreamException {
+		if (finished) return 0;
+		int c = flush();
+		if (length > 0) writeBlock();
+		writeBlock();
+		finished = true;
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new BitStreamException(e);
+		}
+		return c;
+	}
+
+	// private utility methods
+
+	private void writeBlock() throws BitStreamException {
+		writeInt(header, length);
+		crc.reset();
+		crc.update(header, 0, 4);
+		crc.update(block, 0, length);
+		try {
+			out.write(header);
+			out.write(block, 0, length);
+			writeInt(header, crc.checksum());
+			out.write(header);
+		} catch (IOException e) {
+			throw new BitStreamException(e);
+		}
+		length = 0;
+	}
+
+	private static void writeInt(byte[] bytes, int value) {
+		bytes[0] = (byte) (value >> 24);
+		bytes[1] = (byte) (value >> 16);
+		bytes[2] = (byte) (value >>  8);
+		bytes[3] = (byte) (value      );
+	}
+
+}
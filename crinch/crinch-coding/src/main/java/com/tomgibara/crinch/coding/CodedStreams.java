@@ -28,6 +28,7 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.tomgibara.crinch.bits.BitReader;
 import com.tomgibara.crinch.bits.BitStreamException;
 import com.tomgibara.crinch.bits.BitWriter;
 import com.tomgibara.crinch.bits.InputStreamBitReader;
@@ -116,6 +117,55 @@ public final class CodedStreams {
 		return sb.toString();
 	}
 	
+	/**
+	 * Writes a string to a coded writer using a symbol table to compress it.
+	 * The number of codes is written, followed by each code as a byte. The
+	 * string can be read back by any reader positioned at the start of the
+	 * string which has access to the same table.
+	 * 
+	 * @param writer
+	 *            the writer to which values will be written
+	 * @param str
+	 *            the string to write, not null
+	 * @param table
+	 *            the table with which to compress the string
+	 * @return the number of bits written
+	 */
+
+	public static int writeString(CodedWriter writer, String str, SymbolTable table) {
+		if (table == null) throw new IllegalArgumentException("null table");
+		byte[] codes = table.encode(str);
+		int len = codes.length;
+		int c = writer.writePositiveInt(len);
+		BitWriter w = writer.getWriter();
+		for (int i = 0; i < len; i++) {
+			c += w.write(codes[i] & 0xff, 8);
+		}
+		return c;
+	}
+
+	/**
+	 * Reads a string that was compressed with a symbol table from a coded
+	 * reader. The number of codes is read, followed by each code.
+	 * 
+	 * @param reader
+	 *            the reader from which values will be read
+	 * @param table
+	 *            the table with which the string was compressed
+	 * @return the string read, never null
+	 */
+
+	public static String readString(CodedReader reader, SymbolTable table) {
+		if (table == null) throw new IllegalArgumentException("null table");
+		int len = reader.readPositiveInt();
+		BitReader r = reader.getReader();
+		byte[] codes = new byte[len];
+		for (int i = 0; i < len; i++) {
+			codes[i] = (byte) r.read(8);
+		}
+		return table.decode(codes, 0, len);
+	}
+
 	/**
 	 * Writes an array of primitives to a coded writer. The length is written,
 	 * followed by each element of the array.
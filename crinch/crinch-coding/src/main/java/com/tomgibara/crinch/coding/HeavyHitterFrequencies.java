@@ -0,0 +1,206 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.coding.HuffmanCoding.Correspondence;
+import com.tomgibara.crinch.coding.HuffmanCoding.Frequencies;
+import com.tomgibara.crinch.coding.HuffmanCoding.UnorderedFrequencies;
+
+/**
+ * Frequencies over a fixed set of values together with an escape symbol that
+ * stands for any value outside the set. This allows values drawn from a large
+ * (possibly unbounded) alphabet to be entropy coded: the most frequent values
+ * (as identified, for example, by a count-min sketch combined with a
+ * space-saving summary) receive their own symbols, and all other values are
+ * written as the escape symbol followed by the value itself.
+ *
+ * Symbols are assigned to the values in the order in which they were
+ * supplied, with the escape symbol taking the value immediately after the
+ * last of them. To reconstruct an equivalent coding, it is sufficient to
+ * persist the values, their frequencies and the escape frequency.
+ *
+ * @author Tom Gibara
+ */
+
+public class HeavyHitterFrequencies implements Frequencies {
+
+	private final long[] values;
+	private final UnorderedFrequencies frequencies;
+	// the values in ascending order, for binary search
+	private final long[] keys;
+	// the symbols of the keys
+	private final int[] keySymbols;
+
+	/**
+	 * Constructs frequencies for the supplied values. The values need not
+	 * be ordered by frequency but must be distinct.
+	 *
+	 * @param values
+	 *            the values that will be assigned their own symbols
+	 * @param frequencies
+	 *            the positive frequencies of the values
+	 * @param escapeFrequency
+	 *            the positive frequency with which other values are
+	 *            expected to occur
+	 */
+
+	public HeavyHitterFrequencies(long[] values, long[] frequencies, long escapeFrequency) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (frequencies == null) throw new IllegalArgumentException("null frequencies");
+		if (values.length != frequencies.length) throw new IllegalArgumentException("mismatched frequencies");
+		if (escapeFrequency < 1L) throw new IllegalArgumentException("non-positive escape frequency");
+		final int count = values.length;
+		long[] freqs = Arrays.copyOf(frequencies, count + 1);
+		for (int i = 0; i < count; i++) {
+			if (freqs[i] < 1L) throw new IllegalArgumentException("non-positive frequency");
+		}
+		freqs[count] = escapeFrequency;
+
+		long[] keys = values.clone();
+		Arrays.sort(keys);
+		for (int i = 1; i < count; i++) {
+			if (keys[i] == keys[i - 1]) throw new IllegalArgumentException("duplicate value: " + keys[i]);
+		}
+		int[] keySymbols = new int[count];
+		for (int i = 0; i < count; i++) {
+			keySymbols[Arrays.binarySearch(keys, values[i])] = i;
+		}
+
+		this.values = values.clone();
+		this.frequencies = new UnorderedFrequencies(freqs);
+		this.keys = keys;
+		this.keySymbols = keySymbols;
+	}
+
+	// accessors
+
+	/**
+	 * The symbol that is used to indicate a value that does not have a
+	 * symbol of its own.
+	 *
+	 * @return the escape symbol, equal to the number of values
+	 */
+
+	public int getEscapeSymbol() {
+		return values.length;
+	}
+
+	/**
+	 * The values that have been assigned their own symbols, ordered by
+	 * symbol.
+	 *
+	 * @return a copy of the values
+	 */
+
+	public long[] getValues() {
+		return values.clone();
+	}
+
+	// frequencies methods
+
+	@Override
+	public int getCount() {
+		return frequencies.getCount();
+	}
+
+	@Override
+	public long getFrequency(int index) {
+		return frequencies.getFrequency(index);
+	}
+
+	@Override
+	public Correspondence getCorrespondence() {
+		return frequencies.getCorrespondence();
+	}
+
+	// methods
+
+	/**
+	 * The symbol for a value.
+	 *
+	 * @param value
+	 *            any value
+	 * @return the value's symbol, or the escape symbol if the value has no
+	 *         symbol of its own
+	 */
+
+	public int getSymbol(long value) {
+		int i = Arrays.binarySearch(keys, value);
+		return i < 0 ? values.length : keySymbols[i];
+	}
+
+	/**
+	 * The value for a symbol.
+	 *
+	 * @param symbol
+	 *            a symbol other than the escape symbol
+	 * @return the value that was assigned the symbol
+	 * @throws IllegalArgumentException
+	 *             if the symbol is the escape symbol or is otherwise
+	 *             invalid
+	 */
+
+	public long getValue(int symbol) {
+		if (symbol < 0) throw new IllegalArgumentException("negative symbol");
+		if (symbol >= values.length) throw new IllegalArgumentException("invalid symbol: " + symbol);
+		return values[symbol];
+	}
+
+	/**
+	 * Encodes a value, escaping it if necessary.
+	 *
+	 * @param writer
+	 *            the writer to which the value is written
+	 * @param coding
+	 *            a coding constructed from these frequencies
+	 * @param escaped
+	 *            the coding used to write values that have no symbol
+	 * @param value
+	 *            the value to be written
+	 * @return the number of bits written
+	 */
+
+	public int encode(BitWriter writer, HuffmanCoding coding, ExtendedCoding escaped, long value) {
+		int symbol = getSymbol(value);
+		int c = coding.encodePositiveInt(writer, symbol);
+		if (symbol == values.length) c += escaped.encodeLong(writer, value);
+		return c;
+	}
+
+	/**
+	 * Decodes a value that was previously written by
+	 * {@link #encode(BitWriter, HuffmanCoding, ExtendedCoding, long)}.
+	 *
+	 * @param reader
+	 *            the reader from which the value is read
+	 * @param coding
+	 *            a coding constructed from these frequencies
+	 * @param escaped
+	 *            the coding used to read values that have no symbol
+	 * @return the value read
+	 */
+
+	public long decode(BitReader reader, HuffmanCoding coding, ExtendedCoding escaped) {
+		int symbol = coding.decodePositiveInt(reader);
+		return symbol == values.length ? escaped.decodeLong(reader) : values[symbol];
+	}
+
+}
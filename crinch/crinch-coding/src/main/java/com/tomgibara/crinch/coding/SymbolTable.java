@@ -0,0 +1,451 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitStreamException;
+import com.tomgibara.crinch.bits.BitWriter;
+
+/**
+ * A static table of up to 255 multi-byte symbols that is used to compress
+ * strings. The table is trained on a sample of strings and then used to
+ * replace frequently occurring byte sequences (of up to 8 bytes) in the byte
+ * encoding of a string with single byte codes. Bytes that are not covered by
+ * any symbol are escaped.
+ *
+ * Strings are encoded char by char, in the same way as
+ * {@link CodedStreams#writeString(CodedWriter, String)}: each char is
+ * converted to one, two or three bytes as in UTF-8, but surrogates are
+ * encoded individually rather than as pairs. This means that any string,
+ * including one containing unpaired surrogates, is reproduced exactly.
+ *
+ * Every string is compressed independently of every other, so that once the
+ * table is known, any individual string can be decoded without decoding the
+ * strings that precede it. The table itself is typically stored once per file
+ * using {@link #write(CodedWriter)}.
+ *
+ * Instances of this class are immutable and safe for concurrent use by
+ * multiple threads.
+ *
+ * @author Tom Gibara
+ * @see CodedStreams#writeString(CodedWriter, String, SymbolTable)
+ * @see CodedStreams#readString(CodedReader, SymbolTable)
+ */
+
+public final class SymbolTable {
+
+	// statics
+
+	/**
+	 * The maximum number of symbols that a table may contain.
+	 */
+
+	public static final int MAX_SYMBOLS = 255;
+
+	/**
+	 * The maximum number of bytes in a symbol.
+	 */
+
+	public static final int MAX_SYMBOL_LENGTH = 8;
+
+	/**
+	 * The code which indicates that the following byte is a literal.
+	 */
+
+	public static final int ESCAPE = 255;
+
+	private static final int GENERATIONS = 5;
+
+	private static final SymbolTable EMPTY = new SymbolTable(new Symbol[0]);
+
+	/**
+	 * A table containing no symbols; every byte will be escaped.
+	 *
+	 * @return an empty table
+	 */
+
+	public static SymbolTable empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Creates a table which will compress strings similar to those in the
+	 * supplied sample. Training time is proportional to the total length of
+	 * the sample, so large data sets should be sampled before training.
+	 *
+	 * @param sample
+	 *            strings representative of those that will be compressed
+	 * @return a table trained on the sample
+	 */
+
+	public static SymbolTable train(Iterable<String> sample) {
+		if (sample == null) throw new IllegalArgumentException("null sample");
+		List<byte[]> strs = new ArrayList<byte[]>();
+		for (String str : sample) {
+			if (str == null) throw new IllegalArgumentException("null string in sample");
+			strs.add(toBytes(str));
+		}
+
+		SymbolTable table = EMPTY;
+		for (int generation = 0; generation < GENERATIONS; generation++) {
+			Map<Symbol, Gain> gains = new HashMap<Symbol, Gain>();
+			for (byte[] bytes : strs) {
+				Symbol previous = null;
+				for (int i = 0; i < bytes.length;) {
+					Symbol symbol;
+					int code = table.match(bytes, i);
+					symbol = code == ESCAPE ? new Symbol(bytes, i, 1) : table.symbols[code];
+					// escaped bytes cost two bytes, so they count twice as much
+					gain(gains, symbol, code == ESCAPE ? 2 : symbol.length);
+					if (previous != null && previous.length + symbol.length <= MAX_SYMBOL_LENGTH) {
+						Symbol pair = previous.append(symbol);
+						gain(gains, pair, pair.length);
+					}
+					previous = symbol;
+					i += symbol.length;
+				}
+			}
+			table = new SymbolTable(select(gains));
+		}
+		return table;
+	}
+
+	/**
+	 * Reads a table that was previously written with
+	 * {@link #write(CodedWriter)}.
+	 *
+	 * @param reader
+	 *            the reader from which the table is read
+	 * @return the table read
+	 */
+
+	public static SymbolTable read(CodedReader reader) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		int count = reader.readPositiveInt();
+		if (count > MAX_SYMBOLS) throw new BitStreamException("invalid symbol count: " + count);
+		BitReader r = reader.getReader();
+		Symbol[] symbols = new Symbol[count];
+		byte[] bytes = new byte[MAX_SYMBOL_LENGTH];
+		for (int i = 0; i < count; i++) {
+			int length = reader.readPositiveInt();
+			if (length < 1 || length > MAX_SYMBOL_LENGTH) throw new BitStreamException("invalid symbol length: " + length);
+			for (int j = 0; j < length; j++) {
+				bytes[j] = (byte) r.read(8);
+			}
+			symbols[i] = new Symbol(bytes, 0, length);
+		}
+		return new SymbolTable(symbols);
+	}
+
+	// each char is encoded independently, so unpaired surrogates survive
+	private static byte[] toBytes(String str) {
+		int length = str.length();
+		byte[] bytes = new byte[length * 3];
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				bytes[count++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[count++] = (byte) (0xc0 | (c >> 6));
+				bytes[count++] = (byte) (0x80 | (c & 0x3f));
+			} else {
+				bytes[count++] = (byte) (0xe0 | (c >> 12));
+				bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				bytes[count++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		return count == bytes.length ? bytes : Arrays.copyOf(bytes, count);
+	}
+
+	private static String fromBytes(byte[] bytes, int count) {
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count;) {
+			int b = bytes[i++] & 0xff;
+			int c;
+			int trailing;
+			if (b < 0x80) {
+				c = b;
+				trailing = 0;
+			} else if ((b & 0xe0) == 0xc0) {
+				c = b & 0x1f;
+				trailing = 1;
+			} else if ((b & 0xf0) == 0xe0) {
+				c = b & 0x0f;
+				trailing = 2;
+			} else {
+				throw new BitStreamException("invalid leading byte: " + b);
+			}
+			if (i + trailing > count) throw new BitStreamException("truncated char");
+			for (; trailing > 0; trailing--) {
+				int t = bytes[i++] & 0xff;
+				if ((t & 0xc0) != 0x80) throw new BitStreamException("invalid trailing byte: " + t);
+				c = (c << 6) | (t & 0x3f);
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	private static void gain(Map<Symbol, Gain> gains, Symbol symbol, int amount) {
+		Gain gain = gains.get(symbol);
+		if (gain == null) {
+			gain = new Gain(symbol);
+			gains.put(symbol, gain);
+		}
+		gain.value += amount;
+	}
+
+	private static Symbol[] select(Map<Symbol, Gain> gains) {
+		List<Gain> list = new ArrayList<Gain>(gains.values());
+		Collections.sort(list);
+		int count = Math.min(list.size(), MAX_SYMBOLS);
+		Symbol[] symbols = new Symbol[count];
+		for (int i = 0; i < count; i++) {
+			symbols[i] = list.get(i).symbol;
+		}
+		return symbols;
+	}
+
+	// fields
+
+	private final Symbol[] symbols;
+	// for each leading byte, the codes of symbols starting with it, longest first
+	private final int[][] candidates;
+
+	// constructors
+
+	private SymbolTable(Symbol[] symbols) {
+		this.symbols = symbols;
+		List<List<Integer>> lists = new ArrayList<List<Integer>>(256);
+		for (int i = 0; i < 256; i++) lists.add(new ArrayList<Integer>());
+		for (int code = 0; code < symbols.length; code++) {
+			lists.get(symbols[code].bytes[0] & 0xff).add(code);
+		}
+		candidates = new int[256][];
+		for (int i = 0; i < 256; i++) {
+			List<Integer> list = lists.get(i);
+			int[] codes = new int[list.size()];
+			for (int j = 0; j < codes.length; j++) codes[j] = list.get(j);
+			// insertion sort by decreasing length, lists are short
+			for (int j = 1; j < codes.length; j++) {
+				int code = codes[j];
+				int k = j;
+				for (; k > 0 && symbols[codes[k - 1]].length < symbols[code].length; k--) {
+					codes[k] = codes[k - 1];
+				}
+				codes[k] = code;
+			}
+			candidates[i] = codes;
+		}
+	}
+
+	// accessors
+
+	/**
+	 * The number of symbols in the table.
+	 *
+	 * @return the symbol count, at most {@link #MAX_SYMBOLS}
+	 */
+
+	public int getSymbolCount() {
+		return symbols.length;
+	}
+
+	/**
+	 * The bytes of the symbol with the specified code.
+	 *
+	 * @param code
+	 *            a symbol code less than the symbol count
+	 * @return the bytes of the symbol
+	 */
+
+	public byte[] getSymbol(int code) {
+		if (code < 0) throw new IllegalArgumentException("negative code");
+		if (code >= symbols.length) throw new IllegalArgumentException("invalid code: " + code);
+		return symbols[code].bytes.clone();
+	}
+
+	// methods
+
+	/**
+	 * Writes the table to a coded writer.
+	 *
+	 * @param writer
+	 *            the writer to which the table is written
+	 * @return the number of bits written
+	 */
+
+	public int write(CodedWriter writer) {
+		if (writer == null) throw new IllegalArgumentException("null writer");
+		int c = writer.writePositiveInt(symbols.length);
+		BitWriter w = writer.getWriter();
+		for (Symbol symbol : symbols) {
+			c += writer.writePositiveInt(symbol.length);
+			for (int i = 0; i < symbol.length; i++) {
+				c += w.write(symbol.bytes[i] & 0xff, 8);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Compresses a string into a sequence of codes.
+	 *
+	 * @param str
+	 *            the string to compress
+	 * @return the codes, never null
+	 */
+
+	public byte[] encode(String str) {
+		if (str == null) throw new IllegalArgumentException("null str");
+		byte[] bytes = toBytes(str);
+		// every byte may need escaping in the worst case
+		byte[] codes = new byte[bytes.length * 2];
+		int length = 0;
+		for (int i = 0; i < bytes.length;) {
+			int code = match(bytes, i);
+			codes[length++] = (byte) code;
+			if (code == ESCAPE) {
+				codes[length++] = bytes[i++];
+			} else {
+				i += symbols[code].length;
+			}
+		}
+		return Arrays.copyOf(codes, length);
+	}
+
+	/**
+	 * Decompresses a string from a sequence of codes. Since each string is
+	 * compressed independently, this method may be applied to any range of
+	 * codes that was produced by a single call to {@link #encode(String)}.
+	 *
+	 * @param codes
+	 *            an array containing the codes
+	 * @param offset
+	 *            the index of the first code
+	 * @param length
+	 *            the number of codes
+	 * @return the decompressed string
+	 */
+
+	public String decode(byte[] codes, int offset, int length) {
+		if (codes == null) throw new IllegalArgumentException("null codes");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (length < 0) throw new IllegalArgumentException("negative length");
+		int limit = offset + length;
+		if (limit > codes.length) throw new IllegalArgumentException("length exceeds codes");
+		byte[] bytes = new byte[length * MAX_SYMBOL_LENGTH];
+		int count = 0;
+		for (int i = offset; i < limit; i++) {
+			int code = codes[i] & 0xff;
+			if (code == ESCAPE) {
+				if (++i == limit) throw new BitStreamException("truncated escape");
+				bytes[count++] = codes[i];
+			} else {
+				if (code >= symbols.length) throw new BitStreamException("invalid code: " + code);
+				Symbol symbol = symbols[code];
+				System.arraycopy(symbol.bytes, 0, bytes, count, symbol.length);
+				count += symbol.length;
+			}
+		}
+		return fromBytes(bytes, count);
+	}
+
+	// the code of the longest symbol matching at the index, or ESCAPE
+	private int match(byte[] bytes, int index) {
+		int[] codes = candidates[bytes[index] & 0xff];
+		int remaining = bytes.length - index;
+		outer: for (int code : codes) {
+			Symbol symbol = symbols[code];
+			int length = symbol.length;
+			if (length > remaining) continue;
+			for (int j = 1; j < length; j++) {
+				if (bytes[index + j] != symbol.bytes[j]) continue outer;
+			}
+			return code;
+		}
+		return ESCAPE;
+	}
+
+	// inner classes
+
+	private static final class Symbol {
+
+		final byte[] bytes;
+		final int length;
+		private final int hashCode;
+
+		Symbol(byte[] bytes, int offset, int length) {
+			this.bytes = Arrays.copyOfRange(bytes, offset, offset + length);
+			this.length = length;
+			hashCode = Arrays.hashCode(this.bytes);
+		}
+
+		Symbol append(Symbol that) {
+			byte[] bytes = Arrays.copyOf(this.bytes, this.length + that.length);
+			System.arraycopy(that.bytes, 0, bytes, this.length, that.length);
+			return new Symbol(bytes, 0, bytes.length);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) return true;
+			if (!(obj instanceof Symbol)) return false;
+			Symbol that = (Symbol) obj;
+			return Arrays.equals(this.bytes, that.bytes);
+		}
+
+	}
+
+	private static final class Gain implements Comparable<Gain> {
+
+		final Symbol symbol;
+		long value;
+
+		Gain(Symbol symbol) {
+			this.symbol = symbol;
+		}
+
+		@Override
+		public int compareTo(Gain that) {
+			if (this.value != that.value) return this.value < that.value ? 1 : -1;
+			// prefer longer symbols, then order arbitrarily but consistently
+			if (this.symbol.length != that.symbol.length) return that.symbol.length - this.symbol.length;
+			byte[] a = this.symbol.bytes;
+			byte[] b = that.symbol.bytes;
+			for (int i = 0; i < a.length; i++) {
+				if (a[i] != b[i]) return a[i] - b[i];
+			}
+			return 0;
+		}
+
+	}
+
+}
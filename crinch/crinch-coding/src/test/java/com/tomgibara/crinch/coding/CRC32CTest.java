@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class CRC32CTest extends TestCase {
+
+	public void testKnownValues() {
+		CRC32C crc = new CRC32C();
+		crc.update("123456789".getBytes());
+		assertEquals(0xe3069283L, crc.getValue());
+
+		// from RFC 3720, 32 bytes of zeros and of ones
+		crc.reset();
+		crc.update(new byte[32]);
+		assertEquals(0x8a9136aaL, crc.getValue());
+		byte[] ones = new byte[32];
+		for (int i = 0; i < ones.length; i++) ones[i] = (byte) 0xff;
+		crc.reset();
+		crc.update(ones);
+		assertEquals(0x62a8ab43L, crc.getValue());
+	}
+
+	public void testIncremental() {
+		Random r = new Random(0);
+		for (int test = 0; test < 100; test++) {
+			byte[] bytes = new byte[r.nextInt(100)];
+			r.nextBytes(bytes);
+			CRC32C whole = new CRC32C();
+			whole.update(bytes);
+			CRC32C parts = new CRC32C();
+			int split = bytes.length == 0 ? 0 : r.nextInt(bytes.length);
+			parts.update(bytes, 0, split);
+			for (int i = split; i < bytes.length; i++) parts.update(bytes[i]);
+			assertEquals(whole.getValue(), parts.getValue());
+			assertEquals((int) whole.getValue(), whole.checksum());
+		}
+	}
+
+}
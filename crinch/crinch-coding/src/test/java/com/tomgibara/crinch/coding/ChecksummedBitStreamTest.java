@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ChecksummedBitStreamTest extends TestCase {
+
+	private static byte[] write(long[] values, int blockSize) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChecksummedBitWriter writer = new ChecksummedBitWriter(out, blockSize);
+		CodedWriter coded = new CodedWriter(writer, EliasOmegaCoding.extended);
+		for (long value : values) coded.writeLong(value);
+		writer.writeBooleans(true, 100);
+		writer.finish();
+		return out.toByteArray();
+	}
+
+	private static long[] values(Random r, int count) {
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) values[i] = r.nextLong() >> r.nextInt(64);
+		return values;
+	}
+
+	public void testRoundTrip() {
+		Random r = new Random(0);
+		for (int blockSize : new int[] {1, 7, 64, 4096}) {
+			long[] values = values(r, 1000);
+			byte[] bytes = write(values, blockSize);
+			ChecksummedBitReader reader = new ChecksummedBitReader(new ByteArrayInputStream(bytes));
+			CodedReader coded = new CodedReader(reader, EliasOmegaCoding.extended);
+			for (long value : values) assertEquals(value, coded.readLong());
+			for (int i = 0; i < 100; i++) assertTrue(reader.readBoolean());
+			reader.verify();
+		}
+	}
+
+	public void testCorruption() {
+		Random r = new Random(0);
+		long[] values = values(r, 1000);
+		byte[] bytes = write(values, 64);
+		for (int test = 0; test < 50; test++) {
+			byte[] copy = bytes.clone();
+			copy[r.nextInt(copy.length)] ^= 1 << r.nextInt(8);
+			assertDetected(copy);
+		}
+	}
+
+	public void testTruncation() {
+		Random r = new Random(0);
+		long[] values = values(r, 1000);
+		byte[] bytes = write(values, 64);
+		for (int test = 0; test < 50; test++) {
+			assertDetected(Arrays.copyOf(bytes, r.nextInt(bytes.length)));
+		}
+	}
+
+	private void assertDetected(byte[] bytes) {
+		ChecksummedBitReader reader = new ChecksummedBitReader(new ByteArrayInputStream(bytes));
+		try {
+			reader.verify();
+			fail();
+		} catch (ChecksumException e) {
+			/* expected */
+		}
+	}
+
+}
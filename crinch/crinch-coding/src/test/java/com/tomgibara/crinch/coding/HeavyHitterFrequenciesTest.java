@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+
+public class HeavyHitterFrequenciesTest extends TestCase {
+
+	public void testRoundTrip() {
+		Random r = new Random(0);
+		long[] hitters = { 7L, -3L, 1L << 40, 0L };
+		long[] freqs = { 500L, 250L, 125L, 60L };
+		HeavyHitterFrequencies frequencies = new HeavyHitterFrequencies(hitters, freqs, 65L);
+		assertEquals(5, frequencies.getCount());
+		assertEquals(4, frequencies.getEscapeSymbol());
+		assertEquals(1, frequencies.getSymbol(-3L));
+		assertEquals(4, frequencies.getSymbol(42L));
+		assertEquals(1L << 40, frequencies.getValue(2));
+		HuffmanCoding coding = new HuffmanCoding(frequencies);
+		ExtendedCoding escaped = EliasOmegaCoding.extended;
+
+		long[] values = new long[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = r.nextInt(8) == 0 ? r.nextLong() : hitters[r.nextInt(hitters.length)];
+		}
+		byte[] bytes = new byte[values.length * 16];
+		ByteArrayBitWriter writer = new ByteArrayBitWriter(bytes);
+		long bits = 0L;
+		for (long value : values) bits += frequencies.encode(writer, coding, escaped, value);
+		assertEquals(bits, writer.getPosition());
+		writer.flush();
+
+		// reconstruct the coding from its persisted form
+		HeavyHitterFrequencies copy = new HeavyHitterFrequencies(frequencies.getValues(), freqs, 65L);
+		HuffmanCoding decoding = new HuffmanCoding(copy);
+		ByteArrayBitReader reader = new ByteArrayBitReader(bytes);
+		for (long value : values) {
+			assertEquals(value, copy.decode(reader, decoding, escaped));
+		}
+	}
+
+	public void testEscapeOnly() {
+		HeavyHitterFrequencies frequencies = new HeavyHitterFrequencies(new long[0], new long[0], 1L);
+		assertEquals(1, frequencies.getCount());
+		assertEquals(0, frequencies.getEscapeSymbol());
+		assertEquals(0, frequencies.getSymbol(42L));
+	}
+
+	public void testDuplicateValues() {
+		try {
+			new HeavyHitterFrequencies(new long[] { 1L, 2L, 1L }, new long[] { 3L, 2L, 1L }, 1L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
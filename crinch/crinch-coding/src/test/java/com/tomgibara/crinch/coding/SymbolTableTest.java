@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.coding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+
+public class SymbolTableTest extends TestCase {
+
+	private static final String[] WORDS = {
+		"http://", "www.", "example", ".com/", "index", ".html", "search?q=", "crinch", "\u00e9t\u00e9", "\u65e5\u672c"
+	};
+
+	private static List<String> strings(Random r, int count) {
+		List<String> list = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			int words = r.nextInt(6);
+			for (int j = 0; j < words; j++) {
+				sb.append(WORDS[r.nextInt(WORDS.length)]);
+				if (r.nextInt(4) == 0) sb.append((char) r.nextInt(0x3000));
+			}
+			list.add(sb.toString());
+		}
+		return list;
+	}
+
+	public void testEncodeDecode() {
+		Random r = new Random(0);
+		List<String> strs = strings(r, 1000);
+		SymbolTable table = SymbolTable.train(strs.subList(0, 200));
+		assertTrue(table.getSymbolCount() > 0);
+		assertTrue(table.getSymbolCount() <= SymbolTable.MAX_SYMBOLS);
+		for (String str : strs) {
+			byte[] codes = table.encode(str);
+			assertEquals(str, table.decode(codes, 0, codes.length));
+		}
+		assertEquals("", SymbolTable.empty().decode(SymbolTable.empty().encode(""), 0, 0));
+		byte[] codes = SymbolTable.empty().encode("abc");
+		assertEquals(6, codes.length);
+		assertEquals("abc", SymbolTable.empty().decode(codes, 0, codes.length));
+	}
+
+	public void testUnpairedSurrogates() {
+		Random r = new Random(0);
+		List<String> strs = strings(r, 200);
+		SymbolTable table = SymbolTable.train(strs);
+		String[] odd = { "\ud800", "abc\udc00def", "\udc00\ud800", "crinch\ud83d", "\ud83d\ude00\ud83d", "" };
+		ExtendedCoding coding = EliasOmegaCoding.extended;
+		byte[] bytes = new byte[4 * 1024];
+		ByteArrayBitWriter w = new ByteArrayBitWriter(bytes);
+		CodedWriter writer = new CodedWriter(w, coding);
+		for (String str : odd) {
+			byte[] codes = table.encode(str);
+			assertEquals(str, table.decode(codes, 0, codes.length));
+			CodedStreams.writeString(writer, str, table);
+		}
+		w.flush();
+		CodedReader reader = new CodedReader(new ByteArrayBitReader(bytes), coding);
+		for (String str : odd) {
+			assertEquals(str, CodedStreams.readString(reader, table));
+		}
+	}
+
+	public void testCodedStreams() {
+		Random r = new Random(0);
+		List<String> strs = strings(r, 500);
+		SymbolTable table = SymbolTable.train(strs);
+		ExtendedCoding coding = EliasOmegaCoding.extended;
+
+		byte[] bytes = new byte[64 * 1024];
+		ByteArrayBitWriter w = new ByteArrayBitWriter(bytes);
+		CodedWriter writer = new CodedWriter(w, coding);
+		table.write(writer);
+		long[] positions = new long[strs.size()];
+		long compressed = 0L;
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = w.getPosition();
+			compressed += CodedStreams.writeString(writer, strs.get(i), table);
+		}
+		w.flush();
+
+		long plain = 0L;
+		CodedWriter other = new CodedWriter(new ByteArrayBitWriter(new byte[256 * 1024]), coding);
+		for (String str : strs) plain += CodedStreams.writeString(other, str);
+		assertTrue(compressed < plain);
+
+		ByteArrayBitReader rd = new ByteArrayBitReader(bytes);
+		CodedReader reader = new CodedReader(rd, coding);
+		SymbolTable read = SymbolTable.read(reader);
+		assertEquals(table.getSymbolCount(), read.getSymbolCount());
+		for (int i = 0; i < table.getSymbolCount(); i++) {
+			assertTrue(Arrays.equals(table.getSymbol(i), read.getSymbol(i)));
+		}
+
+		// decode strings out of order
+		for (int i = 0; i < 100; i++) {
+			int index = r.nextInt(positions.length);
+			rd.setPosition(positions[index]);
+			assertEquals(strs.get(index), CodedStreams.readString(reader, read));
+		}
+	}
+
+}
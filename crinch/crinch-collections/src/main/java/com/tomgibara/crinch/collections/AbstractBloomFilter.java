@@ -31,6 +31,22 @@ import com.tomgibara.crinch.bits.BitVector;
 
 public abstract class AbstractBloomFilter<E> implements BloomFilter<E> {
 
+	// statics
+
+	// the number of elements hashed together by batch operations; those
+	// elements of a batch that might be contained are tracked with a long
+	static final int BATCH_SIZE = 64;
+
+	static void checkBatch(Object[] elements, int off, int len) {
+		if (elements == null) throw new IllegalArgumentException("null elements");
+		if (off < 0 || len < 0 || off + len > elements.length) throw new IndexOutOfBoundsException();
+	}
+
+	// a mask with a bit set for each of the first count elements of a batch
+	static long batchMask(int count) {
+		return -1L >>> (BATCH_SIZE - count);
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return getBitVector().isAllZeros();
@@ -54,6 +70,14 @@ public abstract class AbstractBloomFilter<E> implements BloomFilter<E> {
 		return mutated;
 	}
 
+	@Override
+	public boolean addAll(E[] elements, int off, int len) {
+		checkBatch(elements, off, len);
+		boolean mutated = false;
+		for (int i = 0; i < len; i++) if ( add(elements[off + i]) ) mutated = true;
+		return mutated;
+	}
+
 	@Override
 	public boolean mightContain(E element) {
 		final int hashCount = getHashCount();
@@ -72,6 +96,16 @@ public abstract class AbstractBloomFilter<E> implements BloomFilter<E> {
 		return true;
 	}
 
+	@Override
+	public BitVector mightContainEach(E[] elements, int off, int len) {
+		checkBatch(elements, off, len);
+		final BitVector results = new BitVector(len);
+		for (int i = 0; i < len; i++) {
+			if (mightContain(elements[off + i])) results.setBit(i, true);
+		}
+		return results;
+	}
+
 	@Override
 	public boolean containsAll(BloomFilter<?> filter) {
 		checkCompatible(filter);
@@ -108,5 +142,60 @@ public abstract class AbstractBloomFilter<E> implements BloomFilter<E> {
 		if (this.getHashCount() != that.getHashCount()) throw new IllegalArgumentException("Incompatible filter, hashCount was " + that.getHashCount() +", expected " + this.getHashCount());
 		if (!this.getMultiHash().equals(that.getMultiHash())) throw new IllegalArgumentException("Incompatible filter, multiHashes were not equal");
 	}
+
+	// an implementation of mightContainEach for filters that implement the
+	// probe methods; the ith probes of all candidates in a batch are made
+	// before any (i+1)th probe so that their memory accesses can overlap
+	BitVector interleavedMightContainEach(E[] elements, int off, int len, int probeCount) {
+		checkBatch(elements, off, len);
+		final BitVector results = new BitVector(len);
+		final int[] probes = new int[Math.min(len, BATCH_SIZE) * probeCount];
+		for (int start = 0; start < len; start += BATCH_SIZE) {
+			final int count = Math.min(len - start, BATCH_SIZE);
+			probes(elements, off + start, count, probes);
+			long candidates = batchMask(count);
+			for (int i = 0; i < probeCount && candidates != 0L; i++) {
+				for (long c = candidates; c != 0L; c &= c - 1L) {
+					final int e = Long.numberOfTrailingZeros(c);
+					if (!isProbeSet(probes[e * probeCount + i])) candidates &= ~(1L << e);
+				}
+			}
+			results.setBits(start, candidates, count);
+		}
+		return results;
+	}
+
+	// an implementation of addAll for filters that implement the probe
+	// methods; a batch of elements is hashed together before any is added
+	boolean interleavedAddAll(E[] elements, int off, int len, int probeCount) {
+		checkBatch(elements, off, len);
+		final int[] probes = new int[Math.min(len, BATCH_SIZE) * probeCount];
+		boolean mutated = false;
+		for (int start = 0; start < len; start += BATCH_SIZE) {
+			final int count = Math.min(len - start, BATCH_SIZE);
+			probes(elements, off + start, count, probes);
+			final int limit = count * probeCount;
+			for (int i = 0; i < limit; i++) {
+				if (setProbe(probes[i])) mutated = true;
+			}
+		}
+		return mutated;
+	}
+
+	// writes the probes for count elements, consecutively for each element;
+	// by default these are the hashes generated by the multi-hash
+	void probes(E[] elements, int off, int count, int[] probes) {
+		getMultiHash().hashAsInts(elements, off, count, getHashCount(), probes);
+	}
+
+	// whether the bit identified by a probe is set
+	boolean isProbeSet(int probe) {
+		return getBitVector().getBit(probe);
+	}
+
+	// sets the bit identified by a probe, true if it was not previously set
+	boolean setProbe(int probe) {
+		return !getBitVector().getThenSetBit(probe, true);
+	}
 	
 }
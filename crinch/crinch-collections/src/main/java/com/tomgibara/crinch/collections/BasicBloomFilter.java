@@ -135,7 +135,44 @@ public class BasicBloomFilter<E> extends AbstractBloomFilter<E> implements Clone
 	
 	@Override
 	public boolean add(E element) {
-		final int[] hashes = multiHash.hashAsInts(element, this.hashes);
+		return add(multiHash.hashAsInts(element, this.hashes));
+	}
+
+	/**
+	 * Adds an element that has already been hashed by the filter's
+	 * multi-hash. This allows elements, such as primitive values, to be added
+	 * without first being boxed.
+	 * 
+	 * @param hashes
+	 *            at least {@link #getHashCount()} hash values for the element,
+	 *            as generated by {@link #getMultiHash()}
+	 * @return true if the filter was modified
+	 */
+	
+	public boolean addHashes(int[] hashes) {
+		checkHashes(hashes);
+		return add(hashes);
+	}
+
+	/**
+	 * Whether the filter might contain an element that has already been
+	 * hashed by the filter's multi-hash.
+	 * 
+	 * @param hashes
+	 *            at least {@link #getHashCount()} hash values for the element,
+	 *            as generated by {@link #getMultiHash()}
+	 * @return false if the element is definitely not contained
+	 */
+	
+	public boolean mightContainHashes(int[] hashes) {
+		checkHashes(hashes);
+		for (int i = 0; i < hashCount; i++) {
+			if (!bits.getBit(hashes[i])) return false;
+		}
+		return true;
+	}
+	
+	private boolean add(int[] hashes) {
 		boolean mutated = false;
 		for (int i = 0; i < hashCount; i++) {
 			final int hash = hashes[i];
@@ -149,6 +186,16 @@ public class BasicBloomFilter<E> extends AbstractBloomFilter<E> implements Clone
 		return mutated;
 	}
 	
+	@Override
+	public boolean addAll(E[] elements, int off, int len) {
+		return interleavedAddAll(elements, off, len, hashCount);
+	}
+	
+	@Override
+	public BitVector mightContainEach(E[] elements, int off, int len) {
+		return interleavedMightContainEach(elements, off, len, hashCount);
+	}
+	
 	@Override
 	public BitVector getBitVector() {
 		return publicBits;
@@ -171,4 +218,23 @@ public class BasicBloomFilter<E> extends AbstractBloomFilter<E> implements Clone
 		return new BasicBloomFilter<E>(this);
 	}
 
+	// package scoped methods
+
+	@Override
+	boolean isProbeSet(int hash) {
+		return bits.getBit(hash);
+	}
+
+	@Override
+	boolean setProbe(int hash) {
+		return !bits.getThenSetBit(hash, true);
+	}
+
+	// private utility methods
+	
+	private void checkHashes(int[] hashes) {
+		if (hashes == null) throw new IllegalArgumentException("null hashes");
+		if (hashes.length < hashCount) throw new IllegalArgumentException("fewer hashes than hashCount");
+	}
+
 }
@@ -154,6 +154,24 @@ public class BasicCompactApproximator<K,V> implements CompactApproximator<K, V>,
 		return true;
 	}
 	
+	@Override
+	public void merge(CompactApproximator<K, V> that) {
+		checkCompatibility(that);
+		final V[] values = this.values;
+		final List<V> thatValues = that.getValueList();
+		if (thatValues instanceof RandomAccess) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = storeLattice.join(values[i], thatValues.get(i));
+			}
+		} else {
+			final Iterator<V> it = thatValues.iterator();
+			for (int i = 0; i < values.length; i++) {
+				values[i] = storeLattice.join(values[i], it.next());
+			}
+		}
+		modCount.count++;
+	}
+	
 	@Override
 	public CompactApproximator<K,V> boundedAbove(V upperBound) {
 		final Lattice<V> subLattice = accessLattice.boundedAbove(upperBound);
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+
+// See Putze, Sanders & Singler, "Cache-, Hash- and Space-Efficient Bloom Filters"
+// and the split block Bloom filter of Apache Impala/Parquet
+
+/**
+ * <p>
+ * A {@link BloomFilter} that confines the bits of each element to a single
+ * block of 512 bits, the size of a typical cache line, so that adding or
+ * probing an element touches only one line of memory. Each block consists of
+ * eight 64-bit words and every element sets exactly one bit in each word of
+ * its block; the hash count is therefore always eight.
+ * </p>
+ *
+ * <p>
+ * Confining bits to blocks increases the false positive probability slightly
+ * compared to a {@link BasicBloomFilter} of the same size because elements
+ * are not distributed evenly between blocks. The static
+ * {@link #blockCountFor(long, double)} and
+ * {@link #falsePositiveProbability(int, long)} methods account for this.
+ * </p>
+ *
+ * <p>
+ * Elements are hashed once to 64 bits: the high bits select the block and the
+ * low bits the bit within each word. The {@link MultiHash} reported by the
+ * filter simply exposes this single hash. The {@link BitVector} returned by
+ * {@link #getBitVector()} is an immutable snapshot.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element contained in the filter
+ */
+
+public class BlockedBloomFilter<E> extends AbstractBloomFilter<E> implements Cloneable {
+
+	// statics
+
+	/**
+	 * The number of bits in each block.
+	 */
+
+	public static final int BLOCK_SIZE = 512;
+
+	/**
+	 * The largest number of blocks a filter may have.
+	 */
+
+	public static final int MAX_BLOCK_COUNT = Integer.MAX_VALUE / BLOCK_SIZE;
+
+	private static final int HASH_COUNT = 8;
+
+	// odd multipliers, one for each word in a block
+	private static final int[] SALTS = {
+		0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+		0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+	};
+
+	/**
+	 * The expected false positive probability of a filter once a number of
+	 * distinct elements have been added to it.
+	 *
+	 * @param blockCount
+	 *            the number of blocks in the filter
+	 * @param elementCount
+	 *            the number of distinct elements added to the filter
+	 * @return the probability that an element not in the filter is reported
+	 *         as possibly contained
+	 */
+
+	public static double falsePositiveProbability(int blockCount, long elementCount) {
+		if (blockCount < 1) throw new IllegalArgumentException("blockCount not positive");
+		if (elementCount < 0L) throw new IllegalArgumentException("negative elementCount");
+		if (elementCount == 0L) return 0.0;
+		// the number of elements in a block is approximately Poisson distributed
+		final double lambda = (double) elementCount / blockCount;
+		final int mode = (int) lambda;
+		final double pMode = Math.exp(mode * Math.log(lambda) - lambda - logFactorial(mode));
+		double sum = pMode * blockProbability(mode);
+		double p = pMode;
+		for (int j = mode + 1; p > 1e-20 || j <= lambda + 1.0; j++) {
+			p *= lambda / j;
+			sum += p * blockProbability(j);
+		}
+		p = pMode;
+		for (int j = mode; j > 0 && p > 1e-20; j--) {
+			p *= j / lambda;
+			sum += p * blockProbability(j - 1);
+		}
+		return Math.min(1.0, sum);
+	}
+
+	/**
+	 * The number of blocks needed for a filter to have no more than the
+	 * specified false positive probability after a number of distinct elements
+	 * have been added.
+	 *
+	 * @param elementCount
+	 *            the expected number of distinct elements
+	 * @param falsePositiveProbability
+	 *            the largest acceptable false positive probability
+	 * @return the smallest suitable number of blocks
+	 * @throws IllegalArgumentException
+	 *             if the probability is not between 0 and 1 exclusive, or if
+	 *             it cannot be achieved with {@link #MAX_BLOCK_COUNT} blocks
+	 */
+
+	public static int blockCountFor(long elementCount, double falsePositiveProbability) {
+		if (elementCount < 0L) throw new IllegalArgumentException("negative elementCount");
+		if (!(falsePositiveProbability > 0.0) || falsePositiveProbability >= 1.0) throw new IllegalArgumentException("falsePositiveProbability not between 0 and 1 exclusive");
+		if (falsePositiveProbability(MAX_BLOCK_COUNT, elementCount) > falsePositiveProbability) throw new IllegalArgumentException("falsePositiveProbability not achievable");
+		int lower = 1;
+		int upper = MAX_BLOCK_COUNT;
+		while (lower < upper) {
+			final int mid = (lower + upper) >>> 1;
+			if (falsePositiveProbability(mid, elementCount) <= falsePositiveProbability) {
+				upper = mid;
+			} else {
+				lower = mid + 1;
+			}
+		}
+		return lower;
+	}
+
+	// the probability that a random probe matches a block containing j elements
+	private static double blockProbability(int j) {
+		return Math.pow(1.0 - Math.pow(1.0 - 1.0 / 64, j), HASH_COUNT);
+	}
+
+	private static double logFactorial(int n) {
+		if (n < 20) {
+			double f = 1.0;
+			for (int i = 2; i <= n; i++) f *= i;
+			return Math.log(f);
+		}
+		// Stirling's series
+		return n * Math.log(n) - n + 0.5 * Math.log(2.0 * Math.PI * n) + 1.0 / (12.0 * n);
+	}
+
+	// fields
+
+	private final Hash<? super E> hash;
+	private final MultiHash<? super E> multiHash;
+	private final int blockCount;
+	private final long[] words;
+
+	// constructors
+
+	/**
+	 * Constructs an empty filter with the specified number of blocks.
+	 *
+	 * @param hash
+	 *            a hash over the full range of long values
+	 * @param blockCount
+	 *            the number of 512 bit blocks in the filter
+	 * @throws IllegalArgumentException
+	 *             if the hash is null or does not have a full long range, or
+	 *             if the block count is not positive or exceeds
+	 *             {@link #MAX_BLOCK_COUNT}
+	 */
+
+	public BlockedBloomFilter(Hash<? super E> hash, int blockCount) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (!HashRange.FULL_LONG_RANGE.equals(hash.getRange())) throw new IllegalArgumentException("hash does not have full long range");
+		if (blockCount < 1) throw new IllegalArgumentException("blockCount not positive");
+		if (blockCount > MAX_BLOCK_COUNT) throw new IllegalArgumentException("blockCount exceeds maximum");
+		this.hash = hash;
+		multiHash = Hashes.asMultiHash(hash);
+		this.blockCount = blockCount;
+		words = new long[blockCount * HASH_COUNT];
+	}
+
+	/**
+	 * Constructs a filter with state copied from a {@link BitVector}, such as
+	 * one previously obtained from {@link #getBitVector()}.
+	 *
+	 * @param bits
+	 *            the bits of the filter, the size of which must be a multiple
+	 *            of {@link #BLOCK_SIZE}
+	 * @param hash
+	 *            a hash over the full range of long values
+	 */
+
+	public BlockedBloomFilter(BitVector bits, Hash<? super E> hash) {
+		this(hash, blockCount(bits));
+		final long[] words = this.words;
+		for (int i = 0; i < words.length; i++) {
+			words[i] = bits.getBits(i << 6, 64);
+		}
+	}
+
+	private BlockedBloomFilter(BlockedBloomFilter<E> that) {
+		hash = that.hash;
+		multiHash = that.multiHash;
+		blockCount = that.blockCount;
+		words = that.words.clone();
+	}
+
+	private static int blockCount(BitVector bits) {
+		if (bits == null) throw new IllegalArgumentException("null bits");
+		if (bits.size() == 0 || bits.size() % BLOCK_SIZE != 0) throw new IllegalArgumentException("bits size not a positive multiple of block size");
+		return bits.size() / BLOCK_SIZE;
+	}
+
+	// accessors
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	// bloom filter methods
+
+	@Override
+	public boolean add(E element) {
+		final long h = hash.hashAsLong(element);
+		final long[] words = this.words;
+		final int base = block(h) << 3;
+		final int x = (int) h;
+		boolean mutated = false;
+		for (int i = 0; i < HASH_COUNT; i++) {
+			final long mask = 1L << ((x * SALTS[i]) >>> 26);
+			final long word = words[base + i];
+			if ((word & mask) == 0L) {
+				words[base + i] = word | mask;
+				mutated = true;
+			}
+		}
+		return mutated;
+	}
+
+	@Override
+	public boolean mightContain(E element) {
+		final long h = hash.hashAsLong(element);
+		final long[] words = this.words;
+		final int base = block(h) << 3;
+		final int x = (int) h;
+		for (int i = 0; i < HASH_COUNT; i++) {
+			final long mask = 1L << ((x * SALTS[i]) >>> 26);
+			if ((words[base + i] & mask) == 0L) return false;
+		}
+		return true;
+	}
+
+	// the first probe of each element is the only likely cache miss, so
+	// those for the whole batch are made before any others
+	@Override
+	public BitVector mightContainEach(E[] elements, int off, int len) {
+		return interleavedMightContainEach(elements, off, len, HASH_COUNT);
+	}
+
+	@Override
+	public boolean addAll(BloomFilter<? extends E> filter) {
+		checkCompatible(filter);
+		final long[] words = this.words;
+		boolean mutated = false;
+		if (filter instanceof BlockedBloomFilter<?>) {
+			final long[] those = ((BlockedBloomFilter<?>) filter).words;
+			for (int i = 0; i < words.length; i++) {
+				final long word = words[i];
+				words[i] = word | those[i];
+				if (words[i] != word) mutated = true;
+			}
+		} else {
+			final BitVector bits = filter.getBitVector();
+			for (int i = 0; i < words.length; i++) {
+				final long word = words[i];
+				words[i] = word | bits.getBits(i << 6, 64);
+				if (words[i] != word) mutated = true;
+			}
+		}
+		return mutated;
+	}
+
+	@Override
+	public boolean containsAll(BloomFilter<?> filter) {
+		checkCompatible(filter);
+		final long[] words = this.words;
+		if (filter instanceof BlockedBloomFilter<?>) {
+			final long[] those = ((BlockedBloomFilter<?>) filter).words;
+			for (int i = 0; i < words.length; i++) {
+				if ((words[i] & those[i]) != those[i]) return false;
+			}
+		} else {
+			final BitVector bits = filter.getBitVector();
+			for (int i = 0; i < words.length; i++) {
+				final long those = bits.getBits(i << 6, 64);
+				if ((words[i] & those) != those) return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		final long[] words = this.words;
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] != 0L) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * The probability that a probe for an element not in the filter succeeds,
+	 * averaged over all blocks given their current occupancy.
+	 */
+
+	@Override
+	public double getFalsePositiveProbability() {
+		final long[] words = this.words;
+		double sum = 0.0;
+		for (int i = 0; i < words.length; i += HASH_COUNT) {
+			double p = 1.0;
+			for (int j = 0; j < HASH_COUNT && p > 0.0; j++) {
+				p *= Long.bitCount(words[i + j]) / 64.0;
+			}
+			sum += p;
+		}
+		return sum / blockCount;
+	}
+
+	@Override
+	public int getCapacity() {
+		return blockCount * BLOCK_SIZE;
+	}
+
+	@Override
+	public int getHashCount() {
+		return HASH_COUNT;
+	}
+
+	@Override
+	public MultiHash<? super E> getMultiHash() {
+		return multiHash;
+	}
+
+	@Override
+	public BitVector getBitVector() {
+		final long[] words = this.words;
+		final BitVector bits = new BitVector(getCapacity());
+		for (int i = 0; i < words.length; i++) {
+			bits.setBits(i << 6, words[i], 64);
+		}
+		return bits.immutableView();
+	}
+
+	// object methods
+
+	@Override
+	public BlockedBloomFilter<E> clone() {
+		return new BlockedBloomFilter<E>(this);
+	}
+
+	// package scoped methods
+
+	@Override
+	void checkCompatible(BloomFilter<?> that) {
+		super.checkCompatible(that);
+		if (that.getCapacity() != getCapacity()) throw new IllegalArgumentException("Incompatible filter, capacity was " + that.getCapacity() + ", expected " + getCapacity());
+	}
+
+	// each probe is the index of a bit, one in each word of the element's block
+	@Override
+	void probes(E[] elements, int off, int count, int[] probes) {
+		final long[] hs = hash.hashAsLongs(elements, off, count, new long[count]);
+		for (int e = 0, p = 0; e < count; e++) {
+			final int base = block(hs[e]) << 3;
+			final int x = (int) hs[e];
+			for (int i = 0; i < HASH_COUNT; i++) {
+				probes[p++] = ((base + i) << 6) | ((x * SALTS[i]) >>> 26);
+			}
+		}
+	}
+
+	@Override
+	boolean isProbeSet(int bit) {
+		return (words[bit >> 6] & (1L << bit)) != 0L;
+	}
+
+	// private utility methods
+
+	// maps the high bits of the hash uniformly onto the blocks
+	private int block(long h) {
+		return (int) (((h >>> 32) * blockCount) >>> 32);
+	}
+
+}
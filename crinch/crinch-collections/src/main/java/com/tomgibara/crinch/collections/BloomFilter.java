@@ -94,6 +94,26 @@ public interface BloomFilter<E> {
 	
 	boolean addAll(Iterable<? extends E> elements) throws IllegalArgumentException;
 
+	/**
+	 * Adds several elements of an array to the filter. Implementations may
+	 * hash the elements together before modifying the filter.
+	 * 
+	 * @param elements
+	 *            an array containing the elements to add
+	 * @param off
+	 *            the index of the first element to add
+	 * @param len
+	 *            the number of elements to add
+	 * @return true if the state of the bloom filter was modified by the
+	 *         operation, false otherwise
+	 * @throws IllegalArgumentException
+	 *             if the array is null
+	 * @throws IndexOutOfBoundsException
+	 *             if the elements do not lie within the array
+	 */
+	
+	boolean addAll(E[] elements, int off, int len) throws IllegalArgumentException, IndexOutOfBoundsException;
+
 	/**
 	 * Whether the filter is empty.
 	 * 
@@ -123,6 +143,30 @@ public interface BloomFilter<E> {
 	
 	boolean mightContainAll(Iterable<? extends E> elements) throws IllegalArgumentException;
 	
+	/**
+	 * Whether the Bloom filter might contain each of several elements. This is
+	 * equivalent to calling {@link #mightContain(Object)} for each element,
+	 * but implementations may hash the elements together and examine the bits
+	 * for many elements at once, which is considerably faster when the filter
+	 * is too large to be cached.
+	 * 
+	 * @param elements
+	 *            an array containing the elements to test
+	 * @param off
+	 *            the index of the first element to test
+	 * @param len
+	 *            the number of elements to test
+	 * @return a {@link BitVector} of size <code>len</code> in which bit
+	 *         <code>i</code> is set if and only if the element at index
+	 *         <code>off + i</code> might be contained in the filter
+	 * @throws IllegalArgumentException
+	 *             if the array is null
+	 * @throws IndexOutOfBoundsException
+	 *             if the elements do not lie within the array
+	 */
+	
+	BitVector mightContainEach(E[] elements, int off, int len) throws IllegalArgumentException, IndexOutOfBoundsException;
+	
 	/**
 	 * Whether the Bloom filter contains all of the elements contained in
 	 * another compatible bloom filter
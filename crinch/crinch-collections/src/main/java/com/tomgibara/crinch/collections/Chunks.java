@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+// divides work over a range of indices between threads
+final class Chunks {
+
+	static void run(final int n, int threads, final Task task) {
+		final int chunks = Math.max(1, Math.min(threads, n));
+		final Thread[] workers = new Thread[chunks - 1];
+		final Throwable[] failure = new Throwable[1];
+		for (int c = 1; c < chunks; c++) {
+			final int chunk = c;
+			workers[c - 1] = new Thread("crinch worker") {
+				@Override
+				public void run() {
+					try {
+						task.run(chunkStart(n, chunks, chunk), chunkStart(n, chunks, chunk + 1));
+					} catch (Throwable t) {
+						synchronized (failure) {
+							failure[0] = t;
+						}
+					}
+				}
+			};
+			workers[c - 1].start();
+		}
+		task.run(0, chunkStart(n, chunks, 1));
+		boolean interrupted = false;
+		for (Thread worker : workers) {
+			while (true) {
+				try {
+					worker.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		synchronized (failure) {
+			if (failure[0] != null) throw new IllegalStateException("worker failed", failure[0]);
+		}
+	}
+
+	private static int chunkStart(int n, int chunks, int chunk) {
+		return (int) ((long) n * chunk / chunks);
+	}
+
+	private Chunks() { }
+
+	static abstract class Task {
+
+		abstract void run(int from, int to);
+
+	}
+
+}
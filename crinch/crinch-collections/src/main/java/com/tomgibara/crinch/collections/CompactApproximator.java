@@ -32,6 +32,9 @@ public interface CompactApproximator<K, V> {
 	boolean mightContainAll(Iterable<? extends K> keys);
 	
 	boolean bounds(CompactApproximator<K, V> ca);
+
+	// joins the values of a compatible approximator into this one, slot-wise
+	void merge(CompactApproximator<K, V> ca);
 	
 	CompactApproximator<K, V> boundedAbove(V upperBound);
 	
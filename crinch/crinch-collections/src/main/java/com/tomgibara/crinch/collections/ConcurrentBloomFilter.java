@@ -0,0 +1,285 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+
+/**
+ * <p>
+ * A {@link BloomFilter} that may be shared between threads without external
+ * synchronization. Bits are set with atomic compare-and-set operations so that
+ * concurrent additions never lose bits, and {@link #mightContain(Object)}
+ * is wait-free. Each thread hashes elements into its own scratch array.
+ * </p>
+ *
+ * <p>
+ * The filter is only as thread-safe as the {@link MultiHash} it is constructed
+ * with, which will be used by many threads concurrently. The
+ * {@link BitVector} returned by {@link #getBitVector()} is an immutable
+ * snapshot of the filter, and {@link #clear()} is not atomic with respect to
+ * concurrent additions.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element contained in the filter
+ */
+
+public class ConcurrentBloomFilter<E> extends AbstractBloomFilter<E> {
+
+	// fields
+
+	private final MultiHash<? super E> multiHash;
+	private final int hashCount;
+	private final int capacity;
+	private final AtomicLongArray words;
+	private final ThreadLocal<int[]> hashes = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[hashCount];
+		}
+	};
+
+	// constructors
+
+	/**
+	 * Constructs a {@link ConcurrentBloomFilter} with the specified multi-hash
+	 * and hash count. The capacity of the filter will be determined by the size
+	 * of the hash range.
+	 *
+	 * @param multiHash
+	 *            generates hashes for elements added to the filter
+	 * @param hashCount
+	 *            the number hashes generated for each element
+	 * @throws IllegalArgumentException
+	 *             if the hashCount is less than 1, the multiHash is null, its
+	 *             maximum multiplicity is exceeded by the hashCount or if the
+	 *             hash range is not int bounded
+	 */
+
+	public ConcurrentBloomFilter(MultiHash<? super E> multiHash, int hashCount) {
+		this(null, multiHash, hashCount);
+	}
+
+	/**
+	 * Constructs a {@link ConcurrentBloomFilter} with the specified multi-hash
+	 * and hash count. If a {@link BitVector} is supplied, the filter will have
+	 * its size and will be initialized with a copy of its bits; the supplied
+	 * vector is not retained.
+	 *
+	 * @param bits
+	 *            a {@link BitVector} containing the initial state of the
+	 *            filter, or null
+	 * @param multiHash
+	 *            generates hashes for elements added to the filter
+	 * @param hashCount
+	 *            the number hashes generated for each element
+	 * @throws IllegalArgumentException
+	 *             if the hashCount is less than 1, the multiHash is null, its
+	 *             maximum multiplicity is exceeded by the hashCount or if the
+	 *             hash range is not int bounded
+	 */
+
+	public ConcurrentBloomFilter(BitVector bits, MultiHash<? super E> multiHash, int hashCount) {
+		if (multiHash == null) throw new IllegalArgumentException("null multiHash");
+		if (hashCount < 1) throw new IllegalArgumentException("hashCount not positive");
+		if (multiHash.getMaxMultiplicity() < hashCount) throw new IllegalArgumentException("hashCount exceeds maximum hash multiplicity");
+
+		if (bits != null) {
+			multiHash = Hashes.rangeAdjust(new HashRange(0, bits.size() - 1), multiHash);
+		} else {
+			final HashRange range = multiHash.getRange();
+			if (range == null) throw new IllegalArgumentException("null multiHash range");
+			if (!range.isIntBounded()) throw new IllegalArgumentException("multiHash not int bounded");
+			multiHash = Hashes.rangeAdjust(range.zeroBased(), multiHash);
+		}
+
+		this.multiHash = multiHash;
+		this.hashCount = hashCount;
+		capacity = multiHash.getRange().getSize().intValue();
+		words = new AtomicLongArray((capacity + 63) >> 6);
+		if (bits != null) or(bits);
+	}
+
+	// bloom filter methods
+
+	@Override
+	public boolean mightContain(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes.get());
+		final AtomicLongArray words = this.words;
+		for (int i = 0; i < hashCount; i++) {
+			final int hash = hashes[i];
+			if ((words.get(hash >> 6) & (1L << hash)) == 0L) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean add(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes.get());
+		boolean mutated = false;
+		for (int i = 0; i < hashCount; i++) {
+			if (setBit(hashes[i])) mutated = true;
+		}
+		return mutated;
+	}
+
+	@Override
+	public boolean addAll(E[] elements, int off, int len) {
+		return interleavedAddAll(elements, off, len, hashCount);
+	}
+
+	@Override
+	public BitVector mightContainEach(E[] elements, int off, int len) {
+		return interleavedMightContainEach(elements, off, len, hashCount);
+	}
+
+	@Override
+	public boolean addAll(BloomFilter<? extends E> filter) {
+		checkCompatible(filter);
+		return or(filter.getBitVector());
+	}
+
+	@Override
+	public boolean containsAll(BloomFilter<?> filter) {
+		checkCompatible(filter);
+		final BitVector bits = filter.getBitVector();
+		final AtomicLongArray words = this.words;
+		for (int i = 0, position = 0; position < capacity; i++, position += 64) {
+			final long those = bits.getBits(position, Math.min(64, capacity - position));
+			if ((words.get(i) & those) != those) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		final AtomicLongArray words = this.words;
+		for (int i = 0; i < words.length(); i++) {
+			if (words.get(i) != 0L) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		final AtomicLongArray words = this.words;
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, 0L);
+		}
+	}
+
+	@Override
+	public double getFalsePositiveProbability() {
+		final AtomicLongArray words = this.words;
+		int count = 0;
+		for (int i = 0; i < words.length(); i++) {
+			count += Long.bitCount(words.get(i));
+		}
+		return Math.pow((double) count / capacity, hashCount);
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public MultiHash<? super E> getMultiHash() {
+		return multiHash;
+	}
+
+	/**
+	 * A snapshot of the bits in the filter. Each word of the filter is read
+	 * atomically, but concurrent additions may be only partially reflected in
+	 * the snapshot.
+	 *
+	 * @return an immutable {@link BitVector}
+	 */
+
+	@Override
+	public BitVector getBitVector() {
+		final BitVector bits = new BitVector(capacity);
+		final AtomicLongArray words = this.words;
+		for (int i = 0, position = 0; position < capacity; i++, position += 64) {
+			bits.setBits(position, words.get(i), Math.min(64, capacity - position));
+		}
+		return bits.immutableView();
+	}
+
+	// package scoped methods
+
+	@Override
+	void checkCompatible(BloomFilter<?> that) {
+		super.checkCompatible(that);
+		if (that.getCapacity() != capacity) throw new IllegalArgumentException("Incompatible filter, capacity was " + that.getCapacity() + ", expected " + capacity);
+	}
+
+	@Override
+	boolean isProbeSet(int hash) {
+		return (words.get(hash >> 6) & (1L << hash)) != 0L;
+	}
+
+	@Override
+	boolean setProbe(int hash) {
+		return setBit(hash);
+	}
+
+	// private utility methods
+
+	// true if the bit was not previously set
+	private boolean setBit(int hash) {
+		final AtomicLongArray words = this.words;
+		final int index = hash >> 6;
+		final long mask = 1L << hash;
+		while (true) {
+			final long word = words.get(index);
+			if ((word & mask) != 0L) return false;
+			if (words.compareAndSet(index, word, word | mask)) return true;
+		}
+	}
+
+	private boolean or(BitVector bits) {
+		final AtomicLongArray words = this.words;
+		boolean mutated = false;
+		for (int i = 0, position = 0; position < capacity; i++, position += 64) {
+			final long those = bits.getBits(position, Math.min(64, capacity - position));
+			if (those == 0L) continue;
+			while (true) {
+				final long word = words.get(i);
+				if ((word | those) == word) break;
+				if (words.compareAndSet(i, word, word | those)) {
+					mutated = true;
+					break;
+				}
+			}
+		}
+		return mutated;
+	}
+
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.lattice.Lattice;
+
+/**
+ * <p>
+ * A {@link CompactApproximator} over an arbitrary lattice that may be used by
+ * multiple threads. Values are read without locking; each value is updated
+ * while holding one of a fixed number of striped locks, so that concurrent
+ * puts only contend when they touch values guarded by the same lock.
+ * </p>
+ *
+ * <p>
+ * For lattices of integral values a concurrent
+ * {@link PackedCompactApproximator}, which updates values without locks, will
+ * generally perform better. Lattice values stored by the approximator must
+ * not be mutated.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of key
+ * @param <V>
+ *            the type of value
+ */
+
+public class ConcurrentCompactApproximator<K, V> implements CompactApproximator<K, V> {
+
+	// statics
+
+	/**
+	 * The default number of locks guarding the values.
+	 */
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	// fields
+
+	private final Lattice<V> storeLattice;
+	private final Lattice<V> accessLattice;
+	private final MultiHash<? super K> multiHash;
+	private final int hashCount;
+	private final AtomicReferenceArray<V> values;
+	private final Object[] locks;
+	private final int lockMask;
+	private final ThreadLocal<int[]> hashes;
+	private final ValueList valueList = new ValueList();
+	private CompactBloomFilter bloomFilter = null;
+
+	// constructors
+
+	public ConcurrentCompactApproximator(Lattice<V> lattice, MultiHash<? super K> multiHash, int hashCount) {
+		this(lattice, multiHash, hashCount, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Constructs an empty approximator. The number of values it stores is
+	 * determined by the size of the hash range.
+	 *
+	 * @param lattice
+	 *            a lattice that is bounded below
+	 * @param multiHash
+	 *            generates hashes for keys
+	 * @param hashCount
+	 *            the number hashes generated for each key
+	 * @param stripes
+	 *            the minimum number of locks guarding the values, rounded up
+	 *            to a power of two
+	 */
+
+	public ConcurrentCompactApproximator(Lattice<V> lattice, MultiHash<? super K> multiHash, final int hashCount, int stripes) {
+		if (lattice == null) throw new IllegalArgumentException("null lattice");
+		if (!lattice.isBoundedBelow()) throw new IllegalArgumentException("lattice not bounded below");
+		if (multiHash == null) throw new IllegalArgumentException("null multiHash");
+		if (hashCount < 1) throw new IllegalArgumentException("hashCount not positive");
+		if (multiHash.getMaxMultiplicity() < hashCount) throw new IllegalArgumentException("hashCount exceeds maximum hash multiplicity");
+		if (stripes < 1) throw new IllegalArgumentException("stripes not positive");
+		if (stripes > 1 << 16) throw new IllegalArgumentException("too many stripes");
+		final HashRange range = multiHash.getRange();
+		if (range == null) throw new IllegalArgumentException("null multiHash range");
+		if (!range.isIntBounded()) throw new IllegalArgumentException("multiHash not int bounded");
+		multiHash = Hashes.rangeAdjust(range.zeroBased(), multiHash);
+
+		storeLattice = lattice;
+		accessLattice = lattice;
+		this.multiHash = multiHash;
+		this.hashCount = hashCount;
+		values = new AtomicReferenceArray<V>(multiHash.getRange().getSize().intValue());
+		locks = new Object[stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+		for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+		lockMask = locks.length - 1;
+		hashes = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				return new int[hashCount];
+			}
+		};
+		clear();
+	}
+
+	// a view of another approximator through a bounded lattice
+	private ConcurrentCompactApproximator(ConcurrentCompactApproximator<K, V> that, Lattice<V> accessLattice) {
+		storeLattice = that.storeLattice;
+		this.accessLattice = accessLattice;
+		multiHash = that.multiHash;
+		hashCount = that.hashCount;
+		values = that.values;
+		locks = that.locks;
+		lockMask = that.lockMask;
+		hashes = that.hashes;
+	}
+
+	// methods
+
+	/**
+	 * Joins the values of a compatible approximator into this one, dividing
+	 * the values between a number of threads.
+	 *
+	 * @param that
+	 *            a compatible approximator
+	 * @param threads
+	 *            the number of threads to use, including the calling thread
+	 */
+
+	public void merge(CompactApproximator<K, V> that, int threads) {
+		checkCompatibility(that);
+		if (threads < 1) throw new IllegalArgumentException("threads not positive");
+		final List<V> thatValues = that.getValueList();
+		if (thatValues instanceof RandomAccess) {
+			Chunks.run(values.length(), threads, new Chunks.Task() {
+				@Override
+				void run(int from, int to) {
+					for (int i = from; i < to; i++) {
+						join(i, thatValues.get(i));
+					}
+				}
+			});
+		} else {
+			final Iterator<V> it = thatValues.iterator();
+			for (int i = 0; i < values.length(); i++) {
+				join(i, it.next());
+			}
+		}
+	}
+
+	// compact approximator methods
+
+	@Override
+	public V put(K key, V value) {
+		if (!accessLattice.contains(value)) throw new IllegalArgumentException();
+		final int[] hashes = multiHash.hashAsInts(key, this.hashes.get());
+		V previous = accessLattice.getTop();
+		for (int i = 0; i < hashCount; i++) {
+			previous = storeLattice.meet(previous, join(hashes[i], value));
+		}
+		return previous;
+	}
+
+	@Override
+	public V getSupremum(K key) {
+		final int[] hashes = multiHash.hashAsInts(key, this.hashes.get());
+		V value = accessLattice.getTop();
+		for (int i = 0; i < hashCount; i++) {
+			value = storeLattice.meet(value, values.get(hashes[i]));
+		}
+		return value;
+	}
+
+	@Override
+	public boolean mightContain(K key) {
+		final int[] hashes = multiHash.hashAsInts(key, this.hashes.get());
+		final V bottom = storeLattice.getBottom();
+		for (int i = 0; i < hashCount; i++) {
+			if (storeLattice.equalInLattice(values.get(hashes[i]), bottom)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean mightContainAll(Iterable<? extends K> keys) {
+		for (K key : keys) if (!mightContain(key)) return false;
+		return true;
+	}
+
+	@Override
+	public boolean bounds(CompactApproximator<K, V> that) {
+		checkCompatibility(that);
+		final List<V> thatValues = that.getValueList();
+		final int size = valueList.size();
+		final Iterator<V> it = thatValues instanceof RandomAccess ? null : thatValues.iterator();
+		for (int i = 0; i < size; i++) {
+			final V thatValue = it == null ? thatValues.get(i) : it.next();
+			if (!storeLattice.isOrdered(thatValue, valueList.get(i))) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void merge(CompactApproximator<K, V> that) {
+		merge(that, 1);
+	}
+
+	@Override
+	public CompactApproximator<K, V> boundedAbove(V upperBound) {
+		final Lattice<V> subLattice = accessLattice.boundedAbove(upperBound);
+		return subLattice.equals(accessLattice) ? this : new ConcurrentCompactApproximator<K, V>(this, subLattice);
+	}
+
+	@Override
+	public BloomFilter<K> asBloomFilter() {
+		return bloomFilter == null ? bloomFilter = new CompactBloomFilter() : bloomFilter;
+	}
+
+	@Override
+	public void clear() {
+		final V bottom = storeLattice.getBottom();
+		for (int i = 0; i < values.length(); i++) {
+			synchronized (locks[i & lockMask]) {
+				values.set(i, bottom);
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		final V bottom = storeLattice.getBottom();
+		for (int i = 0; i < values.length(); i++) {
+			if (!storeLattice.equalInLattice(values.get(i), bottom)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Lattice<V> getLattice() {
+		return accessLattice;
+	}
+
+	@Override
+	public int getCapacity() {
+		return values.length();
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public MultiHash<? super K> getMultiHash() {
+		return multiHash;
+	}
+
+	@Override
+	public List<V> getValueList() {
+		return valueList;
+	}
+
+	// object methods
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof CompactApproximator<?, ?>)) return false;
+		CompactApproximator<?, ?> that = (CompactApproximator<?, ?>) obj;
+		if (this.getHashCount() != that.getHashCount()) return false;
+		if (!this.getMultiHash().equals(that.getMultiHash())) return false;
+		if (!this.getLattice().equals(that.getLattice())) return false;
+		if (!this.getValueList().equals(that.getValueList())) return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return getValueList().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getValueList().toString();
+	}
+
+	// private utility methods
+
+	// joins a value into the indexed value, returning its previous value
+	private V join(int index, V value) {
+		synchronized (locks[index & lockMask]) {
+			final V v = values.get(index);
+			values.set(index, storeLattice.join(value, v));
+			return v;
+		}
+	}
+
+	private void checkCompatibility(CompactApproximator<K, V> that) {
+		if (that == null) throw new IllegalArgumentException("null approximator");
+		if (this.hashCount != that.getHashCount()) throw new IllegalArgumentException("Incompatible compact approximator, hashCount was " + that.getHashCount() +", expected " + hashCount);
+		if (!this.multiHash.equals(that.getMultiHash())) throw new IllegalArgumentException("Incompatible compact approximator, multiHashes were not equal.");
+		if (!this.accessLattice.equals(that.getLattice())) throw new IllegalArgumentException("Incompatible compact approximator, lattices were not equal.");
+	}
+
+	// inner classes
+
+	private final class ValueList extends AbstractList<V> implements RandomAccess {
+
+		@Override
+		public V get(int index) {
+			if (index < 0 || index >= values.length()) throw new IndexOutOfBoundsException();
+			final V value = values.get(index);
+			return storeLattice == accessLattice ? value : storeLattice.meet(accessLattice.getTop(), value);
+		}
+
+		@Override
+		public int size() {
+			return values.length();
+		}
+
+	}
+
+	private final class CompactBloomFilter extends AbstractBloomFilter<K> {
+
+		final V top = accessLattice.getTop();
+
+		@Override
+		public boolean add(K key) {
+			return !accessLattice.equalInLattice(top, put(key, top));
+		}
+
+		@Override
+		public boolean mightContain(K key) {
+			return accessLattice.equalInLattice(top, getSupremum(key));
+		}
+
+		@Override
+		public boolean addAll(BloomFilter<? extends K> filter) {
+			checkCompatible(filter);
+			final BitVector bits = filter.getBitVector();
+			boolean mutated = false;
+			for (int i = bits.firstOne(); i >= 0; i = bits.nextOne(i + 1)) {
+				if (!storeLattice.isOrdered(top, join(i, top))) mutated = true;
+			}
+			return mutated;
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentCompactApproximator.this.clear();
+		}
+
+		@Override
+		public BitVector getBitVector() {
+			final int capacity = values.length();
+			final BitVector bits = new BitVector(capacity);
+			for (int i = 0; i < capacity; i++) {
+				if (storeLattice.isOrdered(top, values.get(i))) bits.setBit(i, true);
+			}
+			return bits.immutableView();
+		}
+
+		@Override
+		public int getCapacity() {
+			return values.length();
+		}
+
+		@Override
+		public int getHashCount() {
+			return hashCount;
+		}
+
+		@Override
+		public MultiHash<? super K> getMultiHash() {
+			return multiHash;
+		}
+
+	}
+
+}
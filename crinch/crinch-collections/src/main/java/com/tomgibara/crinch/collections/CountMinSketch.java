@@ -0,0 +1,375 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+
+/**
+ * <p>
+ * A count-min sketch that estimates the number of times each element has been
+ * added to it, in a fixed amount of memory. Estimates never fall below the
+ * true count. The sketch consists of a number of rows of counters, one for
+ * each hash value generated by the {@link MultiHash}; the width of each row is
+ * determined by the size of the hash range.
+ * </p>
+ *
+ * <p>
+ * With a width of <code>ceil(e / epsilon)</code> and a depth of
+ * <code>ceil(ln(1 / delta))</code> an estimate exceeds the true count by more
+ * than <code>epsilon</code> times the total count with a probability of at
+ * most <code>delta</code>. Counters are updated conservatively: only those
+ * counters that would otherwise fall below the new estimate are increased,
+ * which substantially reduces overestimation.
+ * </p>
+ *
+ * <p>
+ * Compatible sketches (those with the same depth and equal multi-hashes) may
+ * be merged. Since counters are updated conservatively, the merged estimates
+ * may exceed those obtained by adding every element to a single sketch, but
+ * they remain upper bounds on the true counts.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element counted by the sketch
+ */
+
+public class CountMinSketch<E> implements Cloneable {
+
+	// statics
+
+	/**
+	 * The width of sketch required for a specified error bound.
+	 *
+	 * @param epsilon
+	 *            the maximum overestimate, as a fraction of the total count
+	 * @return the required number of counters in each row
+	 */
+
+	public static int widthFor(double epsilon) {
+		if (!(epsilon > 0.0)) throw new IllegalArgumentException("epsilon not positive");
+		final double width = Math.ceil(Math.E / epsilon);
+		if (width > Integer.MAX_VALUE) throw new IllegalArgumentException("epsilon too small");
+		return (int) width;
+	}
+
+	/**
+	 * The depth of sketch required for a specified confidence.
+	 *
+	 * @param delta
+	 *            the probability with which the error bound may be exceeded
+	 * @return the required number of rows
+	 */
+
+	public static int depthFor(double delta) {
+		if (!(delta > 0.0) || delta >= 1.0) throw new IllegalArgumentException("delta not between 0 and 1 exclusive");
+		return Math.max(1, (int) Math.ceil(Math.log(1.0 / delta)));
+	}
+
+	/**
+	 * Reads a sketch previously written with {@link #write(BitWriter)}.
+	 *
+	 * @param reader
+	 *            the reader from which the sketch is read
+	 * @param multiHash
+	 *            a multi-hash equal to that used by the sketch that was written
+	 * @return the sketch
+	 */
+
+	public static <E> CountMinSketch<E> read(BitReader reader, MultiHash<? super E> multiHash) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		final int depth = reader.read(32);
+		final int width = reader.read(32);
+		final CountMinSketch<E> sketch = new CountMinSketch<E>(multiHash, depth);
+		if (sketch.width != width) throw new IllegalArgumentException("multiHash range does not match width");
+		sketch.totalCount = reader.readLong(64);
+		final int bits = reader.read(7);
+		final long[] counters = sketch.counters;
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = bits == 0 ? 0L : reader.readLong(bits);
+		}
+		return sketch;
+	}
+
+	// fields
+
+	private final MultiHash<? super E> multiHash;
+	private final int depth;
+	private final int width;
+	private final int[] hashes;
+	// row-major
+	private final long[] counters;
+	private long totalCount = 0L;
+
+	// constructors
+
+	/**
+	 * Constructs a sketch with the specified multi-hash and depth. The width
+	 * of the sketch will be determined by the size of the hash range.
+	 *
+	 * @param multiHash
+	 *            generates hashes for elements added to the sketch
+	 * @param depth
+	 *            the number of rows in the sketch
+	 * @throws IllegalArgumentException
+	 *             if the depth is less than 1, the multiHash is null, its
+	 *             maximum multiplicity is exceeded by the depth or if the
+	 *             sketch would be too large
+	 */
+
+	public CountMinSketch(MultiHash<? super E> multiHash, int depth) {
+		if (multiHash == null) throw new IllegalArgumentException("null multiHash");
+		if (depth < 1) throw new IllegalArgumentException("depth not positive");
+		if (multiHash.getMaxMultiplicity() < depth) throw new IllegalArgumentException("depth exceeds maximum hash multiplicity");
+		final HashRange range = multiHash.getRange();
+		if (range == null) throw new IllegalArgumentException("null multiHash range");
+		if (!range.isIntBounded()) throw new IllegalArgumentException("multiHash not int bounded");
+		multiHash = Hashes.rangeAdjust(range.zeroBased(), multiHash);
+		final long size = (long) depth * multiHash.getRange().getSize().longValue();
+		if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("sketch too large");
+
+		this.multiHash = multiHash;
+		this.depth = depth;
+		width = multiHash.getRange().getSize().intValue();
+		hashes = new int[depth];
+		counters = new long[(int) size];
+	}
+
+	private CountMinSketch(CountMinSketch<E> that) {
+		multiHash = that.multiHash;
+		depth = that.depth;
+		width = that.width;
+		hashes = new int[depth];
+		counters = that.counters.clone();
+		totalCount = that.totalCount;
+	}
+
+	// accessors
+
+	public MultiHash<? super E> getMultiHash() {
+		return multiHash;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * The sum of all counts added to the sketch.
+	 *
+	 * @return the total count
+	 */
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	// methods
+
+	/**
+	 * Counts a single occurrence of an element.
+	 *
+	 * @param element
+	 *            the element to count
+	 * @return the new estimated count for the element
+	 */
+
+	public long add(E element) {
+		return add(element, 1L);
+	}
+
+	/**
+	 * Counts a number of occurrences of an element.
+	 *
+	 * @param element
+	 *            the element to count
+	 * @param count
+	 *            the number of occurrences, not negative
+	 * @return the new estimated count for the element
+	 */
+
+	public long add(E element, long count) {
+		if (count < 0L) throw new IllegalArgumentException("negative count");
+		return add(multiHash.hashAsInts(element, this.hashes), count);
+	}
+
+	/**
+	 * Counts a number of occurrences of an element that has already been
+	 * hashed by the sketch's multi-hash. This allows elements, such as
+	 * primitive values, to be counted without first being boxed.
+	 *
+	 * @param hashes
+	 *            at least {@link #getDepth()} hash values for the element, as
+	 *            generated by {@link #getMultiHash()}
+	 * @param count
+	 *            the number of occurrences, not negative
+	 * @return the new estimated count for the element
+	 */
+
+	public long addHashes(int[] hashes, long count) {
+		if (hashes == null) throw new IllegalArgumentException("null hashes");
+		if (hashes.length < depth) throw new IllegalArgumentException("fewer hashes than depth");
+		if (count < 0L) throw new IllegalArgumentException("negative count");
+		return add(hashes, count);
+	}
+
+	private long add(int[] hashes, long count) {
+		if (totalCount + count < 0L) throw new IllegalStateException("count overflow");
+		final long[] counters = this.counters;
+		long min = Long.MAX_VALUE;
+		for (int i = 0, offset = 0; i < depth; i++, offset += width) {
+			min = Math.min(min, counters[offset + hashes[i]]);
+		}
+		final long estimate = min + count;
+		if (estimate < 0L) throw new IllegalStateException("count overflow");
+		for (int i = 0, offset = 0; i < depth; i++, offset += width) {
+			final int index = offset + hashes[i];
+			if (counters[index] < estimate) counters[index] = estimate;
+		}
+		totalCount += count;
+		return estimate;
+	}
+
+	/**
+	 * An estimate of the number of times an element has been added to the
+	 * sketch.
+	 *
+	 * @param element
+	 *            any element
+	 * @return an estimated count that is never less than the true count
+	 */
+
+	public long estimate(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes);
+		final long[] counters = this.counters;
+		long min = Long.MAX_VALUE;
+		for (int i = 0, offset = 0; i < depth; i++, offset += width) {
+			min = Math.min(min, counters[offset + hashes[i]]);
+		}
+		return min;
+	}
+
+	/**
+	 * Adds the counts recorded by a compatible sketch to this sketch.
+	 *
+	 * @param sketch
+	 *            a sketch with the same depth and an equal multi-hash
+	 * @throws IllegalStateException
+	 *             if the merged counts would overflow, in which case this
+	 *             sketch is left unchanged
+	 */
+
+	public void merge(CountMinSketch<? extends E> sketch) {
+		checkCompatible(sketch);
+		// no counter exceeds the total count, so this guards every counter
+		if (totalCount + sketch.totalCount < 0L) throw new IllegalStateException("count overflow");
+		final long[] these = this.counters;
+		final long[] those = sketch.counters;
+		for (int i = 0; i < these.length; i++) {
+			these[i] += those[i];
+		}
+		totalCount += sketch.totalCount;
+	}
+
+	public boolean isEmpty() {
+		return totalCount == 0L;
+	}
+
+	public void clear() {
+		Arrays.fill(counters, 0L);
+		totalCount = 0L;
+	}
+
+	/**
+	 * Writes the state of the sketch. The multi-hash is not recorded and must
+	 * be supplied when the sketch is read.
+	 *
+	 * @param writer
+	 *            the writer to which the sketch is written
+	 * @return the number of bits written
+	 */
+
+	public int write(BitWriter writer) {
+		if (writer == null) throw new IllegalArgumentException("null writer");
+		final long[] counters = this.counters;
+		long max = 0L;
+		for (int i = 0; i < counters.length; i++) {
+			max = Math.max(max, counters[i]);
+		}
+		// counters are written with just enough bits for the largest
+		final int bits = 64 - Long.numberOfLeadingZeros(max);
+		int c = writer.write(depth, 32);
+		c += writer.write(width, 32);
+		c += writer.write(totalCount, 64);
+		c += writer.write(bits, 7);
+		if (bits > 0) {
+			for (int i = 0; i < counters.length; i++) {
+				c += writer.write(counters[i], bits);
+			}
+		}
+		return c;
+	}
+
+	// object methods
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof CountMinSketch<?>)) return false;
+		final CountMinSketch<?> that = (CountMinSketch<?>) obj;
+		if (this.depth != that.depth) return false;
+		if (this.totalCount != that.totalCount) return false;
+		if (!this.multiHash.equals(that.multiHash)) return false;
+		if (!Arrays.equals(this.counters, that.counters)) return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(counters);
+	}
+
+	@Override
+	public String toString() {
+		return "CountMinSketch depth: " + depth + ", width: " + width + ", total count: " + totalCount;
+	}
+
+	@Override
+	public CountMinSketch<E> clone() {
+		return new CountMinSketch<E>(this);
+	}
+
+	// private utility methods
+
+	private void checkCompatible(CountMinSketch<?> that) {
+		if (that == null) throw new IllegalArgumentException("null sketch");
+		if (this.depth != that.depth) throw new IllegalArgumentException("Incompatible sketch, depth was " + that.depth + ", expected " + this.depth);
+		if (!this.multiHash.equals(that.multiHash)) throw new IllegalArgumentException("Incompatible sketch, multiHashes were not equal");
+	}
+
+}
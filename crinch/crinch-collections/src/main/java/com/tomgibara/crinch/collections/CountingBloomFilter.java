@@ -0,0 +1,299 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+
+/**
+ * <p>
+ * A {@link BloomFilter} that maintains a small counter in place of each bit so
+ * that elements can be removed as well as added. Counters occupy four bits
+ * each, sixteen to a long. A counter that reaches {@link #MAX_COUNT} saturates:
+ * it is never decremented again, since the number of elements it counts is no
+ * longer known.
+ * </p>
+ *
+ * <p>
+ * The filter interoperates with other compatible filters through its
+ * {@link #getBitVector()}, which is an immutable snapshot in which a bit is set
+ * for every non-zero counter. Only elements that were added may be removed;
+ * removing an element that was never added may cause false negatives.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element contained in the filter
+ */
+
+public class CountingBloomFilter<E> extends AbstractBloomFilter<E> implements Cloneable {
+
+	// statics
+
+	/**
+	 * The value at which counters saturate.
+	 */
+
+	public static final int MAX_COUNT = 15;
+
+	// fields
+
+	private final MultiHash<? super E> multiHash;
+	private final int hashCount;
+	private final int capacity;
+	private final int[] hashes;
+	// sixteen 4 bit counters per long
+	private final long[] counters;
+
+	// constructors
+
+	/**
+	 * Constructs a {@link CountingBloomFilter} with the specified multi-hash
+	 * and hash count. The number of counters in the filter will be determined
+	 * by the size of the hash range.
+	 *
+	 * @param multiHash
+	 *            generates hashes for elements added to the filter
+	 * @param hashCount
+	 *            the number hashes generated for each element
+	 * @throws IllegalArgumentException
+	 *             if the hashCount is less than 1, the multiHash is null, its
+	 *             maximum multiplicity is exceeded by the hashCount or if the
+	 *             hash range is not int bounded
+	 */
+
+	public CountingBloomFilter(MultiHash<? super E> multiHash, int hashCount) {
+		if (multiHash == null) throw new IllegalArgumentException("null multiHash");
+		if (hashCount < 1) throw new IllegalArgumentException("hashCount not positive");
+		if (multiHash.getMaxMultiplicity() < hashCount) throw new IllegalArgumentException("hashCount exceeds maximum hash multiplicity");
+		final HashRange range = multiHash.getRange();
+		if (range == null) throw new IllegalArgumentException("null multiHash range");
+		if (!range.isIntBounded()) throw new IllegalArgumentException("multiHash not int bounded");
+		multiHash = Hashes.rangeAdjust(range.zeroBased(), multiHash);
+
+		this.multiHash = multiHash;
+		this.hashCount = hashCount;
+		capacity = multiHash.getRange().getSize().intValue();
+		hashes = new int[hashCount];
+		counters = new long[(capacity + 15) >> 4];
+	}
+
+	private CountingBloomFilter(CountingBloomFilter<E> that) {
+		multiHash = that.multiHash;
+		hashCount = that.hashCount;
+		capacity = that.capacity;
+		hashes = new int[hashCount];
+		counters = that.counters.clone();
+	}
+
+	// methods
+
+	/**
+	 * Removes an element from the filter by decrementing its counters. The
+	 * element should previously have been added to the filter.
+	 *
+	 * @param element
+	 *            the element to remove
+	 * @return true if the element might have been in the filter and its
+	 *         counters were decremented, false if it was certainly not in the
+	 *         filter
+	 */
+
+	public boolean remove(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes);
+		for (int i = 0; i < hashCount; i++) {
+			if (count(hashes[i]) == 0) return false;
+		}
+		for (int i = 0; i < hashCount; i++) {
+			final int hash = hashes[i];
+			// a counter may be shared between several hashes of the element
+			final int count = count(hash);
+			if (count > 0 && count < MAX_COUNT) counters[hash >> 4] -= 1L << ((hash & 15) << 2);
+		}
+		return true;
+	}
+
+	/**
+	 * An upper bound on the number of times an element has been added to the
+	 * filter, less the number of times it has been removed. This is never less
+	 * than the true value, unless elements have been removed that were never
+	 * added.
+	 *
+	 * @param element
+	 *            any element
+	 * @return the smallest counter for the element, never more than
+	 *         {@link #MAX_COUNT}
+	 */
+
+	public int getCount(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes);
+		int min = MAX_COUNT;
+		for (int i = 0; i < hashCount && min > 0; i++) {
+			min = Math.min(min, count(hashes[i]));
+		}
+		return min;
+	}
+
+	// bloom filter methods
+
+	@Override
+	public boolean add(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes);
+		boolean mutated = false;
+		for (int i = 0; i < hashCount; i++) {
+			final int hash = hashes[i];
+			if (count(hash) < MAX_COUNT) {
+				counters[hash >> 4] += 1L << ((hash & 15) << 2);
+				mutated = true;
+			}
+		}
+		return mutated;
+	}
+
+	@Override
+	public boolean mightContain(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes);
+		for (int i = 0; i < hashCount; i++) {
+			if (count(hashes[i]) == 0) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public BitVector mightContainEach(E[] elements, int off, int len) {
+		return interleavedMightContainEach(elements, off, len, hashCount);
+	}
+
+	/**
+	 * Adds the elements of a compatible filter. The counters of another
+	 * {@link CountingBloomFilter} are summed, saturating as necessary. Since
+	 * the bits of any other type of filter do not record how many elements
+	 * set them, every counter for a set bit is saturated so that removals can
+	 * never produce false negatives for the added elements.
+	 */
+
+	@Override
+	public boolean addAll(BloomFilter<? extends E> filter) {
+		checkCompatible(filter);
+		boolean mutated = false;
+		if (filter instanceof CountingBloomFilter<?>) {
+			final CountingBloomFilter<?> that = (CountingBloomFilter<?>) filter;
+			for (int i = 0; i < capacity; i++) {
+				final int add = that.count(i);
+				if (add == 0) continue;
+				final int count = count(i);
+				if (count == MAX_COUNT) continue;
+				setCount(i, Math.min(MAX_COUNT, count + add));
+				mutated = true;
+			}
+		} else {
+			final BitVector bits = filter.getBitVector();
+			for (int i = 0; i < capacity; i++) {
+				if (bits.getBit(i) && count(i) != MAX_COUNT) {
+					setCount(i, MAX_COUNT);
+					mutated = true;
+				}
+			}
+		}
+		return mutated;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		final long[] counters = this.counters;
+		for (int i = 0; i < counters.length; i++) {
+			if (counters[i] != 0L) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(counters, 0L);
+	}
+
+	@Override
+	public double getFalsePositiveProbability() {
+		int count = 0;
+		for (int i = 0; i < capacity; i++) {
+			if (count(i) != 0) count++;
+		}
+		return Math.pow((double) count / capacity, hashCount);
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public MultiHash<? super E> getMultiHash() {
+		return multiHash;
+	}
+
+	@Override
+	public BitVector getBitVector() {
+		final BitVector bits = new BitVector(capacity);
+		for (int i = 0; i < capacity; i++) {
+			if (count(i) != 0) bits.setBit(i, true);
+		}
+		return bits.immutableView();
+	}
+
+	// object methods
+
+	@Override
+	public CountingBloomFilter<E> clone() {
+		return new CountingBloomFilter<E>(this);
+	}
+
+	// package scoped methods
+
+	@Override
+	void checkCompatible(BloomFilter<?> that) {
+		super.checkCompatible(that);
+		if (that.getCapacity() != capacity) throw new IllegalArgumentException("Incompatible filter, capacity was " + that.getCapacity() + ", expected " + capacity);
+	}
+
+	@Override
+	boolean isProbeSet(int hash) {
+		return count(hash) != 0;
+	}
+
+	// private utility methods
+
+	private int count(int index) {
+		return (int) (counters[index >> 4] >>> ((index & 15) << 2)) & 15;
+	}
+
+	private void setCount(int index, int count) {
+		final int shift = (index & 15) << 2;
+		final int i = index >> 4;
+		counters[i] = counters[i] & ~(15L << shift) | ((long) count << shift);
+	}
+
+}
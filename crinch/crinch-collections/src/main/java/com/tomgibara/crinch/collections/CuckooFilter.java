@@ -0,0 +1,350 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.HashRange;
+
+// See Fan, Andersen, Kaminsky & Mitzenmacher, "Cuckoo Filter: Practically Better Than Bloom"
+
+/**
+ * <p>
+ * An approximate set membership structure that, like a {@link BloomFilter},
+ * may report false positives but never false negatives, and which also
+ * supports the removal of elements. It stores a short fingerprint of each
+ * element in one of two candidate buckets; each bucket holds four fingerprints
+ * packed into a single long. For false positive probabilities below a few
+ * percent it is more compact than a Bloom filter and a lookup examines at
+ * most two words of memory.
+ * </p>
+ *
+ * <p>
+ * Elements are hashed once to 64 bits: the high bits choose the first bucket
+ * and the low bits supply the fingerprint. The second bucket is derived from
+ * the first and the fingerprint alone (partial-key cuckoo hashing) so that
+ * fingerprints can be relocated without the original element. An element may
+ * be added more than once, and should only be removed as many times as it
+ * was added.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element contained in the filter
+ */
+
+public class CuckooFilter<E> {
+
+	// statics
+
+	public static final int MIN_FINGERPRINT_BITS = 8;
+	public static final int MAX_FINGERPRINT_BITS = 16;
+
+	/**
+	 * The number of fingerprints in each bucket.
+	 */
+
+	public static final int BUCKET_SIZE = 4;
+
+	private static final int MAX_BUCKET_COUNT = 1 << 30;
+	private static final int MAX_KICKS = 500;
+	// the largest load at which insertions reliably succeed
+	private static final double MAX_LOAD = 0.95;
+
+	/**
+	 * The number of fingerprint bits needed for the false positive
+	 * probability of a full filter to be no more than that specified.
+	 *
+	 * @param falsePositiveProbability
+	 *            the largest acceptable false positive probability
+	 * @return the number of bits per fingerprint
+	 * @throws IllegalArgumentException
+	 *             if the probability would require more than
+	 *             {@link #MAX_FINGERPRINT_BITS}
+	 */
+
+	public static int fingerprintBitsFor(double falsePositiveProbability) {
+		if (!(falsePositiveProbability > 0.0) || falsePositiveProbability >= 1.0) throw new IllegalArgumentException("falsePositiveProbability not between 0 and 1 exclusive");
+		// a lookup compares against at most 2 * BUCKET_SIZE fingerprints
+		final int bits = (int) Math.ceil(Math.log(2 * BUCKET_SIZE / falsePositiveProbability) / Math.log(2.0));
+		if (bits > MAX_FINGERPRINT_BITS) throw new IllegalArgumentException("falsePositiveProbability too small");
+		return Math.max(MIN_FINGERPRINT_BITS, bits);
+	}
+
+	/**
+	 * The number of buckets needed to accommodate a number of elements.
+	 *
+	 * @param elementCount
+	 *            the number of elements the filter should hold
+	 * @return a power of two
+	 */
+
+	public static int bucketCountFor(long elementCount) {
+		if (elementCount < 0L) throw new IllegalArgumentException("negative elementCount");
+		final double buckets = Math.ceil(elementCount / (BUCKET_SIZE * MAX_LOAD));
+		if (buckets > MAX_BUCKET_COUNT) throw new IllegalArgumentException("elementCount too large");
+		return bucketCount((int) buckets);
+	}
+
+	private static int bucketCount(int buckets) {
+		return buckets <= 1 ? 1 : Integer.highestOneBit(buckets - 1) << 1;
+	}
+
+	// fields
+
+	private final Hash<? super E> hash;
+	private final int fingerprintBits;
+	private final int fingerprintMask;
+	private final int bucketMask;
+	// one bucket per long, an empty slot is zero
+	private final long[] buckets;
+	private int size = 0;
+	// the fingerprint displaced by a failed insertion, if any
+	private int victimFingerprint = 0;
+	private int victimBucket;
+	// state for choosing which fingerprint to evict
+	private int seed = 0x2545f491;
+
+	// constructors
+
+	/**
+	 * Constructs an empty filter.
+	 *
+	 * @param hash
+	 *            a hash over the full range of long values
+	 * @param bucketCount
+	 *            the minimum number of buckets, rounded up to a power of two
+	 * @param fingerprintBits
+	 *            the number of bits stored for each element
+	 */
+
+	public CuckooFilter(Hash<? super E> hash, int bucketCount, int fingerprintBits) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (!HashRange.FULL_LONG_RANGE.equals(hash.getRange())) throw new IllegalArgumentException("hash does not have full long range");
+		if (bucketCount < 1) throw new IllegalArgumentException("bucketCount not positive");
+		if (bucketCount > MAX_BUCKET_COUNT) throw new IllegalArgumentException("bucketCount too large");
+		if (fingerprintBits < MIN_FINGERPRINT_BITS || fingerprintBits > MAX_FINGERPRINT_BITS) throw new IllegalArgumentException("invalid fingerprintBits");
+		this.hash = hash;
+		this.fingerprintBits = fingerprintBits;
+		fingerprintMask = (1 << fingerprintBits) - 1;
+		buckets = new long[bucketCount(bucketCount)];
+		bucketMask = buckets.length - 1;
+	}
+
+	// accessors
+
+	public int getBucketCount() {
+		return buckets.length;
+	}
+
+	public int getFingerprintBits() {
+		return fingerprintBits;
+	}
+
+	/**
+	 * The number of fingerprints that the filter can hold.
+	 *
+	 * @return the number of slots in the filter
+	 */
+
+	public long getCapacity() {
+		return (long) buckets.length * BUCKET_SIZE;
+	}
+
+	/**
+	 * The number of elements added to the filter and not removed.
+	 *
+	 * @return the number of fingerprints stored
+	 */
+
+	public int size() {
+		return size;
+	}
+
+	public double getLoadFactor() {
+		return (double) size / getCapacity();
+	}
+
+	// methods
+
+	public boolean mightContain(E element) {
+		final long h = hash.hashAsLong(element);
+		final int fingerprint = fingerprint(h);
+		final int i1 = index(h);
+		final int i2 = alternate(i1, fingerprint);
+		if (victimFingerprint == fingerprint && (victimBucket == i1 || victimBucket == i2)) return true;
+		return slot(buckets[i1], fingerprint) >= 0 || slot(buckets[i2], fingerprint) >= 0;
+	}
+
+	/**
+	 * Adds an element to the filter. Adding can fail only when the filter is
+	 * nearly full, in which case the filter is unchanged.
+	 *
+	 * @param element
+	 *            the element to add
+	 * @return true if the element was added, false if the filter was too full
+	 *         to accommodate it
+	 */
+
+	public boolean add(E element) {
+		if (victimFingerprint != 0) {
+			// space may have been freed since the victim was displaced
+			final int fingerprint = victimFingerprint;
+			victimFingerprint = 0;
+			if (!place(victimBucket, fingerprint)) return false;
+		}
+		final long h = hash.hashAsLong(element);
+		size++;
+		// a displaced fingerprint is retained, so the element is never lost
+		place(index(h), fingerprint(h));
+		return true;
+	}
+
+	/**
+	 * Removes an element that was previously added to the filter.
+	 *
+	 * @param element
+	 *            the element to remove
+	 * @return true if a matching fingerprint was removed, false if the element
+	 *         was certainly not in the filter
+	 */
+
+	public boolean remove(E element) {
+		final long h = hash.hashAsLong(element);
+		final int fingerprint = fingerprint(h);
+		final int i1 = index(h);
+		final int i2 = alternate(i1, fingerprint);
+		if (victimFingerprint == fingerprint && (victimBucket == i1 || victimBucket == i2)) {
+			victimFingerprint = 0;
+			size--;
+			return true;
+		}
+		if (!delete(i1, fingerprint) && !delete(i2, fingerprint)) return false;
+		size--;
+		if (victimFingerprint != 0) {
+			// space has been freed, so try to rehome the victim
+			final int fp = victimFingerprint;
+			final int index = victimBucket;
+			victimFingerprint = 0;
+			if (!insert(index, fp) && !insert(alternate(index, fp), fp)) victimFingerprint = fp;
+		}
+		return true;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(buckets, 0L);
+		size = 0;
+		victimFingerprint = 0;
+	}
+
+	/**
+	 * An estimate of the probability that {@link #mightContain(Object)} will
+	 * return true for an element that was not added, based on the current
+	 * load of the filter.
+	 *
+	 * @return a probability between 0 and 1 inclusive
+	 */
+
+	public double getFalsePositiveProbability() {
+		// each lookup compares against the fingerprints in two buckets
+		final double comparisons = 2.0 * BUCKET_SIZE * getLoadFactor();
+		return 1.0 - Math.pow(1.0 - 1.0 / fingerprintMask, comparisons);
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "CuckooFilter buckets: " + buckets.length + ", fingerprint bits: " + fingerprintBits + ", size: " + size;
+	}
+
+	// private utility methods
+
+	private int index(long h) {
+		return (int) (h >>> 32) & bucketMask;
+	}
+
+	// fingerprints are never zero, since zero marks an empty slot
+	private int fingerprint(long h) {
+		final int fingerprint = (int) h & fingerprintMask;
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+
+	private int alternate(int index, int fingerprint) {
+		return (index ^ (fingerprint * 0x5bd1e995)) & bucketMask;
+	}
+
+	// the index of the slot holding the fingerprint, or -1
+	private int slot(long bucket, int fingerprint) {
+		for (int i = 0; i < BUCKET_SIZE; i++) {
+			if (((int) bucket & fingerprintMask) == fingerprint) return i;
+			bucket >>>= fingerprintBits;
+		}
+		return -1;
+	}
+
+	// places a fingerprint in one of its buckets, or else records a victim
+	private boolean place(int index, int fingerprint) {
+		if (insert(index, fingerprint)) return true;
+		index = alternate(index, fingerprint);
+		if (insert(index, fingerprint)) return true;
+		for (int kick = 0; kick < MAX_KICKS; kick++) {
+			// swap the fingerprint with one chosen at random from the bucket
+			final int shift = nextSlot() * fingerprintBits;
+			final long bucket = buckets[index];
+			final int evicted = (int) (bucket >>> shift) & fingerprintMask;
+			buckets[index] = bucket & ~((long) fingerprintMask << shift) | ((long) fingerprint << shift);
+			fingerprint = evicted;
+			index = alternate(index, fingerprint);
+			if (insert(index, fingerprint)) return true;
+		}
+		victimFingerprint = fingerprint;
+		victimBucket = index;
+		return false;
+	}
+
+	private boolean insert(int index, int fingerprint) {
+		final int slot = slot(buckets[index], 0);
+		if (slot < 0) return false;
+		buckets[index] |= (long) fingerprint << (slot * fingerprintBits);
+		return true;
+	}
+
+	private boolean delete(int index, int fingerprint) {
+		final int slot = slot(buckets[index], fingerprint);
+		if (slot < 0) return false;
+		buckets[index] &= ~((long) fingerprintMask << (slot * fingerprintBits));
+		return true;
+	}
+
+	private int nextSlot() {
+		// xorshift
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		return x & (BUCKET_SIZE - 1);
+	}
+
+}
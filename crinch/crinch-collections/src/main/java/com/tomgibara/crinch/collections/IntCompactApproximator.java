@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import com.tomgibara.crinch.hashing.MultiHash;
+
+/**
+ * <p>
+ * A {@link PackedCompactApproximator} with int values of up to 32 bits.
+ * The primitive methods {@link #putInt(Object, int)} and
+ * {@link #getSupremumAsInt(Object)} avoid boxing values. Values are treated
+ * as unsigned.
+ * </p>
+ *
+ * <p>
+ * For example, an approximator over the
+ * {@link PackedCompactApproximator.Operation#MAX} operation records, for
+ * each key, an upper bound on the largest value that has been put for it.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of key
+ */
+
+public class IntCompactApproximator<K> extends PackedCompactApproximator<K, Integer> {
+
+	// constructors
+
+	/**
+	 * Constructs an empty approximator. The number of values it stores is
+	 * determined by the size of the hash range.
+	 *
+	 * @param operation
+	 *            the operation that determines the lattice of values
+	 * @param bitWidth
+	 *            the number of bits stored for each value, at most 32
+	 * @param multiHash
+	 *            generates hashes for keys
+	 * @param hashCount
+	 *            the number hashes generated for each key
+	 */
+
+	public IntCompactApproximator(Operation operation, int bitWidth, MultiHash<? super K> multiHash, int hashCount) {
+		this(operation, bitWidth, multiHash, hashCount, false);
+	}
+
+	/**
+	 * Constructs an empty approximator that may optionally be used by
+	 * multiple threads.
+	 *
+	 * @param operation
+	 *            the operation that determines the lattice of values
+	 * @param bitWidth
+	 *            the number of bits stored for each value, at most 32
+	 * @param multiHash
+	 *            generates hashes for keys
+	 * @param hashCount
+	 *            the number hashes generated for each key
+	 * @param concurrent
+	 *            whether values should be updated atomically
+	 */
+
+	public IntCompactApproximator(Operation operation, int bitWidth, MultiHash<? super K> multiHash, int hashCount, boolean concurrent) {
+		super(operation, bitWidth, 32, multiHash, hashCount, concurrent);
+	}
+
+	private IntCompactApproximator(IntCompactApproximator<K> that, long top) {
+		super(that, top);
+	}
+
+	// methods
+
+	/**
+	 * Joins a value with those previously put for a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            a value in the lattice
+	 * @return the supremum for the key before the value was put
+	 */
+
+	public int putInt(K key, int value) {
+		return (int) putValue(key, value & 0xffffffffL);
+	}
+
+	/**
+	 * The supremum of the values put for a key; equivalent to
+	 * {@link #getSupremum(Object)} without boxing.
+	 *
+	 * @param key
+	 *            the key
+	 * @return a value that is no less than any value put for the key
+	 */
+
+	public int getSupremumAsInt(K key) {
+		return (int) supremum(key);
+	}
+
+	// package scoped methods
+
+	@Override
+	Integer box(long value) {
+		return (int) value;
+	}
+
+	@Override
+	long unbox(Integer value) {
+		return value.intValue() & 0xffffffffL;
+	}
+
+	@Override
+	IntCompactApproximator<K> newBounded(long top) {
+		return new IntCompactApproximator<K>(this, top);
+	}
+
+}
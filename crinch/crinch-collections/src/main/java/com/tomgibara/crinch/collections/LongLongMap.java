@@ -0,0 +1,300 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A map from long keys to long values that stores its entries in an open
+ * addressing hash table without boxing them. Collisions are resolved by linear
+ * probing and removals shift subsequent entries back so that no tombstones
+ * accumulate.
+ * </p>
+ *
+ * <p>
+ * Since values are primitive, a fixed value, zero unless otherwise specified,
+ * is returned in place of a value for keys that are not in the map. Instances
+ * are not safe for concurrent use.
+ * </p>
+ *
+ * @author Tom Gibara
+ */
+
+public class LongLongMap {
+
+	// fields
+
+	private final long missingValue;
+	private long[] keys;
+	private long[] values;
+	private int mask;
+	private int threshold;
+	private boolean containsZero = false;
+	private long zeroValue;
+	private int size = 0;
+
+	// constructors
+
+	public LongLongMap() {
+		this(16, 0L);
+	}
+
+	/**
+	 * Creates a map that can hold the specified number of entries without
+	 * resizing.
+	 *
+	 * @param expectedSize
+	 *            the number of entries expected
+	 * @param missingValue
+	 *            the value reported for keys that are not in the map
+	 */
+
+	public LongLongMap(int expectedSize, long missingValue) {
+		this.missingValue = missingValue;
+		zeroValue = missingValue;
+		allocate(OpenHashing.tableSize(expectedSize));
+	}
+
+	// accessors
+
+	public long getMissingValue() {
+		return missingValue;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// methods
+
+	public boolean containsKey(long key) {
+		return key == 0L ? containsZero : indexOf(key) >= 0;
+	}
+
+	/**
+	 * The value associated with a key.
+	 *
+	 * @param key
+	 *            any key
+	 * @return the value associated with the key, or the missing value if the
+	 *         map does not contain the key
+	 */
+
+	public long get(long key) {
+		if (key == 0L) return zeroValue;
+		final int i = indexOf(key);
+		return i < 0 ? missingValue : values[i];
+	}
+
+	/**
+	 * Associates a value with a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value
+	 * @return the value previously associated with the key, or the missing
+	 *         value if there was none
+	 */
+
+	public long put(long key, long value) {
+		if (key == 0L) {
+			final long previous = zeroValue;
+			if (!containsZero) {
+				containsZero = true;
+				size++;
+			}
+			zeroValue = value;
+			return previous;
+		}
+		final int i = slotOf(key);
+		if (keys[i] == key) {
+			final long previous = values[i];
+			values[i] = value;
+			return previous;
+		}
+		insert(i, key, value);
+		return missingValue;
+	}
+
+	/**
+	 * Adds an amount to the value associated with a key. A key that is not in
+	 * the map is first associated with the missing value.
+	 *
+	 * @param key
+	 *            the key
+	 * @param delta
+	 *            the amount to add
+	 * @return the new value associated with the key
+	 */
+
+	public long add(long key, long delta) {
+		if (key == 0L) {
+			if (!containsZero) {
+				containsZero = true;
+				size++;
+			}
+			return zeroValue += delta;
+		}
+		final int i = slotOf(key);
+		if (keys[i] == key) return values[i] += delta;
+		final long value = missingValue + delta;
+		insert(i, key, value);
+		return value;
+	}
+
+	/**
+	 * Removes a key from the map.
+	 *
+	 * @param key
+	 *            the key to remove
+	 * @return the value that was associated with the key, or the missing
+	 *         value if there was none
+	 */
+
+	public long remove(long key) {
+		if (key == 0L) {
+			if (!containsZero) return missingValue;
+			final long previous = zeroValue;
+			containsZero = false;
+			zeroValue = missingValue;
+			size--;
+			return previous;
+		}
+		final int i = indexOf(key);
+		if (i < 0) return missingValue;
+		final long previous = values[i];
+		shiftEntries(i);
+		size--;
+		return previous;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0L);
+		containsZero = false;
+		zeroValue = missingValue;
+		size = 0;
+	}
+
+	/**
+	 * The keys of the map in no particular order.
+	 *
+	 * @return a new array containing every key
+	 */
+
+	public long[] keys() {
+		final long[] array = new long[size];
+		int j = 0;
+		if (containsZero) j++;
+		final long[] keys = this.keys;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0L) array[j++] = keys[i];
+		}
+		return array;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("{");
+		if (containsZero) sb.append(0L).append('=').append(zeroValue);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == 0L) continue;
+			if (sb.length() > 1) sb.append(", ");
+			sb.append(keys[i]).append('=').append(values[i]);
+		}
+		return sb.append('}').toString();
+	}
+
+	// private utility methods
+
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		values = new long[tableSize];
+		mask = tableSize - 1;
+		threshold = OpenHashing.threshold(tableSize);
+	}
+
+	// the slot containing the key, or -1
+	private int indexOf(long key) {
+		final long[] keys = this.keys;
+		for (int i = OpenHashing.mix(key) & mask; ; i = (i + 1) & mask) {
+			final long k = keys[i];
+			if (k == key) return i;
+			if (k == 0L) return -1;
+		}
+	}
+
+	// the slot containing the key, or the empty slot at which it belongs
+	private int slotOf(long key) {
+		final long[] keys = this.keys;
+		int i = OpenHashing.mix(key) & mask;
+		while (keys[i] != 0L && keys[i] != key) i = (i + 1) & mask;
+		return i;
+	}
+
+	private void insert(int i, long key, long value) {
+		keys[i] = key;
+		values[i] = value;
+		if (++size > threshold) rehash(OpenHashing.grow(keys.length));
+	}
+
+	private void rehash(int tableSize) {
+		final long[] oldKeys = keys;
+		final long[] oldValues = values;
+		allocate(tableSize);
+		final long[] keys = this.keys;
+		for (int j = 0; j < oldKeys.length; j++) {
+			final long key = oldKeys[j];
+			if (key == 0L) continue;
+			int i = OpenHashing.mix(key) & mask;
+			while (keys[i] != 0L) i = (i + 1) & mask;
+			keys[i] = key;
+			values[i] = oldValues[j];
+		}
+	}
+
+	// closes the gap at i by moving back any entries displaced past it
+	private void shiftEntries(int i) {
+		final long[] keys = this.keys;
+		final long[] values = this.values;
+		while (true) {
+			final int gap = i;
+			long key;
+			while (true) {
+				i = (i + 1) & mask;
+				key = keys[i];
+				if (key == 0L) {
+					keys[gap] = 0L;
+					return;
+				}
+				final int home = OpenHashing.mix(key) & mask;
+				// move the entry if its home does not lie cyclically in (gap, i]
+				if (gap <= i ? gap >= home || home > i : gap >= home && home > i) break;
+			}
+			keys[gap] = key;
+			values[gap] = values[i];
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A set of long values that stores its elements in an open addressing hash
+ * table without boxing them. Collisions are resolved by linear probing and
+ * removals shift subsequent entries back so that no tombstones accumulate.
+ * </p>
+ *
+ * <p>
+ * Each element occupies a single long in the table; at the maximum load
+ * factor of 0.75 a set requires approximately 11 bytes per element, compared
+ * to more than 50 bytes for a {@link java.util.HashSet} of {@link Long}s.
+ * Instances are not safe for concurrent use.
+ * </p>
+ *
+ * @author Tom Gibara
+ */
+
+public class LongOpenHashSet {
+
+	// fields
+
+	private long[] keys;
+	private int mask;
+	private int threshold;
+	private boolean containsZero = false;
+	private int size = 0;
+
+	// constructors
+
+	public LongOpenHashSet() {
+		this(16);
+	}
+
+	/**
+	 * Creates a set that can hold the specified number of elements without
+	 * resizing.
+	 *
+	 * @param expectedSize
+	 *            the number of elements expected
+	 */
+
+	public LongOpenHashSet(int expectedSize) {
+		allocate(OpenHashing.tableSize(expectedSize));
+	}
+
+	// accessors
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	// methods
+
+	public boolean contains(long value) {
+		if (value == 0L) return containsZero;
+		final long[] keys = this.keys;
+		for (int i = OpenHashing.mix(value) & mask; ; i = (i + 1) & mask) {
+			final long key = keys[i];
+			if (key == value) return true;
+			if (key == 0L) return false;
+		}
+	}
+
+	/**
+	 * Adds a value to the set.
+	 *
+	 * @param value
+	 *            the value to add
+	 * @return true if the value was added, false if it was already present
+	 */
+
+	public boolean add(long value) {
+		if (value == 0L) {
+			if (containsZero) return false;
+			containsZero = true;
+			size++;
+			return true;
+		}
+		final long[] keys = this.keys;
+		int i = OpenHashing.mix(value) & mask;
+		for (; keys[i] != 0L; i = (i + 1) & mask) {
+			if (keys[i] == value) return false;
+		}
+		keys[i] = value;
+		if (++size > threshold) rehash(OpenHashing.grow(keys.length));
+		return true;
+	}
+
+	/**
+	 * Removes a value from the set.
+	 *
+	 * @param value
+	 *            the value to remove
+	 * @return true if the value was removed, false if it was not present
+	 */
+
+	public boolean remove(long value) {
+		if (value == 0L) {
+			if (!containsZero) return false;
+			containsZero = false;
+			size--;
+			return true;
+		}
+		final long[] keys = this.keys;
+		for (int i = OpenHashing.mix(value) & mask; ; i = (i + 1) & mask) {
+			final long key = keys[i];
+			if (key == 0L) return false;
+			if (key == value) {
+				shiftKeys(i);
+				size--;
+				return true;
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0L);
+		containsZero = false;
+		size = 0;
+	}
+
+	/**
+	 * The elements of the set in no particular order.
+	 *
+	 * @return a new array containing every element
+	 */
+
+	public long[] toArray() {
+		final long[] array = new long[size];
+		int j = 0;
+		if (containsZero) j++;
+		final long[] keys = this.keys;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0L) array[j++] = keys[i];
+		}
+		return array;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	// private utility methods
+
+	private void allocate(int tableSize) {
+		keys = new long[tableSize];
+		mask = tableSize - 1;
+		threshold = OpenHashing.threshold(tableSize);
+	}
+
+	private void rehash(int tableSize) {
+		final long[] old = keys;
+		allocate(tableSize);
+		final long[] keys = this.keys;
+		for (int j = 0; j < old.length; j++) {
+			final long key = old[j];
+			if (key == 0L) continue;
+			int i = OpenHashing.mix(key) & mask;
+			while (keys[i] != 0L) i = (i + 1) & mask;
+			keys[i] = key;
+		}
+	}
+
+	// closes the gap at i by moving back any entries displaced past it
+	private void shiftKeys(int i) {
+		final long[] keys = this.keys;
+		while (true) {
+			final int gap = i;
+			long key;
+			while (true) {
+				i = (i + 1) & mask;
+				key = keys[i];
+				if (key == 0L) {
+					keys[gap] = 0L;
+					return;
+				}
+				final int home = OpenHashing.mix(key) & mask;
+				// move the entry if its home does not lie cyclically in (gap, i]
+				if (gap <= i ? gap >= home || home > i : gap >= home && home > i) break;
+			}
+			keys[gap] = key;
+		}
+	}
+
+}
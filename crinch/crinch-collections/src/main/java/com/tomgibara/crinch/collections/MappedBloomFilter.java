@@ -0,0 +1,361 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.tomgibara.crinch.bits.BitStreamException;
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+
+/**
+ * <p>
+ * A read-only {@link BloomFilter} that is served directly from a memory mapped
+ * file. Opening a filter reads only its header, so that very large filters are
+ * available immediately and their pages are shared between processes through
+ * the operating system's page cache.
+ * </p>
+ *
+ * <p>
+ * Files are written with {@link #write(BloomFilter, long, File)}. The format
+ * is a {@value #HEADER_SIZE} byte header, recording the hash count, capacity
+ * and a caller-chosen hash seed, followed by the bits of the filter as
+ * big-endian longs; bit <code>i</code> of the filter is bit
+ * <code>i % 64</code> of long <code>i / 64</code>. The hash seed identifies
+ * the hash configuration, which cannot itself be persisted, and must match
+ * when the file is opened.
+ * </p>
+ *
+ * <p>
+ * Only filters that set the bits indexed by their multi-hash, namely
+ * {@link BasicBloomFilter}, {@link ConcurrentBloomFilter} and mapped filters
+ * themselves, can be persisted in this way. Instances are safe for use by
+ * multiple threads provided that the multi-hash is.
+ * </p>
+ *
+ * <p>
+ * Like every {@link BloomFilter}, a mapped filter has an <code>int</code>
+ * capacity, so it holds at most {@link Integer#MAX_VALUE} bits; the largest
+ * file is {@value #MAX_FILE_LENGTH} bytes (about 256MB), which is always
+ * mapped as a single buffer.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element contained in the filter
+ */
+
+public class MappedBloomFilter<E> extends AbstractBloomFilter<E> {
+
+	// statics
+
+	/**
+	 * The number of bytes preceding the bits of the filter; chosen so that the
+	 * bits are aligned to a typical cache line.
+	 */
+
+	public static final int HEADER_SIZE = 64;
+
+	/**
+	 * The length of the file holding a filter with the largest possible
+	 * capacity.
+	 */
+
+	public static final long MAX_FILE_LENGTH = HEADER_SIZE + (((long) Integer.MAX_VALUE + 63L) >> 6) * 8L;
+
+	private static final int MAGIC = 0x43424c4d; // "CBLM"
+	private static final int VERSION = 1;
+
+	/**
+	 * Writes a filter to a file in a form that may be opened with
+	 * {@link #openMapped(File, MultiHash, long)}.
+	 *
+	 * @param filter
+	 *            the filter to write
+	 * @param hashSeed
+	 *            a value that identifies the configuration of the filter's
+	 *            multi-hash
+	 * @param file
+	 *            the file to which the filter is written
+	 * @throws IllegalArgumentException
+	 *             if the filter does not set the bits indexed by its
+	 *             multi-hash, for example a {@link BlockedBloomFilter} or a
+	 *             {@link CountingBloomFilter}
+	 * @throws BitStreamException
+	 *             if the file could not be written
+	 */
+
+	public static void write(BloomFilter<?> filter, long hashSeed, File file) throws IllegalArgumentException, BitStreamException {
+		if (filter == null) throw new IllegalArgumentException("null filter");
+		if (file == null) throw new IllegalArgumentException("null file");
+		if (!isMappable(filter)) throw new IllegalArgumentException("filter cannot be mapped: " + filter.getClass().getName());
+		final BitVector bits = filter.getBitVector();
+		final int capacity = bits.size();
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 8192));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(filter.getHashCount());
+			out.writeInt(capacity);
+			out.writeLong(hashSeed);
+			out.write(new byte[HEADER_SIZE - 24]);
+			for (int position = 0; position < capacity; position += 64) {
+				out.writeLong(bits.getBits(position, Math.min(64, capacity - position)));
+			}
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			throw new BitStreamException(e);
+		} finally {
+			if (out != null) try {
+				out.close();
+			} catch (IOException e) {
+				/* ignored - already failing */
+			}
+		}
+	}
+
+	/**
+	 * Opens a filter previously written with
+	 * {@link #write(BloomFilter, long, File)}. The file is mapped into memory
+	 * and is not read into the heap.
+	 *
+	 * @param file
+	 *            the file containing the filter
+	 * @param multiHash
+	 *            a multi-hash equivalent to that of the filter that was written
+	 * @param hashSeed
+	 *            the seed with which the filter was written
+	 * @return a read-only filter
+	 * @throws IllegalArgumentException
+	 *             if the file is not a filter, or if its seed or hash count are
+	 *             not consistent with those supplied
+	 * @throws BitStreamException
+	 *             if the file could not be mapped
+	 */
+
+	public static <E> MappedBloomFilter<E> openMapped(File file, MultiHash<? super E> multiHash, long hashSeed) throws IllegalArgumentException, BitStreamException {
+		if (file == null) throw new IllegalArgumentException("null file");
+		if (multiHash == null) throw new IllegalArgumentException("null multiHash");
+		final ByteBuffer buffer;
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			final long length = raf.length();
+			if (length < HEADER_SIZE || length > MAX_FILE_LENGTH) throw new IllegalArgumentException("invalid file length");
+			// the mapping remains valid after the channel is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+		} catch (IOException e) {
+			throw new BitStreamException(e);
+		} finally {
+			if (raf != null) try {
+				raf.close();
+			} catch (IOException e) {
+				/* ignored - mapping is unaffected */
+			}
+		}
+		if (buffer.getInt(0) != MAGIC) throw new IllegalArgumentException("not a mapped bloom filter");
+		if (buffer.getInt(4) != VERSION) throw new IllegalArgumentException("unsupported version");
+		final int hashCount = buffer.getInt(8);
+		final int capacity = buffer.getInt(12);
+		if (buffer.getLong(16) != hashSeed) throw new IllegalArgumentException("mismatched hashSeed");
+		if (capacity < 1) throw new IllegalArgumentException("invalid capacity");
+		if (buffer.limit() != HEADER_SIZE + ((capacity + 63L) >> 6) * 8) throw new IllegalArgumentException("invalid file length");
+		return new MappedBloomFilter<E>(buffer, multiHash, hashCount, capacity, hashSeed);
+	}
+
+	// only these filters lay out their bits as the mapped filter reads them
+	private static boolean isMappable(BloomFilter<?> filter) {
+		final Class<?> clss = filter.getClass();
+		return clss == BasicBloomFilter.class || clss == ConcurrentBloomFilter.class || clss == MappedBloomFilter.class;
+	}
+
+	// fields
+
+	private final ByteBuffer buffer;
+	private final MultiHash<? super E> multiHash;
+	private final int hashCount;
+	private final int capacity;
+	private final long hashSeed;
+	private final ThreadLocal<int[]> hashes = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[hashCount];
+		}
+	};
+
+	// constructors
+
+	private MappedBloomFilter(ByteBuffer buffer, MultiHash<? super E> multiHash, int hashCount, int capacity, long hashSeed) {
+		if (hashCount < 1) throw new IllegalArgumentException("hashCount not positive");
+		if (multiHash.getMaxMultiplicity() < hashCount) throw new IllegalArgumentException("hashCount exceeds maximum hash multiplicity");
+		this.buffer = buffer;
+		this.multiHash = Hashes.rangeAdjust(new HashRange(0, capacity - 1), multiHash);
+		this.hashCount = hashCount;
+		this.capacity = capacity;
+		this.hashSeed = hashSeed;
+	}
+
+	// accessors
+
+	public long getHashSeed() {
+		return hashSeed;
+	}
+
+	// bloom filter methods
+
+	@Override
+	public boolean mightContain(E element) {
+		final int[] hashes = multiHash.hashAsInts(element, this.hashes.get());
+		final ByteBuffer buffer = this.buffer;
+		for (int i = 0; i < hashCount; i++) {
+			final int hash = hashes[i];
+			if ((buffer.getLong(HEADER_SIZE + ((hash >> 6) << 3)) & (1L << hash)) == 0L) return false;
+		}
+		return true;
+	}
+
+	// interleaving the probes lets page faults for different elements overlap
+	@Override
+	public BitVector mightContainEach(E[] elements, int off, int len) {
+		return interleavedMightContainEach(elements, off, len, hashCount);
+	}
+
+	/**
+	 * Not supported; mapped filters are read-only.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+
+	@Override
+	public boolean add(E newElement) {
+		throw new UnsupportedOperationException("read-only filter");
+	}
+
+	/**
+	 * Not supported; mapped filters are read-only.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+
+	@Override
+	public boolean addAll(BloomFilter<? extends E> filter) {
+		throw new UnsupportedOperationException("read-only filter");
+	}
+
+	/**
+	 * Not supported; mapped filters are read-only.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+
+	@Override
+	public boolean addAll(E[] elements, int off, int len) {
+		throw new UnsupportedOperationException("read-only filter");
+	}
+
+	/**
+	 * Not supported; mapped filters are read-only.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("read-only filter");
+	}
+
+	@Override
+	public boolean isEmpty() {
+		final ByteBuffer buffer = this.buffer;
+		for (int offset = HEADER_SIZE; offset < buffer.limit(); offset += 8) {
+			if (buffer.getLong(offset) != 0L) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public double getFalsePositiveProbability() {
+		final ByteBuffer buffer = this.buffer;
+		int count = 0;
+		for (int offset = HEADER_SIZE; offset < buffer.limit(); offset += 8) {
+			count += Long.bitCount(buffer.getLong(offset));
+		}
+		return Math.pow((double) count / capacity, hashCount);
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public MultiHash<? super E> getMultiHash() {
+		return multiHash;
+	}
+
+	/**
+	 * A copy of the filter's bits, read into the heap.
+	 *
+	 * @return an immutable {@link BitVector}
+	 */
+
+	@Override
+	public BitVector getBitVector() {
+		final BitVector bits = new BitVector(capacity);
+		final ByteBuffer buffer = this.buffer;
+		for (int i = 0, position = 0; position < capacity; i++, position += 64) {
+			bits.setBits(position, buffer.getLong(HEADER_SIZE + (i << 3)), Math.min(64, capacity - position));
+		}
+		return bits.immutableView();
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "MappedBloomFilter hash count: " + hashCount + ", capacity: " + capacity;
+	}
+
+	// package scoped methods
+
+	@Override
+	boolean isProbeSet(int hash) {
+		return (buffer.getLong(HEADER_SIZE + ((hash >> 6) << 3)) & (1L << hash)) != 0L;
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+/**
+ * Support for the open addressing hash tables of the primitive collections.
+ * Tables have a power-of-two size and are probed linearly from a slot chosen
+ * by a well mixed hash of the key. Zero is used to mark empty slots, so each
+ * collection records the presence of a zero key separately.
+ *
+ * @author Tom Gibara
+ */
+
+final class OpenHashing {
+
+	static final float LOAD_FACTOR = 0.75f;
+
+	private static final int MAX_TABLE_SIZE = 1 << 30;
+
+	// the finalization step of Murmur3, so that sequential keys are spread
+	static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	static int mix(int key) {
+		key ^= key >>> 16;
+		key *= 0x85ebca6b;
+		key ^= key >>> 13;
+		key *= 0xc2b2ae35;
+		key ^= key >>> 16;
+		return key;
+	}
+
+	// the table size needed to hold the expected number of keys
+	static int tableSize(int expectedSize) {
+		if (expectedSize < 0) throw new IllegalArgumentException("negative expectedSize");
+		final long required = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+		if (required > MAX_TABLE_SIZE) throw new IllegalArgumentException("expectedSize too large");
+		final int size = Integer.highestOneBit((int) required);
+		return size == required ? size : size << 1;
+	}
+
+	static int threshold(int tableSize) {
+		return (int) (tableSize * LOAD_FACTOR);
+	}
+
+	static int grow(int tableSize) {
+		if (tableSize >= MAX_TABLE_SIZE) throw new IllegalStateException("table full");
+		return tableSize << 1;
+	}
+
+	private OpenHashing() { }
+
+}
@@ -0,0 +1,729 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.lattice.AbstractLattice;
+import com.tomgibara.crinch.lattice.Lattice;
+
+/**
+ * <p>
+ * A {@link CompactApproximator} over a lattice of integral values that stores
+ * its values in a packed array of longs instead of an array of objects.
+ * Values occupy a fixed number of bits and are treated as unsigned; as many
+ * values as will fit are packed into each long, so no value spans two longs.
+ * The lattice is determined by an {@link Operation}, and its joins and meets
+ * are evaluated directly on the packed values.
+ * </p>
+ *
+ * <p>
+ * Subclasses expose the values as a specific primitive type, and supply
+ * primitive accessors that avoid boxing. Approximators that are constructed
+ * to be concurrent hold their values in atomic longs and join values into
+ * them with compare-and-set operations, so that keys may be put from any
+ * number of threads without locking.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of key
+ * @param <V>
+ *            the boxed type of value
+ */
+
+public abstract class PackedCompactApproximator<K, V> implements CompactApproximator<K, V> {
+
+	// statics
+
+	/**
+	 * The lattices over which a packed approximator may operate.
+	 */
+
+	public enum Operation {
+
+		/**
+		 * Values are ordered numerically, so that the approximator records an
+		 * upper bound on the largest value put for each key. The bottom is zero.
+		 */
+
+		MAX,
+
+		/**
+		 * Values are ordered in reverse, so that the approximator records a
+		 * lower bound on the smallest value put for each key. The bottom is the
+		 * largest value that may be stored.
+		 */
+
+		MIN,
+
+		/**
+		 * Values are bit sets ordered by containment, as per the
+		 * <code>BitVectorLattice</code>, so that the approximator records a
+		 * superset of the bits put for each key. The bottom is zero.
+		 */
+
+		OR;
+
+		long bottom(long mask) {
+			return this == MIN ? mask : 0L;
+		}
+
+		long top(long mask) {
+			return this == MIN ? 0L : mask;
+		}
+
+		long join(long a, long b) {
+			switch (this) {
+			case MAX: return a + Long.MIN_VALUE > b + Long.MIN_VALUE ? a : b;
+			case MIN: return a + Long.MIN_VALUE < b + Long.MIN_VALUE ? a : b;
+			default: return a | b;
+			}
+		}
+
+		long meet(long a, long b) {
+			switch (this) {
+			case MAX: return a + Long.MIN_VALUE < b + Long.MIN_VALUE ? a : b;
+			case MIN: return a + Long.MIN_VALUE > b + Long.MIN_VALUE ? a : b;
+			default: return a & b;
+			}
+		}
+
+		// whether a is less than or equal to b in the lattice
+		boolean isOrdered(long a, long b) {
+			switch (this) {
+			case MAX: return a + Long.MIN_VALUE <= b + Long.MIN_VALUE;
+			case MIN: return a + Long.MIN_VALUE >= b + Long.MIN_VALUE;
+			default: return (a & ~b) == 0L;
+			}
+		}
+
+	}
+
+	// fields
+
+	private final Operation operation;
+	private final int bitWidth;
+	private final long mask;
+	private final int perWord;
+	private final MultiHash<? super K> multiHash;
+	private final int hashCount;
+	private final int capacity;
+	// null if concurrent
+	private final int[] hashes;
+	private final ThreadLocal<int[]> localHashes;
+	private final Words words;
+	// the top of the lattice through which values are accessed
+	private final long top;
+	private final long bottom;
+	private final ValueLattice lattice;
+	private final ValueList valueList;
+	private CompactBloomFilter bloomFilter = null;
+
+	// constructors
+
+	PackedCompactApproximator(Operation operation, int bitWidth, int maxBitWidth, MultiHash<? super K> multiHash, final int hashCount, boolean concurrent) {
+		if (operation == null) throw new IllegalArgumentException("null operation");
+		if (bitWidth < 1) throw new IllegalArgumentException("bitWidth not positive");
+		if (bitWidth > maxBitWidth) throw new IllegalArgumentException("bitWidth exceeds " + maxBitWidth);
+		if (multiHash == null) throw new IllegalArgumentException("null multiHash");
+		if (hashCount < 1) throw new IllegalArgumentException("hashCount not positive");
+		if (multiHash.getMaxMultiplicity() < hashCount) throw new IllegalArgumentException("hashCount exceeds maximum hash multiplicity");
+		final HashRange range = multiHash.getRange();
+		if (range == null) throw new IllegalArgumentException("null multiHash range");
+		if (!range.isIntBounded()) throw new IllegalArgumentException("multiHash not int bounded");
+		multiHash = Hashes.rangeAdjust(range.zeroBased(), multiHash);
+
+		this.operation = operation;
+		this.bitWidth = bitWidth;
+		mask = bitWidth == 64 ? -1L : (1L << bitWidth) - 1L;
+		perWord = 64 / bitWidth;
+		this.multiHash = multiHash;
+		this.hashCount = hashCount;
+		capacity = multiHash.getRange().getSize().intValue();
+		final int length = (capacity + perWord - 1) / perWord;
+		if (concurrent) {
+			hashes = null;
+			localHashes = new ThreadLocal<int[]>() {
+				@Override
+				protected int[] initialValue() {
+					return new int[hashCount];
+				}
+			};
+			words = new AtomicWords(length);
+		} else {
+			hashes = new int[hashCount];
+			localHashes = null;
+			words = new PlainWords(length);
+		}
+		top = operation.top(mask);
+		bottom = operation.bottom(mask);
+		lattice = new ValueLattice(top, bottom);
+		valueList = new ValueList();
+		clear();
+	}
+
+	// a view of another approximator through a lower top
+	PackedCompactApproximator(PackedCompactApproximator<K, V> that, long top) {
+		operation = that.operation;
+		bitWidth = that.bitWidth;
+		mask = that.mask;
+		perWord = that.perWord;
+		multiHash = that.multiHash;
+		hashCount = that.hashCount;
+		capacity = that.capacity;
+		hashes = that.hashes == null ? null : new int[hashCount];
+		localHashes = that.localHashes;
+		words = that.words;
+		this.top = top;
+		bottom = that.bottom;
+		lattice = new ValueLattice(top, bottom);
+		valueList = new ValueList();
+	}
+
+	// accessors
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * The number of bits used to store each value.
+	 *
+	 * @return the bit width of the values
+	 */
+
+	public int getBitWidth() {
+		return bitWidth;
+	}
+
+	/**
+	 * Whether the approximator may be used by multiple threads.
+	 *
+	 * @return true if the values are updated atomically
+	 */
+
+	public boolean isConcurrent() {
+		return hashes == null;
+	}
+
+	// methods
+
+	/**
+	 * Joins the values of a compatible approximator into this one, dividing
+	 * the values between a number of threads. Each thread joins the values in
+	 * a separate range of longs, so the approximator need not be concurrent.
+	 *
+	 * @param that
+	 *            a compatible approximator
+	 * @param threads
+	 *            the number of threads to use, including the calling thread
+	 */
+
+	public void merge(CompactApproximator<K, V> that, int threads) {
+		checkCompatibility(that);
+		if (threads < 1) throw new IllegalArgumentException("threads not positive");
+		if (that instanceof PackedCompactApproximator<?, ?>) {
+			final PackedCompactApproximator<?, ?> packed = (PackedCompactApproximator<?, ?>) that;
+			Chunks.run(words.length(), threads, new Chunks.Task() {
+				@Override
+				void run(int from, int to) {
+					final int limit = Math.min(capacity, to * perWord);
+					for (int i = from * perWord; i < limit; i++) {
+						join(i, packed.value(i));
+					}
+				}
+			});
+		} else {
+			final List<V> thatValues = that.getValueList();
+			if (thatValues instanceof RandomAccess) {
+				Chunks.run(words.length(), threads, new Chunks.Task() {
+					@Override
+					void run(int from, int to) {
+						final int limit = Math.min(capacity, to * perWord);
+						for (int i = from * perWord; i < limit; i++) {
+							join(i, unbox(thatValues.get(i)));
+						}
+					}
+				});
+			} else {
+				final Iterator<V> it = thatValues.iterator();
+				for (int i = 0; i < capacity; i++) {
+					join(i, unbox(it.next()));
+				}
+			}
+		}
+	}
+
+	// compact approximator methods
+
+	@Override
+	public V put(K key, V value) {
+		if (!lattice.contains(value)) throw new IllegalArgumentException("value not in lattice");
+		return box(putValue(key, unbox(value)));
+	}
+
+	@Override
+	public V getSupremum(K key) {
+		return box(supremum(key));
+	}
+
+	@Override
+	public boolean mightContain(K key) {
+		final int[] hashes = multiHash.hashAsInts(key, hashes());
+		for (int i = 0; i < hashCount; i++) {
+			if (get(hashes[i]) == bottom) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean mightContainAll(Iterable<? extends K> keys) {
+		for (K key : keys) if (!mightContain(key)) return false;
+		return true;
+	}
+
+	@Override
+	public boolean bounds(CompactApproximator<K, V> that) {
+		checkCompatibility(that);
+		if (that instanceof PackedCompactApproximator<?, ?>) {
+			final PackedCompactApproximator<?, ?> packed = (PackedCompactApproximator<?, ?>) that;
+			for (int i = 0; i < capacity; i++) {
+				if (!operation.isOrdered(packed.value(i), value(i))) return false;
+			}
+		} else {
+			final List<V> thatValues = that.getValueList();
+			if (thatValues instanceof RandomAccess) {
+				for (int i = 0; i < capacity; i++) {
+					if (!operation.isOrdered(unbox(thatValues.get(i)), value(i))) return false;
+				}
+			} else {
+				final Iterator<V> it = thatValues.iterator();
+				for (int i = 0; i < capacity; i++) {
+					if (!operation.isOrdered(unbox(it.next()), value(i))) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void merge(CompactApproximator<K, V> that) {
+		merge(that, 1);
+	}
+
+	@Override
+	public CompactApproximator<K, V> boundedAbove(V upperBound) {
+		if (!lattice.contains(upperBound)) throw new IllegalArgumentException("upperBound not in lattice");
+		final long bound = unbox(upperBound);
+		return bound == top ? this : newBounded(bound);
+	}
+
+	@Override
+	public BloomFilter<K> asBloomFilter() {
+		return bloomFilter == null ? bloomFilter = new CompactBloomFilter() : bloomFilter;
+	}
+
+	@Override
+	public void clear() {
+		final long bottom = this.bottom;
+		long word = 0L;
+		for (int i = 0; i < perWord; i++) {
+			word |= bottom << (i * bitWidth);
+		}
+		words.fill(word);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (int i = 0; i < capacity; i++) {
+			if (get(i) != bottom) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Lattice<V> getLattice() {
+		return lattice;
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	@Override
+	public MultiHash<? super K> getMultiHash() {
+		return multiHash;
+	}
+
+	@Override
+	public List<V> getValueList() {
+		return valueList;
+	}
+
+	// object methods
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof CompactApproximator<?, ?>)) return false;
+		CompactApproximator<?, ?> that = (CompactApproximator<?, ?>) obj;
+		if (this.getHashCount() != that.getHashCount()) return false;
+		if (!this.getMultiHash().equals(that.getMultiHash())) return false;
+		if (!this.getLattice().equals(that.getLattice())) return false;
+		if (!this.getValueList().equals(that.getValueList())) return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return getValueList().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getValueList().toString();
+	}
+
+	// package scoped methods
+
+	abstract V box(long value);
+
+	abstract long unbox(V value);
+
+	abstract PackedCompactApproximator<K, V> newBounded(long top);
+
+	long putValue(K key, long value) {
+		if ((value & ~mask) != 0L || !operation.isOrdered(value, top)) throw new IllegalArgumentException("value out of range");
+		final int[] hashes = multiHash.hashAsInts(key, hashes());
+		final Operation operation = this.operation;
+		long previous = top;
+		for (int i = 0; i < hashCount; i++) {
+			previous = operation.meet(previous, join(hashes[i], value));
+		}
+		return previous;
+	}
+
+	long supremum(K key) {
+		final int[] hashes = multiHash.hashAsInts(key, hashes());
+		final Operation operation = this.operation;
+		long value = top;
+		for (int i = 0; i < hashCount; i++) {
+			value = operation.meet(value, get(hashes[i]));
+		}
+		return value;
+	}
+
+	// private utility methods
+
+	private int[] hashes() {
+		return hashes == null ? localHashes.get() : hashes;
+	}
+
+	private long get(int index) {
+		final int shift = (index % perWord) * bitWidth;
+		return (words.get(index / perWord) >>> shift) & mask;
+	}
+
+	// joins a value into the indexed value, returning its previous value
+	private long join(int index, long value) {
+		final int shift = (index % perWord) * bitWidth;
+		final int i = index / perWord;
+		final Words words = this.words;
+		while (true) {
+			final long word = words.get(i);
+			final long v = (word >>> shift) & mask;
+			final long joined = operation.join(value, v);
+			if (joined == v || words.compareAndSet(i, word, word & ~(mask << shift) | (joined << shift))) return v;
+		}
+	}
+
+	// the value at the index as seen through the access lattice
+	private long value(int index) {
+		return operation.meet(top, get(index));
+	}
+
+	private void checkCompatibility(CompactApproximator<K, V> that) {
+		if (that == null) throw new IllegalArgumentException("null approximator");
+		if (this.hashCount != that.getHashCount()) throw new IllegalArgumentException("Incompatible compact approximator, hashCount was " + that.getHashCount() +", expected " + hashCount);
+		if (!this.multiHash.equals(that.getMultiHash())) throw new IllegalArgumentException("Incompatible compact approximator, multiHashes were not equal.");
+		if (!this.lattice.equals(that.getLattice())) throw new IllegalArgumentException("Incompatible compact approximator, lattices were not equal.");
+	}
+
+	// inner classes
+
+	private static abstract class Words {
+
+		abstract int length();
+
+		abstract long get(int i);
+
+		// may fail only if the word is changed concurrently
+		abstract boolean compareAndSet(int i, long expect, long update);
+
+		abstract void fill(long word);
+
+	}
+
+	private static final class PlainWords extends Words {
+
+		private final long[] words;
+
+		PlainWords(int length) {
+			words = new long[length];
+		}
+
+		@Override
+		int length() {
+			return words.length;
+		}
+
+		@Override
+		long get(int i) {
+			return words[i];
+		}
+
+		@Override
+		boolean compareAndSet(int i, long expect, long update) {
+			words[i] = update;
+			return true;
+		}
+
+		@Override
+		void fill(long word) {
+			Arrays.fill(words, word);
+		}
+
+	}
+
+	private static final class AtomicWords extends Words {
+
+		private final AtomicLongArray words;
+
+		AtomicWords(int length) {
+			words = new AtomicLongArray(length);
+		}
+
+		@Override
+		int length() {
+			return words.length();
+		}
+
+		@Override
+		long get(int i) {
+			return words.get(i);
+		}
+
+		@Override
+		boolean compareAndSet(int i, long expect, long update) {
+			return words.compareAndSet(i, expect, update);
+		}
+
+		@Override
+		void fill(long word) {
+			final AtomicLongArray words = this.words;
+			for (int i = 0; i < words.length(); i++) words.set(i, word);
+		}
+
+	}
+
+	// the values of the operation between a bottom and a top
+	private final class ValueLattice extends AbstractLattice<V> {
+
+		private final long top;
+		private final long bottom;
+
+		ValueLattice(long top, long bottom) {
+			this.top = top;
+			this.bottom = bottom;
+		}
+
+		private PackedCompactApproximator<K, V> outer() {
+			return PackedCompactApproximator.this;
+		}
+
+		private long check(V e) {
+			if (!contains(e)) throw new IllegalArgumentException("value not in lattice");
+			return unbox(e);
+		}
+
+		@Override
+		public boolean contains(V e) {
+			if (e == null) throw new IllegalArgumentException("null value");
+			final long value = unbox(e);
+			return (value & ~mask) == 0L && operation.isOrdered(value, top) && operation.isOrdered(bottom, value);
+		}
+
+		@Override
+		public V getTop() {
+			return box(top);
+		}
+
+		@Override
+		public V getBottom() {
+			return box(bottom);
+		}
+
+		@Override
+		public boolean isBoundedAbove() {
+			return true;
+		}
+
+		@Override
+		public boolean isBoundedBelow() {
+			return true;
+		}
+
+		@Override
+		public V join(V a, V b) {
+			return box(operation.join(check(a), check(b)));
+		}
+
+		@Override
+		public V meet(V a, V b) {
+			return box(operation.meet(check(a), check(b)));
+		}
+
+		@Override
+		public boolean isOrdered(V a, V b) {
+			return operation.isOrdered(check(a), check(b));
+		}
+
+		@Override
+		public boolean equalInLattice(V a, V b) {
+			return check(a) == check(b);
+		}
+
+		@Override
+		public Lattice<V> boundedAbove(V top) {
+			final long bound = check(top);
+			return bound == this.top ? this : new ValueLattice(bound, this.bottom);
+		}
+
+		@Override
+		public Lattice<V> boundedBelow(V bottom) {
+			final long bound = check(bottom);
+			return bound == this.bottom ? this : new ValueLattice(this.top, bound);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) return true;
+			if (!(obj instanceof PackedCompactApproximator<?, ?>.ValueLattice)) return false;
+			final PackedCompactApproximator<?, ?>.ValueLattice that = (PackedCompactApproximator<?, ?>.ValueLattice) obj;
+			final PackedCompactApproximator<?, ?> outer = that.outer();
+			return
+				this.top == that.top &&
+				this.bottom == that.bottom &&
+				operation == outer.operation &&
+				bitWidth == outer.bitWidth &&
+				PackedCompactApproximator.this.getClass() == outer.getClass();
+		}
+
+		@Override
+		public int hashCode() {
+			return operation.hashCode() + 31 * bitWidth + (int) (top ^ (top >>> 32)) + 17 * (int) (bottom ^ (bottom >>> 32));
+		}
+
+	}
+
+	private final class ValueList extends AbstractList<V> implements RandomAccess {
+
+		@Override
+		public V get(int index) {
+			if (index < 0 || index >= capacity) throw new IndexOutOfBoundsException();
+			return box(value(index));
+		}
+
+		@Override
+		public int size() {
+			return capacity;
+		}
+
+	}
+
+	private final class CompactBloomFilter extends AbstractBloomFilter<K> {
+
+		@Override
+		public boolean add(K key) {
+			return putValue(key, top) != top;
+		}
+
+		@Override
+		public boolean mightContain(K key) {
+			return supremum(key) == top;
+		}
+
+		@Override
+		public boolean addAll(BloomFilter<? extends K> filter) {
+			checkCompatible(filter);
+			final BitVector bits = filter.getBitVector();
+			boolean mutated = false;
+			for (int i = bits.firstOne(); i >= 0; i = bits.nextOne(i + 1)) {
+				if (!operation.isOrdered(top, join(i, top))) mutated = true;
+			}
+			return mutated;
+		}
+
+		@Override
+		public void clear() {
+			PackedCompactApproximator.this.clear();
+		}
+
+		@Override
+		public BitVector getBitVector() {
+			final BitVector bits = new BitVector(capacity);
+			for (int i = 0; i < capacity; i++) {
+				if (operation.isOrdered(top, get(i))) bits.setBit(i, true);
+			}
+			return bits.immutableView();
+		}
+
+		@Override
+		public int getCapacity() {
+			return capacity;
+		}
+
+		@Override
+		public int getHashCount() {
+			return hashCount;
+		}
+
+		@Override
+		public MultiHash<? super K> getMultiHash() {
+			return multiHash;
+		}
+
+	}
+
+}
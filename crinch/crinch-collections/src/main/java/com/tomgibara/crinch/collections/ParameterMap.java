@@ -64,6 +64,12 @@ import com.tomgibara.crinch.hashing.PerfectStringHash;
  * <em>are</em> safe for concurrent use.
  * </p>
  * 
+ * <p>
+ * By default keys are located with a binary search over their hash codes.
+ * Constructors may instead be created with the {@link Lookup#HASHED} strategy
+ * which locates keys in constant time at the cost of a small table.
+ * </p>
+ * 
  * @author Tom Gibara
  * 
  * @param <V>
@@ -74,7 +80,8 @@ public final class ParameterMap<V> implements Map<String, V> {
 
 	// statics
 	
-	//TODO consider reversing NULL assignment to improve performance (needs confirmation)
+	// stands in for null values so that unset entries can be null, which
+	// avoids filling the values of every new map
 	private static final Object NULL = new Object();
 	
 	/**
@@ -89,7 +96,26 @@ public final class ParameterMap<V> implements Map<String, V> {
 	 */
 	
 	public static <V> Constructor<V> constructor(String... keys) {
-		return new Constructor<V>(keys.clone());
+		return new Constructor<V>(keys.clone(), Lookup.SORTED);
+	}
+
+	/**
+	 * Creates a new {@link ParameterMap} constructor that locates keys using
+	 * the specified strategy.
+	 * 
+	 * @param <V>
+	 *            the type of value to be stored in the map
+	 * @param lookup
+	 *            the strategy for locating keys
+	 * @param keys
+	 *            the keys that are permissible for the maps that will be
+	 *            generated
+	 * @return an object that can construct {@link ParameterMap} instances.
+	 */
+	
+	public static <V> Constructor<V> constructor(Lookup lookup, String... keys) {
+		if (lookup == null) throw new IllegalArgumentException("null lookup");
+		return new Constructor<V>(keys.clone(), lookup);
 	}
 
 	/**
@@ -104,7 +130,26 @@ public final class ParameterMap<V> implements Map<String, V> {
 	 */
 	
 	public static <V> Constructor<V> constructor(Collection<String> keys) {
-		return new Constructor<V>((String[]) keys.toArray(new String[keys.size()]));
+		return new Constructor<V>((String[]) keys.toArray(new String[keys.size()]), Lookup.SORTED);
+	}
+
+	/**
+	 * Creates a new {@link ParameterMap} constructor that locates keys using
+	 * the specified strategy.
+	 * 
+	 * @param <V>
+	 *            the type of value to be stored in the map
+	 * @param lookup
+	 *            the strategy for locating keys
+	 * @param keys
+	 *            the keys that are permissible for the maps that will be
+	 *            generated
+	 * @return an object that can construct {@link ParameterMap} instances.
+	 */
+	
+	public static <V> Constructor<V> constructor(Lookup lookup, Collection<String> keys) {
+		if (lookup == null) throw new IllegalArgumentException("null lookup");
+		return new Constructor<V>((String[]) keys.toArray(new String[keys.size()]), lookup);
 	}
 	
 	// fields
@@ -122,7 +167,6 @@ public final class ParameterMap<V> implements Map<String, V> {
 	private ParameterMap(Constructor<V> cons) {
 		this.cons = cons;
 		values = new Object[cons.keys.length];
-		Arrays.fill(values, NULL);
 		size = 0;
 	}
 	
@@ -150,7 +194,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 	@Override
 	public void clear() {
 		if (size > 0) {
-			Arrays.fill(values, NULL);
+			Arrays.fill(values, null);
 			size = 0;
 		}
 	}
@@ -168,7 +212,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 	@Override
 	public boolean containsKey(Object key) {
 		int i = cons.indexOf(key);
-		return i != -1 && values[i] != NULL;
+		return i != -1 && values[i] != null;
 	}
 
 	@Override
@@ -181,20 +225,19 @@ public final class ParameterMap<V> implements Map<String, V> {
 		final int i = cons.indexOf(key);
 		if (i < 0) return null;
 		final Object obj = values[i];
-		if (obj == NULL) return null;
-		return (V) obj;
+		return obj == NULL ? null : (V) obj;
 	}
 
 	public V put(String key, V value) {
 		final int i = cons.indexOf(key);
 		if (i < 0) throw new IllegalArgumentException("unsupported key: " + key);
 		final Object obj = values[i];
-		values[i] = value;
-		if (obj == NULL) {
+		values[i] = value == null ? NULL : value;
+		if (obj == null) {
 			size++;
 			return null;
 		} else {
-			return (V) obj;
+			return obj == NULL ? null : (V) obj;
 		}
 	};
 	
@@ -212,10 +255,10 @@ public final class ParameterMap<V> implements Map<String, V> {
 		final int i = cons.indexOf(key);
 		if (i < 0) return null;
 		final Object obj = values[i];
-		if (obj == NULL) return null;
-		values[i] = NULL;
+		if (obj == null) return null;
+		values[i] = null;
 		size--;
-		return (V) obj;
+		return obj == NULL ? null : (V) obj;
 	}
 	
 	@Override
@@ -251,8 +294,8 @@ public final class ParameterMap<V> implements Map<String, V> {
 		final Object[] values = this.values;
 		for (int i = 0; i < capacity; i++) {
 			final Object value = values[i];
-			if (value == NULL) continue;
-			if (value == null) {
+			if (value == null) continue;
+			if (value == NULL) {
 				h += keys[i].hashCode();
 			} else {
 				h += keys[i].hashCode() ^ value.hashCode();
@@ -273,8 +316,9 @@ public final class ParameterMap<V> implements Map<String, V> {
 			final Object key = entry.getKey();
 			final int i = cons.indexOf(key);
 			if (i == -1) return false;
-			final Object v = values[i];
-			if (v == NULL) return false;
+			final Object stored = values[i];
+			if (stored == null) return false;
+			final Object v = stored == NULL ? null : stored;
 			final Object value = entry.getValue();
 			if (value == v) continue;
 			if (value == null || v == null) return false;
@@ -290,13 +334,13 @@ public final class ParameterMap<V> implements Map<String, V> {
 		final Object[] values = this.values;
 		for (int i = 0; i < keys.length; i++) {
 			final Object value = values[i];
-			if (value == NULL) continue;
+			if (value == null) continue;
 			if (sb.length() == 0) {
 				sb.append('{');
 			} else {
 				sb.append(", ");
 			}
-			sb.append(keys[i]).append('=').append(value == this ? "(this Map)" : value);
+			sb.append(keys[i]).append('=').append(value == NULL ? null : value == this ? "(this Map)" : value);
 		}
 		return sb.append('}').toString();
 	};
@@ -308,7 +352,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 		final Object[] values = this.values;
 		if (value == null) {
 			for (int i = 0; i < capacity; i++) {
-				if (values[i] == null) return i;
+				if (values[i] == NULL) return i;
 			}
 			return -1;
 		} else {
@@ -352,7 +396,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 		@Override
 		public void remove() {
 			if (previousIndex == -1) throw new IllegalStateException();
-			values[previousIndex] = NULL;
+			values[previousIndex] = null;
 			size --;
 			previousIndex = -1;
 		}
@@ -361,7 +405,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 			previousIndex = nextIndex;
 			do {
 				nextIndex++;
-			} while (nextIndex < capacity && values[nextIndex] == NULL);
+			} while (nextIndex < capacity && values[nextIndex] == null);
 		}
 		
 		abstract T get(int index);
@@ -390,7 +434,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 			if (!(o instanceof Map.Entry)) return false;
 			int index = find((Map.Entry<String, V>) o);
 			if (index == -1) return false;
-			values[index] = NULL;
+			values[index] = null;
 			size--;
 			return true;
 		}
@@ -408,7 +452,8 @@ public final class ParameterMap<V> implements Map<String, V> {
 				
 				@Override
 				Map.Entry<String, V> get(int index) {
-					return new Entry<V>(keys[index], (V) values[index]);
+					final Object obj = values[index];
+					return new Entry<V>(keys[index], obj == NULL ? null : (V) obj);
 				}
 				
 			};
@@ -418,8 +463,9 @@ public final class ParameterMap<V> implements Map<String, V> {
 			final String key = entry.getKey();
 			final int index = cons.indexOf(key);
 			if (index == -1) return -1;
-			final Object v = values[index];
-			if (v == NULL) return -1;
+			final Object obj = values[index];
+			if (obj == null) return -1;
+			final Object v = obj == NULL ? null : obj;
 			final Object value = entry.getValue();
 			if (value == v) return index;
 			if (v == null || value == null) return -1;
@@ -455,8 +501,8 @@ public final class ParameterMap<V> implements Map<String, V> {
 		public boolean remove(Object o) {
 			final int i = cons.indexOf(o);
 			if (i < 0) return false;
-			if (values[i] == NULL) return false;
-			values[i] = NULL;
+			if (values[i] == null) return false;
+			values[i] = null;
 			size--;
 			return true;
 		}
@@ -501,7 +547,7 @@ public final class ParameterMap<V> implements Map<String, V> {
 		public boolean remove(Object o) {
 			final int i = findValue(o);
 			if (i == -1) return false;
-			values[i] = NULL;
+			values[i] = null;
 			return true;
 		}
 
@@ -511,7 +557,8 @@ public final class ParameterMap<V> implements Map<String, V> {
 				
 				@Override
 				V get(int index) {
-					return (V) values[index];
+					final Object obj = values[index];
+					return obj == NULL ? null : (V) obj;
 				}
 				
 			};
@@ -570,6 +617,31 @@ public final class ParameterMap<V> implements Map<String, V> {
 		
 	}
 	
+	/**
+	 * Strategies by which a {@link Constructor} locates the keys of its maps.
+	 */
+	
+	public enum Lookup {
+		
+		/**
+		 * Keys are located by a binary search over their sorted hash codes.
+		 * This requires no memory beyond the hash codes themselves.
+		 */
+		
+		SORTED,
+		
+		/**
+		 * Keys are located in constant time using a perfect hash table that is
+		 * compiled when the constructor is created. A lookup confirms its
+		 * match with a single string comparison that is skipped when the key
+		 * is the identical (typically interned) string supplied to the
+		 * constructor.
+		 */
+		
+		HASHED
+		
+	}
+	
 	/**
 	 * <p>
 	 * Instances of this class construct new {@link ParameterMap} objects. They take
@@ -591,13 +663,27 @@ public final class ParameterMap<V> implements Map<String, V> {
 		private final String[] keys;
 		//performs the perfect hashing
 		private final PerfectStringHash mph;
+		//null unless lookups are hashed
+		private final PerfectStringTable table;
 		//lazily instantiated
 		private volatile Set<String> keySet = null;
 
-		private Constructor(final String[] keys) {
+		private Constructor(final String[] keys, Lookup lookup) {
 			this.mph = new PerfectStringHash(keys);
 			this.keys = keys;
 			this.capacity = keys.length;
+			//keys have been sorted by the hash, so the table must be built after it
+			this.table = lookup == Lookup.HASHED ? new PerfectStringTable(keys) : null;
+		}
+		
+		/**
+		 * The strategy with which the constructor locates keys.
+		 * 
+		 * @return the lookup strategy
+		 */
+		
+		public Lookup getLookup() {
+			return table == null ? Lookup.SORTED : Lookup.HASHED;
 		}
 
 		/**
@@ -629,10 +715,10 @@ public final class ParameterMap<V> implements Map<String, V> {
 				final String[] pmks = pm.cons.keys;
 				final Object[] pmvs = pm.values;
 				for (int i = 0; i < pmvs.length; i++) {
-					final V value = (V) pmvs[i];
-					if (value == NULL) continue;
+					final Object obj = pmvs[i];
+					if (obj == null) continue;
 					final String key = pmks[i];
-					m.put(key, value);
+					m.put(key, obj == NULL ? null : (V) obj);
 				}
 				return m;
 			} else {
@@ -659,8 +745,15 @@ public final class ParameterMap<V> implements Map<String, V> {
 		}
 
 		int indexOf(final String key) {
+			if (table != null) {
+				final int index = table.indexOf(key);
+				//only keys with colliding hash codes need to be searched for
+				if (index != PerfectStringTable.AMBIGUOUS) return index;
+			}
 			final int index = mph.hashAsInt(key);
-			return index >= 0 && keys[index].equals(key) ? index : -1;
+			if (index < 0) return -1;
+			final String k = keys[index];
+			return k == key || k.equals(key) ? index : -1;
 		}
 		
 	}
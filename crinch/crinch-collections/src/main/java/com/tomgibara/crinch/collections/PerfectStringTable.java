@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+
+// See Belazzougui, Botelho & Dietzfelbinger, "Hash, displace, and compress"
+
+/**
+ * A perfect hash table over a fixed array of strings. Strings are hashed into
+ * buckets and each bucket is assigned a displacement that sends its strings to
+ * otherwise unoccupied slots, so that a lookup reads one displacement and one
+ * slot and confirms the match with a single string comparison.
+ *
+ * Strings that share a hash code cannot be separated by any displacement, so
+ * all such strings occupy a single slot that is reported as
+ * {@link #AMBIGUOUS}; callers must resolve them by other means.
+ *
+ * @author Tom Gibara
+ */
+
+final class PerfectStringTable {
+
+	// statics
+
+	static final int ABSENT = -1;
+	static final int AMBIGUOUS = -2;
+
+	// the number of displacements tried for a bucket before the table is enlarged
+	private static final int MAX_DISPLACEMENT = 1 << 12;
+	private static final int MAX_TABLE_SIZE = 1 << 24;
+
+	private static int bucket(int h, int shift) {
+		return (h * 0x9e3779b9) >>> shift;
+	}
+
+	private static int slot(int h, int displacement, int mask) {
+		int x = h + displacement * 0x7feb352d;
+		x ^= x >>> 16;
+		x *= 0x846ca68b;
+		x ^= x >>> 15;
+		return x & mask;
+	}
+
+	// returns the slots, or null if some bucket could not be placed
+	private static int[] place(int[] hashes, int[] indices, int count, int shift, int[] displacements, int tableSize) {
+		final int bucketCount = displacements.length;
+		final int mask = tableSize - 1;
+		// group the hashes by bucket
+		final int[] starts = new int[bucketCount + 1];
+		for (int i = 0; i < count; i++) starts[bucket(hashes[i], shift) + 1]++;
+		int maxSize = 0;
+		for (int b = 0; b < bucketCount; b++) {
+			maxSize = Math.max(maxSize, starts[b + 1]);
+			starts[b + 1] += starts[b];
+		}
+		final int[] members = new int[count];
+		final int[] fill = starts.clone();
+		for (int i = 0; i < count; i++) members[fill[bucket(hashes[i], shift)]++] = i;
+
+		final int[] slots = new int[tableSize];
+		Arrays.fill(slots, ABSENT);
+		final int[] trial = new int[maxSize];
+		// the largest buckets are the hardest to place, so place them first
+		for (int size = maxSize; size > 0; size--) {
+			for (int b = 0; b < bucketCount; b++) {
+				final int start = starts[b];
+				if (starts[b + 1] - start != size) continue;
+				int d = 0;
+				for (; d < MAX_DISPLACEMENT; d++) {
+					int k = 0;
+					for (; k < size; k++) {
+						final int s = slot(hashes[members[start + k]], d, mask);
+						if (slots[s] != ABSENT) break;
+						int j = 0;
+						while (j < k && trial[j] != s) j++;
+						if (j < k) break;
+						trial[k] = s;
+					}
+					if (k == size) break;
+				}
+				if (d == MAX_DISPLACEMENT) return null;
+				displacements[b] = d;
+				for (int k = 0; k < size; k++) slots[trial[k]] = indices[members[start + k]];
+			}
+		}
+		return slots;
+	}
+
+	// fields
+
+	private final String[] keys;
+	private final int shift;
+	private final int[] displacements;
+	private final int mask;
+	private final int[] slots;
+
+	// constructors
+
+	PerfectStringTable(String[] keys) {
+		final int length = keys.length;
+		if (length == 0) throw new IllegalArgumentException("no keys");
+		// collect the distinct hash codes with the index of their key
+		final int[] hashes = new int[length];
+		for (int i = 0; i < length; i++) hashes[i] = keys[i].hashCode();
+		final int[] distinct = hashes.clone();
+		Arrays.sort(distinct);
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (count == 0 || distinct[i] != distinct[count - 1]) distinct[count++] = distinct[i];
+		}
+		final int[] indices = new int[count];
+		Arrays.fill(indices, ABSENT);
+		for (int i = 0; i < length; i++) {
+			final int j = Arrays.binarySearch(distinct, 0, count, hashes[i]);
+			indices[j] = indices[j] == ABSENT ? i : AMBIGUOUS;
+		}
+
+		final int bucketBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(count - 1));
+		final int shift = 32 - bucketBits;
+		final int[] displacements = new int[1 << bucketBits];
+		int tableSize = displacements.length << 1;
+		int[] slots;
+		while ((slots = place(distinct, indices, count, shift, displacements, tableSize)) == null) {
+			if (tableSize == MAX_TABLE_SIZE) throw new IllegalStateException("could not construct table");
+			tableSize <<= 1;
+		}
+		this.keys = keys;
+		this.shift = shift;
+		this.displacements = displacements;
+		this.mask = tableSize - 1;
+		this.slots = slots;
+	}
+
+	// methods
+
+	/**
+	 * The index of a key in the array from which the table was constructed.
+	 *
+	 * @param key
+	 *            a non-null string
+	 * @return the index of the key, {@link #ABSENT} if the string is not a key
+	 *         or {@link #AMBIGUOUS} if the table cannot determine the index
+	 */
+
+	int indexOf(String key) {
+		final int h = key.hashCode();
+		final int index = slots[slot(h, displacements[bucket(h, shift)], mask)];
+		if (index < 0) return index;
+		final String k = keys[index];
+		// interned keys match without comparing characters
+		return k == key || k.equals(key) ? index : ABSENT;
+	}
+
+	int getTableSize() {
+		return slots.length;
+	}
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.MultiHash;
+
+// See Almeida, Baquero, Preguica & Hutchison, "Scalable Bloom Filters"
+
+/**
+ * <p>
+ * A Bloom filter that grows as elements are added to it while keeping its
+ * false positive probability below a fixed bound. Elements are added to the
+ * most recent of a chain of {@link BasicBloomFilter}s; when that filter has
+ * received as many elements as it was sized for, a new filter is appended
+ * with a capacity that is larger by the growth factor and an error
+ * probability that is smaller by the tightening ratio. Since the error
+ * probabilities form a geometric series, the overall false positive
+ * probability never exceeds the bound supplied at construction.
+ * </p>
+ *
+ * <p>
+ * Because its capacity is not fixed, this class does not implement the
+ * {@link BloomFilter} interface. Its state can be persisted with
+ * {@link #write(BitWriter)} and restored with {@link #read(BitReader, Hash)}.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element contained in the filter
+ */
+
+public class ScalableBloomFilter<E> {
+
+	// statics
+
+	public static final int DEFAULT_GROWTH = 2;
+
+	public static final double DEFAULT_TIGHTENING = 0.85;
+
+	/**
+	 * Reads a filter previously written with {@link #write(BitWriter)}.
+	 *
+	 * @param reader
+	 *            the reader from which the filter is read
+	 * @param hash
+	 *            a hash equal to that used by the filter that was written
+	 * @return the filter
+	 */
+
+	public static <E> ScalableBloomFilter<E> read(BitReader reader, Hash<? super E> hash) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		final int initialCapacity = reader.read(32);
+		final double bound = Double.longBitsToDouble(reader.readLong(64));
+		final int growth = reader.read(32);
+		final double tightening = Double.longBitsToDouble(reader.readLong(64));
+		final ScalableBloomFilter<E> filter = new ScalableBloomFilter<E>(hash, initialCapacity, bound, growth, tightening);
+		final int count = reader.read(32);
+		for (int i = 0; i < count; i++) {
+			final int size = reader.read(32);
+			final Stage<E> stage = filter.newStage(i, reader);
+			stage.size = size;
+			filter.stages.add(stage);
+		}
+		return filter;
+	}
+
+	private static <T> MultiHash<T> multiHash(Hash<T> hash, int bits) {
+		return new EnhancedDoubleMultiHash<T>(hash, bits - 1);
+	}
+
+	// fields
+
+	private final Hash<? super E> hash;
+	private final int initialCapacity;
+	private final double bound;
+	private final int growth;
+	private final double tightening;
+	private final List<Stage<E>> stages = new ArrayList<Stage<E>>();
+
+	// constructors
+
+	/**
+	 * Creates a filter that grows by the default factor with the default
+	 * tightening ratio.
+	 *
+	 * @param hash
+	 *            a hash over the full range of int or long values
+	 * @param initialCapacity
+	 *            the number of elements the first filter should accommodate
+	 * @param falsePositiveProbability
+	 *            the bound on the false positive probability of the filter
+	 */
+
+	public ScalableBloomFilter(Hash<? super E> hash, int initialCapacity, double falsePositiveProbability) {
+		this(hash, initialCapacity, falsePositiveProbability, DEFAULT_GROWTH, DEFAULT_TIGHTENING);
+	}
+
+	/**
+	 * Creates a filter.
+	 *
+	 * @param hash
+	 *            a hash over the full range of int or long values
+	 * @param initialCapacity
+	 *            the number of elements the first filter should accommodate
+	 * @param falsePositiveProbability
+	 *            the bound on the false positive probability of the filter
+	 * @param growth
+	 *            the factor by which the capacity of each successive filter
+	 *            increases, at least 1
+	 * @param tightening
+	 *            the factor by which the error probability of each successive
+	 *            filter decreases, between 0 and 1 exclusive
+	 */
+
+	public ScalableBloomFilter(Hash<? super E> hash, int initialCapacity, double falsePositiveProbability, int growth, double tightening) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (initialCapacity < 1) throw new IllegalArgumentException("initialCapacity not positive");
+		if (!(falsePositiveProbability > 0.0) || falsePositiveProbability >= 1.0) throw new IllegalArgumentException("falsePositiveProbability not between 0 and 1 exclusive");
+		if (growth < 1) throw new IllegalArgumentException("growth not positive");
+		if (!(tightening > 0.0) || tightening >= 1.0) throw new IllegalArgumentException("tightening not between 0 and 1 exclusive");
+		this.hash = hash;
+		this.initialCapacity = initialCapacity;
+		this.bound = falsePositiveProbability;
+		this.growth = growth;
+		this.tightening = tightening;
+		// fail early if the hash is unsuitable
+		newStage(0, null);
+	}
+
+	// accessors
+
+	/**
+	 * The bound on the false positive probability supplied at construction.
+	 *
+	 * @return the false positive probability the filter will not exceed
+	 */
+
+	public double getFalsePositiveBound() {
+		return bound;
+	}
+
+	public int getGrowth() {
+		return growth;
+	}
+
+	public double getTightening() {
+		return tightening;
+	}
+
+	/**
+	 * The number of Bloom filters in the chain.
+	 *
+	 * @return the number of filters, zero if no element has been added
+	 */
+
+	public int getFilterCount() {
+		return stages.size();
+	}
+
+	/**
+	 * The number of elements that have been added to the filter, excluding
+	 * those that the filter reported as possibly contained when added.
+	 *
+	 * @return the number of elements added
+	 */
+
+	public long getSize() {
+		long size = 0L;
+		for (Stage<E> stage : stages) size += stage.size;
+		return size;
+	}
+
+	/**
+	 * The total number of bits in all of the filters.
+	 *
+	 * @return the number of bits used
+	 */
+
+	public long getBitCount() {
+		long count = 0L;
+		for (Stage<E> stage : stages) count += stage.filter.getCapacity();
+		return count;
+	}
+
+	// methods
+
+	public boolean mightContain(E element) {
+		// later filters are larger and contain more elements
+		for (int i = stages.size() - 1; i >= 0; i--) {
+			if (stages.get(i).filter.mightContain(element)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds an element to the filter unless it might already be contained.
+	 *
+	 * @param element
+	 *            the element to add
+	 * @return true if the element was added, false if the filter might already
+	 *         have contained it
+	 */
+
+	public boolean add(E element) {
+		if (mightContain(element)) return false;
+		Stage<E> stage = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+		if (stage == null || stage.size >= stage.capacity) {
+			stage = newStage(stages.size(), null);
+			stages.add(stage);
+		}
+		stage.filter.add(element);
+		stage.size++;
+		return true;
+	}
+
+	public boolean addAll(Iterable<? extends E> elements) {
+		if (elements == null) throw new IllegalArgumentException("null elements");
+		boolean mutated = false;
+		for (E element : elements) if ( add(element) ) mutated = true;
+		return mutated;
+	}
+
+	public boolean isEmpty() {
+		return stages.isEmpty();
+	}
+
+	public void clear() {
+		stages.clear();
+	}
+
+	/**
+	 * The probability that {@link #mightContain(Object)} returns true for an
+	 * element that was not added, estimated from the number of bits set in
+	 * each filter of the chain.
+	 *
+	 * @return a probability not greater than one
+	 */
+
+	public double getFalsePositiveProbability() {
+		double p = 1.0;
+		for (Stage<E> stage : stages) {
+			p *= 1.0 - stage.filter.getFalsePositiveProbability();
+		}
+		return 1.0 - p;
+	}
+
+	/**
+	 * Writes the state of the filter. The hash is not recorded and must be
+	 * supplied when the filter is read.
+	 *
+	 * @param writer
+	 *            the writer to which the filter is written
+	 * @return the number of bits written
+	 */
+
+	public int write(BitWriter writer) {
+		if (writer == null) throw new IllegalArgumentException("null writer");
+		int c = writer.write(initialCapacity, 32);
+		c += writer.write(Double.doubleToLongBits(bound), 64);
+		c += writer.write(growth, 32);
+		c += writer.write(Double.doubleToLongBits(tightening), 64);
+		c += writer.write(stages.size(), 32);
+		for (Stage<E> stage : stages) {
+			c += writer.write(stage.size, 32);
+			c += stage.filter.getBitVector().write(writer);
+		}
+		return c;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "ScalableBloomFilter filters: " + stages.size() + ", size: " + getSize() + ", bits: " + getBitCount() + ", false positive probability: " + getFalsePositiveProbability();
+	}
+
+	// private utility methods
+
+	// the stage's bits are read from the reader if one is supplied
+	private Stage<E> newStage(int index, BitReader reader) {
+		final double capacity = initialCapacity * Math.pow(growth, index);
+		// the error probabilities of the stages sum to the bound
+		final double p = bound * (1.0 - tightening) * Math.pow(tightening, index);
+		final int hashCount = Math.max(1, (int) Math.ceil(-Math.log(p) / Math.log(2.0)));
+		final double bits = Math.ceil(-hashCount * capacity / Math.log(1.0 - Math.pow(p, 1.0 / hashCount)));
+		if (capacity > Integer.MAX_VALUE || bits > Integer.MAX_VALUE) throw new IllegalStateException("filter too large");
+		final BitVector vector;
+		if (reader == null) {
+			vector = null;
+		} else {
+			vector = new BitVector((int) bits);
+			vector.read(reader);
+		}
+		final BasicBloomFilter<E> filter = new BasicBloomFilter<E>(vector, multiHash(hash, (int) bits), hashCount);
+		return new Stage<E>(filter, (int) capacity);
+	}
+
+	// inner classes
+
+	private static final class Stage<E> {
+
+		final BasicBloomFilter<E> filter;
+		final int capacity;
+		int size = 0;
+
+		Stage(BasicBloomFilter<E> filter, int capacity) {
+			this.filter = filter;
+			this.capacity = capacity;
+		}
+
+	}
+
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitWriter;
+
+// See Metwally, Agrawal & El Abbadi, "Efficient Computation of Frequent and Top-k Elements in Data Streams"
+
+/**
+ * <p>
+ * Tracks the most frequent elements of a stream using the space-saving
+ * algorithm. At most a fixed number of elements are monitored; when a new
+ * element is encountered and no capacity remains, it replaces the monitored
+ * element with the smallest count and inherits that count as its potential
+ * error.
+ * </p>
+ *
+ * <p>
+ * Every element that occurs more than <code>n / capacity</code> times in a
+ * stream of n elements is guaranteed to be monitored. The count reported for
+ * a monitored element never underestimates its true count and overestimates
+ * it by at most the reported error.
+ * </p>
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element being counted
+ */
+
+public class SpaceSaving<E> {
+
+	// statics
+
+	/**
+	 * Reads a tracker previously written with
+	 * {@link #write(BitWriter, ElementSerializer)}.
+	 *
+	 * @param reader
+	 *            the reader from which the tracker is read
+	 * @param serializer
+	 *            reads the monitored elements
+	 * @return the tracker
+	 */
+
+	public static <E> SpaceSaving<E> read(BitReader reader, ElementSerializer<E> serializer) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		final int capacity = reader.read(32);
+		final SpaceSaving<E> tracker = new SpaceSaving<E>(capacity);
+		tracker.totalCount = reader.readLong(64);
+		final int size = reader.read(32);
+		if (size < 0 || size > capacity) throw new IllegalArgumentException("invalid size");
+		for (int i = 0; i < size; i++) {
+			final E element = serializer.read(reader);
+			final long count = reader.readLong(64);
+			final long error = reader.readLong(64);
+			final Counter<E> counter = new Counter<E>(element, count, error);
+			if (tracker.counters.put(element, counter) != null) throw new IllegalArgumentException("duplicate element");
+			tracker.heap[i] = counter;
+			counter.index = i;
+		}
+		tracker.size = size;
+		// the counters were written in heap order
+		for (int i = 1; i < size; i++) {
+			if (tracker.heap[(i - 1) >> 1].count > tracker.heap[i].count) throw new IllegalArgumentException("invalid ordering");
+		}
+		return tracker;
+	}
+
+	// fields
+
+	private final int capacity;
+	private final Map<E, Counter<E>> counters;
+	// a min-heap of counters ordered by count
+	private final Counter<E>[] heap;
+	private int size = 0;
+	private long totalCount = 0L;
+
+	// constructors
+
+	/**
+	 * Creates a tracker that monitors up to the specified number of elements.
+	 *
+	 * @param capacity
+	 *            the maximum number of elements monitored
+	 */
+
+	@SuppressWarnings("unchecked")
+	public SpaceSaving(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity not positive");
+		this.capacity = capacity;
+		counters = new HashMap<E, Counter<E>>(capacity * 2);
+		heap = new Counter[capacity];
+	}
+
+	// accessors
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The number of elements currently monitored.
+	 *
+	 * @return the number of monitored elements, never more than the capacity
+	 */
+
+	public int size() {
+		return size;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	// methods
+
+	public void offer(E element) {
+		offer(element, 1L);
+	}
+
+	/**
+	 * Counts a number of occurrences of an element.
+	 *
+	 * @param element
+	 *            the element to count, possibly null
+	 * @param count
+	 *            the number of occurrences, not negative
+	 * @throws IllegalStateException
+	 *             if the total count would overflow
+	 */
+
+	public void offer(E element, long count) {
+		if (count < 0L) throw new IllegalArgumentException("negative count");
+		// no counter exceeds the total count, so this guards every counter
+		if (totalCount + count < 0L) throw new IllegalStateException("count overflow");
+		totalCount += count;
+		Counter<E> counter = counters.get(element);
+		if (counter == null && size < capacity) {
+			counter = new Counter<E>(element, count, 0L);
+			counters.put(element, counter);
+			siftUp(size++, counter);
+			return;
+		}
+		if (counter == null) {
+			// replace the least frequent element
+			counter = heap[0];
+			counters.remove(counter.element);
+			counter.element = element;
+			counter.error = counter.count;
+			counters.put(element, counter);
+		}
+		counter.count += count;
+		siftDown(counter.index);
+	}
+
+	/**
+	 * The count recorded for an element.
+	 *
+	 * @param element
+	 *            any element
+	 * @return the count of the element, or zero if it is not monitored
+	 */
+
+	public long getCount(E element) {
+		final Counter<E> counter = counters.get(element);
+		return counter == null ? 0L : counter.count;
+	}
+
+	/**
+	 * The monitored elements with the highest counts, in decreasing order of
+	 * count.
+	 *
+	 * @param k
+	 *            the maximum number of elements to return
+	 * @return a list of at most k counters
+	 */
+
+	public List<Counter<E>> getTop(int k) {
+		if (k < 0) throw new IllegalArgumentException("negative k");
+		final Counter<E>[] sorted = Arrays.copyOf(heap, size);
+		Arrays.sort(sorted, Collections.reverseOrder());
+		final int length = Math.min(k, size);
+		final List<Counter<E>> list = new ArrayList<Counter<E>>(length);
+		for (int i = 0; i < length; i++) {
+			list.add(sorted[i].copy());
+		}
+		return list;
+	}
+
+	public void clear() {
+		counters.clear();
+		Arrays.fill(heap, 0, size, null);
+		size = 0;
+		totalCount = 0L;
+	}
+
+	/**
+	 * Writes the state of the tracker.
+	 *
+	 * @param writer
+	 *            the writer to which the tracker is written
+	 * @param serializer
+	 *            writes the monitored elements
+	 * @return the number of bits written
+	 */
+
+	public int write(BitWriter writer, ElementSerializer<? super E> serializer) {
+		if (writer == null) throw new IllegalArgumentException("null writer");
+		if (serializer == null) throw new IllegalArgumentException("null serializer");
+		int c = writer.write(capacity, 32);
+		c += writer.write(totalCount, 64);
+		c += writer.write(size, 32);
+		for (int i = 0; i < size; i++) {
+			final Counter<E> counter = heap[i];
+			c += serializer.write(writer, counter.element);
+			c += writer.write(counter.count, 64);
+			c += writer.write(counter.error, 64);
+		}
+		return c;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return getTop(size).toString();
+	}
+
+	// private utility methods
+
+	// new counters are added at the bottom of the heap
+	private void siftUp(int index, Counter<E> counter) {
+		final Counter<E>[] heap = this.heap;
+		while (index > 0) {
+			final int parent = (index - 1) >> 1;
+			if (heap[parent].count <= counter.count) break;
+			heap[index] = heap[parent];
+			heap[index].index = index;
+			index = parent;
+		}
+		heap[index] = counter;
+		counter.index = index;
+	}
+
+	// counts only ever increase, so existing counters only ever move down the heap
+	private void siftDown(int index) {
+		final Counter<E>[] heap = this.heap;
+		final Counter<E> counter = heap[index];
+		while (true) {
+			int child = (index << 1) + 1;
+			if (child >= size) break;
+			if (child + 1 < size && heap[child + 1].count < heap[child].count) child++;
+			if (heap[child].count >= counter.count) break;
+			heap[index] = heap[child];
+			heap[index].index = index;
+			index = child;
+		}
+		heap[index] = counter;
+		counter.index = index;
+	}
+
+	// inner classes
+
+	/**
+	 * Writes and reads elements so that a tracker can be serialized.
+	 *
+	 * @param <E>
+	 *            the type of element serialized
+	 */
+
+	public interface ElementSerializer<E> {
+
+		int write(BitWriter writer, E element);
+
+		E read(BitReader reader);
+
+	}
+
+	/**
+	 * The count recorded for a monitored element.
+	 *
+	 * @param <E>
+	 *            the type of element counted
+	 */
+
+	public static final class Counter<E> implements Comparable<Counter<E>> {
+
+		E element;
+		long count;
+		long error;
+		int index;
+
+		Counter(E element, long count, long error) {
+			this.element = element;
+			this.count = count;
+			this.error = error;
+		}
+
+		public E getElement() {
+			return element;
+		}
+
+		/**
+		 * The recorded count, which is never less than the true count.
+		 *
+		 * @return the count
+		 */
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * The maximum amount by which the count may exceed the true count.
+		 *
+		 * @return the error
+		 */
+
+		public long getError() {
+			return error;
+		}
+
+		/**
+		 * The number of occurrences of the element that are guaranteed to
+		 * have been counted.
+		 *
+		 * @return the count less the error
+		 */
+
+		public long getGuaranteedCount() {
+			return count - error;
+		}
+
+		@Override
+		public int compareTo(Counter<E> that) {
+			if (this.count != that.count) return this.count < that.count ? -1 : 1;
+			if (this.error != that.error) return this.error > that.error ? -1 : 1;
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return element + ": " + count + " (error " + error + ")";
+		}
+
+		Counter<E> copy() {
+			return new Counter<E>(element, count, error);
+		}
+
+	}
+
+}
@@ -146,6 +146,24 @@ public class BasicBloomFilterTest extends TestCase {
 		}
 	}
 	
+	public void testAddHashes() {
+		BasicBloomFilter<Object> b1 = new BasicBloomFilter<Object>(sha1Hash, 10);
+		BasicBloomFilter<Object> b2 = new BasicBloomFilter<Object>(sha1Hash, 10);
+		for (int i = 0; i < 10; i++) {
+			int[] hashes = b2.getMultiHash().hashAsInts(i, 10);
+			assertEquals(b1.mightContain(i), b2.mightContainHashes(hashes));
+			assertEquals(b1.add(i), b2.addHashes(hashes));
+			assertTrue(b2.mightContainHashes(hashes));
+		}
+		assertEquals(b1, b2);
+		try {
+			b2.addHashes(new int[9]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+	
 	public void testAddAll() {
 		BasicBloomFilter<Object> b1 = new BasicBloomFilter<Object>(sha1Hash, 10);
 		BasicBloomFilter<Object> b2 = new BasicBloomFilter<Object>(sha1Hash, 10);
@@ -184,4 +202,52 @@ public class BasicBloomFilterTest extends TestCase {
 			if (b.clone().addAll(vs)) assertFalse(b.mightContainAll(vs));
 		}
 	}
+	
+	public void testAddAllArray() {
+		BasicBloomFilter<Object> b1 = new BasicBloomFilter<Object>(sha1Hash, 3);
+		BasicBloomFilter<Object> b2 = new BasicBloomFilter<Object>(sha1Hash, 3);
+		Object[] values = new Object[150];
+		for (int i = 0; i < values.length; i++) values[i] = i;
+		for (int i = 10; i < 140; i++) b1.add(i);
+		assertTrue(b2.addAll(values, 10, 130));
+		assertTrue(b1.equals(b2));
+		assertFalse(b2.addAll(values, 10, 130));
+		assertFalse(b2.addAll(values, 0, 0));
+	}
+	
+	public void testMightContainEach() {
+		BasicBloomFilter<Object> b = new BasicBloomFilter<Object>(sha1Hash, 3);
+		Object[] values = new Object[300];
+		for (int i = 0; i < values.length; i++) values[i] = i;
+		assertTrue(b.mightContainEach(values, 0, values.length).isAllZeros());
+		for (int i = 0; i < 100; i++) b.add(i);
+		checkMightContainEach(b, values);
+	}
+	
+	// compares the batch results with those for each element
+	static <E> void checkMightContainEach(BloomFilter<E> filter, E[] elements) {
+		int length = elements.length;
+		int[][] ranges = { {0, length}, {0, 0}, {1, 63}, {3, 64}, {5, 65}, {length - 130, 130} };
+		for (int[] range : ranges) {
+			int off = range[0];
+			int len = range[1];
+			BitVector results = filter.mightContainEach(elements, off, len);
+			assertEquals(len, results.size());
+			for (int i = 0; i < len; i++) {
+				assertEquals(filter.mightContain(elements[off + i]), results.getBit(i));
+			}
+		}
+		try {
+			filter.mightContainEach(elements, 1, length);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			/* expected */
+		}
+		try {
+			filter.mightContainEach(null, 0, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+
+public class BlockedBloomFilterTest extends TestCase {
+
+	static final Hash<Integer> hash = new XxHash64Hash<Integer>(CountMinSketchTest.source);
+
+	public void testSizing() {
+		assertEquals(0.0, BlockedBloomFilter.falsePositiveProbability(10, 0));
+		double previous = 0.0;
+		for (long n = 100; n <= 100000; n *= 10) {
+			double p = BlockedBloomFilter.falsePositiveProbability(100, n);
+			assertTrue(p > previous);
+			previous = p;
+		}
+		int blocks = BlockedBloomFilter.blockCountFor(100000, 0.01);
+		assertTrue(BlockedBloomFilter.falsePositiveProbability(blocks, 100000) <= 0.01);
+		assertTrue(BlockedBloomFilter.falsePositiveProbability(blocks - 1, 100000) > 0.01);
+		// blocking costs more bits than the optimal ~9.6 bits per element
+		double bitsPerElement = blocks * (double) BlockedBloomFilter.BLOCK_SIZE / 100000;
+		assertTrue(bitsPerElement > 9.6);
+		assertTrue(bitsPerElement < 14.0);
+	}
+
+	public void testFalsePositives() {
+		int n = 50000;
+		BlockedBloomFilter<Integer> filter = new BlockedBloomFilter<Integer>(hash, BlockedBloomFilter.blockCountFor(n, 0.02));
+		assertTrue(filter.isEmpty());
+		for (int i = 0; i < n; i++) filter.add(i);
+		assertFalse(filter.isEmpty());
+		for (int i = 0; i < n; i++) assertTrue(filter.mightContain(i));
+		int positives = 0;
+		int trials = 200000;
+		for (int i = n; i < n + trials; i++) {
+			if (filter.mightContain(i)) positives++;
+		}
+		double rate = (double) positives / trials;
+		double predicted = BlockedBloomFilter.falsePositiveProbability(filter.getBlockCount(), n);
+		assertEquals(predicted, rate, predicted * 0.2);
+		assertEquals(predicted, filter.getFalsePositiveProbability(), predicted * 0.1);
+		filter.clear();
+		assertTrue(filter.isEmpty());
+	}
+
+	public void testAddAll() {
+		BlockedBloomFilter<Integer> a = new BlockedBloomFilter<Integer>(hash, 16);
+		BlockedBloomFilter<Integer> b = new BlockedBloomFilter<Integer>(hash, 16);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(a.add(i));
+			b.add(i + 50);
+		}
+		assertFalse(a.add(0));
+		assertFalse(a.containsAll(b));
+		BlockedBloomFilter<Integer> c = a.clone();
+		assertTrue(c.addAll(b));
+		assertFalse(c.addAll(b));
+		assertTrue(c.containsAll(a));
+		assertTrue(c.containsAll(b));
+		for (int i = 0; i < 150; i++) assertTrue(c.mightContain(i));
+		try {
+			a.addAll(new BlockedBloomFilter<Integer>(hash, 8));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testMightContainEach() {
+		BlockedBloomFilter<Integer> filter = new BlockedBloomFilter<Integer>(hash, 8);
+		Integer[] values = new Integer[3000];
+		for (int i = 0; i < values.length; i++) values[i] = i;
+		assertTrue(filter.addAll(values, 0, 500));
+		BasicBloomFilterTest.checkMightContainEach(filter, values);
+	}
+
+	public void testBitVector() {
+		BlockedBloomFilter<Integer> filter = new BlockedBloomFilter<Integer>(hash, 4);
+		for (int i = 0; i < 20; i++) filter.add(i);
+		BitVector bits = filter.getBitVector();
+		assertEquals(4 * BlockedBloomFilter.BLOCK_SIZE, bits.size());
+		assertEquals(filter.getCapacity(), bits.size());
+		assertFalse(bits.isMutable());
+		BlockedBloomFilter<Integer> copy = new BlockedBloomFilter<Integer>(bits, hash);
+		assertEquals(filter, copy);
+		assertEquals(filter.hashCode(), copy.hashCode());
+		// each element sets at most one bit in each word of its block
+		assertTrue(bits.countOnes() <= 20 * filter.getHashCount());
+	}
+
+}
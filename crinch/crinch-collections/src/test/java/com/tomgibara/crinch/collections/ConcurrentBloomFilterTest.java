@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+
+public class ConcurrentBloomFilterTest extends TestCase {
+
+	// an odd size exercises the final partial word
+	static final MultiHash<Integer> multiHash = new EnhancedDoubleMultiHash<Integer>(new Murmur3_32Hash<Integer>(CountMinSketchTest.source), 10006);
+
+	public void testMatchesBasic() {
+		ConcurrentBloomFilter<Integer> concurrent = new ConcurrentBloomFilter<Integer>(multiHash, 5);
+		BasicBloomFilter<Integer> basic = new BasicBloomFilter<Integer>(multiHash, 5);
+		assertTrue(concurrent.isEmpty());
+		assertEquals(basic.getCapacity(), concurrent.getCapacity());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(basic.add(i), concurrent.add(i));
+		}
+		assertFalse(concurrent.isEmpty());
+		assertEquals(basic, concurrent);
+		assertEquals(concurrent, basic);
+		assertEquals(basic.hashCode(), concurrent.hashCode());
+		assertEquals(basic.getFalsePositiveProbability(), concurrent.getFalsePositiveProbability());
+		for (int i = 0; i < 2000; i++) {
+			assertEquals(basic.mightContain(i), concurrent.mightContain(i));
+		}
+		concurrent.clear();
+		assertTrue(concurrent.isEmpty());
+	}
+
+	public void testBatches() {
+		ConcurrentBloomFilter<Integer> concurrent = new ConcurrentBloomFilter<Integer>(multiHash, 5);
+		BasicBloomFilter<Integer> basic = new BasicBloomFilter<Integer>(multiHash, 5);
+		Integer[] values = new Integer[3000];
+		for (int i = 0; i < values.length; i++) values[i] = i;
+		assertTrue(concurrent.addAll(values, 100, 1000));
+		assertFalse(concurrent.addAll(values, 100, 1000));
+		assertTrue(basic.addAll(values, 100, 1000));
+		assertEquals(basic, concurrent);
+		BasicBloomFilterTest.checkMightContainEach(concurrent, values);
+	}
+
+	public void testSnapshot() {
+		ConcurrentBloomFilter<Integer> filter = new ConcurrentBloomFilter<Integer>(multiHash, 5);
+		filter.add(1);
+		BitVector snapshot = filter.getBitVector();
+		assertFalse(snapshot.isMutable());
+		filter.add(2);
+		assertFalse(snapshot.equals(filter.getBitVector()));
+		ConcurrentBloomFilter<Integer> copy = new ConcurrentBloomFilter<Integer>(snapshot, multiHash, 5);
+		assertTrue(copy.mightContain(1));
+		assertTrue(filter.containsAll(copy));
+		assertFalse(copy.containsAll(filter));
+	}
+
+	public void testAddAll() {
+		ConcurrentBloomFilter<Integer> a = new ConcurrentBloomFilter<Integer>(multiHash, 5);
+		BasicBloomFilter<Integer> b = new BasicBloomFilter<Integer>(multiHash, 5);
+		for (int i = 0; i < 100; i++) {
+			a.add(i);
+			b.add(i + 50);
+		}
+		assertTrue(a.addAll(b));
+		assertFalse(a.addAll(b));
+		assertTrue(a.containsAll(b));
+		for (int i = 0; i < 150; i++) {
+			assertTrue(a.mightContain(i));
+		}
+		try {
+			a.addAll(new BasicBloomFilter<Integer>(multiHash, 4));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testConcurrentAdds() throws InterruptedException {
+		final ConcurrentBloomFilter<Integer> filter = new ConcurrentBloomFilter<Integer>(multiHash, 5);
+		final int threadCount = 8;
+		final int perThread = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger misses = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int base = t * perThread;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = base; i < base + perThread; i++) {
+						filter.add(i);
+						if (!filter.mightContain(i)) misses.incrementAndGet();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) thread.join();
+		assertEquals(0, misses.get());
+		BasicBloomFilter<Integer> basic = new BasicBloomFilter<Integer>(multiHash, 5);
+		for (int i = 0; i < threadCount * perThread; i++) {
+			assertTrue(filter.mightContain(i));
+			basic.add(i);
+		}
+		// no bits may be lost to racing updates
+		assertEquals(basic, filter);
+	}
+
+}
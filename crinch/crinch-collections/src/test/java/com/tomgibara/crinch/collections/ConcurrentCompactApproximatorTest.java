@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.lattice.Lattice;
+import com.tomgibara.crinch.lattice.OrderedLattice;
+
+public class ConcurrentCompactApproximatorTest extends TestCase {
+
+	static final Lattice<Integer> lattice = new OrderedLattice<Integer>(1 << 20, 0);
+
+	private static ConcurrentCompactApproximator<Integer, Integer> newApproximator() {
+		return new ConcurrentCompactApproximator<Integer, Integer>(lattice, LongCompactApproximatorTest.multiHash, 4, 16);
+	}
+
+	public void testConcurrentPuts() throws InterruptedException {
+		final ConcurrentCompactApproximator<Integer, Integer> ca = newApproximator();
+		final int threadCount = 8;
+		final int perThread = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int base = t * perThread;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = base; i < base + perThread; i++) {
+						ca.put(i % 1000, i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) thread.join();
+		BasicCompactApproximator<Integer, Integer> basic = new BasicCompactApproximator<Integer, Integer>(lattice, LongCompactApproximatorTest.multiHash, 4);
+		for (int i = 0; i < threadCount * perThread; i++) {
+			basic.put(i % 1000, i);
+		}
+		// no joins may be lost to racing updates
+		assertEquals(basic.getValueList(), ca.getValueList());
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(ca.getSupremum(i) >= i + 3000);
+		}
+	}
+
+	public void testMerge() {
+		ConcurrentCompactApproximator<Integer, Integer> all = newApproximator();
+		ConcurrentCompactApproximator<Integer, Integer> evens = newApproximator();
+		BasicCompactApproximator<Integer, Integer> odds = new BasicCompactApproximator<Integer, Integer>(lattice, LongCompactApproximatorTest.multiHash, 4);
+		for (int i = 0; i < 2000; i++) {
+			all.put(i, i);
+			if ((i & 1) == 0) {
+				evens.put(i, i);
+			} else {
+				odds.put(i, i);
+			}
+		}
+		ConcurrentCompactApproximator<Integer, Integer> merged = newApproximator();
+		merged.merge(evens, 4);
+		assertEquals(evens, merged);
+		merged.merge(odds, 3);
+		assertEquals(all, merged);
+		assertTrue(merged.bounds(odds));
+
+		odds.merge(evens);
+		assertEquals(all.getValueList(), odds.getValueList());
+	}
+
+	public void testBoundedAbove() {
+		ConcurrentCompactApproximator<Integer, Integer> ca = newApproximator();
+		for (int i = 0; i < 100; i++) ca.put(i, i * 100);
+		CompactApproximator<Integer, Integer> bounded = ca.boundedAbove(1000);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(bounded.getSupremum(i) <= 1000);
+			if (i * 100 >= 1000) assertTrue(bounded.asBloomFilter().mightContain(i));
+		}
+		assertTrue(ca.mightContain(50));
+		ca.clear();
+		assertTrue(ca.isEmpty());
+		assertTrue(bounded.isEmpty());
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.HashSource;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+import com.tomgibara.crinch.hashing.ObjectHashSource;
+import com.tomgibara.crinch.hashing.PRNGMultiHash;
+import com.tomgibara.crinch.util.WriteStream;
+
+public class CountMinSketchTest extends TestCase {
+
+	static final HashSource<Integer> source = new HashSource<Integer>() {
+		@Override
+		public void sourceData(Integer value, WriteStream out) {
+			out.writeInt(value);
+		}
+	};
+
+	static MultiHash<Integer> multiHash(int width) {
+		return new EnhancedDoubleMultiHash<Integer>(new Murmur3_32Hash<Integer>(source), width - 1);
+	}
+
+	// counts a skewed stream into the sketch, returning the true counts
+	static int[] populate(CountMinSketch<Integer> sketch, int distinct, int total, long seed) {
+		Random r = new Random(seed);
+		int[] counts = new int[distinct];
+		for (int i = 0; i < total; i++) {
+			int value = (int) (distinct * Math.pow(r.nextDouble(), 3));
+			counts[value]++;
+			sketch.add(value);
+		}
+		return counts;
+	}
+
+	public void testSizing() {
+		assertEquals(272, CountMinSketch.widthFor(0.01));
+		assertEquals(5, CountMinSketch.depthFor(0.01));
+		assertEquals(1, CountMinSketch.depthFor(0.9));
+		try {
+			CountMinSketch.widthFor(0.0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testEstimates() {
+		double epsilon = 0.001;
+		CountMinSketch<Integer> sketch = new CountMinSketch<Integer>(multiHash(CountMinSketch.widthFor(epsilon)), CountMinSketch.depthFor(0.001));
+		assertTrue(sketch.isEmpty());
+		int total = 100000;
+		int[] counts = populate(sketch, 10000, total, 0L);
+		assertEquals(total, sketch.getTotalCount());
+		int exceeded = 0;
+		for (int i = 0; i < counts.length; i++) {
+			long estimate = sketch.estimate(i);
+			assertTrue(estimate >= counts[i]);
+			if (estimate - counts[i] > epsilon * total) exceeded++;
+		}
+		// bound is probabilistic, but should hold almost always
+		assertTrue(exceeded <= counts.length / 100);
+		sketch.clear();
+		assertTrue(sketch.isEmpty());
+		assertEquals(0L, sketch.estimate(0));
+	}
+
+	public void testAddReturnsEstimate() {
+		CountMinSketch<Integer> sketch = new CountMinSketch<Integer>(multiHash(100), 4);
+		assertEquals(5L, sketch.add(7, 5L));
+		assertEquals(6L, sketch.add(7));
+		assertEquals(6L, sketch.estimate(7));
+	}
+
+	public void testMerge() {
+		MultiHash<Integer> multiHash = multiHash(500);
+		CountMinSketch<Integer> a = new CountMinSketch<Integer>(multiHash, 4);
+		CountMinSketch<Integer> b = new CountMinSketch<Integer>(multiHash, 4);
+		int[] ca = populate(a, 2000, 20000, 1L);
+		int[] cb = populate(b, 2000, 20000, 2L);
+		CountMinSketch<Integer> copy = a.clone();
+		assertEquals(a, copy);
+		copy.merge(b);
+		assertEquals(a.getTotalCount() + b.getTotalCount(), copy.getTotalCount());
+		for (int i = 0; i < ca.length; i++) {
+			long estimate = copy.estimate(i);
+			assertTrue(estimate >= ca[i] + cb[i]);
+			assertTrue(estimate >= a.estimate(i) + b.estimate(i));
+		}
+		try {
+			a.merge(new CountMinSketch<Integer>(multiHash, 3));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testMergeOverflow() {
+		MultiHash<Integer> multiHash = multiHash(500);
+		CountMinSketch<Integer> a = new CountMinSketch<Integer>(multiHash, 4);
+		CountMinSketch<Integer> b = new CountMinSketch<Integer>(multiHash, 4);
+		a.add(1, Long.MAX_VALUE - 1L);
+		b.add(2, 2L);
+		CountMinSketch<Integer> copy = a.clone();
+		try {
+			a.merge(b);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(copy, a);
+	}
+
+	public void testAddOverflow() {
+		CountMinSketch<Integer> sketch = new CountMinSketch<Integer>(multiHash(500), 4);
+		sketch.add(1, Long.MAX_VALUE - 1L);
+		CountMinSketch<Integer> copy = sketch.clone();
+		try {
+			sketch.add(2, 2L);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(copy, sketch);
+	}
+
+	public void testShiftedRange() {
+		// the sketch must adjust hashes that are not zero based
+		MultiHash<Object> multiHash = new PRNGMultiHash<Object>("SHA1PRNG", new ObjectHashSource(), new HashRange(1000, 1099));
+		CountMinSketch<Object> sketch = new CountMinSketch<Object>(multiHash, 3);
+		assertEquals(100, sketch.getWidth());
+		for (int i = 0; i < 1000; i++) {
+			sketch.add(i % 10);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertTrue(sketch.estimate(i) >= 100);
+		}
+	}
+
+	public void testReadWrite() {
+		MultiHash<Integer> multiHash = multiHash(300);
+		CountMinSketch<Integer> sketch = new CountMinSketch<Integer>(multiHash, 5);
+		for (int n : new int[] { 0, 10000 }) {
+			populate(sketch, 1000, n, 3L);
+			byte[] bytes = new byte[65536];
+			ByteArrayBitWriter writer = new ByteArrayBitWriter(bytes);
+			int bits = sketch.write(writer);
+			writer.flush();
+			assertTrue(bits > 0);
+			CountMinSketch<Integer> read = CountMinSketch.read(new ByteArrayBitReader(bytes), multiHash);
+			assertEquals(sketch, read);
+			assertEquals(sketch.estimate(0), read.estimate(0));
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+
+public class CountingBloomFilterTest extends TestCase {
+
+	static final MultiHash<Integer> multiHash = new EnhancedDoubleMultiHash<Integer>(new Murmur3_32Hash<Integer>(CountMinSketchTest.source), 9999);
+
+	public void testMatchesBasic() {
+		CountingBloomFilter<Integer> counting = new CountingBloomFilter<Integer>(multiHash, 5);
+		BasicBloomFilter<Integer> basic = new BasicBloomFilter<Integer>(multiHash, 5);
+		assertTrue(counting.isEmpty());
+		for (int i = 0; i < 1000; i++) {
+			counting.add(i);
+			basic.add(i);
+		}
+		assertEquals(basic, counting);
+		assertEquals(basic.getFalsePositiveProbability(), counting.getFalsePositiveProbability());
+		for (int i = 0; i < 2000; i++) {
+			assertEquals(basic.mightContain(i), counting.mightContain(i));
+		}
+		assertTrue(basic.containsAll(counting));
+		assertTrue(counting.containsAll(basic));
+	}
+
+	public void testMightContainEach() {
+		CountingBloomFilter<Integer> counting = new CountingBloomFilter<Integer>(multiHash, 5);
+		Integer[] values = new Integer[3000];
+		for (int i = 0; i < values.length; i++) values[i] = i;
+		assertTrue(counting.addAll(values, 0, 1500));
+		for (int i = 0; i < 500; i++) counting.remove(i);
+		BasicBloomFilterTest.checkMightContainEach(counting, values);
+	}
+
+	public void testSlidingWindow() {
+		CountingBloomFilter<Integer> filter = new CountingBloomFilter<Integer>(multiHash, 5);
+		int window = 500;
+		for (int i = 0; i < 5000; i++) {
+			filter.add(i);
+			if (i >= window) assertTrue(filter.remove(i - window));
+			// nothing in the window may be lost
+			if (i % 250 == 0) {
+				for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+					assertTrue(filter.mightContain(j));
+				}
+			}
+		}
+		for (int i = 5000 - window; i < 5000; i++) filter.remove(i);
+		assertTrue(filter.isEmpty());
+		assertFalse(filter.remove(0));
+	}
+
+	public void testCounts() {
+		CountingBloomFilter<Integer> filter = new CountingBloomFilter<Integer>(multiHash, 3);
+		assertEquals(0, filter.getCount(7));
+		filter.add(7);
+		filter.add(7);
+		assertEquals(2, filter.getCount(7));
+		filter.remove(7);
+		assertEquals(1, filter.getCount(7));
+		for (int i = 0; i < 20; i++) filter.add(7);
+		assertEquals(CountingBloomFilter.MAX_COUNT, filter.getCount(7));
+		// saturated counters are never decremented
+		for (int i = 0; i < 20; i++) filter.remove(7);
+		assertEquals(CountingBloomFilter.MAX_COUNT, filter.getCount(7));
+		assertFalse(filter.isEmpty());
+		filter.clear();
+		assertTrue(filter.isEmpty());
+	}
+
+	public void testAddAll() {
+		CountingBloomFilter<Integer> a = new CountingBloomFilter<Integer>(multiHash, 4);
+		CountingBloomFilter<Integer> b = new CountingBloomFilter<Integer>(multiHash, 4);
+		for (int i = 0; i < 100; i++) {
+			a.add(i);
+			b.add(i + 50);
+		}
+		CountingBloomFilter<Integer> c = a.clone();
+		assertTrue(c.addAll(b));
+		assertEquals(2, c.getCount(75));
+		for (int i = 0; i < 100; i++) c.remove(i);
+		for (int i = 100; i < 150; i++) assertTrue(c.mightContain(i));
+		BasicBloomFilter<Integer> basic = new BasicBloomFilter<Integer>(multiHash, 4);
+		basic.add(-1);
+		assertTrue(a.addAll(basic));
+		assertFalse(a.addAll(basic));
+		assertTrue(a.remove(-1));
+		assertTrue(a.mightContain(-1));
+		basic.addAll(a);
+		assertTrue(basic.containsAll(a));
+	}
+
+}
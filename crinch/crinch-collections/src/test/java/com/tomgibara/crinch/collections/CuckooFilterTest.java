@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+
+public class CuckooFilterTest extends TestCase {
+
+	static final Hash<Integer> hash = new XxHash64Hash<Integer>(CountMinSketchTest.source);
+
+	public void testSizing() {
+		assertEquals(8, CuckooFilter.fingerprintBitsFor(0.1));
+		assertEquals(13, CuckooFilter.fingerprintBitsFor(0.001));
+		assertEquals(1024, CuckooFilter.bucketCountFor(3000));
+		assertEquals(1, CuckooFilter.bucketCountFor(0));
+		try {
+			CuckooFilter.fingerprintBitsFor(1e-6);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testHighLoad() {
+		int n = 95000;
+		CuckooFilter<Integer> filter = new CuckooFilter<Integer>(hash, CuckooFilter.bucketCountFor(n), 12);
+		assertTrue(filter.isEmpty());
+		for (int i = 0; i < n; i++) assertTrue(filter.add(i));
+		assertEquals(n, filter.size());
+		assertTrue(filter.getLoadFactor() > 0.7);
+		for (int i = 0; i < n; i++) assertTrue(filter.mightContain(i));
+		int positives = 0;
+		int trials = 200000;
+		for (int i = n; i < n + trials; i++) {
+			if (filter.mightContain(i)) positives++;
+		}
+		double rate = (double) positives / trials;
+		double estimate = filter.getFalsePositiveProbability();
+		assertEquals(estimate, rate, estimate * 0.2);
+		assertTrue(rate < 8.0 / (1 << 12));
+	}
+
+	public void testRemove() {
+		CuckooFilter<Integer> filter = new CuckooFilter<Integer>(hash, 256, 16);
+		for (int i = 0; i < 900; i++) filter.add(i);
+		for (int i = 0; i < 900; i += 2) assertTrue(filter.remove(i));
+		assertEquals(450, filter.size());
+		for (int i = 1; i < 900; i += 2) assertTrue(filter.mightContain(i));
+		int remaining = 0;
+		for (int i = 0; i < 900; i += 2) if (filter.mightContain(i)) remaining++;
+		assertTrue(remaining < 5);
+		// duplicates are counted
+		filter.add(-1);
+		filter.add(-1);
+		assertTrue(filter.remove(-1));
+		assertTrue(filter.mightContain(-1));
+		assertTrue(filter.remove(-1));
+		filter.clear();
+		assertTrue(filter.isEmpty());
+		assertFalse(filter.remove(1));
+	}
+
+	public void testOverflow() {
+		CuckooFilter<Integer> filter = new CuckooFilter<Integer>(hash, 16, 8);
+		int added = 0;
+		for (int i = 0; i < 100; i++) {
+			if (filter.add(i)) added++;
+		}
+		assertEquals(added, filter.size());
+		assertTrue(added <= filter.getCapacity() + 1);
+		// nothing that was added can be lost
+		int contained = 0;
+		for (int i = 0; i < 100; i++) if (filter.mightContain(i)) contained++;
+		assertTrue(contained >= added);
+		for (int i = 0; i < added; i++) assertTrue(filter.mightContain(i));
+		// removal frees space
+		for (int i = 0; i < 8; i++) assertTrue(filter.remove(i));
+		assertTrue(filter.add(0));
+		assertTrue(filter.mightContain(0));
+	}
+
+}
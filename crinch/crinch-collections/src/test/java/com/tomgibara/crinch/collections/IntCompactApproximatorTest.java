@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.collections.PackedCompactApproximator.Operation;
+
+public class IntCompactApproximatorTest extends TestCase {
+
+	public void testMaxTimestamps() {
+		// odd widths leave unused bits at the top of each long
+		IntCompactApproximator<Integer> ca = new IntCompactApproximator<Integer>(Operation.MAX, 21, LongCompactApproximatorTest.multiHash, 4);
+		Random r = new Random(0L);
+		Map<Integer, Integer> max = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 5000; i++) {
+			int key = r.nextInt(1000);
+			int value = r.nextInt(1 << 21);
+			ca.putInt(key, value);
+			Integer previous = max.get(key);
+			if (previous == null || previous < value) max.put(key, value);
+		}
+		for (Map.Entry<Integer, Integer> entry : max.entrySet()) {
+			assertTrue(ca.getSupremumAsInt(entry.getKey()) >= entry.getValue());
+		}
+		for (int value : ca.getValueList()) {
+			assertTrue(value >= 0 && value < (1 << 21));
+		}
+	}
+
+	public void testFullWidth() {
+		IntCompactApproximator<Integer> ca = new IntCompactApproximator<Integer>(Operation.MAX, 32, LongCompactApproximatorTest.multiHash, 2);
+		ca.putInt(1, -1);
+		assertEquals(-1, ca.getSupremumAsInt(1));
+		assertEquals(Integer.valueOf(-1), ca.getLattice().getTop());
+		assertTrue(ca.asBloomFilter().mightContain(1));
+		try {
+			new IntCompactApproximator<Integer>(Operation.MAX, 33, LongCompactApproximatorTest.multiHash, 2);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IntIntMapTest extends TestCase {
+
+	public void testAgainstHashMap() {
+		Random r = new Random(0L);
+		IntIntMap map = new IntIntMap(4, Integer.MIN_VALUE);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 100000; i++) {
+			int key = r.nextInt(2000) - 1000;
+			int value = r.nextInt();
+			switch (r.nextInt(4)) {
+			case 0:
+			case 1: {
+				Integer previous = expected.put(key, value);
+				assertEquals(previous == null ? Integer.MIN_VALUE : previous, map.put(key, value));
+				break;
+			}
+			case 2: {
+				Integer previous = expected.get(key);
+				int sum = (previous == null ? Integer.MIN_VALUE : previous) + value;
+				expected.put(key, sum);
+				assertEquals(sum, map.add(key, value));
+				break;
+			}
+			case 3: {
+				Integer previous = expected.remove(key);
+				assertEquals(previous == null ? Integer.MIN_VALUE : previous, map.remove(key));
+				break;
+			}
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (int key = -1000; key < 1000; key++) {
+			Integer value = expected.get(key);
+			assertEquals(value != null, map.containsKey(key));
+			assertEquals(value == null ? Integer.MIN_VALUE : value, map.get(key));
+		}
+		int[] keys = map.keys();
+		assertEquals(expected.size(), keys.length);
+		for (int key : keys) assertTrue(expected.containsKey(key));
+	}
+
+	public void testCounting() {
+		IntIntMap map = new IntIntMap();
+		for (int i = 0; i < 100000; i++) map.add(i % 1000, 1);
+		assertEquals(1000, map.size());
+		for (int i = 0; i < 1000; i++) assertEquals(100, map.get(i));
+		assertEquals(0, map.get(1000));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.get(0));
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.collections.PackedCompactApproximator.Operation;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.lattice.Lattice;
+import com.tomgibara.crinch.lattice.OrderedLattice;
+
+public class LongCompactApproximatorTest extends TestCase {
+
+	static final MultiHash<Integer> multiHash = new EnhancedDoubleMultiHash<Integer>(new Murmur3_32Hash<Integer>(CountMinSketchTest.source), 9999);
+
+	public void testMax() {
+		LongCompactApproximator<Integer> ca = new LongCompactApproximator<Integer>(Operation.MAX, 40, multiHash, 4);
+		assertTrue(ca.isEmpty());
+		assertEquals(10000, ca.getCapacity());
+		assertEquals(Long.valueOf((1L << 40) - 1), ca.getLattice().getTop());
+		assertEquals(Long.valueOf(0L), ca.getLattice().getBottom());
+		Random r = new Random(0L);
+		Map<Integer, Long> max = new HashMap<Integer, Long>();
+		for (int i = 0; i < 5000; i++) {
+			int key = r.nextInt(1000);
+			long value = r.nextLong() & ((1L << 40) - 1);
+			ca.putLong(key, value);
+			Long previous = max.get(key);
+			if (previous == null || previous < value) max.put(key, value);
+		}
+		assertFalse(ca.isEmpty());
+		for (Map.Entry<Integer, Long> entry : max.entrySet()) {
+			long supremum = ca.getSupremumAsLong(entry.getKey());
+			assertTrue(supremum >= entry.getValue());
+			assertEquals(supremum, ca.getSupremum(entry.getKey()).longValue());
+			assertTrue(ca.mightContain(entry.getKey()));
+		}
+		try {
+			ca.putLong(0, 1L << 40);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		ca.clear();
+		assertTrue(ca.isEmpty());
+		assertEquals(0L, ca.getSupremumAsLong(1));
+	}
+
+	public void testMin() {
+		LongCompactApproximator<Integer> ca = new LongCompactApproximator<Integer>(Operation.MIN, 64, multiHash, 3);
+		assertFalse(ca.mightContain(1));
+		assertEquals(-1L, ca.getSupremumAsLong(1));
+		assertEquals(-1L, ca.putLong(1, 100L));
+		assertEquals(100L, ca.putLong(1, 200L));
+		assertEquals(100L, ca.getSupremumAsLong(1));
+		ca.putLong(1, 50L);
+		assertEquals(50L, ca.getSupremumAsLong(1));
+		// values are unsigned, so negative longs are large
+		ca.putLong(2, -2L);
+		assertEquals(-2L, ca.getSupremumAsLong(2));
+		Lattice<Long> lattice = ca.getLattice();
+		assertEquals(Long.valueOf(5L), lattice.join(5L, 7L));
+		assertTrue(lattice.isOrdered(7L, 5L));
+	}
+
+	public void testOr() {
+		LongCompactApproximator<Integer> ca = new LongCompactApproximator<Integer>(Operation.OR, 7, multiHash, 4);
+		ca.putLong(1, 1L);
+		ca.putLong(1, 4L);
+		ca.putLong(2, 8L);
+		assertEquals(5L, ca.getSupremumAsLong(1) & 5L);
+		assertEquals(8L, ca.getSupremumAsLong(2) & 8L);
+		Lattice<Long> lattice = ca.getLattice();
+		assertEquals(Long.valueOf(12L), lattice.join(4L, 8L));
+		assertEquals(Long.valueOf(4L), lattice.meet(5L, 12L));
+		assertFalse(lattice.isOrdered(4L, 8L));
+		assertFalse(lattice.contains(128L));
+	}
+
+	public void testBoundsAndBoundedAbove() {
+		LongCompactApproximator<Integer> ca = new LongCompactApproximator<Integer>(Operation.MAX, 16, multiHash, 4);
+		LongCompactApproximator<Integer> subset = new LongCompactApproximator<Integer>(Operation.MAX, 16, multiHash, 4);
+		for (int i = 0; i < 100; i++) {
+			ca.putLong(i, (long) i * 100);
+			if (i % 2 == 0) subset.putLong(i, (long) i * 100);
+		}
+		assertTrue(ca.bounds(subset));
+		assertFalse(subset.bounds(ca));
+		assertTrue(ca.bounds(ca));
+
+		CompactApproximator<Integer, Long> bounded = ca.boundedAbove(1000L);
+		assertEquals(Long.valueOf(1000L), bounded.getLattice().getTop());
+		for (int i = 0; i < 100; i++) {
+			assertTrue(bounded.getSupremum(i) <= 1000L);
+		}
+		// bounded views share values
+		bounded.put(1000, 500L);
+		assertTrue(ca.getSupremumAsLong(1000) >= 500L);
+
+		BloomFilter<Integer> filter = bounded.asBloomFilter();
+		for (int i = 10; i < 100; i++) assertTrue(filter.mightContain(i));
+		filter.add(5000);
+		assertEquals(1000L, ca.getSupremumAsLong(5000));
+	}
+
+	public void testBoundedLattice() {
+		LongCompactApproximator<Integer> ca = new LongCompactApproximator<Integer>(Operation.MAX, 16, multiHash, 4);
+		Lattice<Long> lattice = ca.getLattice();
+		assertSame(lattice, lattice.boundedBelow(0L));
+		Lattice<Long> bounded = lattice.bounded(1000L, 100L);
+		assertEquals(Long.valueOf(1000L), bounded.getTop());
+		assertEquals(Long.valueOf(100L), bounded.getBottom());
+		assertTrue(bounded.contains(100L));
+		assertFalse(bounded.contains(99L));
+		assertFalse(bounded.contains(1001L));
+		assertEquals(Long.valueOf(500L), bounded.join(100L, 500L));
+		assertEquals(bounded, lattice.boundedBelow(100L).boundedAbove(1000L));
+		assertFalse(bounded.equals(lattice.boundedAbove(1000L)));
+		try {
+			bounded.boundedBelow(50L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testAgreesWithBasic() {
+		LongCompactApproximator<Integer> packed = new LongCompactApproximator<Integer>(Operation.MAX, 12, multiHash, 4);
+		BasicCompactApproximator<Integer, Long> basic = new BasicCompactApproximator<Integer, Long>(new OrderedLattice<Long>(4095L, 0L), multiHash, 4);
+		Random r = new Random(1L);
+		for (int i = 0; i < 3000; i++) {
+			int key = r.nextInt(2000);
+			long value = r.nextInt(4096);
+			assertEquals(basic.put(key, value), packed.put(key, Long.valueOf(value)));
+		}
+		for (int key = 0; key < 2000; key++) {
+			assertEquals(basic.getSupremum(key), packed.getSupremum(key));
+			assertEquals(basic.mightContain(key), packed.mightContain(key));
+		}
+		assertEquals(basic.getValueList(), packed.getValueList());
+	}
+
+	public void testConcurrentPuts() throws InterruptedException {
+		final LongCompactApproximator<Integer> ca = new LongCompactApproximator<Integer>(Operation.MAX, 12, multiHash, 4, true);
+		assertTrue(ca.isConcurrent());
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int base = t * 500;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = base; i < base + 500; i++) ca.putLong(i % 1000, i);
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) thread.join();
+		LongCompactApproximator<Integer> serial = new LongCompactApproximator<Integer>(Operation.MAX, 12, multiHash, 4);
+		assertFalse(serial.isConcurrent());
+		for (int i = 0; i < 4000; i++) serial.putLong(i % 1000, i);
+		// values sharing a word must not lose updates
+		assertEquals(serial, ca);
+	}
+
+	public void testParallelMerge() {
+		LongCompactApproximator<Integer> all = new LongCompactApproximator<Integer>(Operation.OR, 12, multiHash, 4);
+		LongCompactApproximator<Integer> low = new LongCompactApproximator<Integer>(Operation.OR, 12, multiHash, 4);
+		LongCompactApproximator<Integer> high = new LongCompactApproximator<Integer>(Operation.OR, 12, multiHash, 4);
+		Random r = new Random(2L);
+		for (int i = 0; i < 3000; i++) {
+			long value = r.nextInt(4096);
+			all.putLong(i, value);
+			(i < 1500 ? low : high).putLong(i, value);
+		}
+		low.merge(high, 7);
+		assertEquals(all, low);
+		BasicCompactApproximator<Integer, Long> basic = new BasicCompactApproximator<Integer, Long>(new OrderedLattice<Long>(4095L, 0L), multiHash, 4);
+		try {
+			low.merge(basic);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected - lattices differ */
+		}
+	}
+
+}
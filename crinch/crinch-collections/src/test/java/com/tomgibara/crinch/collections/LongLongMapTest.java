@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LongLongMapTest extends TestCase {
+
+	public void testAgainstHashMap() {
+		Random r = new Random(0L);
+		LongLongMap map = new LongLongMap(4, -1L);
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		for (int i = 0; i < 100000; i++) {
+			long key = r.nextInt(2000) - 1000;
+			long value = r.nextLong();
+			switch (r.nextInt(4)) {
+			case 0:
+			case 1: {
+				Long previous = expected.put(key, value);
+				assertEquals(previous == null ? -1L : previous, map.put(key, value));
+				break;
+			}
+			case 2: {
+				Long previous = expected.get(key);
+				long sum = (previous == null ? -1L : previous) + value;
+				expected.put(key, sum);
+				assertEquals(sum, map.add(key, value));
+				break;
+			}
+			case 3: {
+				Long previous = expected.remove(key);
+				assertEquals(previous == null ? -1L : previous, map.remove(key));
+				break;
+			}
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = -1000; key < 1000; key++) {
+			Long value = expected.get(key);
+			assertEquals(value != null, map.containsKey(key));
+			assertEquals(value == null ? -1L : value, map.get(key));
+		}
+		long[] keys = map.keys();
+		assertEquals(expected.size(), keys.length);
+		for (long key : keys) assertTrue(expected.containsKey(key));
+	}
+
+	public void testZeroKey() {
+		LongLongMap map = new LongLongMap();
+		assertEquals(0L, map.getMissingValue());
+		assertFalse(map.containsKey(0L));
+		assertEquals(0L, map.put(0L, 5L));
+		assertEquals(7L, map.add(0L, 2L));
+		assertTrue(map.containsKey(0L));
+		assertEquals(7L, map.remove(0L));
+		assertFalse(map.containsKey(0L));
+		assertTrue(map.isEmpty());
+	}
+
+	public void testGrowthAndClear() {
+		LongLongMap map = new LongLongMap();
+		for (long i = 1; i <= 100000; i++) map.put(i * 31, i);
+		assertEquals(100000, map.size());
+		for (long i = 1; i <= 100000; i++) assertEquals(i, map.get(i * 31));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(31L));
+	}
+
+}
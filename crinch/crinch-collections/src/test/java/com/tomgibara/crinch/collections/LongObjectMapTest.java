@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LongObjectMapTest extends TestCase {
+
+	public void testAgainstHashMap() {
+		Random r = new Random(0L);
+		LongObjectMap<String> map = new LongObjectMap<String>(4);
+		Map<Long, String> expected = new HashMap<Long, String>();
+		for (int i = 0; i < 100000; i++) {
+			long key = r.nextInt(2000) - 1000;
+			String value = Integer.toString(r.nextInt(100));
+			if (r.nextInt(3) < 2) {
+				assertEquals(expected.put(key, value), map.put(key, value));
+			} else {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = -1000; key < 1000; key++) {
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+			assertEquals(expected.get(key), map.get(key));
+		}
+		long[] keys = map.keys();
+		assertEquals(expected.size(), keys.length);
+		for (long key : keys) assertTrue(expected.containsKey(key));
+	}
+
+	public void testNullsAndZero() {
+		LongObjectMap<String> map = new LongObjectMap<String>();
+		assertNull(map.put(0L, "zero"));
+		assertNull(map.put(1L, null));
+		assertTrue(map.containsKey(1L));
+		assertNull(map.get(1L));
+		assertEquals("zero", map.put(0L, "nought"));
+		assertEquals(2, map.size());
+		assertEquals("nought", map.remove(0L));
+		assertNull(map.remove(0L));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(1L));
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class LongOpenHashSetTest extends TestCase {
+
+	public void testAgainstHashSet() {
+		Random r = new Random(0L);
+		LongOpenHashSet set = new LongOpenHashSet(4);
+		Set<Long> expected = new HashSet<Long>();
+		for (int i = 0; i < 100000; i++) {
+			// a narrow range ensures frequent collisions and removals
+			long value = r.nextInt(2000) - 1000;
+			switch (r.nextInt(3)) {
+			case 0:
+			case 1:
+				assertEquals(expected.add(value), set.add(value));
+				break;
+			case 2:
+				assertEquals(expected.remove(value), set.remove(value));
+				break;
+			}
+			assertEquals(expected.size(), set.size());
+		}
+		for (long value = -1000; value < 1000; value++) {
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+		long[] values = set.toArray();
+		Arrays.sort(values);
+		assertEquals(expected.size(), values.length);
+		for (long value : values) assertTrue(expected.contains(value));
+	}
+
+	public void testZero() {
+		LongOpenHashSet set = new LongOpenHashSet();
+		assertFalse(set.contains(0L));
+		assertTrue(set.add(0L));
+		assertFalse(set.add(0L));
+		assertTrue(set.contains(0L));
+		assertEquals(1, set.size());
+		assertEquals(0L, set.toArray()[0]);
+		assertTrue(set.remove(0L));
+		assertFalse(set.remove(0L));
+		assertTrue(set.isEmpty());
+	}
+
+	public void testGrowthAndClear() {
+		LongOpenHashSet set = new LongOpenHashSet();
+		for (long i = 0; i < 100000; i++) assertTrue(set.add(i << 32));
+		assertEquals(100000, set.size());
+		for (long i = 0; i < 100000; i++) assertTrue(set.contains(i << 32));
+		assertFalse(set.contains(1L));
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(1L << 32));
+	}
+
+}
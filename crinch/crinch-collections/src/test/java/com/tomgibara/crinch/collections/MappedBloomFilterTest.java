@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+
+public class MappedBloomFilterTest extends TestCase {
+
+	static final MultiHash<Integer> multiHash = new EnhancedDoubleMultiHash<Integer>(new Murmur3_32Hash<Integer>(CountMinSketchTest.source), 100002);
+
+	private File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("bloom", ".bin");
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testRoundTrip() {
+		BasicBloomFilter<Integer> filter = new BasicBloomFilter<Integer>(multiHash, 7);
+		for (int i = 0; i < 10000; i++) filter.add(i * 3);
+		MappedBloomFilter.write(filter, 42L, file);
+		assertEquals(MappedBloomFilter.HEADER_SIZE + (100003 + 63) / 64 * 8, file.length());
+
+		MappedBloomFilter<Integer> mapped = MappedBloomFilter.openMapped(file, multiHash, 42L);
+		assertEquals(42L, mapped.getHashSeed());
+		assertEquals(filter.getCapacity(), mapped.getCapacity());
+		assertEquals(filter.getHashCount(), mapped.getHashCount());
+		assertEquals(filter, mapped);
+		assertEquals(filter.getFalsePositiveProbability(), mapped.getFalsePositiveProbability());
+		assertFalse(mapped.isEmpty());
+		for (int i = 0; i < 30000; i++) {
+			assertEquals(filter.mightContain(i), mapped.mightContain(i));
+		}
+		assertTrue(filter.containsAll(mapped));
+		Integer[] values = new Integer[1000];
+		for (int i = 0; i < values.length; i++) values[i] = i;
+		BasicBloomFilterTest.checkMightContainEach(mapped, values);
+		BasicBloomFilter<Integer> copy = new BasicBloomFilter<Integer>(multiHash, 7);
+		copy.addAll(mapped);
+		assertEquals(filter, copy);
+	}
+
+	public void testReadOnly() {
+		MappedBloomFilter.write(new BasicBloomFilter<Integer>(multiHash, 3), 0L, file);
+		MappedBloomFilter<Integer> mapped = MappedBloomFilter.openMapped(file, multiHash, 0L);
+		assertTrue(mapped.isEmpty());
+		try {
+			mapped.add(1);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+		try {
+			mapped.addAll(new Integer[] {1, 2}, 0, 2);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+		try {
+			mapped.clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+	}
+
+	public void testMismatch() {
+		MappedBloomFilter.write(new BasicBloomFilter<Integer>(multiHash, 3), 1L, file);
+		try {
+			MappedBloomFilter.openMapped(file, multiHash, 2L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testIncompatible() throws IOException {
+		try {
+			MappedBloomFilter.write(new CountingBloomFilter<Integer>(multiHash, 3), 0L, file);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			MappedBloomFilter.write(new BlockedBloomFilter<Integer>(new Murmur3_32Hash<Integer>(CountMinSketchTest.source), 16), 0L, file);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		MappedBloomFilter.write(new ConcurrentBloomFilter<Integer>(multiHash, 3), 0L, file);
+		MappedBloomFilter<Integer> mapped = MappedBloomFilter.openMapped(file, multiHash, 0L);
+		// mapped filters may themselves be written
+		File copy = File.createTempFile("bloom", ".bin");
+		try {
+			MappedBloomFilter.write(mapped, 0L, copy);
+			assertEquals(file.length(), copy.length());
+		} finally {
+			copy.delete();
+		}
+	}
+
+}
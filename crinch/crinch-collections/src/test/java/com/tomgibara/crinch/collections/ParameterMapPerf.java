@@ -23,7 +23,7 @@ import com.tomgibara.crinch.collections.ParameterMap;
 
 /**
  * Simple app for checking that the {@link ParameterMap} implementation is not grotesquely slower than the HashMap implementation.
- * Tests thus far indicate that performance is comparable for dense maps.
+ * Tests thus far indicate that performance is comparable for dense maps, and that hashed lookups improve on it.
  * 
  * @author Tom
  *
@@ -39,12 +39,20 @@ public class ParameterMapPerf {
 		final String[] keys = new String[elements];
 		keys[0] = "name"; keys[1] = "dob"; keys[2] = "email";
 		for (int i = 3; i < elements; i++) keys[i] = Integer.toString(i);
-		for (int i = 0; i < cycles; i++) testCycle(keys);
+		// small dense maps, for which the class is designed
+		final String[] denseKeys = { "name", "dob", "email" };
+		for (int i = 0; i < cycles; i++) {
+			System.out.print("SPARSE ");
+			testCycle(keys);
+			System.out.print("DENSE  ");
+			testCycle(denseKeys);
+		}
 	}
 	
 	static void testCycle(String[] keys) {
 
 		final ParameterMap.Constructor<Object> cons = ParameterMap.constructor(keys);
+		final ParameterMap.Constructor<Object> hashedCons = ParameterMap.constructor(ParameterMap.Lookup.HASHED, keys);
 
 		MapSource mine = new MapSource() {
 			@Override
@@ -53,6 +61,13 @@ public class ParameterMapPerf {
 			}
 		};
 		
+		MapSource hashed = new MapSource() {
+			@Override
+			public Map<String, Object> newMap() {
+				return hashedCons.newMap();
+			}
+		};
+		
 		MapSource theirs = new MapSource() {
 			@Override
 			public Map<String, Object> newMap() {
@@ -61,9 +76,10 @@ public class ParameterMapPerf {
 		};
 		
 		long pt = testMap(mine);
+		long pht = testMap(hashed);
 		long ht = testMap(theirs);
 
-		System.out.println(String.format("PARAM: %6d   HASH: %6d", pt, ht));
+		System.out.println(String.format("PARAM: %6d   PARAM (HASHED): %6d   HASH: %6d", pt, pht, ht));
 	}
 	
 	static long testMap(MapSource source) {
@@ -99,6 +99,32 @@ public class ParameterMapTest extends TestCase {
 		doEqualityTest(map, map.clone());
 	}
 	
+	public void testHashedLookup() {
+		// "Aa" and "BB" share a hash code, as do "AaAa", "AaBB" and "BBBB"
+		String[] keys = {"name", "dob", "email", "Aa", "BB", "AaAa", "AaBB", "BBBB"};
+		Constructor<Object> hashed = ParameterMap.constructor(ParameterMap.Lookup.HASHED, keys);
+		assertEquals(ParameterMap.Lookup.HASHED, hashed.getLookup());
+		assertEquals(ParameterMap.Lookup.SORTED, cons.getLookup());
+		ParameterMap<Object> map = hashed.newMap();
+		for (int i = 0; i < keys.length; i++) map.put(keys[i], i);
+		assertEquals(keys.length, map.size());
+		for (int i = 0; i < keys.length; i++) {
+			// a distinct instance avoids the identity check
+			assertEquals(i, map.get(new String(keys[i])));
+		}
+		assertNull(map.get("dummy"));
+		assertNull(map.get("BBAa"));
+		assertFalse(map.containsKey(""));
+		try {
+			map.put("dummy", 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		doEqualityTest(map, new HashMap<String, Object>(map));
+		doEqualityTest(map, ParameterMap.constructor(keys).newMap(map));
+	}
+	
 	public void testIteratorRemove() {
 		ParameterMap<Object> map = cons.newMap();
 		map.put("name", "Tom");
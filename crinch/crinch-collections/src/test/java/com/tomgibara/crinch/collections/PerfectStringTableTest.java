@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class PerfectStringTableTest extends TestCase {
+
+	public void testRandomKeys() {
+		Random r = new Random(0L);
+		for (int n = 1; n <= 2000; n *= 3) {
+			Set<String> set = new HashSet<String>();
+			while (set.size() < n) set.add(Long.toString(r.nextLong(), 36));
+			String[] keys = set.toArray(new String[n]);
+			PerfectStringTable table = new PerfectStringTable(keys);
+			assertTrue(table.getTableSize() <= 4 * Math.max(2, Integer.highestOneBit(n) * 2));
+			for (int i = 0; i < n; i++) {
+				assertEquals(i, table.indexOf(keys[i]));
+				assertEquals(i, table.indexOf(new String(keys[i])));
+			}
+			for (int i = 0; i < 1000; i++) {
+				String s = Integer.toString(i);
+				if (!set.contains(s)) assertEquals(PerfectStringTable.ABSENT, table.indexOf(s));
+			}
+		}
+	}
+
+	public void testCollidingHashCodes() {
+		String[] keys = {"Aa", "BB", "C"};
+		PerfectStringTable table = new PerfectStringTable(keys);
+		assertEquals(PerfectStringTable.AMBIGUOUS, table.indexOf("Aa"));
+		assertEquals(PerfectStringTable.AMBIGUOUS, table.indexOf("BB"));
+		assertEquals(2, table.indexOf("C"));
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+
+public class ScalableBloomFilterTest extends TestCase {
+
+	static final Hash<Integer> hash = new XxHash64Hash<Integer>(CountMinSketchTest.source);
+
+	public void testGrowth() {
+		double bound = 0.01;
+		ScalableBloomFilter<Integer> filter = new ScalableBloomFilter<Integer>(hash, 1000, bound);
+		assertTrue(filter.isEmpty());
+		assertEquals(0, filter.getFilterCount());
+		int n = 100000;
+		for (int i = 0; i < n; i++) filter.add(i);
+		assertFalse(filter.isEmpty());
+		// 1000 * (1 + 2 + ... + 64) exceeds the size
+		assertEquals(7, filter.getFilterCount());
+		assertTrue(filter.getSize() <= n);
+		assertTrue(filter.getSize() > n * 0.99);
+		for (int i = 0; i < n; i++) assertTrue(filter.mightContain(i));
+
+		int positives = 0;
+		int trials = 200000;
+		for (int i = n; i < n + trials; i++) {
+			if (filter.mightContain(i)) positives++;
+		}
+		double rate = (double) positives / trials;
+		double estimate = filter.getFalsePositiveProbability();
+		assertTrue(estimate < bound);
+		assertTrue(rate < bound);
+		assertEquals(estimate, rate, estimate * 0.2);
+
+		filter.clear();
+		assertTrue(filter.isEmpty());
+		assertFalse(filter.mightContain(0));
+	}
+
+	public void testAddReportsContainment() {
+		ScalableBloomFilter<Integer> filter = new ScalableBloomFilter<Integer>(hash, 10, 0.001, 4, 0.5);
+		assertTrue(filter.add(1));
+		assertFalse(filter.add(1));
+		assertEquals(1, filter.getSize());
+	}
+
+	public void testReadWrite() {
+		ScalableBloomFilter<Integer> filter = new ScalableBloomFilter<Integer>(hash, 100, 0.05, 3, 0.7);
+		for (int n : new int[] { 0, 50, 5000 }) {
+			for (int i = 0; i < n; i++) filter.add(i);
+			byte[] bytes = new byte[(int) (filter.getBitCount() / 8) + 1024];
+			ByteArrayBitWriter writer = new ByteArrayBitWriter(bytes);
+			filter.write(writer);
+			writer.flush();
+			ScalableBloomFilter<Integer> read = ScalableBloomFilter.read(new ByteArrayBitReader(bytes), hash);
+			assertEquals(filter.toString(), read.toString());
+			assertEquals(3, read.getGrowth());
+			assertEquals(0.7, read.getTightening());
+			for (int i = 0; i < 10000; i++) {
+				assertEquals(filter.mightContain(i), read.mightContain(i));
+			}
+			// the copy must grow as the original does
+			for (int i = n; i < 2 * n; i++) {
+				assertEquals(filter.add(i), read.add(i));
+			}
+			assertEquals(filter.toString(), read.toString());
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.collections;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+import com.tomgibara.crinch.collections.SpaceSaving.Counter;
+import com.tomgibara.crinch.collections.SpaceSaving.ElementSerializer;
+
+public class SpaceSavingTest extends TestCase {
+
+	static final ElementSerializer<Integer> serializer = new ElementSerializer<Integer>() {
+
+		@Override
+		public int write(BitWriter writer, Integer element) {
+			return writer.write(element, 32);
+		}
+
+		@Override
+		public Integer read(BitReader reader) {
+			return reader.read(32);
+		}
+
+	};
+
+	// offers a skewed stream, returning the true counts
+	static int[] populate(SpaceSaving<Integer> tracker, int distinct, int total, long seed) {
+		Random r = new Random(seed);
+		int[] counts = new int[distinct];
+		for (int i = 0; i < total; i++) {
+			int value = (int) (distinct * Math.pow(r.nextDouble(), 4));
+			counts[value]++;
+			tracker.offer(value);
+		}
+		return counts;
+	}
+
+	public void testExactWithinCapacity() {
+		SpaceSaving<String> tracker = new SpaceSaving<String>(3);
+		tracker.offer("a");
+		tracker.offer("b", 3L);
+		tracker.offer("a");
+		tracker.offer("c");
+		assertEquals(3, tracker.size());
+		List<Counter<String>> top = tracker.getTop(2);
+		assertEquals(2, top.size());
+		assertEquals("b", top.get(0).getElement());
+		assertEquals(3L, top.get(0).getCount());
+		assertEquals("a", top.get(1).getElement());
+		assertEquals(0L, top.get(1).getError());
+		// evicts c, the least frequent
+		tracker.offer("d");
+		assertEquals(0L, tracker.getCount("c"));
+		assertEquals(2L, tracker.getCount("d"));
+		assertEquals(1L, tracker.getTop(3).get(2).getError());
+	}
+
+	public void testOverflow() {
+		SpaceSaving<String> tracker = new SpaceSaving<String>(2);
+		tracker.offer("a", Long.MAX_VALUE - 1L);
+		tracker.offer("b");
+		try {
+			tracker.offer("a");
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(Long.MAX_VALUE, tracker.getTotalCount());
+		assertEquals(Long.MAX_VALUE - 1L, tracker.getCount("a"));
+	}
+
+	public void testHeavyHitters() {
+		int capacity = 100;
+		SpaceSaving<Integer> tracker = new SpaceSaving<Integer>(capacity);
+		int total = 100000;
+		int[] counts = populate(tracker, 10000, total, 0L);
+		assertEquals(capacity, tracker.size());
+		assertEquals(total, tracker.getTotalCount());
+		for (Counter<Integer> counter : tracker.getTop(capacity)) {
+			int actual = counts[counter.getElement()];
+			assertTrue(counter.getCount() >= actual);
+			assertTrue(counter.getGuaranteedCount() <= actual);
+			assertTrue(counter.getError() <= total / capacity);
+		}
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > total / capacity) assertTrue(tracker.getCount(i) >= counts[i]);
+		}
+		List<Counter<Integer>> top = tracker.getTop(10);
+		for (int i = 1; i < top.size(); i++) {
+			assertTrue(top.get(i - 1).getCount() >= top.get(i).getCount());
+		}
+		assertEquals(Integer.valueOf(0), top.get(0).getElement());
+	}
+
+	public void testReadWrite() {
+		SpaceSaving<Integer> tracker = new SpaceSaving<Integer>(50);
+		for (int n : new int[] { 0, 20, 10000 }) {
+			tracker.clear();
+			populate(tracker, 1000, n, 1L);
+			byte[] bytes = new byte[16384];
+			ByteArrayBitWriter writer = new ByteArrayBitWriter(bytes);
+			tracker.write(writer, serializer);
+			writer.flush();
+			SpaceSaving<Integer> read = SpaceSaving.read(new ByteArrayBitReader(bytes), serializer);
+			assertEquals(tracker.getTotalCount(), read.getTotalCount());
+			assertEquals(tracker.toString(), read.toString());
+			// the copy must remain usable
+			tracker.offer(-1);
+			read.offer(-1);
+			assertEquals(tracker.toString(), read.toString());
+		}
+	}
+
+}
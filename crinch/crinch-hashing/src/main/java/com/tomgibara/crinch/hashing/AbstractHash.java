@@ -45,4 +45,14 @@ public abstract class AbstractHash<T> implements Hash<T> {
 		return hashAsBigInt(value).longValue();
 	}
 
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int[] out) {
+		return Hashes.hashAsInts(this, values, off, len, out);
+	}
+
+	@Override
+	public long[] hashAsLongs(T[] values, int off, int len, long[] out) {
+		return Hashes.hashAsLongs(this, values, off, len, out);
+	}
+
 }
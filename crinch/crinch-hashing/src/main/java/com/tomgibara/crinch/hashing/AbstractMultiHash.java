@@ -58,6 +58,13 @@ public abstract class AbstractMultiHash<T> implements MultiHash<T> {
 		return bigInts;
 	}
 	
+	static BigInteger[] copy(long[] longs, BigInteger[] bigInts) {
+		for (int i = 0; i < bigInts.length; i++) {
+			bigInts[i] = BigInteger.valueOf(longs[i]);
+		}
+		return bigInts;
+	}
+
 	static int[] copy(BigInteger[] bigInts, int[] ints) {
 		for (int i = 0; i < ints.length; i++) {
 			ints[i] = bigInts[i].intValue();
@@ -137,4 +144,24 @@ public abstract class AbstractMultiHash<T> implements MultiHash<T> {
 		return array;
 	}
 	
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int[] out) {
+		return Hashes.hashAsInts(this, values, off, len, out);
+	}
+	
+	@Override
+	public long[] hashAsLongs(T[] values, int off, int len, long[] out) {
+		return Hashes.hashAsLongs(this, values, off, len, out);
+	}
+	
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int multiplicity, int[] out) {
+		return Hashes.hashAsInts(this, values, off, len, multiplicity, out);
+	}
+	
+	@Override
+	public long[] hashAsLongs(T[] values, int off, int len, int multiplicity, long[] out) {
+		return Hashes.hashAsLongs(this, values, off, len, multiplicity, out);
+	}
+	
 }
@@ -0,0 +1,88 @@
+package com.tomgibara.crinch.hashing;
+
+/**
+ * A convenient base class for {@link Partitioner} implementations that assign
+ * buckets on the basis of a single 64 bit key obtained from a {@link Hash}.
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be partitioned
+ */
+
+public abstract class AbstractPartitioner<T> implements Partitioner<T> {
+
+	private final Hash<T> hash;
+	private final boolean longHash;
+
+	/**
+	 * @param hash
+	 *            a hash with a full integer or long range
+	 */
+
+	protected AbstractPartitioner(Hash<T> hash) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		final HashRange range = hash.getRange();
+		if (range.equals(HashRange.FULL_LONG_RANGE)) {
+			longHash = true;
+		} else if (range.equals(HashRange.FULL_INT_RANGE)) {
+			longHash = false;
+		} else {
+			throw new IllegalArgumentException("hash does not have full integer or long range");
+		}
+		this.hash = hash;
+	}
+
+	public Hash<T> getHash() {
+		return hash;
+	}
+
+	@Override
+	public int partition(T value, int buckets) {
+		checkBuckets(buckets);
+		return partitionKey(key(value), buckets);
+	}
+
+	@Override
+	public int[] partition(T[] values, int buckets, int[] out) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (out == null) throw new IllegalArgumentException("null out");
+		if (out.length < values.length) throw new IllegalArgumentException("out too short");
+		checkBuckets(buckets);
+		for (int i = 0; i < values.length; i++) {
+			out[i] = partitionKey(key(values[i]), buckets);
+		}
+		return out;
+	}
+
+	/**
+	 * Assigns a bucket to a key. The number of buckets will have been checked.
+	 *
+	 * @param key
+	 *            a well mixed 64 bit key
+	 * @param buckets
+	 *            the number of buckets
+	 * @return the bucket index
+	 */
+
+	protected abstract int partitionKey(long key, int buckets);
+
+	/**
+	 * Called to check that the number of buckets is supported; by default,
+	 * any positive number is supported.
+	 *
+	 * @param buckets
+	 *            the number of buckets
+	 * @throws IllegalArgumentException
+	 *             if the number of buckets is not supported
+	 */
+
+	protected void checkBuckets(int buckets) throws IllegalArgumentException {
+		if (buckets < 1) throw new IllegalArgumentException("buckets not positive");
+	}
+
+	private long key(T value) {
+		return longHash ? hash.hashAsLong(value) : EnhancedDoubleMultiHash.mix(hash.hashAsInt(value));
+	}
+
+}
@@ -62,27 +62,43 @@ public class AdaptedMultiHash<T> implements MultiHash<T> {
 	}
 
 	public int[] hashAsInts(T value, int multiplicity) {
-		return multiHash.hashAsInts(value, multiplicity);
+		return adapt(multiHash.hashAsInts(value, multiplicity));
 	}
 	
 	public int[] hashAsInts(T value, int[] array) {
-		return multiHash.hashAsInts(value, array);
+		return adapt(multiHash.hashAsInts(value, array));
 	}
 	
 	public long[] hashAsLongs(T value, int multiplicity) {
-		return multiHash.hashAsLongs(value, multiplicity);
+		return adapt(multiHash.hashAsLongs(value, multiplicity));
 	}
 	
 	public long[] hashAsLongs(T value, long[] array) {
-		return multiHash.hashAsLongs(value, array);
+		return adapt(multiHash.hashAsLongs(value, array));
 	}
 	
 	public BigInteger[] hashAsBigInts(T value, int multiplicity) {
-		return multiHash.hashAsBigInts(value, multiplicity);
+		return adapt(multiHash.hashAsBigInts(value, multiplicity));
 	}
 	
 	public BigInteger[] hashAsBigInts(T value, BigInteger[] array) {
-		return multiHash.hashAsBigInts(value, array);
+		return adapt(multiHash.hashAsBigInts(value, array));
+	}
+
+	public int[] hashAsInts(T[] values, int off, int len, int[] out) {
+		return Hashes.hashAsInts(this, values, off, len, out);
+	}
+	
+	public long[] hashAsLongs(T[] values, int off, int len, long[] out) {
+		return Hashes.hashAsLongs(this, values, off, len, out);
+	}
+	
+	public int[] hashAsInts(T[] values, int off, int len, int multiplicity, int[] out) {
+		return adapt(multiHash.hashAsInts(values, off, len, multiplicity, out), len * multiplicity);
+	}
+	
+	public long[] hashAsLongs(T[] values, int off, int len, int multiplicity, long[] out) {
+		return adapt(multiHash.hashAsLongs(values, off, len, multiplicity, out), len * multiplicity);
 	}
 
 	protected int adapt(int hash) {
@@ -98,14 +114,22 @@ public class AdaptedMultiHash<T> implements MultiHash<T> {
 	}
 	
 	private int[] adapt(int[] array) {
-		for (int i = 0; i < array.length; i++) {
+		return adapt(array, array.length);
+	}
+
+	private int[] adapt(int[] array, int length) {
+		for (int i = 0; i < length; i++) {
 			array[i] = adapt(array[i]);
 		}
 		return array;
 	}
 
 	private long[] adapt(long[] array) {
-		for (int i = 0; i < array.length; i++) {
+		return adapt(array, array.length);
+	}
+
+	private long[] adapt(long[] array, int length) {
+		for (int i = 0; i < length; i++) {
 			array[i] = adapt(array[i]);
 		}
 		return array;
@@ -0,0 +1,155 @@
+package com.tomgibara.crinch.hashing;
+
+import com.tomgibara.crinch.util.AbstractWriteStream;
+
+/**
+ * A base class for streams that feed hash functions which consume their input
+ * in fixed size blocks. Data is buffered until a complete block is available,
+ * except that blocks supplied in byte arrays are processed in place.
+ * Multi-byte values are written into the buffer directly, in the same
+ * big-endian order as {@link AbstractWriteStream}, so that the hash of a value
+ * is always identical to the hash of the bytes it writes.
+ *
+ * @author tomgibara
+ */
+
+abstract class BlockHashStream extends AbstractWriteStream {
+
+	static long readLong(byte[] b, int i) {
+		return
+			(b[i    ] & 0xffL)       |
+			(b[i + 1] & 0xffL) <<  8 |
+			(b[i + 2] & 0xffL) << 16 |
+			(b[i + 3] & 0xffL) << 24 |
+			(b[i + 4] & 0xffL) << 32 |
+			(b[i + 5] & 0xffL) << 40 |
+			(b[i + 6] & 0xffL) << 48 |
+			(b[i + 7] & 0xffL) << 56;
+	}
+
+	static int readInt(byte[] b, int i) {
+		return
+			(b[i    ] & 0xff)       |
+			(b[i + 1] & 0xff) <<  8 |
+			(b[i + 2] & 0xff) << 16 |
+			(b[i + 3]       ) << 24;
+	}
+
+	final byte[] buffer;
+	// number of bytes in the buffer
+	int position;
+	// total number of bytes written
+	long length;
+	// used to detect hashes that are computed re-entrantly on the same thread
+	boolean inUse;
+
+	BlockHashStream(int blockSize) {
+		buffer = new byte[blockSize];
+	}
+
+	// processes a complete block starting at the specified offset
+	abstract void processBlock(byte[] bytes, int offset);
+
+	void resetBlocks() {
+		position = 0;
+		length = 0L;
+	}
+
+	@Override
+	public void writeByte(byte v) {
+		buffer[position++] = v;
+		length++;
+		if (position == buffer.length) flushBlock();
+	}
+
+	@Override
+	public void writeShort(short v) {
+		if (buffer.length - position < 2) {
+			super.writeShort(v);
+		} else {
+			buffer[position++] = (byte) (v >> 8);
+			buffer[position++] = (byte) (v     );
+			length += 2;
+			if (position == buffer.length) flushBlock();
+		}
+	}
+
+	@Override
+	public void writeChar(char v) {
+		writeShort((short) v);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		if (buffer.length - position < 4) {
+			super.writeInt(v);
+		} else {
+			final byte[] b = buffer;
+			int p = position;
+			b[p    ] = (byte) (v >> 24);
+			b[p + 1] = (byte) (v >> 16);
+			b[p + 2] = (byte) (v >>  8);
+			b[p + 3] = (byte) (v      );
+			position = p + 4;
+			length += 4;
+			if (position == b.length) flushBlock();
+		}
+	}
+
+	@Override
+	public void writeLong(long v) {
+		if (buffer.length - position < 8) {
+			super.writeLong(v);
+		} else {
+			final byte[] b = buffer;
+			int p = position;
+			b[p    ] = (byte) (v >> 56);
+			b[p + 1] = (byte) (v >> 48);
+			b[p + 2] = (byte) (v >> 40);
+			b[p + 3] = (byte) (v >> 32);
+			b[p + 4] = (byte) (v >> 24);
+			b[p + 5] = (byte) (v >> 16);
+			b[p + 6] = (byte) (v >>  8);
+			b[p + 7] = (byte) (v      );
+			position = p + 8;
+			length += 8;
+			if (position == b.length) flushBlock();
+		}
+	}
+
+	@Override
+	public void writeBytes(byte[] bs, int off, int len) {
+		length += len;
+		final int size = buffer.length;
+		if (position > 0) {
+			int n = Math.min(len, size - position);
+			System.arraycopy(bs, off, buffer, position, n);
+			position += n;
+			if (position < size) return;
+			off += n;
+			len -= n;
+			processBlock(buffer, 0);
+			position = 0;
+		}
+		for (; len >= size; off += size, len -= size) {
+			processBlock(bs, off);
+		}
+		System.arraycopy(bs, off, buffer, 0, len);
+		position = len;
+	}
+
+	@Override
+	public void writeChars(CharSequence cs) {
+		final int length = cs.length();
+		writeInt(length);
+		for (int i = 0; i < length; i++) {
+			writeShort((short) cs.charAt(i));
+		}
+	}
+
+	private void flushBlock() {
+		processBlock(buffer, 0);
+		position = 0;
+	}
+
+}
@@ -51,4 +51,8 @@ public class CondensingWriteStream extends AbstractWriteStream {
 		return condensedValue;
 	}
 	
+	void reset() {
+		condensedValue = 0L;
+	}
+	
 }
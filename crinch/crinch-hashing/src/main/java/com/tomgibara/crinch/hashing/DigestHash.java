@@ -1,14 +1,33 @@
 package com.tomgibara.crinch.hashing;
 
 import java.math.BigInteger;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 
 import com.tomgibara.crinch.util.DigestWriteStream;
 
+/**
+ * A hash that is derived from a {@link MessageDigest}. Instances are safe for
+ * concurrent use: each thread obtains a digest from the {@link DigestSource}
+ * once and then reuses it, together with a buffer for its output, for every
+ * subsequent hash it computes.
+ * 
+ * @author tomgibara
+ * 
+ * @param <T>
+ *            the type of objects for which hashes will be generated
+ */
+
 public class DigestHash<T> extends AbstractHash<T> {
 
+	/**
+	 * Supplies the digests used by a {@link DigestHash}. Implementations must
+	 * be safe for concurrent use, though the digests they create are only ever
+	 * used by a single thread.
+	 */
+
 	public interface DigestSource {
 		
 		int getLengthInBytes();
@@ -94,7 +113,7 @@ public class DigestHash<T> extends AbstractHash<T> {
 
 	private static DigestSource sha1;
 	
-	public static DigestSource getSHA1DigestSource() {
+	public static synchronized DigestSource getSHA1DigestSource() {
 		try {
 			return sha1 == null ? sha1 = new StandardDigestSource("SHA1") : sha1;
 		} catch (NoSuchAlgorithmException e) {
@@ -109,13 +128,21 @@ public class DigestHash<T> extends AbstractHash<T> {
 	private final DigestSource digestSource;
 	private final HashSource<T> hashSource;
 	private final HashRange range;
+	private final int length;
+	private final ThreadLocal<Context> contexts = new ThreadLocal<Context>() {
+		@Override
+		protected Context initialValue() {
+			return new Context();
+		}
+	};
 	
 	public DigestHash(DigestSource digestSource, HashSource<T> hashSource) {
 		if (digestSource == null) throw new IllegalArgumentException("null digestSource");
 		if (hashSource == null) throw new IllegalArgumentException("null source");
 		this.digestSource = digestSource;
 		this.hashSource = hashSource;
-		this.range = new HashRange(BigInteger.ZERO, BigInteger.ONE.shiftLeft(8 * digestSource.getLengthInBytes()).subtract(BigInteger.ONE));
+		length = digestSource.getLengthInBytes();
+		this.range = new HashRange(BigInteger.ZERO, BigInteger.ONE.shiftLeft(8 * length).subtract(BigInteger.ONE));
 	}
 	
 	@Override
@@ -125,10 +152,111 @@ public class DigestHash<T> extends AbstractHash<T> {
 	
 	@Override
 	public BigInteger hashAsBigInt(T value) {
-		MessageDigest digest = digestSource.createDigest();
-		DigestWriteStream stream = new DigestWriteStream(digest);
-		hashSource.sourceData(value, stream);
-		return new BigInteger(1, digest.digest());
+		final Context context = acquire();
+		try {
+			return new BigInteger(1, context.digest(value));
+		} finally {
+			context.inUse = false;
+		}
+	}
+	
+	@Override
+	public int hashAsInt(T value) {
+		final Context context = acquire();
+		try {
+			return toInt(context.digest(value));
+		} finally {
+			context.inUse = false;
+		}
+	}
+	
+	@Override
+	public long hashAsLong(T value) {
+		final Context context = acquire();
+		try {
+			return toLong(context.digest(value));
+		} finally {
+			context.inUse = false;
+		}
+	}
+	
+	/**
+	 * Hashes a number of values, recording the least significant 64 bits of
+	 * each hash. This is equivalent to calling {@link #hashAsLong(Object)} for
+	 * each value, but avoids repeatedly obtaining a digest.
+	 * 
+	 * @param values
+	 *            the values to be hashed
+	 * @param out
+	 *            an array large enough to receive the hashes of all the values
+	 * @return the number of values hashed
+	 */
+	
+	public int hashAll(Iterable<T> values, long[] out) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (out == null) throw new IllegalArgumentException("null out");
+		final Context context = acquire();
+		try {
+			int count = 0;
+			for (T value : values) {
+				if (count == out.length) throw new IllegalArgumentException("out too short");
+				out[count++] = toLong(context.digest(value));
+			}
+			return count;
+		} finally {
+			context.inUse = false;
+		}
+	}
+	
+	private Context acquire() {
+		Context context = contexts.get();
+		// a hash source may itself use this hash
+		if (context.inUse) context = new Context();
+		context.inUse = true;
+		return context;
+	}
+	
+	// the least significant bytes of the big-endian digest
+	private int toInt(byte[] bytes) {
+		int h = 0;
+		for (int i = Math.max(0, length - 4); i < length; i++) {
+			h = (h << 8) | (bytes[i] & 0xff);
+		}
+		return h;
+	}
+	
+	private long toLong(byte[] bytes) {
+		long h = 0L;
+		for (int i = Math.max(0, length - 8); i < length; i++) {
+			h = (h << 8) | (bytes[i] & 0xff);
+		}
+		return h;
+	}
+	
+	// inner classes
+	
+	private final class Context {
+		
+		final MessageDigest digest = digestSource.createDigest();
+		final DigestWriteStream stream = new DigestWriteStream(digest);
+		final byte[] output = new byte[length];
+		boolean inUse = false;
+		
+		byte[] digest(T value) {
+			boolean complete = false;
+			try {
+				hashSource.sourceData(value, stream);
+				digest.digest(output, 0, length);
+				complete = true;
+			} catch (DigestException e) {
+				throw new RuntimeException(e);
+			} finally {
+				// don't leave partial data in the digest for the next value
+				if (!complete) digest.reset();
+			}
+			return output;
+		}
+		
 	}
 	
 }
@@ -0,0 +1,236 @@
+package com.tomgibara.crinch.hashing;
+
+import java.math.BigInteger;
+
+// See Kirsch & Mitzenmacher, "Less Hashing, Same Performance: Building a Better Bloom Filter"
+// and Dillinger & Manolios, "Bloom Filters in Probabilistic Verification"
+
+/**
+ * A MultiHash implementation that uses enhanced double-hashing to generate an
+ * arbitrary number of hash values from a single evaluation of a 64 or 128 bit
+ * hash. The i-th hash value is derived from h1 + i*h2 + (i^3-i)/6 computed
+ * over 64 bits and mapped into the range by multiplying and shifting, not by
+ * taking a remainder. Since the hash values are written directly into the
+ * supplied arrays, no objects are allocated when generating them.
+ *
+ * If the underlying hash is a {@link Murmur3_128Hash}, its two halves supply
+ * h1 and h2, otherwise both are derived from a single 64 bit value. Hashes
+ * with a full integer range are accepted, but offer correspondingly fewer
+ * distinct hash values.
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects for which hashes will be generated
+ */
+
+public class EnhancedDoubleMultiHash<T> extends AbstractMultiHash<T> {
+
+	// scratch space for 128 bit hashes
+	private static final ThreadLocal<long[]> pairs = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+
+	// the high 64 bits of the unsigned product of a and b
+	static long multiplyHigh(long a, long b) {
+		final long aLo = a & 0xffffffffL;
+		final long aHi = a >>> 32;
+		final long bLo = b & 0xffffffffL;
+		final long bHi = b >>> 32;
+		final long mid1 = aHi * bLo + ((aLo * bLo) >>> 32);
+		final long mid2 = aLo * bHi + (mid1 & 0xffffffffL);
+		return aHi * bHi + (mid1 >>> 32) + (mid2 >>> 32);
+	}
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private final Hash<T> hash;
+	private final Murmur3_128Hash<T> wideHash;
+	private final boolean longHash;
+	private final HashRange range;
+	// the size of the range, treated as unsigned
+	private final long size;
+	private final boolean intSized;
+
+	public EnhancedDoubleMultiHash(Hash<T> hash, long max) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		final HashRange hashRange = hash.getRange();
+		if (hashRange.equals(HashRange.FULL_LONG_RANGE)) {
+			longHash = true;
+		} else if (hashRange.equals(HashRange.FULL_INT_RANGE)) {
+			longHash = false;
+		} else {
+			throw new IllegalArgumentException("hash does not have full integer or long range");
+		}
+		if (max < 0) throw new IllegalArgumentException("negative max");
+		this.hash = hash;
+		wideHash = hash instanceof Murmur3_128Hash<?> ? (Murmur3_128Hash<T>) hash : null;
+		range = new HashRange(0, max);
+		size = max + 1;
+		intSized = max <= Integer.MAX_VALUE;
+	}
+
+	@Override
+	public HashRange getRange() {
+		return range;
+	}
+
+	@Override
+	public int getMaxMultiplicity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public int hashAsInt(T value) {
+		return (int) reduce(h1(value));
+	}
+
+	@Override
+	public long hashAsLong(T value) {
+		return reduce(h1(value));
+	}
+
+	@Override
+	public BigInteger hashAsBigInt(T value) {
+		return BigInteger.valueOf(hashAsLong(value));
+	}
+
+	@Override
+	public int[] hashAsInts(T value, int[] array) {
+		if (array == null) throw new IllegalArgumentException("null array");
+		if (array.length > 0) fill(value, array, 0, array.length);
+		return array;
+	}
+
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int multiplicity, int[] out) {
+		if (multiplicity < 0) throw new IllegalArgumentException("negative multiplicity");
+		if (out == null) throw new IllegalArgumentException("null out");
+		Hashes.checkBatch(values, off, len, (long) len * multiplicity, out.length);
+		if (multiplicity == 0) return out;
+		for (int i = 0; i < len; i++) {
+			fill(values[off + i], out, i * multiplicity, multiplicity);
+		}
+		return out;
+	}
+
+	@Override
+	public long[] hashAsLongs(T value, long[] array) {
+		if (array == null) throw new IllegalArgumentException("null array");
+		final int length = array.length;
+		if (length == 0) return array;
+		long x;
+		long y;
+		if (wideHash == null) {
+			x = h1(value);
+			y = mix(x + 0x9e3779b97f4a7c15L);
+		} else {
+			final long[] pair = pairs.get();
+			wideHash.hash128(value, pair);
+			x = pair[0];
+			y = pair[1];
+		}
+		for (int i = 0; i < length; ) {
+			array[i] = reduce(x);
+			x += y;
+			y += ++i;
+		}
+		return array;
+	}
+
+	@Override
+	public BigInteger[] hashAsBigInts(T value, BigInteger[] array) {
+		return copy(hashAsLongs(value, array.length), array);
+	}
+
+	/**
+	 * Generates int hash values from a value's 64 bit hash, allowing values
+	 * such as primitive longs to be hashed without boxing. The result is
+	 * identical to that of {@link #hashAsInts(Object, int[])} for the value.
+	 *
+	 * @param hash
+	 *            the value's hash, as returned by the underlying hash's
+	 *            {@link Hash#hashAsLong(Object)} method
+	 * @param array
+	 *            the array into which the hash values are written
+	 * @return the supplied array
+	 * @throws IllegalStateException
+	 *             if the underlying hash does not have a full long range or
+	 *             is a 128 bit hash
+	 */
+
+	public int[] expandHash(long hash, int[] array) {
+		if (array == null) throw new IllegalArgumentException("null array");
+		if (!longHash || wideHash != null) throw new IllegalStateException("hash not a 64 bit hash");
+		if (array.length > 0) fill(hash, mix(hash + 0x9e3779b97f4a7c15L), array, 0, array.length);
+		return array;
+	}
+
+	// writes length int hash values into the array, starting at off
+	private void fill(T value, int[] array, int off, int length) {
+		if (wideHash == null) {
+			final long x = h1(value);
+			fill(x, mix(x + 0x9e3779b97f4a7c15L), array, off, length);
+		} else {
+			final long[] pair = pairs.get();
+			wideHash.hash128(value, pair);
+			fill(pair[0], pair[1], array, off, length);
+		}
+	}
+
+	private void fill(long x, long y, int[] array, int off, int length) {
+		if (intSized) {
+			for (int i = 0; i < length; ) {
+				array[off + i] = (int) (((x >>> 32) * size) >>> 32);
+				x += y;
+				y += ++i;
+			}
+		} else {
+			for (int i = 0; i < length; ) {
+				array[off + i] = (int) multiplyHigh(x, size);
+				x += y;
+				y += ++i;
+			}
+		}
+	}
+
+	// the first 64 bit hash value, well mixed even if the hash is narrower
+	private long h1(T value) {
+		return longHash ? hash.hashAsLong(value) : mix(hash.hashAsInt(value));
+	}
+
+	private long reduce(long x) {
+		return intSized ? ((x >>> 32) * size) >>> 32 : multiplyHigh(x, size);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash.hashCode() ^ (int) (size ^ (size >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof EnhancedDoubleMultiHash<?>)) return false;
+		EnhancedDoubleMultiHash<?> that = (EnhancedDoubleMultiHash<?>) obj;
+		if (this.size != that.size) return false;
+		if (!this.hash.equals(that.hash)) return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "EnhancedDoubleMultiHash size: " + range.getSize();
+	}
+
+}
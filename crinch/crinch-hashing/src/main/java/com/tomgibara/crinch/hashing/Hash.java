@@ -78,4 +78,51 @@ public interface Hash<T> {
 
 	long hashAsLong(T value) throws IllegalArgumentException;
 
+	/**
+	 * Hashes a number of values as ints. The hash of the value at index
+	 * <code>off + i</code> is stored at index <code>i</code> of the supplied
+	 * array. The result is the same as calling {@link #hashAsInt(Object)} for
+	 * each value, but implementations may be able to hash the values more
+	 * efficiently together.
+	 * 
+	 * @param values
+	 *            an array containing the values to be hashed
+	 * @param off
+	 *            the index of the first value to be hashed
+	 * @param len
+	 *            the number of values to be hashed
+	 * @param out
+	 *            an array with at least len elements to receive the hashes
+	 * @return the supplied out array
+	 * @throws IllegalArgumentException
+	 *             if either array is null, if the out array is too short, or
+	 *             if a value cannot be hashed
+	 * @throws IndexOutOfBoundsException
+	 *             if the values do not lie within the values array
+	 */
+
+	int[] hashAsInts(T[] values, int off, int len, int[] out) throws IllegalArgumentException, IndexOutOfBoundsException;
+
+	/**
+	 * Hashes a number of values as longs, as per
+	 * {@link #hashAsInts(Object[], int, int, int[])}.
+	 * 
+	 * @param values
+	 *            an array containing the values to be hashed
+	 * @param off
+	 *            the index of the first value to be hashed
+	 * @param len
+	 *            the number of values to be hashed
+	 * @param out
+	 *            an array with at least len elements to receive the hashes
+	 * @return the supplied out array
+	 * @throws IllegalArgumentException
+	 *             if either array is null, if the out array is too short, or
+	 *             if a value cannot be hashed
+	 * @throws IndexOutOfBoundsException
+	 *             if the values do not lie within the values array
+	 */
+
+	long[] hashAsLongs(T[] values, int off, int len, long[] out) throws IllegalArgumentException, IndexOutOfBoundsException;
+
 }
@@ -82,6 +82,58 @@ public class Hashes {
 		return new SingletonMultiHash<T>(hash);
 	}
 	
+	// package scoped methods for hashing arrays of values
+	
+	static void checkBatch(Object[] values, int off, int len, long required, int outLength) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (off < 0 || len < 0 || off + len > values.length) throw new IndexOutOfBoundsException();
+		if (required > outLength) throw new IllegalArgumentException("out too short");
+	}
+	
+	static <T> int[] hashAsInts(Hash<T> hash, T[] values, int off, int len, int[] out) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		checkBatch(values, off, len, len, out.length);
+		for (int i = 0; i < len; i++) {
+			out[i] = hash.hashAsInt(values[off + i]);
+		}
+		return out;
+	}
+	
+	static <T> long[] hashAsLongs(Hash<T> hash, T[] values, int off, int len, long[] out) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		checkBatch(values, off, len, len, out.length);
+		for (int i = 0; i < len; i++) {
+			out[i] = hash.hashAsLong(values[off + i]);
+		}
+		return out;
+	}
+	
+	static <T> int[] hashAsInts(MultiHash<T> hash, T[] values, int off, int len, int multiplicity, int[] out) {
+		if (multiplicity < 0) throw new IllegalArgumentException("negative multiplicity");
+		if (out == null) throw new IllegalArgumentException("null out");
+		checkBatch(values, off, len, (long) len * multiplicity, out.length);
+		if (multiplicity == 0) return out;
+		final int[] array = new int[multiplicity];
+		for (int i = 0; i < len; i++) {
+			hash.hashAsInts(values[off + i], array);
+			System.arraycopy(array, 0, out, i * multiplicity, multiplicity);
+		}
+		return out;
+	}
+	
+	static <T> long[] hashAsLongs(MultiHash<T> hash, T[] values, int off, int len, int multiplicity, long[] out) {
+		if (multiplicity < 0) throw new IllegalArgumentException("negative multiplicity");
+		if (out == null) throw new IllegalArgumentException("null out");
+		checkBatch(values, off, len, (long) len * multiplicity, out.length);
+		if (multiplicity == 0) return out;
+		final long[] array = new long[multiplicity];
+		for (int i = 0; i < len; i++) {
+			hash.hashAsLongs(values[off + i], array);
+			System.arraycopy(array, 0, out, i * multiplicity, multiplicity);
+		}
+		return out;
+	}
+	
 	// methods for hashing primitives
 	
 	public static int hashCode(boolean value) {
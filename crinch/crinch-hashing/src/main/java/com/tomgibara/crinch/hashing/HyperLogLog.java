@@ -0,0 +1,321 @@
+package com.tomgibara.crinch.hashing;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.coding.CodedReader;
+import com.tomgibara.crinch.coding.CodedWriter;
+
+// See Heule, Nunkesser & Hall, "HyperLogLog in Practice" for the sparse representation
+// and Ertl, "New cardinality estimation algorithms for HyperLogLog sketches" for the estimator
+
+/**
+ * <p>
+ * Estimates the number of distinct values it has been given using the
+ * HyperLogLog++ algorithm. Values are hashed to 64 bits, so that very large
+ * cardinalities can be estimated without bias. With the default precision of
+ * 14, the standard error of an estimate is approximately 0.8% and no more than
+ * 16KB of memory is needed.
+ * </p>
+ *
+ * <p>
+ * While few distinct values have been added, a sparse representation is used
+ * that requires less memory and is more accurate. Instances with equal
+ * precisions and hashes may be merged to estimate the cardinality of a union.
+ * An instance can be persisted with {@link #write(CodedWriter)} and restored
+ * with {@link #read(CodedReader, Hash)}.
+ * </p>
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of values to be counted
+ */
+
+public class HyperLogLog<T> {
+
+	// statics
+
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+	public static final int DEFAULT_PRECISION = 14;
+
+	// the precision of the sparse representation
+	private static final int SPARSE_PRECISION = 25;
+	private static final int SPARSE_SIZE = 1 << SPARSE_PRECISION;
+
+	public static <T> HyperLogLog<T> read(CodedReader reader, Hash<T> hash) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		final int precision = reader.readPositiveInt();
+		final HyperLogLog<T> hll = new HyperLogLog<T>(hash, precision);
+		if (reader.getReader().readBoolean()) {
+			final int size = reader.readPositiveInt();
+			if (size > hll.sparseLimit) throw new IllegalArgumentException("invalid sparse size");
+			final int[] sparse = new int[Math.max(size, hll.sparse.length)];
+			int entry = 0;
+			for (int i = 0; i < size; i++) {
+				entry += reader.readPositiveInt();
+				sparse[i] = entry;
+			}
+			hll.sparse = sparse;
+			hll.sparseSize = size;
+		} else {
+			hll.toDense();
+			final byte[] registers = hll.registers;
+			for (int i = 0; i < registers.length; i++) {
+				registers[i] = (byte) reader.getReader().read(6);
+			}
+		}
+		return hll;
+	}
+
+	// encodes a hash as a sparse index and register value
+	private static int encode(long h) {
+		final int index = (int) (h >>> (64 - SPARSE_PRECISION));
+		final int rho = Long.numberOfLeadingZeros((h << SPARSE_PRECISION) | (1L << (SPARSE_PRECISION - 1))) + 1;
+		return (index << 6) | rho;
+	}
+
+	private static double sigma(double x) {
+		if (x == 1.0) return Double.POSITIVE_INFINITY;
+		double y = 1.0;
+		double z = x;
+		while (true) {
+			x *= x;
+			final double w = z;
+			z += x * y;
+			y += y;
+			if (w == z) return z;
+		}
+	}
+
+	private static double tau(double x) {
+		if (x == 0.0 || x == 1.0) return 0.0;
+		double y = 1.0;
+		double z = 1.0 - x;
+		while (true) {
+			x = Math.sqrt(x);
+			final double w = z;
+			y *= 0.5;
+			z -= (1.0 - x) * (1.0 - x) * y;
+			if (w == z) return z / 3.0;
+		}
+	}
+
+	// fields
+
+	private final Hash<T> hash;
+	private final int precision;
+	private final int sparseLimit;
+
+	// sorted encoded hashes, null once dense
+	private int[] sparse;
+	private int sparseSize;
+	// unsorted encoded hashes awaiting merger into the sparse array
+	private int[] buffer;
+	private int bufferSize;
+	// null until dense
+	private byte[] registers;
+
+	// constructors
+
+	public HyperLogLog(Hash<T> hash) {
+		this(hash, DEFAULT_PRECISION);
+	}
+
+	public HyperLogLog(Hash<T> hash, int precision) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (!hash.getRange().equals(HashRange.FULL_LONG_RANGE)) throw new IllegalArgumentException("hash does not have full long range");
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) throw new IllegalArgumentException("invalid precision");
+		this.hash = hash;
+		this.precision = precision;
+		// the sparse representation should not use more memory than the dense
+		sparseLimit = 1 << (precision - 2);
+		clear();
+	}
+
+	// accessors
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public boolean isSparse() {
+		return registers == null;
+	}
+
+	// methods
+
+	public void add(T value) {
+		addHash(hash.hashAsLong(value));
+	}
+
+	/**
+	 * Adds a value that has already been hashed.
+	 *
+	 * @param h
+	 *            the value's hash, as generated by the hash with which this
+	 *            object was constructed
+	 */
+
+	public void addHash(long h) {
+		if (registers == null) {
+			buffer[bufferSize++] = encode(h);
+			if (bufferSize == buffer.length) flushBuffer();
+		} else {
+			final int index = (int) (h >>> (64 - precision));
+			final int rho = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+			if (rho > registers[index]) registers[index] = (byte) rho;
+		}
+	}
+
+	/**
+	 * An estimate of the number of distinct values added.
+	 *
+	 * @return the estimated cardinality
+	 */
+
+	public long getEstimate() {
+		if (registers == null) {
+			flushBuffer();
+			// linear counting over the sparse indices
+			return Math.round(SPARSE_SIZE * Math.log((double) SPARSE_SIZE / (SPARSE_SIZE - sparseSize)));
+		}
+		final int m = registers.length;
+		final int q = 64 - precision;
+		final int[] counts = new int[q + 2];
+		for (int i = 0; i < m; i++) {
+			counts[registers[i]]++;
+		}
+		double z = m * tau(1.0 - (double) counts[q + 1] / m);
+		for (int k = q; k > 0; k--) {
+			z = 0.5 * (z + counts[k]);
+		}
+		z += m * sigma((double) counts[0] / m);
+		return Math.round(0.5 / Math.log(2.0) * m * m / z);
+	}
+
+	/**
+	 * Adds all the values counted by another instance to this one. The other
+	 * instance must have the same precision and use an equivalent hash.
+	 *
+	 * @param that
+	 *            the instance to merge into this one
+	 */
+
+	public void merge(HyperLogLog<? extends T> that) {
+		if (that == null) throw new IllegalArgumentException("null that");
+		if (that.precision != this.precision) throw new IllegalArgumentException("mismatched precision");
+		if (that.registers == null) {
+			that.flushBuffer();
+			flushBuffer();
+			if (this.registers == null) {
+				merge(that.sparse, that.sparseSize);
+			} else {
+				for (int i = 0; i < that.sparseSize; i++) {
+					applyToDense(that.sparse[i]);
+				}
+			}
+		} else {
+			if (this.registers == null) toDense();
+			final byte[] registers = this.registers;
+			for (int i = 0; i < registers.length; i++) {
+				registers[i] = (byte) Math.max(registers[i], that.registers[i]);
+			}
+		}
+	}
+
+	public void clear() {
+		sparse = new int[Math.min(sparseLimit, 64)];
+		sparseSize = 0;
+		buffer = new int[Math.max(4, sparseLimit >> 2)];
+		bufferSize = 0;
+		registers = null;
+	}
+
+	public void write(CodedWriter writer) {
+		if (writer == null) throw new IllegalArgumentException("null writer");
+		writer.writePositiveInt(precision);
+		final boolean sparse = registers == null;
+		writer.getWriter().writeBoolean(sparse);
+		if (sparse) {
+			flushBuffer();
+			writer.writePositiveInt(sparseSize);
+			int previous = 0;
+			for (int i = 0; i < sparseSize; i++) {
+				final int entry = this.sparse[i];
+				writer.writePositiveInt(entry - previous);
+				previous = entry;
+			}
+		} else {
+			for (int i = 0; i < registers.length; i++) {
+				writer.getWriter().write(registers[i], 6);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HyperLogLog precision: " + precision + ", sparse? " + isSparse() + ", estimate: " + getEstimate();
+	}
+
+	// private utility methods
+
+	private void flushBuffer() {
+		if (bufferSize == 0) return;
+		Arrays.sort(buffer, 0, bufferSize);
+		final int size = bufferSize;
+		bufferSize = 0;
+		merge(buffer, size);
+	}
+
+	// merges sorted entries into the sparse array
+	private void merge(int[] entries, int count) {
+		final int[] sparse = this.sparse;
+		final int sparseSize = this.sparseSize;
+		final int[] merged = new int[Math.max(sparse.length, sparseSize + count)];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < sparseSize || j < count) {
+			final int entry;
+			if (j == count || i < sparseSize && sparse[i] <= entries[j]) {
+				entry = sparse[i++];
+			} else {
+				entry = entries[j++];
+			}
+			// entries for the same index are ordered by increasing value
+			if (k > 0 && (merged[k - 1] >>> 6) == (entry >>> 6)) {
+				merged[k - 1] = entry;
+			} else {
+				merged[k++] = entry;
+			}
+		}
+		this.sparse = merged;
+		this.sparseSize = k;
+		if (k > sparseLimit) toDense();
+	}
+
+	private void toDense() {
+		registers = new byte[1 << precision];
+		for (int i = 0; i < sparseSize; i++) {
+			applyToDense(sparse[i]);
+		}
+		for (int i = 0; i < bufferSize; i++) {
+			applyToDense(buffer[i]);
+		}
+		sparse = null;
+		sparseSize = 0;
+		buffer = null;
+		bufferSize = 0;
+	}
+
+	private void applyToDense(int entry) {
+		final int sparseIndex = entry >>> 6;
+		final int shift = SPARSE_PRECISION - precision;
+		final int index = sparseIndex >>> shift;
+		final int low = sparseIndex & ((1 << shift) - 1);
+		final int rho = low == 0 ? shift + (entry & 63) : Integer.numberOfLeadingZeros(low) - (32 - shift) + 1;
+		if (rho > registers[index]) registers[index] = (byte) rho;
+	}
+
+}
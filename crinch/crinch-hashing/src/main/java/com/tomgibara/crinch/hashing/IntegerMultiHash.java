@@ -69,6 +69,27 @@ public class IntegerMultiHash<T> extends AbstractMultiHash<T> {
         return array;
 	}
 	
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int multiplicity, int[] out) {
+		if (multiplicity < 0) throw new IllegalArgumentException("negative multiplicity");
+		if (out == null) throw new IllegalArgumentException("null out");
+		Hashes.checkBatch(values, off, len, (long) len * multiplicity, out.length);
+		if (multiplicity == 0) return out;
+		// hash the values together, then expand each hash in place, last first
+		hash.hashAsInts(values, off, len, out);
+		final int size = this.size;
+		for (int i = len - 1; i >= 0; i--) {
+			final int hashCode = out[i];
+			final int probe = 1 + Math.abs(hashCode % size);
+			final int h = spread(hashCode);
+			final int base = i * multiplicity;
+			for (int j = 0; j < multiplicity; j++) {
+				out[base + j] = Math.abs(h ^ j * probe) % size;
+			}
+		}
+		return out;
+	}
+	
 	@Override
 	public long[] hashAsLongs(T value, long[] array) {
 		return copy(hashAsInts(value, array.length), array);
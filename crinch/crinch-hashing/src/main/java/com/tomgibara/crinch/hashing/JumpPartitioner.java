@@ -0,0 +1,60 @@
+package com.tomgibara.crinch.hashing;
+
+// See Lamping & Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+
+/**
+ * Partitions objects using jump consistent hashing. No state is needed beyond
+ * the underlying hash and assigning a bucket takes time logarithmic in the
+ * number of buckets. When the number of buckets is increased from n to n + 1,
+ * the only objects to move are the 1/(n + 1) that move to the new bucket.
+ * Buckets may only be added or removed at the end of the range.
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be partitioned
+ */
+
+public class JumpPartitioner<T> extends AbstractPartitioner<T> {
+
+	/**
+	 * Assigns a key to a bucket using jump consistent hashing.
+	 *
+	 * @param key
+	 *            the key
+	 * @param buckets
+	 *            the number of buckets, must be positive
+	 * @return the bucket index
+	 */
+
+	public static int jump(long key, int buckets) {
+		if (buckets < 1) throw new IllegalArgumentException("buckets not positive");
+		long b = -1L;
+		long j = 0L;
+		while (j < buckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1L;
+			j = (long) ((b + 1L) * ((double) (1L << 31) / (double) ((key >>> 33) + 1L)));
+		}
+		return (int) b;
+	}
+
+	public JumpPartitioner(Hash<T> hash) {
+		super(hash);
+	}
+
+	public JumpPartitioner(HashSource<T> source) {
+		super(new XxHash64Hash<T>(source));
+	}
+
+	@Override
+	protected int partitionKey(long key, int buckets) {
+		return jump(key, buckets);
+	}
+
+	@Override
+	public String toString() {
+		return "JumpPartitioner hash: " + getHash();
+	}
+
+}
@@ -61,4 +61,18 @@ public class LongHash<T> extends AbstractHash<T> {
 		return out.getCondensedValue();
 	}
 	
+	@Override
+	public long[] hashAsLongs(T[] values, int off, int len, long[] out) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		Hashes.checkBatch(values, off, len, len, out.length);
+		// a single stream suffices for the whole batch
+		CondensingWriteStream stream = new CondensingWriteStream();
+		for (int i = 0; i < len; i++) {
+			stream.reset();
+			source.sourceData(values[off + i], stream);
+			out[i] = stream.getCondensedValue();
+		}
+		return out;
+	}
+	
 }
@@ -0,0 +1,621 @@
+package com.tomgibara.crinch.hashing;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.tomgibara.crinch.bits.BitReader;
+import com.tomgibara.crinch.bits.BitWriter;
+
+// See Limasset, Rizk, Chikhi & Peterlongo, "Fast and scalable minimal perfect hashing for massive key sets"
+
+/**
+ * <p>
+ * A minimal perfect hash over the values of any {@link HashSource}. Each of
+ * the <em>n</em> values from which the hash was built is assigned a distinct
+ * hash value <em>h</em> (0 <= h < n). Values which were not supplied will
+ * typically hash to -1, but may be assigned any valid hash value. As with
+ * {@link PerfectStringHash}, the values themselves are not retained.
+ * </p>
+ *
+ * <p>
+ * The hash is constructed using the BBHash algorithm: values are identified by
+ * 64 bit fingerprints and assigned to a sequence of bit arrays, with values
+ * that collide in one array deferred to the next. A hash value is the rank of
+ * a value's bit among all those set. Evaluation takes constant expected time
+ * and, with the default gamma of 1, approximately 3 bits are stored per value.
+ * Instances are created with a {@link Builder} and may be persisted using
+ * {@link #write(BitWriter)} and {@link #read(BitReader, HashSource)}.
+ * </p>
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be hashed
+ */
+
+public class MinimalPerfectHash<T> implements Hash<T> {
+
+	// statics
+
+	private static final int MAX_LEVELS = 256;
+	// ranks are sampled every 512 bits
+	private static final int RANK_SHIFT = 3;
+	// values are fingerprinted in batches of this size when streamed
+	private static final int STREAM_BATCH = 1 << 16;
+	// the smallest number of fingerprints worth dividing between threads
+	private static final int PARALLEL_THRESHOLD = 1 << 14;
+	// applied to the seed when distinct values share a fingerprint
+	private static final long RESEED_INCREMENT = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Reads a hash that was previously written with {@link #write(BitWriter)}.
+	 *
+	 * @param reader
+	 *            the reader from which the hash is read
+	 * @param source
+	 *            a source equivalent to that with which the hash was built
+	 * @return the hash
+	 */
+
+	public static <T> MinimalPerfectHash<T> read(BitReader reader, HashSource<T> source) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		if (source == null) throw new IllegalArgumentException("null source");
+		final long seed = reader.readLong(64);
+		final long count = reader.readLong(64);
+		final int levelCount = reader.read(32);
+		if (count < 0L) throw new IllegalArgumentException("invalid count");
+		if (levelCount < 0 || levelCount > MAX_LEVELS) throw new IllegalArgumentException("invalid level count");
+		final long[] offsets = new long[levelCount + 1];
+		for (int i = 0; i < levelCount; i++) {
+			final int words = reader.read(32);
+			if (words <= 0) throw new IllegalArgumentException("invalid level size");
+			offsets[i + 1] = offsets[i] + ((long) words << 6);
+		}
+		final long wordCount = offsets[levelCount] >> 6;
+		if (wordCount > Integer.MAX_VALUE) throw new IllegalArgumentException("invalid level sizes");
+		final long[] bits = new long[(int) wordCount];
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = reader.readLong(64);
+		}
+		return new MinimalPerfectHash<T>(source, seed, count, offsets, bits);
+	}
+
+	// the position of a fingerprint within a level
+	private static long position(long fingerprint, int level, long size) {
+		long h = fingerprint + (level + 1) * 0x9e3779b97f4a7c15L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return EnhancedDoubleMultiHash.multiplyHigh(h, size);
+	}
+
+	// fields
+
+	private final XxHash64Hash<T> fingerprints;
+	private final long seed;
+	private final long count;
+	private final HashRange range;
+	// the first bit of each level, followed by the total number of bits
+	private final long[] offsets;
+	private final long[] bits;
+	private final long[] ranks;
+
+	// constructors
+
+	private MinimalPerfectHash(HashSource<T> source, long seed, long count, long[] offsets, long[] bits) {
+		fingerprints = new XxHash64Hash<T>(source, seed);
+		this.seed = seed;
+		this.count = count;
+		this.offsets = offsets;
+		this.bits = bits;
+		range = new HashRange(0L, Math.max(0L, count - 1L));
+		ranks = new long[(bits.length >> RANK_SHIFT) + 1];
+		long rank = 0L;
+		for (int i = 0; i < bits.length; i++) {
+			if ((i & ((1 << RANK_SHIFT) - 1)) == 0) ranks[i >> RANK_SHIFT] = rank;
+			rank += Long.bitCount(bits[i]);
+		}
+		if (rank != count) throw new IllegalArgumentException("count does not match levels");
+	}
+
+	// accessors
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * The number of bits used to store the hash, excluding a small sampling of
+	 * ranks that is recomputed when the hash is read.
+	 *
+	 * @return the number of bits in the hash levels
+	 */
+
+	public long getBitCount() {
+		return offsets[offsets.length - 1];
+	}
+
+	// hash methods
+
+	/**
+	 * @return the range [0, n - 1] where n is the number of values supplied
+	 *         to the builder, or [0, 0] if no values were supplied
+	 */
+
+	@Override
+	public HashRange getRange() {
+		return range;
+	}
+
+	@Override
+	public BigInteger hashAsBigInt(T value) {
+		return BigInteger.valueOf(hashAsLong(value));
+	}
+
+	@Override
+	public int hashAsInt(T value) {
+		return (int) hashAsLong(value);
+	}
+
+	@Override
+	public long hashAsLong(T value) {
+		return hashFingerprint(fingerprints.hashAsLong(value));
+	}
+
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int[] out) {
+		return Hashes.hashAsInts(this, values, off, len, out);
+	}
+
+	@Override
+	public long[] hashAsLongs(T[] values, int off, int len, long[] out) {
+		return Hashes.hashAsLongs(this, values, off, len, out);
+	}
+
+	// methods
+
+	/**
+	 * Returns the hash of a value, given its fingerprint as returned by
+	 * {@link Builder#fingerprint(Object)}.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of a value
+	 * @return the hash of the value, or -1
+	 */
+
+	public long hashFingerprint(long fingerprint) {
+		final long[] offsets = this.offsets;
+		final long[] bits = this.bits;
+		for (int level = 0; level < offsets.length - 1; level++) {
+			final long offset = offsets[level];
+			final long pos = offset + position(fingerprint, level, offsets[level + 1] - offset);
+			final int w = (int) (pos >>> 6);
+			if ((bits[w] & (1L << pos)) != 0L) {
+				long rank = ranks[w >> RANK_SHIFT];
+				for (int i = (w >> RANK_SHIFT) << RANK_SHIFT; i < w; i++) {
+					rank += Long.bitCount(bits[i]);
+				}
+				return rank + Long.bitCount(bits[w] & ((1L << pos) - 1L));
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Writes the hash so that it may later be recovered with
+	 * {@link #read(BitReader, HashSource)}.
+	 *
+	 * @param writer
+	 *            the writer to which the hash is written
+	 */
+
+	public void write(BitWriter writer) {
+		if (writer == null) throw new IllegalArgumentException("null writer");
+		writer.write(seed, 64);
+		writer.write(count, 64);
+		final int levelCount = offsets.length - 1;
+		writer.write(levelCount, 32);
+		for (int i = 0; i < levelCount; i++) {
+			writer.write((int) ((offsets[i + 1] - offsets[i]) >> 6), 32);
+		}
+		for (int i = 0; i < bits.length; i++) {
+			writer.write(bits[i], 64);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MinimalPerfectHash count: " + count + " levels: " + (offsets.length - 1) + " bits: " + getBitCount();
+	}
+
+	// inner classes
+
+	/**
+	 * Builds {@link MinimalPerfectHash} instances. Values may be supplied via
+	 * an {@link Iterable} which is traversed once for each level until the
+	 * values that remain to be placed fit within the memory limit, so that
+	 * very large sets of values can be hashed without holding them, or their
+	 * fingerprints, in memory. Alternatively, fingerprints may be supplied
+	 * directly. The values supplied must be distinct.
+	 *
+	 * Distinct values may occasionally share a fingerprint (with a billion
+	 * values this has a probability of a few percent). When building from an
+	 * {@link Iterable}, a collision causes the hash to be rebuilt with a
+	 * different seed; only if the fingerprints collide again are the values
+	 * rejected. The seed of the resulting hash is therefore not necessarily
+	 * the seed of the builder.
+	 *
+	 * @param <T>
+	 *            the type of objects to be hashed
+	 */
+
+	public static class Builder<T> {
+
+		private final HashSource<T> source;
+		private XxHash64Hash<T> hash;
+		private long seed = 0L;
+		private double gamma = 1.0;
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private int memoryLimit = 1 << 24;
+
+		public Builder(HashSource<T> source) {
+			if (source == null) throw new IllegalArgumentException("null source");
+			this.source = source;
+			hash = new XxHash64Hash<T>(source, seed);
+		}
+
+		public Builder<T> setSeed(long seed) {
+			this.seed = seed;
+			hash = new XxHash64Hash<T>(source, seed);
+			return this;
+		}
+
+		/**
+		 * Larger values of gamma increase the size of the hash, but reduce the
+		 * time taken to build and evaluate it.
+		 *
+		 * @param gamma
+		 *            the ratio of bits to values in each level, at least one
+		 * @return the builder
+		 */
+
+		public Builder<T> setGamma(double gamma) {
+			if (!(gamma >= 1.0)) throw new IllegalArgumentException("gamma less than one");
+			this.gamma = gamma;
+			return this;
+		}
+
+		public Builder<T> setThreads(int threads) {
+			if (threads < 1) throw new IllegalArgumentException("threads not positive");
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * @param memoryLimit
+		 *            the maximum number of fingerprints to hold in memory when
+		 *            building from an {@link Iterable}
+		 * @return the builder
+		 */
+
+		public Builder<T> setMemoryLimit(int memoryLimit) {
+			if (memoryLimit < 1) throw new IllegalArgumentException("memoryLimit not positive");
+			this.memoryLimit = memoryLimit;
+			return this;
+		}
+
+		/**
+		 * The 64 bit fingerprint from which a value's hash is derived, this
+		 * depends on the seed.
+		 *
+		 * @param value
+		 *            a value
+		 * @return the fingerprint of the value
+		 */
+
+		public long fingerprint(T value) {
+			return hash.hashAsLong(value);
+		}
+
+		/**
+		 * Builds a hash from fingerprints obtained via
+		 * {@link #fingerprint(Object)}.
+		 *
+		 * @param fingerprints
+		 *            an array of fingerprints, which is not modified
+		 * @param count
+		 *            the number of fingerprints in the array
+		 * @return a minimal perfect hash
+		 * @throws IllegalArgumentException
+		 *             if the fingerprints are not distinct, in which case the
+		 *             caller may retry with a different seed
+		 */
+
+		public MinimalPerfectHash<T> build(long[] fingerprints, int count) {
+			if (fingerprints == null) throw new IllegalArgumentException("null fingerprints");
+			if (count < 0 || count > fingerprints.length) throw new IllegalArgumentException("invalid count");
+			Levels levels = new Levels(gamma, threads);
+			if (!levels.complete(Arrays.copyOf(fingerprints, count), count)) throw new IllegalArgumentException("fingerprints not distinct");
+			return levels.toHash(source, seed, count);
+		}
+
+		/**
+		 * Builds a hash over the values of an {@link Iterable} which must
+		 * return the same values each time it is iterated.
+		 *
+		 * @param values
+		 *            distinct values
+		 * @return a minimal perfect hash
+		 * @throws IllegalArgumentException
+		 *             if the values are not distinct
+		 */
+
+		public MinimalPerfectHash<T> build(Iterable<? extends T> values) {
+			if (values == null) throw new IllegalArgumentException("null values");
+			MinimalPerfectHash<T> mph = build(values, seed, hash);
+			if (mph == null) {
+				final long reseed = seed + RESEED_INCREMENT;
+				mph = build(values, reseed, new XxHash64Hash<T>(source, reseed));
+			}
+			if (mph == null) throw new IllegalArgumentException("values not distinct");
+			return mph;
+		}
+
+		// returns null if two of the values share a fingerprint
+		private MinimalPerfectHash<T> build(Iterable<? extends T> values, long seed, XxHash64Hash<T> hash) {
+			// count the values, retaining fingerprints if possible
+			long count = 0L;
+			long[] fps = new long[Math.min(memoryLimit, 1024)];
+			for (T value : values) {
+				if (fps != null && count == fps.length) {
+					fps = count == memoryLimit ? null : Arrays.copyOf(fps, (int) Math.min(memoryLimit, count * 2L));
+				}
+				if (fps != null) fps[(int) count] = hash.hashAsLong(value);
+				count++;
+			}
+			Levels levels = new Levels(gamma, threads);
+			final int n;
+			if (fps == null) {
+				// stream the values until the remainder will fit in memory
+				long remaining = count;
+				final long[] batch = new long[STREAM_BATCH];
+				while (remaining > memoryLimit) {
+					levels.begin(remaining);
+					int b = 0;
+					for (T value : values) {
+						final long fp = hash.hashAsLong(value);
+						if (levels.placed(fp)) continue;
+						batch[b++] = fp;
+						if (b == batch.length) {
+							levels.mark(batch, b);
+							b = 0;
+						}
+					}
+					levels.mark(batch, b);
+					final long placed = levels.end();
+					// only shared fingerprints can prevent every placement
+					if (placed == 0L) return null;
+					remaining -= placed;
+				}
+				fps = new long[(int) remaining];
+				int i = 0;
+				for (T value : values) {
+					final long fp = hash.hashAsLong(value);
+					if (levels.placed(fp)) continue;
+					if (i == fps.length) throw new IllegalStateException("values changed during build");
+					fps[i++] = fp;
+				}
+				if (i != fps.length) throw new IllegalStateException("values changed during build");
+				n = i;
+			} else {
+				n = (int) count;
+			}
+			if (!levels.complete(fps, n)) return null;
+			return levels.toHash(source, seed, count);
+		}
+
+	}
+
+	// accumulates the levels of a hash under construction
+	private static class Levels {
+
+		private final double gamma;
+		private final int threads;
+		private final List<long[]> levels = new ArrayList<long[]>();
+
+		// the level currently being built
+		private long size;
+		private AtomicLongArray words;
+		private AtomicLongArray collisions;
+
+		Levels(double gamma, int threads) {
+			this.gamma = gamma;
+			this.threads = threads;
+		}
+
+		void begin(long remaining) {
+			final int level = levels.size();
+			if (level == MAX_LEVELS) throw new IllegalStateException("too many levels");
+			final long wordCount = Math.max(1L, ((long) Math.ceil(gamma * remaining) + 63L) >> 6);
+			if (wordCount > Integer.MAX_VALUE) throw new IllegalArgumentException("too many values");
+			size = wordCount << 6;
+			words = new AtomicLongArray((int) wordCount);
+			collisions = new AtomicLongArray((int) wordCount);
+		}
+
+		// records the fingerprints in the current level
+		void mark(final long[] fps, int n) {
+			final int level = levels.size();
+			final long size = this.size;
+			parallel(n, new Task() {
+				@Override
+				int run(int from, int to) {
+					for (int i = from; i < to; i++) {
+						final long pos = position(fps[i], level, size);
+						final int w = (int) (pos >>> 6);
+						final long m = 1L << pos;
+						while (true) {
+							final long v = words.get(w);
+							if ((v & m) != 0L) {
+								set(collisions, w, m);
+								break;
+							}
+							if (words.compareAndSet(w, v, v | m)) break;
+						}
+					}
+					return 0;
+				}
+			});
+		}
+
+		// completes the current level and returns the number of values placed
+		long end() {
+			final long[] level = new long[words.length()];
+			long placed = 0L;
+			for (int i = 0; i < level.length; i++) {
+				level[i] = words.get(i) & ~collisions.get(i);
+				placed += Long.bitCount(level[i]);
+			}
+			levels.add(level);
+			words = null;
+			collisions = null;
+			return placed;
+		}
+
+		// whether the fingerprint was placed in a completed level
+		boolean placed(long fp) {
+			for (int i = 0; i < levels.size(); i++) {
+				final long[] level = levels.get(i);
+				final long pos = position(fp, i, (long) level.length << 6);
+				if ((level[(int) (pos >>> 6)] & (1L << pos)) != 0L) return true;
+			}
+			return false;
+		}
+
+		// places all of the fingerprints, which are held in memory, returning false if any are equal
+		boolean complete(final long[] fps, int n) {
+			while (n > 0) {
+				begin(n);
+				mark(fps, n);
+				if (end() == 0L && !isDistinct(fps, n)) return false;
+				n = retain(fps, n);
+			}
+			return true;
+		}
+
+		<T> MinimalPerfectHash<T> toHash(HashSource<T> source, long seed, long count) {
+			final int levelCount = levels.size();
+			final long[] offsets = new long[levelCount + 1];
+			for (int i = 0; i < levelCount; i++) {
+				offsets[i + 1] = offsets[i] + ((long) levels.get(i).length << 6);
+			}
+			final long[] bits = new long[(int) (offsets[levelCount] >> 6)];
+			for (int i = 0; i < levelCount; i++) {
+				final long[] level = levels.get(i);
+				System.arraycopy(level, 0, bits, (int) (offsets[i] >> 6), level.length);
+			}
+			return new MinimalPerfectHash<T>(source, seed, count, offsets, bits);
+		}
+
+		// removes fingerprints placed in the last level, returning the number that remain
+		private int retain(final long[] fps, int n) {
+			final int level = levels.size() - 1;
+			final long[] words = levels.get(level);
+			final long size = (long) words.length << 6;
+			final int[] counts = parallel(n, new Task() {
+				@Override
+				int run(int from, int to) {
+					int j = from;
+					for (int i = from; i < to; i++) {
+						final long fp = fps[i];
+						final long pos = position(fp, level, size);
+						if ((words[(int) (pos >>> 6)] & (1L << pos)) == 0L) fps[j++] = fp;
+					}
+					return j - from;
+				}
+			});
+			// gather the fingerprints retained from each chunk
+			int j = 0;
+			for (int c = 0; c < counts.length; c++) {
+				final int from = chunkStart(n, counts.length, c);
+				System.arraycopy(fps, from, fps, j, counts[c]);
+				j += counts[c];
+			}
+			return j;
+		}
+
+		// runs a task over chunks of [0,n), returning the result for each chunk
+		private int[] parallel(final int n, final Task task) {
+			final int chunks = n < PARALLEL_THRESHOLD ? 1 : Math.min(threads, n / PARALLEL_THRESHOLD);
+			final int[] results = new int[chunks];
+			final Thread[] workers = new Thread[chunks - 1];
+			final Throwable[] failure = new Throwable[1];
+			for (int c = 1; c < chunks; c++) {
+				final int chunk = c;
+				workers[c - 1] = new Thread("MinimalPerfectHash builder") {
+					@Override
+					public void run() {
+						try {
+							results[chunk] = task.run(chunkStart(n, chunks, chunk), chunkStart(n, chunks, chunk + 1));
+						} catch (Throwable t) {
+							synchronized (failure) {
+								failure[0] = t;
+							}
+						}
+					}
+				};
+				workers[c - 1].start();
+			}
+			results[0] = task.run(0, chunkStart(n, chunks, 1));
+			boolean interrupted = false;
+			for (Thread worker : workers) {
+				while (true) {
+					try {
+						worker.join();
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+			synchronized (failure) {
+				if (failure[0] != null) throw new IllegalStateException("build failed", failure[0]);
+			}
+			return results;
+		}
+
+		private static int chunkStart(int n, int chunks, int chunk) {
+			return (int) ((long) n * chunk / chunks);
+		}
+
+		private static void set(AtomicLongArray array, int w, long m) {
+			while (true) {
+				final long v = array.get(w);
+				if ((v & m) != 0L || array.compareAndSet(w, v, v | m)) return;
+			}
+		}
+
+		private static boolean isDistinct(long[] fps, int n) {
+			final long[] sorted = Arrays.copyOf(fps, n);
+			Arrays.sort(sorted);
+			for (int i = 1; i < n; i++) {
+				if (sorted[i] == sorted[i - 1]) return false;
+			}
+			return true;
+		}
+
+	}
+
+	private static abstract class Task {
+
+		abstract int run(int from, int to);
+
+	}
+
+}
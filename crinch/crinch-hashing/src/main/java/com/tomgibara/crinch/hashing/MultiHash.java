@@ -73,4 +73,37 @@ public interface MultiHash<T> extends Hash<T> {
 
     BigInteger[] hashAsBigInts(T value, BigInteger[] array) throws IllegalArgumentException;
 
+	/**
+	 * Creates a number of hash values for each of several objects. The hash
+	 * values for the value at index <code>off + i</code> are stored
+	 * consecutively in the supplied array, starting at index
+	 * <code>i * multiplicity</code>. The result is the same as calling
+	 * {@link #hashAsInts(Object, int[])} for each value, but implementations
+	 * may be able to hash the values more efficiently together.
+	 * 
+	 * @param values
+	 *            an array containing the values to be hashed
+	 * @param off
+	 *            the index of the first value to be hashed
+	 * @param len
+	 *            the number of values to be hashed
+	 * @param multiplicity
+	 *            the number of hash values to be generated for each value
+	 * @param out
+	 *            an array with at least <code>len * multiplicity</code>
+	 *            elements to receive the hash values
+	 * @return the supplied out array
+	 * @throws IllegalArgumentException
+	 *             if either array is null, if the out array is too short, if
+	 *             the multiplicity exceeds the value returned by
+	 *             {@link #getMaxMultiplicity()}, or if a value could not be
+	 *             hashed
+	 * @throws IndexOutOfBoundsException
+	 *             if the values do not lie within the values array
+	 */
+
+    int[] hashAsInts(T[] values, int off, int len, int multiplicity, int[] out) throws IllegalArgumentException, IndexOutOfBoundsException;
+
+    long[] hashAsLongs(T[] values, int off, int len, int multiplicity, long[] out) throws IllegalArgumentException, IndexOutOfBoundsException;
+
 }
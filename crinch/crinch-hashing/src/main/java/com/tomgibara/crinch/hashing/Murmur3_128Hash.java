@@ -0,0 +1,243 @@
+package com.tomgibara.crinch.hashing;
+
+// See http://smhasher.googlecode.com/svn/trunk/MurmurHash3.cpp
+
+/**
+ * An implementation of the x64 128-bit variant of MurmurHash3. The first 64
+ * bits of the hash are exposed through the {@link Hash} interface with a full
+ * long range; the complete 128 bits are available via
+ * {@link #hash128(Object, long[])} for applications, such as fingerprinting,
+ * which require a very low probability of collision.
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be hashed
+ */
+
+public class Murmur3_128Hash<T> extends AbstractHash<T> {
+
+	static final long c1 = 0x87c37b91114253d5L;
+	static final long c2 = 0x4cf5ad432745937fL;
+
+	// streams are reused to avoid allocating one per hash
+	private static final ThreadLocal<MurmurStream> streams = new ThreadLocal<MurmurStream>() {
+		@Override
+		protected MurmurStream initialValue() {
+			return new MurmurStream();
+		}
+	};
+
+	/**
+	 * Hashes a range of bytes. The result is identical to that obtained by
+	 * hashing a value whose source writes the same bytes.
+	 *
+	 * @param bytes
+	 *            the bytes to be hashed
+	 * @param off
+	 *            the index of the first byte
+	 * @param len
+	 *            the number of bytes
+	 * @param seed
+	 *            the seed for the hash
+	 * @param hash
+	 *            an array of length two into which the 128 bit hash is
+	 *            written, low bits first
+	 */
+
+	public static void hash(byte[] bytes, int off, int len, long seed, long[] hash) {
+		if (bytes == null) throw new IllegalArgumentException("null bytes");
+		if (off < 0 || len < 0 || off + len > bytes.length) throw new IndexOutOfBoundsException();
+		checkHash(hash);
+		MurmurStream stream = stream();
+		try {
+			stream.reset(seed);
+			stream.writeBytes(bytes, off, len);
+			stream.hash(hash);
+		} finally {
+			stream.inUse = false;
+		}
+	}
+
+	private static void checkHash(long[] hash) {
+		if (hash == null) throw new IllegalArgumentException("null hash");
+		if (hash.length < 2) throw new IllegalArgumentException("hash array too short");
+	}
+
+	private static MurmurStream stream() {
+		MurmurStream stream = streams.get();
+		// a source may itself hash on this thread, so the stream may be in use
+		if (stream.inUse) stream = new MurmurStream();
+		stream.inUse = true;
+		return stream;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= c1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= c2;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= c2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= c1;
+		return k2;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	private final HashSource<T> source;
+	private final long seed;
+
+	public Murmur3_128Hash(HashSource<T> source) {
+		this(source, 0L);
+	}
+
+	public Murmur3_128Hash(HashSource<T> source, long seed) {
+		if (source == null) throw new IllegalArgumentException("null source");
+		this.source = source;
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return {@linkplain HashRange.FULL_LONG_RANGE}
+	 */
+
+	@Override
+	public HashRange getRange() {
+		return HashRange.FULL_LONG_RANGE;
+	}
+
+	@Override
+	public int hashAsInt(T value) {
+		return (int) hashAsLong(value);
+	}
+
+	@Override
+	public long hashAsLong(T value) {
+		MurmurStream stream = stream();
+		try {
+			stream.reset(seed);
+			source.sourceData(value, stream);
+			return stream.hash(null);
+		} finally {
+			stream.inUse = false;
+		}
+	}
+
+	/**
+	 * Computes the full 128 bit hash of a value.
+	 *
+	 * @param value
+	 *            the value to be hashed
+	 * @param hash
+	 *            an array of length two into which the hash is written, low
+	 *            bits first
+	 */
+
+	public void hash128(T value, long[] hash) {
+		checkHash(hash);
+		MurmurStream stream = stream();
+		try {
+			stream.reset(seed);
+			source.sourceData(value, stream);
+			stream.hash(hash);
+		} finally {
+			stream.inUse = false;
+		}
+	}
+
+	// inner classes
+
+	private static class MurmurStream extends BlockHashStream {
+
+		private long h1;
+		private long h2;
+
+		MurmurStream() {
+			super(16);
+		}
+
+		void reset(long seed) {
+			resetBlocks();
+			h1 = seed;
+			h2 = seed;
+		}
+
+		@Override
+		void processBlock(byte[] bytes, int offset) {
+			long k1 = readLong(bytes, offset);
+			long k2 = readLong(bytes, offset + 8);
+
+			h1 ^= mixK1(k1);
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			h2 ^= mixK2(k2);
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		// returns the low bits, writing all bits into the array if supplied
+		long hash(long[] hash) {
+
+			// process tail
+
+			final byte[] b = buffer;
+			final int rem = position;
+			long h1 = this.h1;
+			long h2 = this.h2;
+			if (rem > 8) {
+				long k2 = 0L;
+				for (int i = rem - 1; i >= 8; i--) {
+					k2 = (k2 << 8) | (b[i] & 0xffL);
+				}
+				h2 ^= mixK2(k2);
+			}
+			if (rem > 0) {
+				long k1 = 0L;
+				for (int i = Math.min(rem, 8) - 1; i >= 0; i--) {
+					k1 = (k1 << 8) | (b[i] & 0xffL);
+				}
+				h1 ^= mixK1(k1);
+			}
+
+			// finalize
+
+			h1 ^= length;
+			h2 ^= length;
+
+			h1 += h2;
+			h2 += h1;
+
+			h1 = fmix(h1);
+			h2 = fmix(h2);
+
+			h1 += h2;
+			h2 += h1;
+
+			if (hash != null) {
+				hash[0] = h1;
+				hash[1] = h2;
+			}
+			return h1;
+		}
+
+	}
+
+}
@@ -10,6 +10,111 @@ public class Murmur3_32Hash<T> extends AbstractHash<T> {
 	static final int c1 = 0xcc9e2d51;
 	static final int c2 = 0x1b873593;
 
+	// streams are reused to avoid allocating one per hash
+	private static final ThreadLocal<MurmurStream> streams = new ThreadLocal<MurmurStream>() {
+		@Override
+		protected MurmurStream initialValue() {
+			return new MurmurStream();
+		}
+	};
+
+	/**
+	 * Hashes a range of bytes. The result is identical to that obtained by
+	 * hashing a value whose source writes the same bytes.
+	 *
+	 * @param bytes
+	 *            the bytes to be hashed
+	 * @param off
+	 *            the index of the first byte
+	 * @param len
+	 *            the number of bytes
+	 * @param seed
+	 *            the seed for the hash
+	 * @return the hash value
+	 */
+
+	public static int hash(byte[] bytes, int off, int len, int seed) {
+		if (bytes == null) throw new IllegalArgumentException("null bytes");
+		if (off < 0 || len < 0 || off + len > bytes.length) throw new IndexOutOfBoundsException();
+		int h1 = seed;
+		final int lim = off + (len & ~3);
+		for (int i = off; i < lim; i += 4) {
+			h1 = mixH1(h1, mixK1(
+					(bytes[i    ] & 0xff)       |
+					(bytes[i + 1] & 0xff) <<  8 |
+					(bytes[i + 2] & 0xff) << 16 |
+					(bytes[i + 3]       ) << 24 ));
+		}
+		int k1 = 0;
+		switch (len & 3) {
+		case 3: k1 ^= (bytes[lim + 2] & 0xff) << 16;
+		case 2: k1 ^= (bytes[lim + 1] & 0xff) <<  8;
+		case 1: k1 ^= (bytes[lim    ] & 0xff);
+			h1 ^= mixK1(k1);
+		}
+		return fmix(h1, len);
+	}
+
+	/**
+	 * Hashes an int. The result is identical to that obtained by hashing a
+	 * value whose source writes the int with
+	 * {@link com.tomgibara.crinch.util.WriteStream#writeInt(int)}.
+	 *
+	 * @param value
+	 *            the int to be hashed
+	 * @param seed
+	 *            the seed for the hash
+	 * @return the hash value
+	 */
+
+	public static int hash(int value, int seed) {
+		return fmix(mixH1(seed, mixK1(Integer.reverseBytes(value))), 4);
+	}
+
+	/**
+	 * Hashes a long. The result is identical to that obtained by hashing a
+	 * value whose source writes the long with
+	 * {@link com.tomgibara.crinch.util.WriteStream#writeLong(long)}.
+	 *
+	 * @param value
+	 *            the long to be hashed
+	 * @param seed
+	 *            the seed for the hash
+	 * @return the hash value
+	 */
+
+	public static int hash(long value, int seed) {
+		int h1 = mixH1(seed, mixK1(Integer.reverseBytes((int) (value >>> 32))));
+		h1 = mixH1(h1, mixK1(Integer.reverseBytes((int) value)));
+		return fmix(h1, 8);
+	}
+
+	private static int mixK1(int k1) {
+		k1 *= c1;
+		k1 = Integer.rotateLeft(k1, 15);
+		k1 *= c2;
+		return k1;
+	}
+
+	private static int mixH1(int h1, int k1) {
+		h1 ^= k1;
+		h1 = Integer.rotateLeft(h1, 13);
+		h1 = h1 * 5 + 0xe6546b64;
+		return h1;
+	}
+
+	private static int fmix(int h1, int len) {
+		h1 ^= len;
+
+		h1 ^= h1 >>> 16;
+		h1 *= 0x85ebca6b;
+		h1 ^= h1 >>> 13;
+		h1 *= 0xc2b2ae35;
+		h1 ^= h1 >>> 16;
+
+		return h1;
+	}
+
 	private final HashSource<T> source;
 	private final int seed;
 	
@@ -34,10 +139,14 @@ public class Murmur3_32Hash<T> extends AbstractHash<T> {
 	
 	@Override
 	public int hashAsInt(T value) {
-		MurmurStream stream = new MurmurStream();
-		stream.reset(seed);
-		source.sourceData(value, stream);
-		return stream.hash();
+		MurmurStream stream = acquire();
+		try {
+			stream.reset(seed);
+			source.sourceData(value, stream);
+			return stream.hash();
+		} finally {
+			stream.inUse = false;
+		}
 	}
 	
 	@Override
@@ -45,6 +154,48 @@ public class Murmur3_32Hash<T> extends AbstractHash<T> {
 		return hashAsInt(value) & 0xffffffffL;
 	}
 	
+	@Override
+	public int[] hashAsInts(T[] values, int off, int len, int[] out) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		Hashes.checkBatch(values, off, len, len, out.length);
+		MurmurStream stream = acquire();
+		try {
+			for (int i = 0; i < len; i++) {
+				stream.reset(seed);
+				source.sourceData(values[off + i], stream);
+				out[i] = stream.hash();
+			}
+		} finally {
+			stream.inUse = false;
+		}
+		return out;
+	}
+
+	@Override
+	public long[] hashAsLongs(T[] values, int off, int len, long[] out) {
+		if (out == null) throw new IllegalArgumentException("null out");
+		Hashes.checkBatch(values, off, len, len, out.length);
+		MurmurStream stream = acquire();
+		try {
+			for (int i = 0; i < len; i++) {
+				stream.reset(seed);
+				source.sourceData(values[off + i], stream);
+				out[i] = stream.hash() & 0xffffffffL;
+			}
+		} finally {
+			stream.inUse = false;
+		}
+		return out;
+	}
+
+	private MurmurStream acquire() {
+		MurmurStream stream = streams.get();
+		// a source may itself hash on this thread, so the stream may be in use
+		if (stream.inUse) stream = new MurmurStream();
+		stream.inUse = true;
+		return stream;
+	}
+
 	// inner classes 
 	
 	private static class MurmurStream extends AbstractWriteStream {
@@ -52,6 +203,7 @@ public class Murmur3_32Hash<T> extends AbstractHash<T> {
 		private int k1;
 		private int h1;
 		private int len;
+		boolean inUse;
 		
 		void reset(int seed) {
 			h1 = seed;
@@ -65,43 +217,80 @@ public class Murmur3_32Hash<T> extends AbstractHash<T> {
 			// process body
 			
 			if (((++len) & 3) == 0) {
-				k1 *= c1; 
-				k1 = Integer.rotateLeft(k1, 15); 
-				k1 *= c2;
+				h1 = mixH1(h1, mixK1(k1));
+			}
+		}
 				
-				h1 ^= k1;
-				h1 = Integer.rotateLeft(h1, 13);
-				h1 = h1 * 5 + 0xe6546b64;
+		// the fast paths below apply when the stream is aligned to a block
+
+		@Override
+		public void writeInt(int v) {
+			if ((len & 3) == 0) {
+				h1 = mixH1(h1, mixK1(Integer.reverseBytes(v)));
+				len += 4;
+			} else {
+				super.writeInt(v);
 			}
 		}
 		
+		@Override
+		public void writeLong(long v) {
+			if ((len & 3) == 0) {
+				h1 = mixH1(h1, mixK1(Integer.reverseBytes((int) (v >>> 32))));
+				h1 = mixH1(h1, mixK1(Integer.reverseBytes((int) v)));
+				len += 8;
+			} else {
+				super.writeLong(v);
+			}
+		}
+
+		@Override
+		public void writeBytes(byte[] bs, int off, int len) {
+			final int lim = off + len;
+			// write bytes individually until aligned
+			while ((this.len & 3) != 0 && off < lim) writeByte(bs[off++]);
+			final int blim = off + ((lim - off) & ~3);
+			final int start = off;
+			int h1 = this.h1;
+			for (; off < blim; off += 4) {
+				h1 = mixH1(h1, mixK1(
+						(bs[off    ] & 0xff)       |
+						(bs[off + 1] & 0xff) <<  8 |
+						(bs[off + 2] & 0xff) << 16 |
+						(bs[off + 3]       ) << 24 ));
+			}
+			this.h1 = h1;
+			this.len += blim - start;
+			while (off < lim) writeByte(bs[off++]);
+		}
+
+		@Override
+		public void writeChars(CharSequence cs) {
+			final int length = cs.length();
+			writeInt(length);
+			int i = 0;
+			if ((len & 3) == 0) {
+				// two chars form a block
+				for (; i + 1 < length; i += 2) {
+					h1 = mixH1(h1, mixK1(Character.reverseBytes(cs.charAt(i)) | Character.reverseBytes(cs.charAt(i + 1)) << 16));
+				}
+				len += i << 1;
+			}
+			for (; i < length; i++) writeChar(cs.charAt(i));
+		}
+
 		public int hash() {
 			
 			// process tail
 			
 			int rem = len & 3;
 			if (rem != 0) {
-				k1 >>>= (4 - rem) << 3;
-				
-				k1 *= c1;
-				k1 = Integer.rotateLeft(k1, 15);
-				k1 *= c2;
-				h1 ^= k1;
+				h1 ^= mixK1(k1 >>> ((4 - rem) << 3));
 			}
 			
 			// finalize
 			
-			h1 ^= len;
-			
-			h1 ^= h1 >>> 16;
-			h1 *= 0x85ebca6b;
-			h1 ^= h1 >>> 13;
-			h1 *= 0xc2b2ae35;
-			h1 ^= h1 >>> 16;
-			
-			// return
-			
-			return h1;
+			return fmix(h1, len);
 		}
 		
 	}
@@ -0,0 +1,51 @@
+package com.tomgibara.crinch.hashing;
+
+/**
+ * <p>
+ * Implementations of this interface assign objects to one of a number of
+ * buckets, typically to distribute data between shards. Partitioners are
+ * consistent: when the number of buckets changes, only a minimal proportion of
+ * objects are assigned to a different bucket.
+ * </p>
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be partitioned
+ */
+
+public interface Partitioner<T> {
+
+	/**
+	 * The bucket to which an object is assigned.
+	 *
+	 * @param value
+	 *            the object to be partitioned
+	 * @param buckets
+	 *            the number of buckets, must be positive
+	 * @return the bucket index, at least zero and less than buckets
+	 * @throws IllegalArgumentException
+	 *             if the number of buckets is not supported
+	 */
+
+	int partition(T value, int buckets) throws IllegalArgumentException;
+
+	/**
+	 * Assigns each of the supplied objects to a bucket.
+	 *
+	 * @param values
+	 *            the objects to be partitioned
+	 * @param buckets
+	 *            the number of buckets, must be positive
+	 * @param out
+	 *            an array at least as long as values into which the bucket
+	 *            indices are written
+	 * @return the out array
+	 * @throws IllegalArgumentException
+	 *             if the number of buckets is not supported, or either array
+	 *             is null or out is too short
+	 */
+
+	int[] partition(T[] values, int buckets, int[] out) throws IllegalArgumentException;
+
+}
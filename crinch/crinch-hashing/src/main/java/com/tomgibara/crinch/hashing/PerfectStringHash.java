@@ -276,6 +276,16 @@ public class PerfectStringHash implements Hash<String> {
 		return hash(value);
 	}
 	
+	@Override
+	public int[] hashAsInts(String[] values, int off, int len, int[] out) {
+		return Hashes.hashAsInts(this, values, off, len, out);
+	}
+	
+	@Override
+	public long[] hashAsLongs(String[] values, int off, int len, long[] out) {
+		return Hashes.hashAsLongs(this, values, off, len, out);
+	}
+	
 	/**
 	 * Generates a hashcode for the supplied string.
 	 * 
@@ -0,0 +1,117 @@
+package com.tomgibara.crinch.hashing;
+
+import java.util.Arrays;
+
+// See Thaler & Ravishankar, "Using Name-Based Mappings to Increase Hit Rates"
+// and Schindelhauer & Schomaker, "Weighted Distributed Hash Tables"
+
+/**
+ * Partitions objects using (optionally weighted) rendezvous hashing. Each
+ * bucket scores every object, and the object is assigned to the bucket with
+ * the highest score. Any bucket may be given a weight of zero to remove it,
+ * in which case only the objects it held are moved. Assigning a bucket takes
+ * time linear in the number of buckets.
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be partitioned
+ */
+
+public class RendezvousPartitioner<T> extends AbstractPartitioner<T> {
+
+	// the score a bucket gives to a key
+	private static long score(long key, int bucket) {
+		return EnhancedDoubleMultiHash.mix(key + (bucket + 1) * 0x9e3779b97f4a7c15L);
+	}
+
+	private final double[] weights;
+
+	/**
+	 * Creates a partitioner that weights every bucket equally.
+	 *
+	 * @param hash
+	 *            a hash with a full integer or long range
+	 */
+
+	public RendezvousPartitioner(Hash<T> hash) {
+		this(hash, null);
+	}
+
+	public RendezvousPartitioner(HashSource<T> source) {
+		this(new XxHash64Hash<T>(source), null);
+	}
+
+	/**
+	 * Creates a partitioner that weights buckets individually. The expected
+	 * proportion of objects assigned to a bucket is its weight divided by the
+	 * sum of the weights of all buckets in use.
+	 *
+	 * @param hash
+	 *            a hash with a full integer or long range
+	 * @param weights
+	 *            the non-negative weight of each bucket, or null
+	 */
+
+	public RendezvousPartitioner(Hash<T> hash, double[] weights) {
+		super(hash);
+		if (weights != null) {
+			weights = weights.clone();
+			for (double weight : weights) {
+				if (!(weight >= 0.0) || Double.isInfinite(weight)) throw new IllegalArgumentException("invalid weight");
+			}
+		}
+		this.weights = weights;
+	}
+
+	public RendezvousPartitioner(HashSource<T> source, double[] weights) {
+		this(new XxHash64Hash<T>(source), weights);
+	}
+
+	@Override
+	protected void checkBuckets(int buckets) {
+		super.checkBuckets(buckets);
+		if (weights == null) return;
+		if (buckets > weights.length) throw new IllegalArgumentException("buckets exceeds weights");
+		for (int i = 0; i < buckets; i++) {
+			if (weights[i] > 0.0) return;
+		}
+		throw new IllegalArgumentException("no bucket has a positive weight");
+	}
+
+	@Override
+	protected int partitionKey(long key, int buckets) {
+		int best = 0;
+		if (weights == null) {
+			// scores are compared as unsigned values
+			long bestScore = score(key, 0) ^ Long.MIN_VALUE;
+			for (int i = 1; i < buckets; i++) {
+				final long s = score(key, i) ^ Long.MIN_VALUE;
+				if (s > bestScore) {
+					best = i;
+					bestScore = s;
+				}
+			}
+		} else {
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < buckets; i++) {
+				final double weight = weights[i];
+				if (weight == 0.0) continue;
+				// a uniform value in the open interval (0,1)
+				final double u = ((score(key, i) >>> 11) + 0.5) / (1L << 53);
+				final double s = -weight / Math.log(u);
+				if (s > bestScore) {
+					best = i;
+					bestScore = s;
+				}
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public String toString() {
+		return "RendezvousPartitioner hash: " + getHash() + (weights == null ? "" : " weights: " + Arrays.toString(weights));
+	}
+
+}
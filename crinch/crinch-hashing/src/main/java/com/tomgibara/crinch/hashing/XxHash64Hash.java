@@ -0,0 +1,219 @@
+package com.tomgibara.crinch.hashing;
+
+// See https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md
+
+/**
+ * A fast, non-cryptographic 64-bit hash based on xxHash64. Hash values span
+ * the full range of longs.
+ *
+ * @author tomgibara
+ *
+ * @param <T>
+ *            the type of objects to be hashed
+ */
+
+public class XxHash64Hash<T> extends AbstractHash<T> {
+
+	static final long P1 = 0x9e3779b185ebca87L;
+	static final long P2 = 0xc2b2ae3d27d4eb4fL;
+	static final long P3 = 0x165667b19e3779f9L;
+	static final long P4 = 0x85ebca77c2b2ae63L;
+	static final long P5 = 0x27d4eb2f165667c5L;
+
+	// streams are reused to avoid allocating one per hash
+	private static final ThreadLocal<XxStream> streams = new ThreadLocal<XxStream>() {
+		@Override
+		protected XxStream initialValue() {
+			return new XxStream();
+		}
+	};
+
+	/**
+	 * Hashes a range of bytes. The result is identical to that obtained by
+	 * hashing a value whose source writes the same bytes.
+	 *
+	 * @param bytes
+	 *            the bytes to be hashed
+	 * @param off
+	 *            the index of the first byte
+	 * @param len
+	 *            the number of bytes
+	 * @param seed
+	 *            the seed for the hash
+	 * @return the hash value
+	 */
+
+	public static long hash(byte[] bytes, int off, int len, long seed) {
+		if (bytes == null) throw new IllegalArgumentException("null bytes");
+		if (off < 0 || len < 0 || off + len > bytes.length) throw new IndexOutOfBoundsException();
+		XxStream stream = stream();
+		try {
+			stream.reset(seed);
+			stream.writeBytes(bytes, off, len);
+			return stream.hash();
+		} finally {
+			stream.inUse = false;
+		}
+	}
+
+	/**
+	 * Hashes a long. The result is identical to that obtained by hashing a
+	 * value whose source writes the long with
+	 * {@link com.tomgibara.crinch.util.WriteStream#writeLong(long)}.
+	 *
+	 * @param value
+	 *            the long to be hashed
+	 * @param seed
+	 *            the seed for the hash
+	 * @return the hash value
+	 */
+
+	public static long hash(long value, long seed) {
+		long h = seed + P5 + 8;
+		h ^= round(0, Long.reverseBytes(value));
+		h = Long.rotateLeft(h, 27) * P1 + P4;
+		return avalanche(h);
+	}
+
+	private static XxStream stream() {
+		XxStream stream = streams.get();
+		// a source may itself hash on this thread, so the stream may be in use
+		if (stream.inUse) stream = new XxStream();
+		stream.inUse = true;
+		return stream;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		acc *= P1;
+		return acc;
+	}
+
+	private static long mergeRound(long acc, long val) {
+		acc ^= round(0, val);
+		acc = acc * P1 + P4;
+		return acc;
+	}
+
+	private static long avalanche(long h) {
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private final HashSource<T> source;
+	private final long seed;
+
+	public XxHash64Hash(HashSource<T> source) {
+		this(source, 0L);
+	}
+
+	public XxHash64Hash(HashSource<T> source, long seed) {
+		if (source == null) throw new IllegalArgumentException("null source");
+		this.source = source;
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return {@linkplain HashRange.FULL_LONG_RANGE}
+	 */
+
+	@Override
+	public HashRange getRange() {
+		return HashRange.FULL_LONG_RANGE;
+	}
+
+	@Override
+	public int hashAsInt(T value) {
+		return (int) hashAsLong(value);
+	}
+
+	@Override
+	public long hashAsLong(T value) {
+		XxStream stream = stream();
+		try {
+			stream.reset(seed);
+			source.sourceData(value, stream);
+			return stream.hash();
+		} finally {
+			stream.inUse = false;
+		}
+	}
+
+	// inner classes
+
+	private static class XxStream extends BlockHashStream {
+
+		private long seed;
+		private long v1;
+		private long v2;
+		private long v3;
+		private long v4;
+
+		XxStream() {
+			super(32);
+		}
+
+		void reset(long seed) {
+			resetBlocks();
+			this.seed = seed;
+			v1 = seed + P1 + P2;
+			v2 = seed + P2;
+			v3 = seed;
+			v4 = seed - P1;
+		}
+
+		@Override
+		void processBlock(byte[] bytes, int offset) {
+			v1 = round(v1, readLong(bytes, offset     ));
+			v2 = round(v2, readLong(bytes, offset +  8));
+			v3 = round(v3, readLong(bytes, offset + 16));
+			v4 = round(v4, readLong(bytes, offset + 24));
+		}
+
+		long hash() {
+			long h;
+			if (length >= 32) {
+				h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+				h = mergeRound(h, v1);
+				h = mergeRound(h, v2);
+				h = mergeRound(h, v3);
+				h = mergeRound(h, v4);
+			} else {
+				h = seed + P5;
+			}
+			h += length;
+
+			// process the remaining buffered bytes
+
+			final byte[] b = buffer;
+			final int lim = position;
+			int i = 0;
+			for (; i + 8 <= lim; i += 8) {
+				h ^= round(0, readLong(b, i));
+				h = Long.rotateLeft(h, 27) * P1 + P4;
+			}
+			if (i + 4 <= lim) {
+				h ^= (readInt(b, i) & 0xffffffffL) * P1;
+				h = Long.rotateLeft(h, 23) * P2 + P3;
+				i += 4;
+			}
+			for (; i < lim; i++) {
+				h ^= (b[i] & 0xff) * P5;
+				h = Long.rotateLeft(h, 11) * P1;
+			}
+
+			return avalanche(h);
+		}
+
+	}
+
+}
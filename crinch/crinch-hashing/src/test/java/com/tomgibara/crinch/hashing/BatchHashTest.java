@@ -0,0 +1,104 @@
+package com.tomgibara.crinch.hashing;
+
+import java.util.Arrays;
+
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class BatchHashTest extends TestCase {
+
+	private static final HashSource<Integer> source = new HashSource<Integer>() {
+		@Override
+		public void sourceData(Integer value, WriteStream out) {
+			out.writeInt(value);
+		}
+	};
+
+	private static final Integer[] values = new Integer[100];
+
+	static {
+		for (int i = 0; i < values.length; i++) values[i] = i * 7919;
+	}
+
+	public void testHashes() {
+		checkHash(new Murmur3_32Hash<Integer>(source));
+		checkHash(new LongHash<Integer>(source));
+		checkHash(new XxHash64Hash<Integer>(source));
+		checkHash(new PRNGMultiHash<Integer>(source, new HashRange(0, 1000)));
+		checkHash(Hashes.rangeAdjust(new HashRange(0, 500), Hashes.asMultiHash(new Murmur3_32Hash<Integer>(source))));
+	}
+
+	public void testMultiHashes() {
+		checkMultiHash(new IntegerMultiHash<Integer>(new Murmur3_32Hash<Integer>(source), 1000), 5);
+		checkMultiHash(new IntegerMultiHash<Integer>(new Murmur3_32Hash<Integer>(source), 1000), 1);
+		checkMultiHash(new EnhancedDoubleMultiHash<Integer>(new XxHash64Hash<Integer>(source), 1000), 7);
+		checkMultiHash(new EnhancedDoubleMultiHash<Integer>(new Murmur3_128Hash<Integer>(source), 1L << 40), 3);
+		checkMultiHash(new PRNGMultiHash<Integer>(source, new HashRange(0, 1000)), 4);
+		checkMultiHash(new SingletonMultiHash<Integer>(new Murmur3_32Hash<Integer>(source)), 1);
+	}
+
+	public void testAdaptedMultiHash() {
+		MultiHash<Integer> hash = Hashes.rangeAdjust(new HashRange(0, 99), new IntegerMultiHash<Integer>(new Murmur3_32Hash<Integer>(source), 1000));
+		checkMultiHash(hash, 4);
+		// adapted values must lie within the adjusted range
+		for (int h : hash.hashAsInts(values, 0, values.length, 4, new int[values.length * 4])) {
+			assertTrue(h >= 0 && h < 100);
+		}
+		for (int h : hash.hashAsInts(values[1], 4)) {
+			assertTrue(h >= 0 && h < 100);
+		}
+	}
+
+	public void testBounds() {
+		Hash<Integer> hash = new Murmur3_32Hash<Integer>(source);
+		try {
+			hash.hashAsInts(values, 95, 10, new int[10]);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			/* expected */
+		}
+		try {
+			hash.hashAsInts(values, 0, 10, new int[9]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		MultiHash<Integer> multiHash = new IntegerMultiHash<Integer>(hash, 1000);
+		try {
+			multiHash.hashAsInts(values, 0, 10, 3, new int[29]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		assertEquals(0, multiHash.hashAsInts(values, 0, 0, 3, new int[0]).length);
+	}
+
+	private void checkHash(Hash<Integer> hash) {
+		int off = 13;
+		int len = 50;
+		int[] ints = hash.hashAsInts(values, off, len, new int[len + 1]);
+		long[] longs = hash.hashAsLongs(values, off, len, new long[len]);
+		for (int i = 0; i < len; i++) {
+			assertEquals(hash.hashAsInt(values[off + i]), ints[i]);
+			assertEquals(hash.hashAsLong(values[off + i]), longs[i]);
+		}
+		assertEquals(0, ints[len]);
+	}
+
+	private void checkMultiHash(MultiHash<Integer> hash, int multiplicity) {
+		int off = 7;
+		int len = 60;
+		int[] ints = hash.hashAsInts(values, off, len, multiplicity, new int[len * multiplicity]);
+		long[] longs = hash.hashAsLongs(values, off, len, multiplicity, new long[len * multiplicity]);
+		for (int i = 0; i < len; i++) {
+			int[] expectedInts = hash.hashAsInts(values[off + i], multiplicity);
+			long[] expectedLongs = hash.hashAsLongs(values[off + i], multiplicity);
+			int from = i * multiplicity;
+			int to = from + multiplicity;
+			assertTrue(Arrays.equals(expectedInts, Arrays.copyOfRange(ints, from, to)));
+			assertTrue(Arrays.equals(expectedLongs, Arrays.copyOfRange(longs, from, to)));
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.tomgibara.crinch.hashing;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class DigestHashTest extends TestCase {
+
+	private static final HashSource<String> source = new HashSource<String>() {
+		@Override
+		public void sourceData(String value, WriteStream out) {
+			out.writeChars(value);
+		}
+	};
+
+	private static BigInteger sha1(String value) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA1");
+		int length = value.length();
+		digest.update(new byte[] { (byte) (length >> 24), (byte) (length >> 16), (byte) (length >> 8), (byte) length });
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			digest.update((byte) (c >> 8));
+			digest.update((byte) c);
+		}
+		return new BigInteger(1, digest.digest());
+	}
+
+	public void testMatchesDigest() throws Exception {
+		DigestHash<String> hash = new DigestHash<String>(DigestHash.getSHA1DigestSource(), source);
+		for (String value : new String[] { "", "a", "Hello World", "dedup key 12345" }) {
+			BigInteger expected = sha1(value);
+			assertEquals(expected, hash.hashAsBigInt(value));
+			assertEquals(expected.longValue(), hash.hashAsLong(value));
+			assertEquals(expected.intValue(), hash.hashAsInt(value));
+		}
+	}
+
+	public void testHashAll() {
+		DigestHash<String> hash = new DigestHash<String>(DigestHash.getSHA1DigestSource(), source);
+		List<String> values = Arrays.asList("one", "two", "three");
+		long[] out = new long[4];
+		assertEquals(3, hash.hashAll(values, out));
+		for (int i = 0; i < 3; i++) {
+			assertEquals(hash.hashAsLong(values.get(i)), out[i]);
+		}
+		try {
+			hash.hashAll(values, new long[2]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		// the digest must not retain partial data
+		assertEquals(hash.hashAsLong("one"), out[0]);
+	}
+
+	public void testReentrant() {
+		final DigestHash<String>[] holder = new DigestHash[1];
+		DigestHash<String> hash = new DigestHash<String>(DigestHash.getSHA1DigestSource(), new HashSource<String>() {
+			@Override
+			public void sourceData(String value, WriteStream out) {
+				out.writeChars(value);
+				if (!value.isEmpty()) out.writeLong(holder[0].hashAsLong(value.substring(1)));
+			}
+		});
+		holder[0] = hash;
+		long h = hash.hashAsLong("abc");
+		assertEquals(h, hash.hashAsLong("abc"));
+		assertFalse(h == hash.hashAsLong("abd"));
+	}
+
+	public void testConcurrent() throws Exception {
+		final DigestHash<String> hash = new DigestHash<String>(DigestHash.getSHA1DigestSource(), source);
+		final int count = 2000;
+		final long[] expected = new long[count];
+		for (int i = 0; i < count; i++) {
+			expected[i] = sha1(Integer.toString(i)).longValue();
+		}
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < count; i++) {
+							assertEquals(expected[i], hash.hashAsLong(Integer.toString(i)));
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertNull(failure.get());
+	}
+
+}
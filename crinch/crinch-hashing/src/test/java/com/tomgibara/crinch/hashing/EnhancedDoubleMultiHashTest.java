@@ -0,0 +1,156 @@
+package com.tomgibara.crinch.hashing;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class EnhancedDoubleMultiHashTest extends TestCase {
+
+	private static final HashSource<Integer> source = new HashSource<Integer>() {
+		@Override
+		public void sourceData(Integer value, WriteStream out) {
+			out.writeInt(value);
+		}
+	};
+
+	public void testMultiplyHigh() {
+		Random r = new Random(0L);
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for (int i = 0; i < 10000; i++) {
+			long a = r.nextLong();
+			long b = i == 0 ? -1L : r.nextLong();
+			BigInteger ua = BigInteger.valueOf(a).and(mask);
+			BigInteger ub = BigInteger.valueOf(b).and(mask);
+			assertEquals(ua.multiply(ub).shiftRight(64).longValue(), EnhancedDoubleMultiHash.multiplyHigh(a, b));
+		}
+	}
+
+	public void testRange() {
+		checkRange(new XxHash64Hash<Integer>(source), 0);
+		checkRange(new XxHash64Hash<Integer>(source), 50);
+		checkRange(new XxHash64Hash<Integer>(source), Integer.MAX_VALUE);
+		checkRange(new XxHash64Hash<Integer>(source), 1L << 40);
+		checkRange(new XxHash64Hash<Integer>(source), Long.MAX_VALUE);
+		checkRange(new Murmur3_128Hash<Integer>(source), 1000);
+		checkRange(new Murmur3_32Hash<Integer>(source), 1000);
+	}
+
+	private void checkRange(Hash<Integer> hash, long max) {
+		EnhancedDoubleMultiHash<Integer> mh = new EnhancedDoubleMultiHash<Integer>(hash, max);
+		assertEquals(new HashRange(0L, max), mh.getRange());
+		final int m = 10;
+		int[] ints = new int[m];
+		long[] longs = new long[m];
+		for (int i = 0; i < 1000; i++) {
+			mh.hashAsInts(i, ints);
+			mh.hashAsLongs(i, longs);
+			assertEquals(longs[0], mh.hashAsLong(i));
+			assertEquals(ints[0], mh.hashAsInt(i));
+			BigInteger[] bigInts = mh.hashAsBigInts(i, m);
+			for (int j = 0; j < m; j++) {
+				assertTrue(longs[j] >= 0L);
+				assertTrue(longs[j] <= max);
+				assertEquals((int) longs[j], ints[j]);
+				assertEquals(longs[j], bigInts[j].longValue());
+			}
+		}
+	}
+
+	public void testDistribution() {
+		final int size = 64;
+		final int m = 8;
+		final int count = 10000;
+		for (Hash<Integer> hash : hashes()) {
+			EnhancedDoubleMultiHash<Integer> mh = new EnhancedDoubleMultiHash<Integer>(hash, size - 1);
+			int[] freqs = new int[size];
+			int[] hashes = new int[m];
+			for (int i = 0; i < count; i++) {
+				mh.hashAsInts(i, hashes);
+				for (int h : hashes) freqs[h]++;
+			}
+			double expected = (double) count * m / size;
+			double chi2 = 0.0;
+			for (int freq : freqs) {
+				double d = freq - expected;
+				chi2 += d * d / expected;
+			}
+			// 63 degrees of freedom, 99.9th percentile is ~103
+			assertTrue("chi squared " + chi2, chi2 < 103.0);
+		}
+	}
+
+	public void testOffsets() {
+		// the largest range, so that few low bits are lost to the reduction
+		final long size = 1L << 63;
+		final int m = 6;
+		XxHash64Hash<Integer> xxHash = new XxHash64Hash<Integer>(source);
+		Murmur3_128Hash<Integer> wideHash = new Murmur3_128Hash<Integer>(source);
+		EnhancedDoubleMultiHash<Integer> xxMulti = new EnhancedDoubleMultiHash<Integer>(xxHash, size - 1);
+		EnhancedDoubleMultiHash<Integer> wideMulti = new EnhancedDoubleMultiHash<Integer>(wideHash, size - 1);
+		long[] pair = new long[2];
+		for (int v = 0; v < 100; v++) {
+			long h1 = xxHash.hashAsLong(v);
+			checkOffsets(xxMulti, v, h1, EnhancedDoubleMultiHash.mix(h1 + 0x9e3779b97f4a7c15L), size, m);
+			wideHash.hash128(v, pair);
+			checkOffsets(wideMulti, v, pair[0], pair[1], size, m);
+		}
+	}
+
+	// the ith hash must be derived from h1 + i*h2 + (i^3-i)/6
+	private void checkOffsets(EnhancedDoubleMultiHash<Integer> mh, int value, long h1, long h2, long size, int m) {
+		long[] longs = mh.hashAsLongs(value, new long[m]);
+		int[] ints = mh.hashAsInts(value, new int[m]);
+		for (int i = 0; i < m; i++) {
+			long x = h1 + i * h2 + ((long) i * i * i - i) / 6;
+			long expected = EnhancedDoubleMultiHash.multiplyHigh(x, size);
+			assertEquals(expected, longs[i]);
+			assertEquals((int) expected, ints[i]);
+		}
+	}
+
+	public void testExpandHash() {
+		Hash<Integer> hash = new XxHash64Hash<Integer>(source);
+		for (long max : new long[] { 100, 1L << 40 }) {
+			EnhancedDoubleMultiHash<Integer> mh = new EnhancedDoubleMultiHash<Integer>(hash, max);
+			int[] expected = new int[5];
+			int[] actual = new int[5];
+			for (int i = 0; i < 100; i++) {
+				mh.hashAsInts(i, expected);
+				mh.expandHash(hash.hashAsLong(i), actual);
+				assertTrue(Arrays.equals(expected, actual));
+			}
+		}
+		try {
+			new EnhancedDoubleMultiHash<Integer>(new Murmur3_32Hash<Integer>(source), 100).expandHash(0L, new int[1]);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	public void testEquality() {
+		Hash<Integer> hash = new XxHash64Hash<Integer>(source);
+		assertEquals(new EnhancedDoubleMultiHash<Integer>(hash, 100), new EnhancedDoubleMultiHash<Integer>(hash, 100));
+		assertFalse(new EnhancedDoubleMultiHash<Integer>(hash, 100).equals(new EnhancedDoubleMultiHash<Integer>(hash, 101)));
+		try {
+			new EnhancedDoubleMultiHash<Integer>(Hashes.rangeAdjust(new HashRange(0, 100), Hashes.asMultiHash(hash)), 100);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Hash<Integer>[] hashes() {
+		return new Hash[] {
+				new XxHash64Hash<Integer>(source),
+				new Murmur3_128Hash<Integer>(source),
+				new Murmur3_32Hash<Integer>(source),
+		};
+	}
+
+}
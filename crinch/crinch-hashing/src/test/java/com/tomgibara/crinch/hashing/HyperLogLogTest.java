@@ -0,0 +1,86 @@
+package com.tomgibara.crinch.hashing;
+
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+import com.tomgibara.crinch.coding.CodedReader;
+import com.tomgibara.crinch.coding.CodedWriter;
+import com.tomgibara.crinch.coding.EliasOmegaCoding;
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class HyperLogLogTest extends TestCase {
+
+	private static final HashSource<Integer> source = new HashSource<Integer>() {
+		@Override
+		public void sourceData(Integer value, WriteStream out) {
+			out.writeInt(value);
+		}
+	};
+
+	private static final Hash<Integer> hash = new XxHash64Hash<Integer>(source);
+
+	public void testAccuracy() {
+		HyperLogLog<Integer> hll = new HyperLogLog<Integer>(hash);
+		assertEquals(0L, hll.getEstimate());
+		int next = 0;
+		for (int n : new int[] { 1, 10, 100, 1000, 5000, 10000, 50000, 100000, 500000, 1000000 }) {
+			for (; next < n; next++) {
+				hll.add(next);
+				// duplicates must not affect the estimate
+				if ((next & 7) == 0) hll.add(next / 2);
+			}
+			// the standard error is ~0.8%, allow for five
+			double error = Math.abs(hll.getEstimate() - n) / (double) n;
+			assertTrue("n: " + n + " " + hll, error <= 0.04);
+			if (n <= 1000) assertTrue(hll.isSparse());
+		}
+		assertFalse(hll.isSparse());
+	}
+
+	public void testLowPrecision() {
+		HyperLogLog<Integer> hll = new HyperLogLog<Integer>(hash, HyperLogLog.MIN_PRECISION);
+		for (int i = 0; i < 100000; i++) hll.add(i);
+		// standard error with 16 registers is ~26%
+		assertTrue(hll.toString(), Math.abs(hll.getEstimate() - 100000) < 100000);
+	}
+
+	public void testMerge() {
+		for (int split : new int[] { 100, 3000, 20000 }) {
+			HyperLogLog<Integer> all = new HyperLogLog<Integer>(hash);
+			HyperLogLog<Integer> a = new HyperLogLog<Integer>(hash);
+			HyperLogLog<Integer> b = new HyperLogLog<Integer>(hash);
+			for (int i = 0; i < split; i++) {
+				a.add(i);
+				all.add(i);
+			}
+			for (int i = split / 2; i < 25000; i++) {
+				b.add(i);
+				all.add(i);
+			}
+			a.merge(b);
+			assertEquals(all.isSparse(), a.isSparse());
+			assertEquals(all.getEstimate(), a.getEstimate());
+		}
+	}
+
+	public void testReadWrite() {
+		for (int n : new int[] { 0, 10, 1000, 100000 }) {
+			HyperLogLog<Integer> hll = new HyperLogLog<Integer>(hash, 12);
+			for (int i = 0; i < n; i++) hll.add(i);
+			byte[] bytes = new byte[8192];
+			ByteArrayBitWriter w = new ByteArrayBitWriter(bytes);
+			hll.write(new CodedWriter(w, EliasOmegaCoding.extended));
+			w.flush();
+			HyperLogLog<Integer> read = HyperLogLog.read(new CodedReader(new ByteArrayBitReader(bytes), EliasOmegaCoding.extended), hash);
+			assertEquals(hll.getPrecision(), read.getPrecision());
+			assertEquals(hll.isSparse(), read.isSparse());
+			assertEquals(hll.getEstimate(), read.getEstimate());
+			// the copy must remain usable
+			read.add(-1);
+			hll.add(-1);
+			assertEquals(hll.getEstimate(), read.getEstimate());
+		}
+	}
+
+}
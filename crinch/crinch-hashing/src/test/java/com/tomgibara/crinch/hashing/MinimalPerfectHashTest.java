@@ -0,0 +1,180 @@
+package com.tomgibara.crinch.hashing;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import com.tomgibara.crinch.bits.ByteArrayBitReader;
+import com.tomgibara.crinch.bits.ByteArrayBitWriter;
+import com.tomgibara.crinch.bits.BitVector;
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class MinimalPerfectHashTest extends TestCase {
+
+	private static final HashSource<Integer> source = new HashSource<Integer>() {
+		@Override
+		public void sourceData(Integer value, WriteStream out) {
+			out.writeInt(value);
+		}
+	};
+
+	// the even integers in [0, 2 * size)
+	private static List<Integer> evens(final int size) {
+		return new AbstractList<Integer>() {
+			@Override
+			public Integer get(int index) {
+				return index * 2;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	public void testInMemory() {
+		List<Integer> values = evens(100000);
+		MinimalPerfectHash<Integer> hash = new MinimalPerfectHash.Builder<Integer>(source).setThreads(1).build(values);
+		checkMinimalPerfect(hash, values);
+		checkNonMembers(hash, values.size());
+		assertTrue(hash.toString(), hash.getBitCount() < 3.5 * values.size());
+	}
+
+	public void testOutOfCore() {
+		List<Integer> values = evens(50000);
+		MinimalPerfectHash<Integer> hash = new MinimalPerfectHash.Builder<Integer>(source).setMemoryLimit(1000).setGamma(2.0).build(values);
+		checkMinimalPerfect(hash, values);
+		checkNonMembers(hash, values.size());
+	}
+
+	public void testMultithreaded() {
+		List<Integer> values = evens(500000);
+		MinimalPerfectHash.Builder<Integer> builder = new MinimalPerfectHash.Builder<Integer>(source).setSeed(7L).setThreads(4);
+		MinimalPerfectHash<Integer> hash = builder.build(values);
+		checkMinimalPerfect(hash, values);
+		// must be identical to a single threaded build
+		MinimalPerfectHash<Integer> single = builder.setThreads(1).build(values);
+		for (Integer value : values) {
+			assertEquals(single.hashAsLong(value), hash.hashAsLong(value));
+		}
+	}
+
+	public void testFingerprints() {
+		List<Integer> values = evens(1000);
+		MinimalPerfectHash.Builder<Integer> builder = new MinimalPerfectHash.Builder<Integer>(source).setSeed(-3L);
+		long[] fps = new long[values.size() + 10];
+		for (int i = 0; i < values.size(); i++) {
+			fps[i] = builder.fingerprint(values.get(i));
+		}
+		MinimalPerfectHash<Integer> hash = builder.build(fps, values.size());
+		checkMinimalPerfect(hash, values);
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(hash.hashFingerprint(fps[i]), hash.hashAsLong(values.get(i)));
+		}
+	}
+
+	public void testReadWrite() {
+		List<Integer> values = evens(10000);
+		MinimalPerfectHash<Integer> hash = new MinimalPerfectHash.Builder<Integer>(source).setSeed(1L).build(values);
+		byte[] bytes = new byte[(int) (hash.getBitCount() / 8) + 1024];
+		ByteArrayBitWriter writer = new ByteArrayBitWriter(bytes);
+		hash.write(writer);
+		writer.flush();
+		MinimalPerfectHash<Integer> read = MinimalPerfectHash.read(new ByteArrayBitReader(bytes), source);
+		assertEquals(hash.getRange(), read.getRange());
+		assertEquals(hash.getBitCount(), read.getBitCount());
+		for (int i = 0; i < 20000; i++) {
+			assertEquals(hash.hashAsLong(i), read.hashAsLong(i));
+		}
+	}
+
+	public void testEmpty() {
+		MinimalPerfectHash<Integer> hash = new MinimalPerfectHash.Builder<Integer>(source).build(evens(0));
+		assertEquals(-1L, hash.hashAsLong(0));
+		assertEquals(0L, hash.getBitCount());
+	}
+
+	public void testDuplicates() {
+		List<Integer> values = new AbstractList<Integer>() {
+			@Override
+			public Integer get(int index) {
+				return index % 999;
+			}
+
+			@Override
+			public int size() {
+				return 1000;
+			}
+		};
+		try {
+			new MinimalPerfectHash.Builder<Integer>(source).build(values);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testOutOfCoreDuplicates() {
+		// every value occurs ten times, so no level can place any of them
+		List<Integer> values = new AbstractList<Integer>() {
+			@Override
+			public Integer get(int index) {
+				return index % 500;
+			}
+
+			@Override
+			public int size() {
+				return 5000;
+			}
+		};
+		try {
+			new MinimalPerfectHash.Builder<Integer>(source).setMemoryLimit(100).build(values);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testReseed() {
+		// the first time that 2 is sourced it collides with 0
+		HashSource<Integer> colliding = new HashSource<Integer>() {
+			private boolean sourced = false;
+			@Override
+			public void sourceData(Integer value, WriteStream out) {
+				if (value == 2 && !sourced) {
+					sourced = true;
+					out.writeInt(0);
+				} else {
+					out.writeInt(value);
+				}
+			}
+		};
+		List<Integer> values = evens(1000);
+		MinimalPerfectHash.Builder<Integer> builder = new MinimalPerfectHash.Builder<Integer>(colliding).setSeed(5L);
+		MinimalPerfectHash<Integer> hash = builder.build(values);
+		assertFalse(hash.getSeed() == 5L);
+		checkMinimalPerfect(hash, values);
+	}
+
+	private void checkMinimalPerfect(MinimalPerfectHash<Integer> hash, List<Integer> values) {
+		final int size = values.size();
+		assertEquals(new HashRange(0, size - 1), hash.getRange());
+		BitVector seen = new BitVector(size);
+		for (Integer value : values) {
+			int h = hash.hashAsInt(value);
+			assertTrue(h >= 0 && h < size);
+			assertFalse(seen.getBit(h));
+			seen.setBit(h, true);
+		}
+	}
+
+	private void checkNonMembers(MinimalPerfectHash<Integer> hash, int size) {
+		for (int i = 0; i < 1000; i++) {
+			long h = hash.hashAsLong(2 * i + 1);
+			assertTrue(h >= -1L && h < size);
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.tomgibara.crinch.hashing;
+
+import java.util.Random;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.tomgibara.crinch.hashing.XxHash64HashTest.ByteSource;
+import com.tomgibara.crinch.hashing.XxHash64HashTest.MixedSource;
+import com.tomgibara.crinch.util.ByteWriteStream;
+
+import junit.framework.TestCase;
+
+public class Murmur3_128HashTest extends TestCase {
+
+	public void testMatchesGuava() {
+		Random r = new Random(0L);
+		Murmur3_128Hash<byte[]> hash1 = new Murmur3_128Hash<byte[]>(new ByteSource(), 11);
+		HashFunction hash2 = Hashing.murmur3_128(11);
+		long[] hash = new long[2];
+		for (int i = 0; i < 10000; i++) {
+			byte[] bytes = new byte[r.nextInt(100)];
+			r.nextBytes(bytes);
+			HashCode code = hash2.hashBytes(bytes);
+			assertEquals(code.asLong(), hash1.hashAsLong(bytes));
+			hash1.hash128(bytes, hash);
+			byte[] expected = code.asBytes();
+			for (int j = 0; j < 16; j++) {
+				assertEquals(expected[j], (byte) (hash[j >> 3] >> ((j & 7) << 3)));
+			}
+		}
+	}
+
+	public void testSourceMatchesBytes() {
+		Random r = new Random(0L);
+		Murmur3_128Hash<byte[]> bytesHash = new Murmur3_128Hash<byte[]>(new ByteSource());
+		Murmur3_128Hash<long[]> mixedHash = new Murmur3_128Hash<long[]>(new MixedSource());
+		assertEquals(HashRange.FULL_LONG_RANGE, mixedHash.getRange());
+		long[] hash1 = new long[2];
+		long[] hash2 = new long[2];
+		for (int i = 0; i < 1000; i++) {
+			long[] values = new long[r.nextInt(20)];
+			for (int j = 0; j < values.length; j++) values[j] = r.nextLong();
+			ByteWriteStream out = new ByteWriteStream();
+			new MixedSource().sourceData(values, out);
+			byte[] bytes = out.getBytes();
+			bytesHash.hash128(bytes, hash1);
+			mixedHash.hash128(values, hash2);
+			assertEquals(hash1[0], hash2[0]);
+			assertEquals(hash1[1], hash2[1]);
+			Murmur3_128Hash.hash(bytes, 0, bytes.length, 0L, hash2);
+			assertEquals(hash1[0], hash2[0]);
+			assertEquals(hash1[1], hash2[1]);
+		}
+	}
+
+}
@@ -1,9 +1,11 @@
 package com.tomgibara.crinch.hashing;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.tomgibara.crinch.util.ByteWriteStream;
 import com.tomgibara.crinch.util.WriteStream;
 
 import junit.framework.TestCase;
@@ -39,6 +41,64 @@ public class Murmur3_32HashTest extends TestCase {
 		}
 	}
 	
+	public void testStaticMatchesGuava() {
+		Random r = new Random(0L);
+		HashFunction guava = Hashing.murmur3_32(7);
+		for (int i = 0; i < 10000; i++) {
+			byte[] bytes = new byte[r.nextInt(100)];
+			r.nextBytes(bytes);
+			int off = bytes.length == 0 ? 0 : r.nextInt(bytes.length);
+			int len = r.nextInt(bytes.length - off + 1);
+			byte[] range = new byte[len];
+			System.arraycopy(bytes, off, range, 0, len);
+			assertEquals(guava.hashBytes(range).asInt(), Murmur3_32Hash.hash(bytes, off, len, 7));
+		}
+	}
+
+	public void testFastPathsMatchBytes() {
+		final Random r = new Random(0L);
+		Murmur3_32Hash<byte[]> bytesHash = new Murmur3_32Hash<byte[]>(new ByteSource(), 3);
+		Murmur3_32Hash<long[]> mixedHash = new Murmur3_32Hash<long[]>(new MixedSource(), 3);
+		for (int i = 0; i < 1000; i++) {
+			long[] values = new long[r.nextInt(10)];
+			for (int j = 0; j < values.length; j++) values[j] = r.nextLong();
+			ByteWriteStream out = new ByteWriteStream();
+			new MixedSource().sourceData(values, out);
+			assertEquals(bytesHash.hashAsInt(out.getBytes()), mixedHash.hashAsInt(values));
+
+			long value = r.nextLong();
+			out = new ByteWriteStream();
+			out.writeLong(value);
+			assertEquals(bytesHash.hashAsInt(out.getBytes()), Murmur3_32Hash.hash(value, 3));
+			out = new ByteWriteStream();
+			out.writeInt((int) value);
+			assertEquals(bytesHash.hashAsInt(out.getBytes()), Murmur3_32Hash.hash((int) value, 3));
+		}
+	}
+
+	// writes values in ways that leave the stream at varying alignments
+	private static class MixedSource implements HashSource<long[]> {
+
+		@Override
+		public void sourceData(long[] values, WriteStream out) {
+			for (long value : values) {
+				switch ((int) (value & 7)) {
+				case 0: out.writeByte((byte) value); break;
+				case 1: out.writeInt((int) value); break;
+				case 2: out.writeLong(value); break;
+				case 3: out.writeShort((short) value); break;
+				case 4: out.writeChars(Long.toString(value, 36)); break;
+				case 5: out.writeBoolean(value < 0); break;
+				default:
+					byte[] bytes = new byte[(int) (value >>> 59)];
+					Arrays.fill(bytes, (byte) value);
+					out.writeBytes(bytes, 0, bytes.length);
+				}
+			}
+		}
+
+	}
+
 	private static class ByteSource implements HashSource<byte[]> {
 		
 		@Override
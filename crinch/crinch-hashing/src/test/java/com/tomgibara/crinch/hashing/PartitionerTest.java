@@ -0,0 +1,109 @@
+package com.tomgibara.crinch.hashing;
+
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class PartitionerTest extends TestCase {
+
+	private static final HashSource<Integer> source = new HashSource<Integer>() {
+		@Override
+		public void sourceData(Integer value, WriteStream out) {
+			out.writeInt(value);
+		}
+	};
+
+	private static final int COUNT = 20000;
+
+	public void testJumpIsConsistent() {
+		checkConsistent(new JumpPartitioner<Integer>(source));
+	}
+
+	public void testRendezvousIsConsistent() {
+		checkConsistent(new RendezvousPartitioner<Integer>(source));
+	}
+
+	public void testJumpIsUniform() {
+		checkUniform(new JumpPartitioner<Integer>(source), 10);
+		checkUniform(new JumpPartitioner<Integer>(new Murmur3_32Hash<Integer>(source)), 7);
+	}
+
+	public void testRendezvousIsUniform() {
+		checkUniform(new RendezvousPartitioner<Integer>(source), 10);
+	}
+
+	public void testWeights() {
+		double[] weights = { 1.0, 3.0, 0.0, 4.0 };
+		RendezvousPartitioner<Integer> p = new RendezvousPartitioner<Integer>(source, weights);
+		int[] counts = new int[weights.length];
+		for (int i = 0; i < COUNT; i++) {
+			counts[p.partition(i, weights.length)]++;
+		}
+		assertEquals(0, counts[2]);
+		for (int i = 0; i < weights.length; i++) {
+			double expected = COUNT * weights[i] / 8.0;
+			assertTrue(Math.abs(counts[i] - expected) < 0.05 * COUNT);
+		}
+		// removing a bucket only moves its objects
+		double[] reduced = weights.clone();
+		reduced[1] = 0.0;
+		RendezvousPartitioner<Integer> q = new RendezvousPartitioner<Integer>(source, reduced);
+		for (int i = 0; i < COUNT; i++) {
+			int b = p.partition(i, weights.length);
+			if (b != 1) assertEquals(b, q.partition(i, weights.length));
+		}
+		try {
+			p.partition(0, 5);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testBatch() {
+		Integer[] values = new Integer[1000];
+		for (int i = 0; i < values.length; i++) values[i] = i * 31;
+		Partitioner<Integer> p = new JumpPartitioner<Integer>(source);
+		int[] out = p.partition(values, 13, new int[values.length]);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(p.partition(values[i], 13), out[i]);
+		}
+	}
+
+	// growing from n to n + 1 buckets moves objects only into the new bucket
+	private void checkConsistent(Partitioner<Integer> p) {
+		int[] previous = new int[COUNT];
+		for (int buckets = 1; buckets <= 20; buckets++) {
+			int moved = 0;
+			for (int i = 0; i < COUNT; i++) {
+				int b = p.partition(i, buckets);
+				assertTrue(b >= 0 && b < buckets);
+				if (buckets > 1 && b != previous[i]) {
+					assertEquals(buckets - 1, b);
+					moved++;
+				}
+				previous[i] = b;
+			}
+			if (buckets > 1) {
+				double expected = (double) COUNT / buckets;
+				assertTrue(Math.abs(moved - expected) < 0.2 * expected);
+			}
+		}
+	}
+
+	private void checkUniform(Partitioner<Integer> p, int buckets) {
+		int[] counts = new int[buckets];
+		for (int i = 0; i < COUNT; i++) {
+			counts[p.partition(i, buckets)]++;
+		}
+		double expected = (double) COUNT / buckets;
+		double chi2 = 0.0;
+		for (int count : counts) {
+			double d = count - expected;
+			chi2 += d * d / expected;
+		}
+		// 99.9th percentile for up to 9 degrees of freedom
+		assertTrue("chi squared " + chi2, chi2 < 27.9);
+	}
+
+}
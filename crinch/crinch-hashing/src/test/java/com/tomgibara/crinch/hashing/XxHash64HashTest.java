@@ -0,0 +1,78 @@
+package com.tomgibara.crinch.hashing;
+
+import java.util.Random;
+
+import com.tomgibara.crinch.util.ByteWriteStream;
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+public class XxHash64HashTest extends TestCase {
+
+	public void testKnownValues() {
+		byte[] hundred = new byte[100];
+		for (int i = 0; i < hundred.length; i++) hundred[i] = (byte) i;
+		assertEquals(0xef46db3751d8e999L, XxHash64Hash.hash(new byte[0], 0, 0, 0L));
+		assertEquals(0xd24ec4f1a98c6e5bL, XxHash64Hash.hash("a".getBytes(), 0, 1, 0L));
+		assertEquals(0x44bc2cf5ad770999L, XxHash64Hash.hash("abc".getBytes(), 0, 3, 0L));
+		assertEquals(0x2df10692fe3004b9L, XxHash64Hash.hash("abc".getBytes(), 0, 3, 123L));
+		assertEquals(0x6ac1e58032166597L, XxHash64Hash.hash(hundred, 0, 100, 0L));
+		assertEquals(0xdf5ca5a5fd66899aL, XxHash64Hash.hash(hundred, 0, 100, 123L));
+	}
+
+	public void testSourceMatchesBytes() {
+		Random r = new Random(0L);
+		XxHash64Hash<byte[]> bytesHash = new XxHash64Hash<byte[]>(new ByteSource(), 5L);
+		XxHash64Hash<long[]> mixedHash = new XxHash64Hash<long[]>(new MixedSource(), 5L);
+		assertEquals(HashRange.FULL_LONG_RANGE, mixedHash.getRange());
+		for (int i = 0; i < 1000; i++) {
+			long[] values = new long[r.nextInt(20)];
+			for (int j = 0; j < values.length; j++) values[j] = r.nextLong();
+			ByteWriteStream out = new ByteWriteStream();
+			new MixedSource().sourceData(values, out);
+			byte[] bytes = out.getBytes();
+			long h = mixedHash.hashAsLong(values);
+			assertEquals(bytesHash.hashAsLong(bytes), h);
+			assertEquals(XxHash64Hash.hash(bytes, 0, bytes.length, 5L), h);
+			assertEquals((int) h, mixedHash.hashAsInt(values));
+
+			long value = r.nextLong();
+			out = new ByteWriteStream();
+			out.writeLong(value);
+			assertEquals(bytesHash.hashAsLong(out.getBytes()), XxHash64Hash.hash(value, 5L));
+		}
+	}
+
+	static class ByteSource implements HashSource<byte[]> {
+
+		@Override
+		public void sourceData(byte[] value, WriteStream out) {
+			out.writeBytes(value);
+		}
+
+	}
+
+	// writes values in ways that leave the stream at varying alignments
+	static class MixedSource implements HashSource<long[]> {
+
+		@Override
+		public void sourceData(long[] values, WriteStream out) {
+			for (long value : values) {
+				switch ((int) (value & 7)) {
+				case 0: out.writeByte((byte) value); break;
+				case 1: out.writeInt((int) value); break;
+				case 2: out.writeLong(value); break;
+				case 3: out.writeShort((short) value); break;
+				case 4: out.writeChars(Long.toString(value, 36)); break;
+				case 5: out.writeBoolean(value < 0); break;
+				default:
+					byte[] bytes = new byte[(int) (value >>> 58)];
+					for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) (value >> i);
+					out.writeBytes(bytes, 0, bytes.length);
+				}
+			}
+		}
+
+	}
+
+}
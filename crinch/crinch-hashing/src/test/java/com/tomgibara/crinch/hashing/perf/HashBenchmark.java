@@ -0,0 +1,192 @@
+package com.tomgibara.crinch.hashing.perf;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.tomgibara.crinch.hashing.DigestHash;
+import com.tomgibara.crinch.hashing.DistinctMultiHash;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.IntegerMultiHash;
+import com.tomgibara.crinch.hashing.LongHash;
+import com.tomgibara.crinch.hashing.MinimalPerfectHash;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_128Hash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+import com.tomgibara.crinch.hashing.ObjectHash;
+import com.tomgibara.crinch.hashing.PRNGMultiHash;
+import com.tomgibara.crinch.hashing.PerfectStringHash;
+import com.tomgibara.crinch.hashing.SingletonMultiHash;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+
+/**
+ * Measures the throughput and latency of every hash implementation over keys
+ * of several sizes. Run with the class as the main class of the test
+ * classpath; the results are printed as a table.
+ * 
+ * @author tomgibara
+ */
+
+public class HashBenchmark {
+
+	private static final int[] KEY_SIZES = { 4, 16, 64, 256, 1024 };
+	private static final int KEY_COUNT = 1 << 14;
+	private static final int MULTIPLICITY = 7;
+	private static final int REPS = 9;
+	// the number of hashes that must be timed for each measurement
+	private static final int MIN_HASHES = 1 << 20;
+
+	// prevents hashing from being optimized away
+	public static long sink = 0L;
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-30s %6s %12s %10s %10s", "hash", "bytes", "Mhashes/s", "p50 ns", "p99 ns"));
+		for (int size : KEY_SIZES) {
+			byte[][] keys = keys(size, new Random(0L));
+			for (Map.Entry<String, Hash<byte[]>> entry : hashes(keys).entrySet()) {
+				report(entry.getKey(), size, new SingleSubject(entry.getValue(), keys));
+			}
+			for (Map.Entry<String, MultiHash<byte[]>> entry : multiHashes().entrySet()) {
+				report(entry.getKey() + " x" + MULTIPLICITY, size, new MultiSubject(entry.getValue(), keys));
+			}
+			String[] strings = strings(keys);
+			report("PerfectString", size, new StringSubject(new PerfectStringHash(strings), strings));
+		}
+	}
+
+	private static Map<String, Hash<byte[]>> hashes(byte[][] keys) {
+		Map<String, Hash<byte[]>> map = new LinkedHashMap<String, Hash<byte[]>>();
+		map.put("Murmur3_32", new Murmur3_32Hash<byte[]>(HashQualityTest.source));
+		map.put("Murmur3_128", new Murmur3_128Hash<byte[]>(HashQualityTest.source));
+		map.put("XxHash64", new XxHash64Hash<byte[]>(HashQualityTest.source));
+		map.put("Long", new LongHash<byte[]>(HashQualityTest.source));
+		map.put("Object", new ObjectHash<byte[]>());
+		map.put("SHA1", new DigestHash<byte[]>(DigestHash.getSHA1DigestSource(), HashQualityTest.source));
+		map.put("MinimalPerfect", new MinimalPerfectHash.Builder<byte[]>(HashQualityTest.source).build(Arrays.asList(keys)));
+		map.put("Murmur3_32 reranged", Hashes.rangeAdjust(new HashRange(0, 999), new SingletonMultiHash<byte[]>(new Murmur3_32Hash<byte[]>(HashQualityTest.source))));
+		return map;
+	}
+
+	private static Map<String, MultiHash<byte[]>> multiHashes() {
+		Map<String, MultiHash<byte[]>> map = new LinkedHashMap<String, MultiHash<byte[]>>();
+		map.put("EnhancedDouble/XxHash64", new EnhancedDoubleMultiHash<byte[]>(new XxHash64Hash<byte[]>(HashQualityTest.source), 999999));
+		map.put("EnhancedDouble/Murmur3_128", new EnhancedDoubleMultiHash<byte[]>(new Murmur3_128Hash<byte[]>(HashQualityTest.source), 999999));
+		map.put("Integer/Murmur3_32", new IntegerMultiHash<byte[]>(new Murmur3_32Hash<byte[]>(HashQualityTest.source), 999999));
+		map.put("PRNG", new PRNGMultiHash<byte[]>(HashQualityTest.source, new HashRange(0, 999999)));
+		map.put("Distinct/Murmur3_128", new DistinctMultiHash<byte[]>(999, MULTIPLICITY, new Murmur3_128Hash<byte[]>(HashQualityTest.source)));
+		return map;
+	}
+
+	private static byte[][] keys(int size, Random r) {
+		byte[][] keys = new byte[KEY_COUNT][size];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			r.nextBytes(keys[i]);
+			// ensure keys are distinct
+			for (int j = 0; j < 4 && j < size; j++) keys[i][j] = (byte) (i >> (j << 3));
+		}
+		return keys;
+	}
+
+	private static String[] strings(byte[][] keys) {
+		String[] strings = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			char[] chars = new char[keys[i].length];
+			for (int j = 0; j < chars.length; j++) chars[j] = (char) (keys[i][j] & 0xff);
+			strings[i] = new String(chars);
+		}
+		return strings;
+	}
+
+	private static void report(String name, int size, Subject subject) {
+		// warm up
+		subject.hashAll();
+		subject.hashAll();
+		final int passes = Math.max(1, MIN_HASHES / KEY_COUNT / Math.max(1, size / 64));
+		long[] times = new long[REPS];
+		for (int i = 0; i < REPS; i++) {
+			long start = System.nanoTime();
+			for (int j = 0; j < passes; j++) subject.hashAll();
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+		double throughput = (double) passes * KEY_COUNT * 1000.0 / times[REPS / 2];
+		// latencies include the overhead of reading the clock
+		long[] latencies = new long[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++) {
+			long start = System.nanoTime();
+			subject.hash(i);
+			latencies[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(latencies);
+		System.out.println(String.format("%-30s %6d %12.2f %10d %10d", name, size, throughput, latencies[KEY_COUNT / 2], latencies[KEY_COUNT * 99 / 100]));
+	}
+
+	// inner classes
+
+	private static abstract class Subject {
+
+		abstract void hash(int index);
+
+		void hashAll() {
+			for (int i = 0; i < KEY_COUNT; i++) hash(i);
+		}
+
+	}
+
+	private static class SingleSubject extends Subject {
+
+		private final Hash<byte[]> hash;
+		private final byte[][] keys;
+
+		SingleSubject(Hash<byte[]> hash, byte[][] keys) {
+			this.hash = hash;
+			this.keys = keys;
+		}
+
+		@Override
+		void hash(int index) {
+			sink += hash.hashAsLong(keys[index]);
+		}
+
+	}
+
+	private static class MultiSubject extends Subject {
+
+		private final MultiHash<byte[]> hash;
+		private final byte[][] keys;
+		private final int[] array = new int[MULTIPLICITY];
+
+		MultiSubject(MultiHash<byte[]> hash, byte[][] keys) {
+			this.hash = hash;
+			this.keys = keys;
+		}
+
+		@Override
+		void hash(int index) {
+			sink += hash.hashAsInts(keys[index], array)[MULTIPLICITY - 1];
+		}
+
+	}
+
+	private static class StringSubject extends Subject {
+
+		private final PerfectStringHash hash;
+		private final String[] strings;
+
+		StringSubject(PerfectStringHash hash, String[] strings) {
+			this.hash = hash;
+			this.strings = strings;
+		}
+
+		@Override
+		void hash(int index) {
+			sink += hash.hashAsInt(strings[index]);
+		}
+
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.tomgibara.crinch.hashing.perf;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.tomgibara.crinch.hashing.DigestHash;
+import com.tomgibara.crinch.hashing.DistinctMultiHash;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.Hash;
+import com.tomgibara.crinch.hashing.HashRange;
+import com.tomgibara.crinch.hashing.HashSource;
+import com.tomgibara.crinch.hashing.Hashes;
+import com.tomgibara.crinch.hashing.IntegerMultiHash;
+import com.tomgibara.crinch.hashing.LongHash;
+import com.tomgibara.crinch.hashing.MultiHash;
+import com.tomgibara.crinch.hashing.Murmur3_128Hash;
+import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+import com.tomgibara.crinch.hashing.PRNGMultiHash;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+import com.tomgibara.crinch.util.WriteStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Statistical checks of hash quality: avalanche, bit independence and the
+ * uniformity of reranged and multiple hash values. These are too slow to run
+ * with every build and are only run with the hash-quality profile.
+ * 
+ * @author tomgibara
+ */
+
+public class HashQualityTest extends TestCase {
+
+	static final HashSource<byte[]> source = new HashSource<byte[]>() {
+		@Override
+		public void sourceData(byte[] value, WriteStream out) {
+			out.writeBytes(value);
+		}
+	};
+
+	// 99.9th percentile of the standard normal distribution
+	private static final double Z = 3.09;
+
+	// Wilson-Hilferty approximation to the 99.9th percentile of chi-squared
+	private static double chiSquaredCritical(int df) {
+		final double a = 2.0 / (9.0 * df);
+		final double b = 1.0 - a + Z * Math.sqrt(a);
+		return df * b * b * b;
+	}
+
+	private static byte[] key(int i, int length) {
+		byte[] key = new byte[length];
+		for (int j = 0; j < 4 && j < length; j++) {
+			key[j] = (byte) (i >> (j << 3));
+		}
+		return key;
+	}
+
+	private static List<Candidate> candidates() {
+		List<Candidate> list = new ArrayList<Candidate>();
+		list.add(new Candidate("Murmur3_32", new Murmur3_32Hash<byte[]>(source), true));
+		list.add(new Candidate("Murmur3_128", new Murmur3_128Hash<byte[]>(source), true));
+		list.add(new Candidate("XxHash64", new XxHash64Hash<byte[]>(source), true));
+		list.add(new Candidate("SHA1", new DigestHash<byte[]>(DigestHash.getSHA1DigestSource(), source), true));
+		// not expected to mix well, reported only
+		list.add(new Candidate("Long", new LongHash<byte[]>(source), false));
+		return list;
+	}
+
+	public void testAvalanche() {
+		for (Candidate candidate : candidates()) {
+			for (int length : new int[] { 8, 32 }) {
+				double bias = candidate.avalanche(length, 4000, new Random(0L));
+				System.out.println("Avalanche " + candidate.name + " (" + length + " bytes): max bias " + bias);
+				if (candidate.mixing) assertTrue(candidate.name + " " + bias, bias < 0.05);
+			}
+		}
+	}
+
+	public void testBitIndependence() {
+		for (Candidate candidate : candidates()) {
+			double correlation = candidate.bitIndependence(8, 2000, new Random(0L));
+			System.out.println("Bit independence " + candidate.name + ": max correlation " + correlation);
+			if (candidate.mixing) assertTrue(candidate.name + " " + correlation, correlation < 0.15);
+		}
+	}
+
+	public void testReranged() {
+		for (Candidate candidate : candidates()) {
+			if (!candidate.mixing) continue;
+			for (int buckets : new int[] { 7, 100, 1024, 10007 }) {
+				MultiHash<byte[]> hash = Hashes.rangeAdjust(new HashRange(0, buckets - 1), Hashes.asMultiHash(candidate.hash));
+				checkUniform(candidate.name + " reranged to " + buckets, hash, 1, buckets, true);
+			}
+		}
+	}
+
+	public void testMultiHashes() throws NoSuchAlgorithmException, NoSuchProviderException {
+		final int buckets = 1000;
+		checkUniform("EnhancedDouble/XxHash64", new EnhancedDoubleMultiHash<byte[]>(new XxHash64Hash<byte[]>(source), buckets - 1), 7, buckets, true);
+		checkUniform("EnhancedDouble/Murmur3_128", new EnhancedDoubleMultiHash<byte[]>(new Murmur3_128Hash<byte[]>(source), buckets - 1), 7, buckets, true);
+		checkUniform("EnhancedDouble/Murmur3_32", new EnhancedDoubleMultiHash<byte[]>(new Murmur3_32Hash<byte[]>(source), buckets - 1), 7, buckets, true);
+		checkUniform("Integer/Murmur3_32", new IntegerMultiHash<byte[]>(new Murmur3_32Hash<byte[]>(source), buckets - 1), 7, buckets, true);
+		checkUniform("PRNG/SHA1PRNG", new PRNGMultiHash<byte[]>("SHA1PRNG", source, new HashRange(0, buckets - 1)), 7, buckets, true);
+		checkUniform("Distinct/Murmur3_128", new DistinctMultiHash<byte[]>(buckets - 1, 3, new Murmur3_128Hash<byte[]>(source)), 3, buckets, true);
+		// seeds java.util.Random with a weakly mixed value, reported only
+		checkUniform("PRNG", new PRNGMultiHash<byte[]>(source, new HashRange(0, buckets - 1)), 7, buckets, false);
+	}
+
+	// hashes sequential keys, the values of which differ in few bits
+	private void checkUniform(String name, MultiHash<byte[]> hash, int multiplicity, int buckets, boolean uniform) {
+		final int perBucket = 20;
+		final int count = buckets * perBucket / multiplicity;
+		final long[] counts = new long[buckets];
+		final int[] array = new int[multiplicity];
+		for (int i = 0; i < count; i++) {
+			final byte[] key = key(i, 8);
+			if (multiplicity == 1) {
+				counts[hash.hashAsInt(key)]++;
+			} else {
+				for (int h : hash.hashAsInts(key, array)) counts[h]++;
+			}
+		}
+		final double expected = (double) count * multiplicity / buckets;
+		double chi2 = 0.0;
+		for (long c : counts) {
+			final double d = c - expected;
+			chi2 += d * d / expected;
+		}
+		final double critical = chiSquaredCritical(buckets - 1);
+		System.out.println("Chi-squared " + name + ": " + chi2 + " (critical " + critical + ")");
+		if (uniform) assertTrue(name + " chi-squared " + chi2, chi2 < critical);
+	}
+
+	// inner classes
+
+	private static class Candidate {
+
+		final String name;
+		final Hash<byte[]> hash;
+		final boolean mixing;
+		final int bits;
+
+		Candidate(String name, Hash<byte[]> hash, boolean mixing) {
+			this.name = name;
+			this.hash = hash;
+			this.mixing = mixing;
+			bits = hash.getRange().equals(HashRange.FULL_INT_RANGE) ? 32 : 64;
+		}
+
+		long hash(byte[] key) {
+			return bits == 32 ? hash.hashAsInt(key) & 0xffffffffL : hash.hashAsLong(key);
+		}
+
+		// the greatest deviation from 0.5 of the probability that flipping an input bit flips an output bit
+		double avalanche(int length, int samples, Random r) {
+			final int inBits = length * 8;
+			final int[][] flips = new int[inBits][bits];
+			final byte[] key = new byte[length];
+			for (int s = 0; s < samples; s++) {
+				r.nextBytes(key);
+				final long h = hash(key);
+				for (int i = 0; i < inBits; i++) {
+					key[i >> 3] ^= 1 << (i & 7);
+					long d = h ^ hash(key);
+					key[i >> 3] ^= 1 << (i & 7);
+					final int[] row = flips[i];
+					for (; d != 0L; d &= d - 1) row[Long.numberOfTrailingZeros(d)]++;
+				}
+			}
+			double max = 0.0;
+			for (int i = 0; i < inBits; i++) {
+				for (int j = 0; j < bits; j++) {
+					max = Math.max(max, Math.abs((double) flips[i][j] / samples - 0.5));
+				}
+			}
+			return max;
+		}
+
+		// the greatest correlation between the flips of two output bits caused by flipping an input bit
+		double bitIndependence(int length, int samples, Random r) {
+			final int inBits = length * 8;
+			final int[][] singles = new int[inBits][bits];
+			final int[][][] pairs = new int[inBits][bits][bits];
+			final byte[] key = new byte[length];
+			final int[] set = new int[bits];
+			for (int s = 0; s < samples; s++) {
+				r.nextBytes(key);
+				final long h = hash(key);
+				for (int i = 0; i < inBits; i++) {
+					key[i >> 3] ^= 1 << (i & 7);
+					long d = h ^ hash(key);
+					key[i >> 3] ^= 1 << (i & 7);
+					int n = 0;
+					for (; d != 0L; d &= d - 1) set[n++] = Long.numberOfTrailingZeros(d);
+					final int[] single = singles[i];
+					final int[][] pair = pairs[i];
+					for (int a = 0; a < n; a++) {
+						final int j = set[a];
+						single[j]++;
+						final int[] row = pair[j];
+						for (int b = a + 1; b < n; b++) row[set[b]]++;
+					}
+				}
+			}
+			final double n = samples;
+			double max = 0.0;
+			for (int i = 0; i < inBits; i++) {
+				for (int j = 0; j < bits; j++) {
+					final double nj = singles[i][j];
+					for (int k = j + 1; k < bits; k++) {
+						final double nk = singles[i][k];
+						final double var = nj * (n - nj) * nk * (n - nk);
+						if (var == 0.0) return 1.0;
+						final double corr = (n * pairs[i][j][k] - nj * nk) / Math.sqrt(var);
+						max = Math.max(max, Math.abs(corr));
+					}
+				}
+			}
+			return max;
+		}
+
+	}
+
+}
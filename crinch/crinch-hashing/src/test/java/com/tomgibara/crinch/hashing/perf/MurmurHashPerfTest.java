@@ -22,6 +22,7 @@ public class MurmurHashPerfTest extends TestCase {
 		test.setUp();
 		while(true) {
 			test.testAgainstGuava();
+			test.testLongsAgainstGuava();
 		}
 	}
 	
@@ -29,6 +30,7 @@ public class MurmurHashPerfTest extends TestCase {
 	private static final int SIZE = 1000000;
 	private static final int REPS = 10;
 	private static Pojo[] pojos = null;
+	private static long[] longs = null;
 	private static int[] hashes = null;
 	
 	@Override
@@ -48,6 +50,10 @@ public class MurmurHashPerfTest extends TestCase {
 				pojo.boolVal = r.nextBoolean();
 				pojos[i] = pojo;
 			}
+			longs = new long[SIZE];
+			for (int i = 0; i < longs.length; i++) {
+				longs[i] = r.nextLong();
+			}
 			System.gc();
 		}
 	}
@@ -73,6 +79,38 @@ public class MurmurHashPerfTest extends TestCase {
 		assertTrue(crinchMedian < guavaMedian);
 	}
 	
+	public void testLongsAgainstGuava() {
+
+		long crinchMedian = medianTime("Crinch longs", new Runnable() {
+			@Override
+			public void run() {
+				hashLongsWithCrinch();
+			}
+		});
+
+		System.gc();
+
+		long staticMedian = medianTime("Crinch static longs", new Runnable() {
+			@Override
+			public void run() {
+				hashLongsStatically();
+			}
+		});
+
+		System.gc();
+
+		long guavaMedian = medianTime("Guava longs", new Runnable() {
+			@Override
+			public void run() {
+				hashLongsWithGuava();
+			}
+		});
+
+		// sourcing boxed longs is comparable with Guava, the static entry point is not
+		assertTrue(staticMedian <= crinchMedian);
+		assertTrue(staticMedian <= guavaMedian);
+	}
+
 	private long medianTime(String title, Runnable r) {
 		long[] times = new long[REPS];
 		System.out.println(title);
@@ -98,6 +136,26 @@ public class MurmurHashPerfTest extends TestCase {
 		}
 	}
 	
+	private void hashLongsWithCrinch() {
+		Hash<Long> hash = new Murmur3_32Hash<Long>(new LongSource());
+		for (int i = 0; i < SIZE; i++) {
+			hashes[i] = hash.hashAsInt(longs[i]);
+		}
+	}
+
+	private void hashLongsStatically() {
+		for (int i = 0; i < SIZE; i++) {
+			hashes[i] = Murmur3_32Hash.hash(longs[i], 0);
+		}
+	}
+
+	private void hashLongsWithGuava() {
+		HashFunction hash = Hashing.murmur3_32();
+		for (int i = 0; i < SIZE; i++) {
+			hashes[i] = hash.newHasher().putLong(longs[i]).hash().asInt();
+		}
+	}
+
 	private void hashAllWithGuava() {
 		HashFunction hash = Hashing.murmur3_32();
 		Funnel<Pojo> funnel = new PojoFunnel();
@@ -127,6 +185,15 @@ public class MurmurHashPerfTest extends TestCase {
 		
 	}
 	
+	private static class LongSource implements HashSource<Long> {
+
+		@Override
+		public void sourceData(Long value, WriteStream out) {
+			out.writeLong(value);
+		}
+
+	}
+
 	private static class PojoFunnel implements Funnel<Pojo> {
 		
 		@Override
@@ -80,6 +80,7 @@ public class ColumnStats {
 			c += writeString(writer, enums[i]);
 		}
 		c += writer.getWriter().writeBoolean(stats.unique);
+		c += writer.writePositiveLong(stats.distinctCount);
 		return c;
 	}
 	
@@ -116,6 +117,7 @@ public class ColumnStats {
 		}
 		stats.setEnumeration(enums);
 		stats.setUnique(reader.getReader().readBoolean());
+		stats.setDistinctCount(reader.readPositiveLong());
 		return stats;
 	}
 	
@@ -127,8 +129,10 @@ public class ColumnStats {
 	private BigDecimal sum;
 	private long count;
 	private long[] frequencies;
+	// for integral columns, the values that are coded with their own symbols
 	private String[] enumeration;
 	private boolean unique;
+	private long distinctCount;
 
 	public void setClassification(Classification classification) {
 		this.classification = classification;
@@ -203,10 +207,19 @@ public class ColumnStats {
 	public boolean isUnique() {
 		return unique;
 	}
+
+	// may be an estimate
+	public void setDistinctCount(long distinctCount) {
+		this.distinctCount = distinctCount;
+	}
+	
+	public long getDistinctCount() {
+		return distinctCount;
+	}
 	
 	@Override
 	public String toString() {
-		return "classification: " + classification + ", nullable? " + nullable + ", minimum: " + minimum + ", maximum: " + maximum + " sum: " + sum + ", count: " + count + ", frequencies: " + Arrays.toString(frequencies) + ", enumeration: " + Arrays.toString(enumeration) + ", unique: " + unique;
+		return "classification: " + classification + ", nullable? " + nullable + ", minimum: " + minimum + ", maximum: " + maximum + " sum: " + sum + ", count: " + count + ", frequencies: " + Arrays.toString(frequencies) + ", enumeration: " + Arrays.toString(enumeration) + ", unique: " + unique + ", distinct count: " + distinctCount;
 	}
 	
 }
@@ -22,12 +22,22 @@ import java.util.Arrays;
 import com.tomgibara.crinch.bits.BitWriter;
 import com.tomgibara.crinch.coding.CodedReader;
 import com.tomgibara.crinch.coding.CodedWriter;
+import com.tomgibara.crinch.coding.HeavyHitterFrequencies;
 import com.tomgibara.crinch.coding.HuffmanCoding;
 import com.tomgibara.crinch.record.ColumnStats;
 import com.tomgibara.crinch.record.ColumnStats.Classification;
 
 class ColumnCompactor {
 
+	private static HeavyHitterFrequencies newHitters(String[] enumeration, long[] freqs) {
+		final int count = enumeration.length;
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = Long.parseLong(enumeration[i]);
+		}
+		return new HeavyHitterFrequencies(values, Arrays.copyOf(freqs, count), freqs[count]);
+	}
+
 	private final ColumnStats stats;
 	private final CompactCharStore store;
 	private final int columnIndex;
@@ -38,6 +48,8 @@ class ColumnCompactor {
 	private final String[] enumeration;
 	
 	private final HuffmanCoding huffman;
+	// non-null if frequent integral values are coded with their own symbols
+	private final HeavyHitterFrequencies hitters;
 	
 	//TODO nasty constructor
 	ColumnCompactor(ColumnStats stats, CompactCharStore store, int columnIndex) {
@@ -60,8 +72,13 @@ class ColumnCompactor {
 		long[] freqs = stats.getFrequencies();
 		if (freqs == null) {
 			huffman = null;
+			hitters = null;
+		} else if (stats.getClassification() == Classification.INTEGRAL && stats.getEnumeration() != null) {
+			hitters = newHitters(stats.getEnumeration(), freqs);
+			huffman = new HuffmanCoding(hitters);
 		} else {
 			huffman = new HuffmanCoding(new HuffmanCoding.UnorderedFrequencies(freqs));
+			hitters = null;
 		}
 	}
 	
@@ -129,19 +146,27 @@ class ColumnCompactor {
 	}
 	
 	int encodeInt(CodedWriter writer, int value) {
+		if (hitters != null) return encodeLong(writer, value);
 		return writer.writeInt(value - (int) offset);
 	}
 	
 	int decodeInt(CodedReader reader) {
+		if (hitters != null) return (int) decodeLong(reader);
 		return ((int) offset) + reader.readInt();
 	}
 	
 	int encodeLong(CodedWriter writer, long value) {
-		return writer.writeLong(value - offset);
+		if (hitters == null) return writer.writeLong(value - offset);
+		int symbol = hitters.getSymbol(value);
+		int n = huffman.encodePositiveInt(writer.getWriter(), symbol);
+		if (symbol == hitters.getEscapeSymbol()) n += writer.writeLong(value - offset);
+		return n;
 	}
 	
 	long decodeLong(CodedReader reader) {
-		return offset + reader.readLong();
+		if (hitters == null) return offset + reader.readLong();
+		int symbol = huffman.decodePositiveInt(reader.getReader());
+		return symbol == hitters.getEscapeSymbol() ? offset + reader.readLong() : hitters.getValue(symbol);
 	}
 	
 	int encodeBoolean(CodedWriter writer, boolean value) {
@@ -33,8 +33,9 @@ import com.tomgibara.crinch.record.process.ProcessContext;
 
 public class CompactProducer implements RecordProducer<LinearRecord> {
 
+	private final String type;
 	private final SubRecordDef subRecDef;
-	
+	
 	private CompactStats compactStats;
 	private ExtendedCoding coding;
 	private RecordDecompactor decompactor;
@@ -45,13 +46,30 @@ public class CompactProducer implements RecordProducer<LinearRecord> {
 	}
 	
 	public CompactProducer(SubRecordDef subRecDef) {
+		this("compact", subRecDef);
+	}
+	
+	/**
+	 * Creates a producer for compacted records stored under a type other than
+	 * the default "compact", such as a partition written by a
+	 * {@link PartitioningConsumer}.
+	 * 
+	 * @param type
+	 *            the type under which the records were stored
+	 * @param subRecDef
+	 *            the sub-record definition of the records, or null
+	 */
+	
+	public CompactProducer(String type, SubRecordDef subRecDef) {
+		if (type == null) throw new IllegalArgumentException("null type");
+		this.type = type;
 		this.subRecDef = subRecDef;
 	}
 	
 	@Override
 	public void prepare(ProcessContext context) {
 		RecordStats stats = context.getRecordStats();
-		compactStats = new CompactStats("compact", context, subRecDef);
+		compactStats = new CompactStats(type, context, subRecDef);
 		compactStats.read();
 		if (stats == null) throw new IllegalStateException("no statistics available");
 		stats = stats.adaptFor(compactStats.definition);
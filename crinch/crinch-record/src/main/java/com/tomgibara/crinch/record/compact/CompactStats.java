@@ -42,7 +42,7 @@ class CompactStats implements CodedStreams.WriteTask, CodedStreams.ReadTask {
 		this.type = type;
 		this.definition = definition;
 		coding = context.getCoding();
-		file = context.file("compact", true, definition);
+		file = context.file(type, true, definition);
 		if (context.isClean()) file.delete();
 	}
 	
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.record.compact;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// See Knuth, The Art of Computer Programming Vol. 3, 5.4.1 "Multiway merging"
+
+/**
+ * Merges a number of sorted iterators into a single sorted iterator. Each
+ * internal node of the tree records the loser of the match played there, so
+ * that replacing the winner requires only one comparison per level of the
+ * tree, without the sibling comparisons that a heap needs. Equal elements are
+ * returned in the order of their sources.
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element merged
+ */
+
+final class LoserTree<E> implements Iterator<E> {
+
+	private final Iterator<? extends E>[] sources;
+	private final Comparator<? super E> comparator;
+	// the number of sources, also the index of a sentinel that wins every match
+	private final int k;
+	private final Object[] heads;
+	private final boolean[] live;
+	// tree[0] is the overall winner, tree[1..k-1] are the losers at each node
+	private final int[] tree;
+
+	@SuppressWarnings("unchecked")
+	LoserTree(List<? extends Iterator<? extends E>> sources, Comparator<? super E> comparator) {
+		if (sources == null) throw new IllegalArgumentException("null sources");
+		if (comparator == null) throw new IllegalArgumentException("null comparator");
+		k = sources.size();
+		this.sources = sources.toArray(new Iterator[k]);
+		this.comparator = comparator;
+		heads = new Object[k];
+		live = new boolean[k];
+		tree = new int[Math.max(k, 1)];
+		for (int i = 0; i < k; i++) {
+			if (this.sources[i] == null) throw new IllegalArgumentException("null source");
+			advance(i);
+			tree[i] = k;
+		}
+		for (int i = k - 1; i >= 0; i--) adjust(i);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return k > 0 && live[tree[0]];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		final int winner = tree[0];
+		final E element = (E) heads[winner];
+		advance(winner);
+		adjust(winner);
+		return element;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void advance(int source) {
+		final Iterator<? extends E> it = sources[source];
+		if (it.hasNext()) {
+			heads[source] = it.next();
+			live[source] = true;
+		} else {
+			heads[source] = null;
+			live[source] = false;
+		}
+	}
+
+	// replays the matches from the leaf of the source to the root
+	private void adjust(int s) {
+		final int[] tree = this.tree;
+		for (int t = (s + k) >> 1; t > 0; t >>= 1) {
+			final int loser = tree[t];
+			if (beats(loser, s)) {
+				tree[t] = s;
+				s = loser;
+			}
+		}
+		tree[0] = s;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean beats(int a, int b) {
+		if (a == k) return true;
+		if (b == k) return false;
+		// exhausted sources lose every match
+		if (!live[a]) return false;
+		if (!live[b]) return true;
+		final int c = comparator.compare((E) heads[a], (E) heads[b]);
+		return c == 0 ? a < b : c < 0;
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2011 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.crinch.record.compact;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.tomgibara.crinch.bits.OutputStreamBitWriter;
+import com.tomgibara.crinch.coding.CodedWriter;
+import com.tomgibara.crinch.hashing.JumpPartitioner;
+import com.tomgibara.crinch.hashing.Partitioner;
+import com.tomgibara.crinch.hashing.RendezvousPartitioner;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+import com.tomgibara.crinch.record.LinearRecord;
+import com.tomgibara.crinch.record.RecordConsumer;
+import com.tomgibara.crinch.record.def.RecordDef;
+import com.tomgibara.crinch.record.def.SubRecordDef;
+import com.tomgibara.crinch.record.dynamic.DynamicRecordFactory;
+import com.tomgibara.crinch.record.dynamic.DynamicRecordFactory.ClassConfig;
+import com.tomgibara.crinch.record.process.ProcessContext;
+import com.tomgibara.crinch.record.process.ProcessLogger.Level;
+
+/**
+ * Splits records between a number of compact files according to the values of
+ * key columns. Partitions are assigned with a consistent hash so that changing
+ * the number of partitions moves as few records as possible. Each partition
+ * may be read with a {@link CompactProducer} constructed with the type given
+ * by {@link #partitionType(int, int)}. The hash seed may be set with the
+ * "partition.hashSeed" property of the record definition.
+ *
+ * @author Tom Gibara
+ */
+
+public class PartitioningConsumer implements RecordConsumer<LinearRecord> {
+
+	private static ClassConfig sConfig = new ClassConfig(false, false, false);
+
+	/**
+	 * The type under which a partition is stored.
+	 *
+	 * @param partition
+	 *            the index of the partition
+	 * @param partitions
+	 *            the total number of partitions
+	 * @return the type of the partition's compact file
+	 */
+
+	public static String partitionType(int partition, int partitions) {
+		if (partitions < 1) throw new IllegalArgumentException("partitions not positive");
+		if (partition < 0 || partition >= partitions) throw new IllegalArgumentException("invalid partition");
+		return "compact-" + partitions + "-" + partition;
+	}
+
+	// constructor state
+	private final SubRecordDef keyDef;
+	private final int partitions;
+	private final double[] weights;
+
+	// prepared state
+	private ProcessContext context;
+	private DynamicRecordFactory keyFactory;
+	private Partitioner<LinearRecord> partitioner;
+	private CompactStats[] stats;
+
+	// pass state
+	private RecordCompactor compactor;
+	private OutputStream[] outs;
+	private OutputStreamBitWriter[] writers;
+	private CodedWriter[] codeds;
+	private long[] bitsWritten;
+
+	/**
+	 * Partitions records using jump consistent hashing.
+	 *
+	 * @param keyDef
+	 *            the key columns, or null to use all columns
+	 * @param partitions
+	 *            the number of partitions
+	 */
+
+	public PartitioningConsumer(SubRecordDef keyDef, int partitions) {
+		if (partitions < 1) throw new IllegalArgumentException("partitions not positive");
+		this.keyDef = keyDef;
+		this.partitions = partitions;
+		weights = null;
+	}
+
+	/**
+	 * Partitions records using weighted rendezvous hashing; a partition may be
+	 * retired by giving it a zero weight.
+	 *
+	 * @param keyDef
+	 *            the key columns, or null to use all columns
+	 * @param weights
+	 *            the relative weight of each partition
+	 */
+
+	public PartitioningConsumer(SubRecordDef keyDef, double[] weights) {
+		if (weights == null) throw new IllegalArgumentException("null weights");
+		if (weights.length == 0) throw new IllegalArgumentException("no weights");
+		this.keyDef = keyDef;
+		this.partitions = weights.length;
+		this.weights = weights.clone();
+	}
+
+	@Override
+	public void prepare(ProcessContext context) {
+		this.context = context;
+		RecordDef def = context.getRecordDef();
+		if (def == null) throw new IllegalArgumentException("context has no record definition");
+		def = def.asBasis();
+		RecordDef keyDefinition = keyDef == null ? def : def.asSubRecord(keyDef);
+		keyFactory = DynamicRecordFactory.getInstance(keyDefinition);
+		Long seed = def.getLongProperty("partition.hashSeed");
+		XxHash64Hash<LinearRecord> hash = new XxHash64Hash<LinearRecord>(keyFactory.getHashSource(sConfig), seed == null ? 0L : seed);
+		partitioner = weights == null ? new JumpPartitioner<LinearRecord>(hash) : new RendezvousPartitioner<LinearRecord>(hash, weights);
+		stats = new CompactStats[partitions];
+		for (int i = 0; i < partitions; i++) {
+			stats[i] = new CompactStats(partitionType(i, partitions), context);
+			if (context.isClean()) file(i).delete();
+		}
+	}
+
+	@Override
+	public int getRequiredPasses() {
+		for (int i = 0; i < partitions; i++) {
+			if (!file(i).isFile()) return 1;
+		}
+		return 0;
+	}
+
+	@Override
+	public void beginPass() {
+		context.setPassName("Partitioning records");
+		compactor = new RecordCompactor(context, null, 0);
+		open();
+	}
+
+	@Override
+	public void consume(LinearRecord record) {
+		// reading the key consumes the record, so it must be reset before it is compacted
+		record.mark();
+		LinearRecord key = keyFactory.newRecord(sConfig, record, keyDef != null);
+		record.reset();
+		int partition = partitioner.partition(key, partitions);
+		bitsWritten[partition] += compactor.compact(codeds[partition], record);
+	}
+
+	@Override
+	public void endPass() {
+		close();
+		for (int i = 0; i < partitions; i++) {
+			stats[i].bitsWritten = bitsWritten[i];
+			stats[i].write();
+		}
+	}
+
+	@Override
+	public void complete() {
+		cleanup();
+	}
+
+	@Override
+	public void quit() {
+		cleanup();
+	}
+
+	private File file(int partition) {
+		return context.file(stats[partition].type, false, context.getRecordDef().getBasisOrSelf());
+	}
+
+	private void open() {
+		outs = new OutputStream[partitions];
+		writers = new OutputStreamBitWriter[partitions];
+		codeds = new CodedWriter[partitions];
+		bitsWritten = new long[partitions];
+		for (int i = 0; i < partitions; i++) {
+			try {
+				outs[i] = new BufferedOutputStream(new FileOutputStream(file(i)), 1024);
+			} catch (FileNotFoundException e) {
+				close();
+				throw new RuntimeException(e);
+			}
+			writers[i] = new OutputStreamBitWriter(outs[i]);
+			codeds[i] = new CodedWriter(writers[i], context.getCoding());
+		}
+	}
+
+	private void close() {
+		if (writers != null) {
+			for (int i = 0; i < partitions; i++) {
+				if (writers[i] == null) continue;
+				try {
+					writers[i].flush();
+				} catch (RuntimeException e) {
+					context.getLogger().log(Level.ERROR, "Failed to flush writer", e);
+				}
+			}
+			writers = null;
+			codeds = null;
+		}
+		if (outs != null) {
+			for (int i = 0; i < partitions; i++) {
+				if (outs[i] == null) continue;
+				try {
+					outs[i].close();
+				} catch (IOException e) {
+					context.getLogger().log(Level.WARN, "Failed to close file", e);
+				}
+			}
+			outs = null;
+		}
+	}
+
+	private void cleanup() {
+		close();
+		compactor = null;
+		keyFactory = null;
+		partitioner = null;
+		context = null;
+	}
+
+}
@@ -23,6 +23,13 @@ import java.util.List;
 import java.util.Set;
 
 import com.tomgibara.crinch.coding.CharFrequencyRecorder;
+import com.tomgibara.crinch.collections.CountMinSketch;
+import com.tomgibara.crinch.collections.SpaceSaving;
+import com.tomgibara.crinch.collections.SpaceSaving.Counter;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
+import com.tomgibara.crinch.hashing.HashSource;
+import com.tomgibara.crinch.hashing.HyperLogLog;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
 import com.tomgibara.crinch.record.ColumnStats;
 import com.tomgibara.crinch.record.LinearRecord;
 import com.tomgibara.crinch.record.RecordStats;
@@ -30,11 +37,33 @@ import com.tomgibara.crinch.record.ColumnStats.Classification;
 import com.tomgibara.crinch.record.def.ColumnType;
 import com.tomgibara.crinch.record.process.ProcessContext;
 import com.tomgibara.crinch.record.util.UniquenessChecker;
+import com.tomgibara.crinch.util.WriteStream;
 
 //TODO bloom filter parameters should be determined on a column-by-column basis
 //TODO avg length of string columns should inform bloom filter params
 class RecordAnalyzer {
 
+	private static final HashSource<Double> doubleSource = new HashSource<Double>() {
+		@Override
+		public void sourceData(Double value, WriteStream out) {
+			out.writeDouble(value);
+		}
+	};
+
+	private static final HashSource<Long> longSource = new HashSource<Long>() {
+		@Override
+		public void sourceData(Long value, WriteStream out) {
+			out.writeLong(value);
+		}
+	};
+
+	private static final HashSource<String> stringSource = new HashSource<String>() {
+		@Override
+		public void sourceData(String value, WriteStream out) {
+			out.writeChars(value);
+		}
+	};
+
 	private static boolean isFreqsUnique(long[] freqs) {
 		for (int i = 0; i < freqs.length; i++) {
 			if (freqs[i] > 1L) return false;
@@ -42,6 +71,14 @@ class RecordAnalyzer {
 		return true;
 	}
 	
+	private static long distinctCount(long[] freqs) {
+		long count = 0L;
+		for (int i = 0; i < freqs.length; i++) {
+			if (freqs[i] != 0L) count++;
+		}
+		return count;
+	}
+	
 	private final long recordCount;
 	private final ColumnAnalyzer[] analyzers;
 	
@@ -173,11 +210,15 @@ class RecordAnalyzer {
 	
 	private abstract class FilteredAnalyzer<T> extends ColumnAnalyzer {
 
-		private final UniquenessChecker<T> checker;
+		private final UniquenessChecker<T> checker;
+		// estimates distinct values, uniqueness is always determined by the checker
+		private final HyperLogLog<T> distinct;
+		private long values = 0L;
 
-		FilteredAnalyzer(ColumnType type, double averageObjectSizeInBytes) {
-			super(type);
-			checker = new UniquenessChecker<T>(recordCount, averageObjectSizeInBytes);
+		FilteredAnalyzer(ColumnType type, UniquenessChecker<T> checker, HashSource<T> source) {
+			super(type);
+			this.checker = checker;
+			distinct = new HyperLogLog<T>(new XxHash64Hash<T>(source));
 		}
 
 		@Override
@@ -195,19 +236,38 @@ class RecordAnalyzer {
 			if (str != null && !checker.isUniquenessDetermined()) checker.add( parse(str) );
 		}
 
-		@Override
-		void end() {
-			checker.endPass();
-		}
+		@Override
+		void end() {
+			checker.endPass();
+		}
 		
 		abstract T parse(String str);
 		
-		void checkUniqueness(T value) {
+		void checkUniqueness(T value) {
+			values++;
+			distinct.add(value);
 			if (!checker.isUniquenessDetermined()) checker.add(value);
-		}
-		
-		boolean isUnique() {
-			return checker.isUnique();
+		}
+		
+		// for long columns, the hash being that of a source that writes the
+		// value with writeLong, see XxHash64Hash.hash(long, long)
+		void checkUniqueness(long value, long hash) {
+			values++;
+			distinct.addHash(hash);
+			recheckUniqueness(value);
+		}
+		
+		void recheckUniqueness(long value) {
+			if (!checker.isUniquenessDetermined()) checker.add(value);
+		}
+		
+		boolean isUnique() {
+			return checker.isUnique();
+		}
+		
+		long distinctCount() {
+			// a non-unique column has at least one duplicate, whatever the estimate
+			return isUnique() ? values : Math.max(1L, Math.min(values - 1L, distinct.getEstimate()));
 		}
 		
 	}
@@ -220,7 +280,7 @@ class RecordAnalyzer {
 		private double maxValue = Double.MIN_VALUE;
 		
 		DoubleAnalyzer(ColumnType type) {
-			super(type, 24 + 8);
+			super(type, new UniquenessChecker<Double>(recordCount, 24 + 8), doubleSource);
 		}
 		
 		@Override
@@ -253,6 +313,7 @@ class RecordAnalyzer {
 			stats.setCount(count);
 			stats.setFrequencies(null);
 			stats.setUnique(isUnique());
+			stats.setDistinctCount(distinctCount());
 			return stats;
 		}
 		
@@ -300,6 +361,7 @@ class RecordAnalyzer {
 			stats.setFrequencies(freqs);
 			stats.setEnumeration(new String[] {"false", "true"});
 			stats.setUnique(isFreqsUnique(freqs));
+			stats.setDistinctCount(distinctCount(freqs));
 			return stats;
 		}
 		
@@ -370,19 +432,34 @@ class RecordAnalyzer {
 			stats.setCount(count);
 			stats.setFrequencies(freqs);
 			stats.setUnique(isFreqsUnique(freqs));
+			stats.setDistinctCount(distinctCount(freqs));
 			return stats;
 		}
 	}
 
 	private class LargeIntAnalyzer extends FilteredAnalyzer<Long> {
 
+		// these are fixed rather than configured: MAX_HITTERS bounds the
+		// symbols recorded in the column stats, and a sketch of this width
+		// overestimates by about e/4096 of the count, well below the
+		// 1/MAX_HITTERS share that a value needs to be recorded
+		private final static int MAX_HITTERS = 256;
+		private final static int SKETCH_WIDTH = 4096;
+		private final static int SKETCH_DEPTH = 4;
+
+		// identify frequent values so that they can be entropy coded
+		private final SpaceSaving<Long> hitters = new SpaceSaving<Long>(MAX_HITTERS);
+		private final EnhancedDoubleMultiHash<Long> sketchHash = new EnhancedDoubleMultiHash<Long>(new XxHash64Hash<Long>(longSource), SKETCH_WIDTH - 1);
+		private final CountMinSketch<Long> sketch = new CountMinSketch<Long>(sketchHash, SKETCH_DEPTH);
+		private final int[] hashes = new int[SKETCH_DEPTH];
+
 		private long sum = 0L;
 		private long count = 0L;
 		private long minValue = Long.MAX_VALUE;
 		private long maxValue = Long.MIN_VALUE;
 		
 		LargeIntAnalyzer(ColumnType type) {
-			super(type, 24 + 8);
+			super(type, UniquenessChecker.forLongs(recordCount), longSource);
 		}
 		
 		@Override
@@ -395,10 +472,19 @@ class RecordAnalyzer {
 				count++;
 				minValue = Math.min(value, minValue);
 				maxValue = Math.max(value, maxValue);
-				checkUniqueness(value);
+				long hash = XxHash64Hash.hash(value, 0L);
+				checkUniqueness(value, hash);
+				// only values that might be frequent are boxed for the summary
+				long estimate = sketch.addHashes(sketchHash.expandHash(hash, hashes), 1L);
+				if (estimate >= threshold()) hitters.offer(value);
 			}
 		}
 		
+		@Override
+		void reanalyze(String str) {
+			if (str != null) recheckUniqueness(Long.parseLong(str));
+		}
+		
 		@Override
 		Long parse(String str) {
 			return Long.parseLong(str);
@@ -415,9 +501,42 @@ class RecordAnalyzer {
 			stats.setCount(count);
 			stats.setFrequencies(null);
 			stats.setUnique(isUnique());
+			stats.setDistinctCount(distinctCount());
+			recordHitters(stats);
 			return stats;
 		}
 
+		// the frequent values are recorded as an enumeration, the last frequency is that of all other values
+		private void recordHitters(ColumnStats stats) {
+			List<Counter<Long>> top = hitters.getTop(MAX_HITTERS);
+			long threshold = threshold();
+			long[] freqs = new long[top.size() + 1];
+			String[] values = new String[top.size()];
+			int size = 0;
+			long total = 0L;
+			for (Counter<Long> counter : top) {
+				Long value = counter.getElement();
+				// the summary only sees the values that pass the threshold, so
+				// its counts may fall short; the sketch's is an upper bound
+				long freq = sketch.estimate(value);
+				if (freq < threshold) continue;
+				freqs[size] = freq;
+				values[size] = value.toString();
+				size++;
+				total += freq;
+			}
+			// not worth coding unless the frequent values dominate the column
+			if (count == 0L || total * 2 < count) return;
+			freqs[size] = Math.max(1L, count - total);
+			stats.setFrequencies(Arrays.copyOf(freqs, size + 1));
+			stats.setEnumeration(Arrays.copyOf(values, size));
+		}
+
+		// the least count with which a value is worth its own symbol
+		private long threshold() {
+			return Math.max(1L, count / MAX_HITTERS);
+		}
+
 	}
 	
 	private class CharAnalyzer extends ColumnAnalyzer {
@@ -456,6 +575,7 @@ class RecordAnalyzer {
 			long[] freqs = cfr.getFrequencies();
 			stats.setFrequencies(freqs);
 			stats.setUnique(isFreqsUnique(freqs));
+			stats.setDistinctCount(distinctCount(freqs));
 			return stats;
 		}
 		
@@ -478,7 +598,7 @@ class RecordAnalyzer {
 		private int maxValue = Integer.MIN_VALUE;
 
 		StringAnalyzer(ColumnType type) {
-			super(type, 24 + 4 * 4 + 24 + 4 + 16 * 2);
+			super(type, new UniquenessChecker<String>(recordCount, 24 + 4 * 4 + 24 + 4 + 16 * 2), stringSource);
 		}
 		
 		@Override
@@ -538,6 +658,7 @@ class RecordAnalyzer {
 				stats.setFrequencies(Arrays.copyOfRange(enumFreqs, 0, enumCount));
 			}
 			stats.setUnique(isUnique());
+			stats.setDistinctCount(enumFreqs == null ? distinctCount() : enumCount);
 			return stats;
 		}
 
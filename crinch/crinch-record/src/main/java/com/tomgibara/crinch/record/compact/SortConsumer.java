@@ -22,16 +22,22 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
-import com.tomgibara.crinch.bits.BitBoundary;
+import com.tomgibara.crinch.bits.BitReader;
 import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.bits.FileBitReaderFactory;
+import com.tomgibara.crinch.bits.FileBitReaderFactory.Mode;
 import com.tomgibara.crinch.bits.OutputStreamBitWriter;
+import com.tomgibara.crinch.coding.CodedReader;
 import com.tomgibara.crinch.coding.CodedWriter;
 import com.tomgibara.crinch.hashing.Hash;
-import com.tomgibara.crinch.hashing.LongHash;
-import com.tomgibara.crinch.hashing.LongSeededHashSource;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
 import com.tomgibara.crinch.record.LinearRecord;
 import com.tomgibara.crinch.record.RecordConsumer;
 import com.tomgibara.crinch.record.def.SubRecordDef;
@@ -41,8 +47,31 @@ import com.tomgibara.crinch.record.dynamic.Extended;
 import com.tomgibara.crinch.record.process.ProcessContext;
 import com.tomgibara.crinch.record.process.ProcessLogger.Level;
 
+/**
+ * Sorts records into a compact file, either by their natural order or, if the
+ * record definition has a "shuffle.hashSeed" property, by a hash of each
+ * record. At most a fixed number of records is held in memory; beyond that,
+ * sorted runs are spilled to temporary compact files which are then merged
+ * into the final file with a {@link LoserTree}. When there are too many runs
+ * to merge at once, groups of runs are first merged into longer runs.
+ *
+ * @author Tom Gibara
+ */
+
 public class SortConsumer implements RecordConsumer<LinearRecord> {
 
+	/**
+	 * The number of records held in memory by default.
+	 */
+
+	public static final int DEFAULT_RUN_SIZE = 1000000;
+
+	/**
+	 * The greatest number of runs merged together.
+	 */
+
+	public static final int MAX_MERGE_WIDTH = 256;
+
 	private static Comparator<LinearRecord> sHashComparator = new Comparator<LinearRecord>() {
 		@Override
 		public int compare(LinearRecord a, LinearRecord b) {
@@ -53,7 +82,15 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 		}
 	};
 	
+	private static Comparator<LinearRecord> sNaturalComparator = new Comparator<LinearRecord>() {
+		@Override
+		public int compare(LinearRecord a, LinearRecord b) {
+			return ((Comparable) a).compareTo(b);
+		}
+	};
+	
 	private final SubRecordDef subRecDef;
+	private final int runSize;
 	
 	private ProcessContext context;
 	private CompactStats stats;
@@ -61,7 +98,11 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 	private ClassConfig config;
 	private Comparator<LinearRecord> comparator;
 	private Hash<LinearRecord> hash;
-	private PriorityQueue<LinearRecord> queue; 
+	private List<LinearRecord> buffer;
+	private List<Run> runs;
+	private int runCount;
+	private RecordCompactor compactor;
+	private RecordDecompactor decompactor;
 	private File file;
 	private OutputStream out;
 	private BitWriter writer;
@@ -69,7 +110,24 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 	private long bitsWritten;
 	
 	public SortConsumer(SubRecordDef subRecDef) {
+		this(subRecDef, DEFAULT_RUN_SIZE);
+	}
+	
+	/**
+	 * Creates a consumer that holds no more than the specified number of
+	 * records in memory.
+	 * 
+	 * @param subRecDef
+	 *            the sub-record definition of the sorted records, or null
+	 * @param runSize
+	 *            the number of records sorted in memory before they are
+	 *            spilled to a run
+	 */
+	
+	public SortConsumer(SubRecordDef subRecDef, int runSize) {
+		if (runSize < 1) throw new IllegalArgumentException("runSize not positive");
 		this.subRecDef = subRecDef;
+		this.runSize = runSize;
 	}
 	
 	@Override
@@ -82,9 +140,9 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 		if (seed != null) {
 			comparator = sHashComparator;
 			config = new ClassConfig(false, false, true);
-			hash = new LongHash<LinearRecord>(new LongSeededHashSource<LinearRecord>(factory.getHashSource(config), seed));
+			hash = new XxHash64Hash<LinearRecord>(factory.getHashSource(config), seed);
 		} else {
-			comparator = null;
+			comparator = sNaturalComparator;
 			config = new ClassConfig(false, false, false);
 			hash = null;
 		}
@@ -105,9 +163,10 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 		} else {
 			context.setPassName("Shuffling records");
 		}
-		//TODO splitting
-		//TODO need to size
-		queue = new PriorityQueue<LinearRecord>(10000, comparator);
+		buffer = new ArrayList<LinearRecord>(Math.min(runSize, 10000));
+		runs = new ArrayList<Run>();
+		runCount = 0;
+		compactor = new RecordCompactor(context, stats.definition, 0);
 	}
 
 	@Override
@@ -117,22 +176,46 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 			long h = hash.hashAsLong(r);
 			((Extended) r).setExtension(h);
 		}
-		queue.add(r);
+		buffer.add(r);
+		if (buffer.size() == runSize) spill();
 	}
 
 	@Override
-	//TODO merging
 	public void endPass() {
-		open();
 		try {
-			RecordCompactor compactor = new RecordCompactor(context, stats.definition, 0);
-			while (!queue.isEmpty()) {
-				bitsWritten += compactor.compact(coded, queue.poll());
+			if (runs.isEmpty()) {
+				// everything fitted in memory
+				Collections.sort(buffer, comparator);
+				open(file);
+				for (LinearRecord record : buffer) write(record, false);
+			} else {
+				if (!buffer.isEmpty()) spill();
+				buffer = null;
+				while (runs.size() > MAX_MERGE_WIDTH) {
+					List<Run> group = new ArrayList<Run>(runs.subList(0, MAX_MERGE_WIDTH));
+					runs.subList(0, MAX_MERGE_WIDTH).clear();
+					Run run = newRun();
+					runs.add(run);
+					open(run.file);
+					try {
+						merge(group, true);
+						run.bits = bitsWritten;
+					} finally {
+						close();
+					}
+				}
+				open(file);
+				merge(runs, false);
 			}
 		} finally {
-			queue = null;
+			buffer = null;
 			factory = null;
 			close();
+			deleteRuns();
+			compactor = null;
+			decompactor = null;
+			stats.bitsWritten = bitsWritten;
+			stats.write();
 		}
 	}
 
@@ -150,7 +233,7 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 		return context.file("compact", false, stats.definition);
 	}
 
-	private void open() {
+	private void open(File file) {
 		try {
 			out = new BufferedOutputStream(new FileOutputStream(file), 1024);
 		} catch (FileNotFoundException e) {
@@ -181,15 +264,125 @@ public class SortConsumer implements RecordConsumer<LinearRecord> {
 				out = null;
 			}
 		}
-		stats.bitsWritten = bitsWritten;
-		stats.write();
 	}
 
+	// runs record the hash of each record so that it needn't be recomputed
+	private void write(LinearRecord record, boolean run) {
+		if (run && hash != null) bitsWritten += writer.write((Long) ((Extended) record).getExtension(), 64);
+		bitsWritten += compactor.compact(coded, record);
+	}
+	
+	private void spill() {
+		Collections.sort(buffer, comparator);
+		Run run = newRun();
+		open(run.file);
+		try {
+			for (LinearRecord record : buffer) write(record, true);
+			run.bits = bitsWritten;
+		} finally {
+			close();
+		}
+		runs.add(run);
+		buffer.clear();
+		context.getLogger().log(Level.DEBUG, "Spilled run " + runs.size() + " to " + run.file);
+	}
+	
+	// the merged runs are always deleted
+	private void merge(List<Run> runs, boolean run) {
+		try {
+			for (Run r : runs) r.open();
+			LoserTree<LinearRecord> tree = new LoserTree<LinearRecord>(runs, comparator);
+			while (tree.hasNext()) {
+				write(tree.next(), run);
+			}
+		} finally {
+			for (Run r : runs) {
+				r.close();
+				r.file.delete();
+			}
+		}
+	}
+	
+	private Run newRun() {
+		if (decompactor == null) decompactor = new RecordDecompactor(context.getRecordStats().adaptFor(stats.definition), 0);
+		File file = context.file("sort-run-" + runCount++, false, stats.definition);
+		return new Run(file);
+	}
+	
+	private void deleteRuns() {
+		if (runs == null) return;
+		for (Run run : runs) {
+			run.close();
+			run.file.delete();
+		}
+		runs = null;
+	}
+	
 	private void cleanup() {
+		deleteRuns();
 		if (context != null) {
 			context = null;
 			file = null;
 		}
 	}
 	
+	// a sorted run of records in a temporary file
+	private class Run implements Iterator<LinearRecord> {
+		
+		final File file;
+		long bits;
+		
+		private FileBitReaderFactory fbrf;
+		private RecordDecompactor decompactor;
+		private BitReader reader;
+		private CodedReader coded;
+		
+		Run(File file) {
+			this.file = file;
+		}
+		
+		void open() {
+			fbrf = new FileBitReaderFactory(file, Mode.CHANNEL);
+			decompactor = SortConsumer.this.decompactor.copy();
+			reader = fbrf.openReader();
+			coded = new CodedReader(reader, context.getCoding());
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return reader.getPosition() < bits;
+		}
+		
+		@Override
+		public LinearRecord next() {
+			if (reader.getPosition() == bits) throw new NoSuchElementException();
+			long h = hash == null ? 0L : reader.readLong(64);
+			CompactRecord compact = decompactor.decompact(coded, -1L);
+			LinearRecord record = factory.newRecord(config, compact);
+			compact.release();
+			if (hash != null) ((Extended) record).setExtension(h);
+			return record;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		void close() {
+			if (reader == null) return;
+			try {
+				fbrf.closeReader(reader);
+			} catch (RuntimeException e) {
+				context.getLogger().log(Level.WARN, "Failed to close run", e);
+			} finally {
+				reader = null;
+				coded = null;
+				fbrf = null;
+				decompactor = null;
+			}
+		}
+		
+	}
+	
 }
@@ -1,18 +1,31 @@
 package com.tomgibara.crinch.record.index;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 
+import com.tomgibara.crinch.bits.BitReader;
 import com.tomgibara.crinch.bits.BitWriter;
+import com.tomgibara.crinch.bits.FileBitReaderFactory;
+import com.tomgibara.crinch.bits.FileBitReaderFactory.Mode;
+import com.tomgibara.crinch.bits.OutputStreamBitWriter;
+import com.tomgibara.crinch.coding.CodedReader;
 import com.tomgibara.crinch.coding.CodedStreams;
 import com.tomgibara.crinch.coding.CodedWriter;
-import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+import com.tomgibara.crinch.hashing.MinimalPerfectHash;
 import com.tomgibara.crinch.record.LinearRecord;
 import com.tomgibara.crinch.record.RecordConsumer;
 import com.tomgibara.crinch.record.RecordStats;
+import com.tomgibara.crinch.record.compact.RecordCompactor;
+import com.tomgibara.crinch.record.compact.RecordDecompactor;
 import com.tomgibara.crinch.record.def.ColumnType;
 import com.tomgibara.crinch.record.def.RecordDef;
 import com.tomgibara.crinch.record.def.SubRecordDef;
@@ -27,17 +40,18 @@ import com.tomgibara.crinch.record.util.UniquenessChecker;
 //TODO should allow hash to store both position and ordinal
 public class HashConsumer implements RecordConsumer<LinearRecord> {
 
-	private static final int HASH_COUNT = 3;
-	private static final float DEFAULT_LOAD_FACTOR = 0.90f;
 	//TODO estimate this properly!
 	private static final double AVERAGE_KEY_SIZE_IN_BYTES = 250.0;
 
+	// the hash table is stored in segments of this many entries
+	private static final int SEGMENT_SHIFT = 20;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
 	private static ClassConfig sConfig = new ClassConfig(true, false, false);
 	
 	// constructor state
 	private final SubRecordDef subRecDef;
-	@SuppressWarnings("unchecked")
-	private final Murmur3_32Hash<LinearRecord>[] hashes = new Murmur3_32Hash[HASH_COUNT];
 	private final Random random = new Random();
 	// prepared state
 	private ProcessContext context;
@@ -46,17 +60,22 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 	DynamicRecordFactory factory;
 	private RecordHashSource hashSource;
 	private HashStats hashStats;
-	private int recordSize;
-	private int entrySize;
-	private int[] first;
-	private int[] second;
-	private int maxAttempts;
+	// the number of values stored for each record
+	private int fieldCount;
 
 	private File file;
 	// pass state
 	private UniquenessChecker<LinearRecord> checker;
-	float loadFactor;
-	private int[] map;
+	private MinimalPerfectHash.Builder<LinearRecord> builder;
+	// the keys are spilled to a file from which the hash is built
+	private File keysFile;
+	private RecordCompactor compactor;
+	private OutputStream out;
+	private BitWriter writer;
+	private CodedWriter coded;
+	private long keysBits;
+	private long keyCount;
+	private long[][] map;
 	private boolean passAborted;
 	private long largestOrdinal = -1L;
 	private long largestPosition = -1L;
@@ -79,8 +98,6 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 		if (recordDef.getColumns().isEmpty()) throw new IllegalStateException("record definition has no columns");
 		hashSource = new RecordHashSource(recordDef.getTypes());
 		factory = DynamicRecordFactory.getInstance(recordDef);
-		//TODO pull from record def
-		loadFactor = DEFAULT_LOAD_FACTOR;
 		file = context.file("hash", false, recordDef);
 		if (context.isClean()) file.delete();
 		Boolean skipUniqueCheck = recordDef.getBooleanProperty("hash.skipUniqueCheck");
@@ -90,12 +107,7 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 		hashStats.ordinal = ordinal == null ? true : ordinal.booleanValue();
 		hashStats.positional = positional == null ? true : positional.booleanValue();
 		if (!hashStats.ordinal && !hashStats.positional) throw new IllegalArgumentException("definition specifies neither positional nor ordinal");
-		recordSize = hashStats.ordinal && hashStats.positional ? 4 : 2;
-		entrySize = recordSize + hashes.length;
-		first = new int[entrySize];
-		second = new int[entrySize];
-		//TODO how should this depend on the number of hash functions?
-		maxAttempts = (int) (Math.log(recordCount.doubleValue()) / Math.log1p(0.001));
+		fieldCount = hashStats.ordinal && hashStats.positional ? 2 : 1;
 	}
 
 	@Override
@@ -103,7 +115,7 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 		if (checker != null) {
 			return 2;
 		} else if (!file.isFile()) {
-			return 1;
+			return hashStats.hash == null ? 2 : 1;
 		} else {
 			return 0;
 		}
@@ -114,26 +126,20 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 		if (checker != null) {
 			context.setPassName("Confirming uniqueness of hash keys");
 			checker.beginPass();
+		} else if (hashStats.hash == null) {
+			context.setPassName("Building perfect hash");
+			builder = new MinimalPerfectHash.Builder<LinearRecord>(hashSource).setSeed(random.nextLong());
+			compactor = new RecordCompactor(context, hashStats.definition, 0);
+			keysFile = context.file("hash-keys", false, hashStats.definition);
+			openKeys();
+			keyCount = 0L;
 		} else {
 			context.setPassName("Building hash table");
-			// set up stats
-			// table size
-			double tableSize = recordCount.doubleValue() / loadFactor;
-			if (tableSize > Integer.MAX_VALUE / entrySize) throw new IllegalStateException("large record counts not currently supported");
-			hashStats.tableSize = (int) Math.ceil(tableSize);
-			// hash seeds
-			int[] hashSeeds = new int[HASH_COUNT];
-			for (int i = 0; i < HASH_COUNT; i++) {
-				hashSeeds[i] = random.nextInt();
-				hashes[i] = new Murmur3_32Hash<LinearRecord>(hashSource, hashSeeds[i]);
-			}
-			hashStats.hashSeeds = hashSeeds;
-			// init map
-			if (map == null || map.length != hashStats.tableSize * entrySize) {
-				map = null;
-				map = new int[hashStats.tableSize * entrySize];
+			long mapSize = hashStats.hash.getRange().getSize().longValue() * fieldCount;
+			map = new long[(int) ((mapSize + SEGMENT_MASK) >> SEGMENT_SHIFT)][];
+			for (int i = 0; i < map.length; i++) {
+				map[i] = new long[(int) Math.min(SEGMENT_SIZE, mapSize - ((long) i << SEGMENT_SHIFT))];
 			}
-			Arrays.fill(map, -1);
 		}
 		passAborted = false;
 	}
@@ -145,6 +151,10 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 		subRec.mark();
 		if (checker != null) {
 			passAborted = checker.add(subRec);
+		} else if (hashStats.hash == null) {
+			if (keyCount == recordCount.longValue()) throw new IllegalStateException("more records than expected");
+			keysBits += compactor.compact(coded, subRec);
+			keyCount++;
 		} else {
 			// get position
 			long position;
@@ -166,57 +176,16 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 				ordinal = -1L;
 			}
 			
-			// create entry
-			int i = 0;
-			if (hashStats.positional) {
-				first[i++] = (int) (position >> 32);
-				first[i++] = (int) position;
-			}
-			if (hashStats.ordinal) {
-				first[i++] = (int) (ordinal >> 32);
-				first[i++] = (int) ordinal;
-			}
-			for (int j = 0; j < HASH_COUNT; j++) {
-				subRec.reset();
-				//TODO use hash reranging
-				first[i++] = entrySize * ((hashes[j].hashAsInt(subRec) & 0x7fffffff) % hashStats.tableSize);
-			}
-			
-			//put entry
-			putEntry(first, 0);
+			// put entry
+			long index = hashStats.hash.hashAsLong(subRec);
+			if (index < 0) throw new IllegalStateException("record not hashed");
+			long i = index * fieldCount;
+			if (hashStats.positional) put(i++, position);
+			if (hashStats.ordinal) put(i++, ordinal);
 		}
 		
 	}
 	
-	private void putEntry(int[] entry, int attempts) {
-		if (attempts >= maxAttempts) {
-			context.getLogger().log(Level.WARN, "Hash building failed, may retry");
-			passAborted = true;
-		} else {
-			for (int i = 0; i < HASH_COUNT; i++) {
-				int index = entry[recordSize + i];
-				boolean occupied = false;
-				for (int j = index + recordSize - 2; j >= index; j -= 2) {
-					if (map[j] != -1 || map[j+1] != -1) {
-						occupied = true;
-						break;
-					}
-				}
-				if (!occupied) {
-					System.arraycopy(entry, 0, map, index, entrySize);
-					return;
-				}
-			}
-			int[] other = entry == first ? second : first;
-			int i = random.nextInt(HASH_COUNT);
-			int index = entry[recordSize + i];
-			System.arraycopy(map, index, other, 0, entrySize);
-			System.arraycopy(entry, 0, map, index, entrySize);
-			//TODO remove recursion, this may blow the stack
-			putEntry(other, attempts + 1);
-		}
-	}
-	
 	@Override
 	public void endPass() {
 		if (checker != null) {
@@ -229,6 +198,23 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 					throw new IllegalStateException("hash keys not unique");
 				}
 			}
+		} else if (hashStats.hash == null) {
+			closeKeys();
+			try {
+				if (keyCount != recordCount.longValue()) throw new IllegalStateException("fewer records than expected");
+				// the builder reads the keys back as many times as it needs to
+				hashStats.hash = builder.build(new Iterable<LinearRecord>() {
+					@Override
+					public Iterator<LinearRecord> iterator() {
+						return new Keys();
+					}
+				});
+			} finally {
+				// clear memory asap
+				builder = null;
+				compactor = null;
+				keysFile.delete();
+			}
 		} else {
 			if (!passAborted) {
 				// record final stats info
@@ -258,35 +244,107 @@ public class HashConsumer implements RecordConsumer<LinearRecord> {
 	private void cleanup() {
 		recStats = null;
 		factory = null;
-		first = null;
-		second = null;
 		checker = null;
+		builder = null;
+		compactor = null;
+		closeKeys();
+		if (keysFile != null) keysFile.delete();
 		map = null;
 	}
 
+	private void openKeys() {
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(keysFile), 1024);
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+		writer = new OutputStreamBitWriter(out);
+		coded = new CodedWriter(writer, context.getCoding());
+		keysBits = 0L;
+	}
+
+	private void closeKeys() {
+		if (writer != null) {
+			try {
+				writer.flush();
+			} finally {
+				writer = null;
+				coded = null;
+			}
+		}
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				context.getLogger().log(Level.WARN, "Failed to close file", e);
+			} finally {
+				out = null;
+			}
+		}
+	}
+
+	private void put(long index, long value) {
+		map[(int) (index >> SEGMENT_SHIFT)][(int) index & SEGMENT_MASK] = value;
+	}
+
 	private void writeFile() {
 		CodedStreams.writeToFile(new CodedStreams.WriteTask() {
 			@Override
 			public void writeTo(CodedWriter writer) {
 				final BitWriter w = writer.getWriter();
-				final int[] map = HashConsumer.this.map;
 				final HashStats stats = hashStats;
-				for (int i = 0; i < map.length; i += entrySize) {
-					int j = i;
-					//TODO could optimize by only doing int if bits <= 32
-					if (stats.positional) {
-						long v1 = ((long) map[j++]) << 32;
-						long v2 = (map[j++] & 0x00000000ffffffffL);
-						w.write(v1 | v2, hashStats.positionBits);
-					}
-					if (stats.ordinal) {
-						long v1 = ((long) map[j++]) << 32;
-						long v2 = (map[j++] & 0x00000000ffffffffL);
-						w.write(v1 | v2, hashStats.ordinalBits);
+				for (long[] segment : map) {
+					for (int i = 0; i < segment.length; i += fieldCount) {
+						int j = i;
+						//TODO could optimize by only doing int if bits <= 32
+						if (stats.positional) w.write(segment[j++], hashStats.positionBits);
+						if (stats.ordinal) w.write(segment[j++], hashStats.ordinalBits);
 					}
 				}
 			}
 		}, hashStats.coding, file);
 	}
-	
+
+	// reads back the keys written during the build pass
+	private class Keys implements Iterator<LinearRecord> {
+
+		private final RecordDecompactor decompactor = new RecordDecompactor(context.getRecordStats().adaptFor(hashStats.definition), 0);
+		private FileBitReaderFactory fbrf = new FileBitReaderFactory(keysFile, Mode.CHANNEL);
+		private BitReader reader = fbrf.openReader();
+		private CodedReader coded = new CodedReader(reader, context.getCoding());
+
+		@Override
+		public boolean hasNext() {
+			if (reader == null) return false;
+			if (reader.getPosition() < keysBits) return true;
+			close();
+			return false;
+		}
+
+		@Override
+		public LinearRecord next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			LinearRecord compact = decompactor.decompact(coded, -1L);
+			LinearRecord record = factory.newRecord(sConfig, compact);
+			compact.release();
+			return record;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void close() {
+			try {
+				fbrf.closeReader(reader);
+			} finally {
+				reader = null;
+				coded = null;
+				fbrf = null;
+			}
+		}
+
+	}
+
 }
@@ -6,8 +6,7 @@ import java.util.NoSuchElementException;
 import com.tomgibara.crinch.bits.BitReader;
 import com.tomgibara.crinch.bits.FileBitReaderFactory;
 import com.tomgibara.crinch.bits.FileBitReaderFactory.Mode;
-import com.tomgibara.crinch.hashing.HashSource;
-import com.tomgibara.crinch.hashing.Murmur3_32Hash;
+import com.tomgibara.crinch.hashing.MinimalPerfectHash;
 import com.tomgibara.crinch.record.LinearRecord;
 import com.tomgibara.crinch.record.RecordProducer;
 import com.tomgibara.crinch.record.RecordSequence;
@@ -30,7 +29,7 @@ public class HashProducer implements RecordProducer<LinearRecord> {
 	private HashStats hashStats;
 	DynamicRecordFactory keyFactory;
 	DynamicRecordFactory recFactory;
-	private Murmur3_32Hash<LinearRecord>[] hashes;
+	private MinimalPerfectHash<LinearRecord> hash;
 	private FileBitReaderFactory fbrf;
 	
 	public HashProducer(SubRecordDef subRecDef) {
@@ -47,11 +46,7 @@ public class HashProducer implements RecordProducer<LinearRecord> {
 		keyFactory = DynamicRecordFactory.getInstance(hashStats.definition);
 		recFactory = subRecDef == null ? keyFactory : DynamicRecordFactory.getInstance(hashStats.definition.getBasis());
 		
-		HashSource<LinearRecord> hashSource = new RecordHashSource(hashStats.definition.getTypes());
-		hashes = new Murmur3_32Hash[hashStats.hashSeeds.length];
-		for (int i = 0; i < hashes.length; i++) {
-			hashes[i] = new Murmur3_32Hash<LinearRecord>(hashSource, hashStats.hashSeeds[i]);
-		}
+		hash = hashStats.hash;
 		
 		File file = context.file(hashStats.type, false, hashStats.definition);
 		fbrf = new FileBitReaderFactory(file, context.isInMemory() ? Mode.MEMORY : Mode.CHANNEL);
@@ -75,9 +70,8 @@ public class HashProducer implements RecordProducer<LinearRecord> {
 		private final DynamicRecordFactory keyFactory = HashProducer.this.keyFactory;
 		private final DynamicRecordFactory recFactory = HashProducer.this.recFactory;
 		private final boolean hasSubRecDef = subRecDef != null;
-		private final Murmur3_32Hash<LinearRecord>[] hashes = HashProducer.this.hashes;
+		private final MinimalPerfectHash<LinearRecord> hash = HashProducer.this.hash;
 		private final int recordBits = hashStats.positionBits + hashStats.ordinalBits;
-		private final int tableSize = hashStats.tableSize;
 		private final boolean hasPosition = hashStats.positional;
 		private final boolean hasOrdinal = hashStats.ordinal;
 		private final int positionBits = hashStats.positionBits;
@@ -90,7 +84,7 @@ public class HashProducer implements RecordProducer<LinearRecord> {
 		private CompactProducer.Accessor records = null;
 		private PositionProducer.Accessor positions = null;
 		private LinearRecord key;
-		private int[] hashcodes = new int[hashStats.hashSeeds.length];
+		private long hashcode;
 
 		private LinearRecord next = null;
 		
@@ -114,10 +108,10 @@ public class HashProducer implements RecordProducer<LinearRecord> {
 			if (key != null) {
 				key = keyFactory.newRecord(sConfig, key, false);
 				key.mark();
-				for (int i = 0; i < hashes.length; i++) {
-					hashcodes[i] = (hashes[i].hashAsInt(key) & 0x7fffffff) % tableSize;
-					key.reset();
-				}
+				hashcode = hash.hashAsLong(key);
+				key.reset();
+				// keys that were not hashed cannot be present
+				if (hashcode < 0L) key = null;
 			}
 			this.key = key;
 			next = null;
@@ -153,43 +147,42 @@ public class HashProducer implements RecordProducer<LinearRecord> {
 			if (records == null) throw new IllegalStateException("no records");
 			
 			if (key != null) {
-				for (int i = 0; i < hashcodes.length; i++) {
-	
-					reader.setPosition(recordBits * hashcodes[i]);
-	
-					long position;
-					long ordinal;
-
-					if (hasPosition) {
-						position = reader.read(positionBits);
-						if (position == noPosition) position = -1;
-					} else {
-						position = -1;
-					}
-					if (hasOrdinal) {
-						ordinal = reader.read(ordinalBits);
-						if (ordinal == noOrdinal) ordinal = -1;
-					} else {
-						ordinal = -1;
-					}
-	
-					if (ordinal == -1L && position == -1L) continue;
-					
+				reader.setPosition(recordBits * hashcode);
+
+				long position;
+				long ordinal;
+
+				if (hasPosition) {
+					position = reader.read(positionBits);
+					if (position == noPosition) position = -1;
+				} else {
+					position = -1;
+				}
+				if (hasOrdinal) {
+					ordinal = reader.read(ordinalBits);
+					if (ordinal == noOrdinal) ordinal = -1;
+				} else {
+					ordinal = -1;
+				}
+
+				if (ordinal != -1L || position != -1L) {
 					if (position == -1L) {
 						if (positions == null) throw new IllegalStateException("no positions available");
 						throw new UnsupportedOperationException("positions doesn't support direct lookup");
 						//otherwise would set position based on result from accessor
 					}
-					
+
 					records.setPosition(position, ordinal);
-					if (!records.hasNext()) continue;
-					LinearRecord next = recFactory.newRecord(sConfig, records.next());
-					next.mark();
-					if (keyFactory.newRecord(sConfig, next, !hasSubRecDef).equals(key)) {
-						next.reset();
-						this.next = next;
-						this.key = null;
-						return;
+					if (records.hasNext()) {
+						// the perfect hash may map absent keys onto any record
+						LinearRecord next = recFactory.newRecord(sConfig, records.next());
+						next.mark();
+						if (keyFactory.newRecord(sConfig, next, !hasSubRecDef).equals(key)) {
+							next.reset();
+							this.next = next;
+							this.key = null;
+							return;
+						}
 					}
 				}
 				key = null;
@@ -1,8 +1,9 @@
 package com.tomgibara.crinch.record.index;
 
 import com.tomgibara.crinch.coding.CodedReader;
-import com.tomgibara.crinch.coding.CodedStreams;
 import com.tomgibara.crinch.coding.CodedWriter;
+import com.tomgibara.crinch.hashing.MinimalPerfectHash;
+import com.tomgibara.crinch.record.LinearRecord;
 import com.tomgibara.crinch.record.def.SubRecordDef;
 import com.tomgibara.crinch.record.process.ProcessContext;
 
@@ -10,8 +11,7 @@ class HashStats extends IndexStats {
 
 	boolean positional;
 	boolean ordinal;
-	int tableSize;
-	int[] hashSeeds;
+	MinimalPerfectHash<LinearRecord> hash;
 	int positionBits;
 	int ordinalBits;
 	
@@ -23,8 +23,7 @@ class HashStats extends IndexStats {
 	public void writeTo(CodedWriter writer) {
 		writer.getWriter().writeBoolean(positional);
 		writer.getWriter().writeBoolean(ordinal);
-		writer.writePositiveInt(tableSize);
-		CodedStreams.writePrimitiveArray(writer, hashSeeds);
+		hash.write(writer.getWriter());
 		writer.writePositiveInt(positionBits);
 		writer.writePositiveInt(ordinalBits);
 	}
@@ -33,8 +32,7 @@ class HashStats extends IndexStats {
 	public void readFrom(CodedReader reader) {
 		positional = reader.getReader().readBoolean();
 		ordinal = reader.getReader().readBoolean();
-		tableSize = reader.readPositiveInt();
-		hashSeeds = CodedStreams.readIntArray(reader);
+		hash = MinimalPerfectHash.read(reader.getReader(), new RecordHashSource(definition.getTypes()));
 		positionBits = reader.readPositiveInt();
 		ordinalBits = reader.readPositiveInt();
 	}
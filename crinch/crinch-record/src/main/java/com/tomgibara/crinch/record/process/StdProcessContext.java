@@ -37,6 +37,9 @@ import com.tomgibara.crinch.bits.FileBitReaderFactory;
 import com.tomgibara.crinch.bits.InputStreamBitReader;
 import com.tomgibara.crinch.bits.OutputStreamBitWriter;
 import com.tomgibara.crinch.bits.FileBitReaderFactory.Mode;
+import com.tomgibara.crinch.coding.ChecksumException;
+import com.tomgibara.crinch.coding.ChecksummedBitReader;
+import com.tomgibara.crinch.coding.ChecksummedBitWriter;
 import com.tomgibara.crinch.coding.CodedReader;
 import com.tomgibara.crinch.coding.CodedStreams;
 import com.tomgibara.crinch.coding.CodedWriter;
@@ -437,9 +440,23 @@ public class StdProcessContext implements ProcessContext {
 			InputStream in = null;
 			try {
 				in = new BufferedInputStream(new FileInputStream(file), 1024);
-				BitReader reader = new InputStreamBitReader(in);
+				// blocks are verified before any of their bits are read
+				BitReader reader = new ChecksummedBitReader(in);
 				CodedReader coded = new CodedReader(reader, coding);
 				return op.read(coded);
+			} catch (ChecksumException e) {
+				// incompletely written or damaged, so treat it as absent
+				logger.log(Level.WARN, "discarding corrupt file " + file, e);
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException ex) {
+						logger.log(Level.WARN, "problem closing file", ex);
+					}
+					in = null;
+				}
+				file.delete();
+				return null;
 			} catch (IOException e) {
 				throw new BitStreamException(e);
 			} finally {
@@ -461,10 +478,10 @@ public class StdProcessContext implements ProcessContext {
 			OutputStream out = null;
 			try {
 				out = new BufferedOutputStream(new FileOutputStream(file), 1024);
-				BitWriter writer = new OutputStreamBitWriter(out);
+				ChecksummedBitWriter writer = new ChecksummedBitWriter(out);
 				CodedWriter coded = new CodedWriter(writer, coding);
 				op.write(coded);
-				writer.flush();
+				writer.finish();
 			} catch (IOException e) {
 				throw new BitStreamException(e);
 			} finally {
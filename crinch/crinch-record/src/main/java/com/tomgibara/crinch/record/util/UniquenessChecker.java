@@ -4,15 +4,14 @@ import java.util.HashSet;
 import java.util.Set;
 
 import com.tomgibara.crinch.collections.BasicBloomFilter;
-import com.tomgibara.crinch.collections.BloomFilter;
+import com.tomgibara.crinch.collections.LongOpenHashSet;
+import com.tomgibara.crinch.hashing.EnhancedDoubleMultiHash;
 import com.tomgibara.crinch.hashing.Hash;
 import com.tomgibara.crinch.hashing.HashSource;
-import com.tomgibara.crinch.hashing.MultiHash;
-import com.tomgibara.crinch.hashing.Murmur3_32Hash;
-import com.tomgibara.crinch.hashing.IntegerMultiHash;
 import com.tomgibara.crinch.hashing.ObjectHash;
+import com.tomgibara.crinch.hashing.XxHash64Hash;
+import com.tomgibara.crinch.util.WriteStream;
 
-//TODO want to support primitive collections
 public class UniquenessChecker<T> {
 
 	private static final int PHASE_PRE_PASS_1 = 0;
@@ -24,22 +23,44 @@ public class UniquenessChecker<T> {
 	private static final double LOG_2 = Math.log(2);
 	private static final int BLOOM_MIN_SIZE = 256;
 
+	private static final HashSource<Long> longSource = new HashSource<Long>() {
+		@Override
+		public void sourceData(Long value, WriteStream out) {
+			out.writeLong(value);
+		}
+	};
+
+	// candidates and witnesses are held in primitive sets to avoid boxing
+	public static UniquenessChecker<Long> forLongs(long expectedObjectCount) {
+		return new UniquenessChecker<Long>(expectedObjectCount, 8.0, longSource, true);
+	}
+
 	private final double expectedFalsePositives;
 	private final int hashCount;
-	private final MultiHash<T> multiHash;
+	private final EnhancedDoubleMultiHash<T> multiHash;
+	private final boolean longs;
+	// the seed of the hash, used to hash longs without boxing
+	private final long seed;
+	private final int[] hashes;
 
 	private int phase = PHASE_PRE_PASS_1;
 	private Boolean unique = null;
 
-	private BloomFilter<T> filter = null;
+	private BasicBloomFilter<T> filter = null;
 	private Set<T> candidates = null;
 	private Set<T> witnesses = null;
+	private LongOpenHashSet longCandidates = null;
+	private LongOpenHashSet longWitnesses = null;
 	
 	public UniquenessChecker(long expectedObjectCount, double averageObjectSizeInBytes) {
 		this(expectedObjectCount, averageObjectSizeInBytes, null);
 	}
 	
 	public UniquenessChecker(long expectedObjectCount, double averageObjectSizeInBytes, HashSource<T> hashSource) {
+		this(expectedObjectCount, averageObjectSizeInBytes, hashSource, false);
+	}
+
+	private UniquenessChecker(long expectedObjectCount, double averageObjectSizeInBytes, HashSource<T> hashSource, boolean longs) {
 		if (expectedObjectCount < 0) throw new IllegalArgumentException("null expectedObjectCount");
 		if (averageObjectSizeInBytes <= 0.0) throw new IllegalArgumentException("non-positive averageObjectSizeInBytes");
 		
@@ -51,11 +72,16 @@ public class UniquenessChecker<T> {
 		final Hash<T> hash;
 		if (hashSource == null) {
 			hash = new ObjectHash<T>();
+			seed = 0L;
 		} else {
 			//TODO would be nice to make this configurable somehow
-			hash = new Murmur3_32Hash<T>(hashSource);
+			XxHash64Hash<T> xxHash = new XxHash64Hash<T>(hashSource);
+			hash = xxHash;
+			seed = xxHash.getSeed();
 		}
-		multiHash = new IntegerMultiHash<T>(hash, bloomSize - 1);
+		multiHash = new EnhancedDoubleMultiHash<T>(hash, bloomSize - 1);
+		this.longs = longs;
+		hashes = longs ? new int[hashCount] : null;
 	}
 
 	public boolean isUniquenessDetermined() {
@@ -66,11 +92,19 @@ public class UniquenessChecker<T> {
 		switch (phase) {
 		case PHASE_PRE_PASS_1:
 			filter = new BasicBloomFilter<T>(multiHash, hashCount);
-			candidates = new HashSet<T>();
+			if (longs) {
+				longCandidates = new LongOpenHashSet();
+			} else {
+				candidates = new HashSet<T>();
+			}
 			phase = PHASE_IN_PASS_1;
 			break;
 		case PHASE_BETWEEN_PASSES:
-			witnesses = new HashSet<T>();
+			if (longs) {
+				longWitnesses = new LongOpenHashSet(longCandidates.size());
+			} else {
+				witnesses = new HashSet<T>();
+			}
 			phase = PHASE_IN_PASS_2;
 			break;
 			default: throw new IllegalStateException();
@@ -80,6 +114,7 @@ public class UniquenessChecker<T> {
 	// TODO consider removing return
 	// returns false if pass can end early
 	public boolean add(T value) {
+		if (longs) return add(((Long) value).longValue());
 		if (unique != null) return false;
 		switch (phase) {
 		case PHASE_IN_PASS_1: {
@@ -101,11 +136,38 @@ public class UniquenessChecker<T> {
 			default: throw new IllegalStateException("Not in pass");
 		}
 	}
+
+	// only available to checkers created with forLongs
+	public boolean add(long value) {
+		if (!longs) throw new IllegalStateException("Not checking longs");
+		if (unique != null) return false;
+		switch (phase) {
+		case PHASE_IN_PASS_1: {
+			// identical to hashing the boxed value with longSource
+			final int[] hashes = multiHash.expandHash(XxHash64Hash.hash(value, seed), this.hashes);
+			if (filter.addHashes(hashes) || longCandidates.add(value)) return true;
+			// we've found a definite dupe, release memory
+			longCandidates = null;
+			filter = null;
+			unique = false;
+			return false;
+		}
+		case PHASE_IN_PASS_2: {
+			if (!longCandidates.contains(value) || longWitnesses.add(value)) return true;
+			// we've found a definite dupe, release memory
+			longCandidates = null;
+			longWitnesses = null;
+			unique = false;
+			return false;
+		}
+			default: throw new IllegalStateException("Not in pass");
+		}
+	}
 	
 	public void endPass() {
 		switch (phase) {
 		case PHASE_IN_PASS_1:
-			if (unique == null && candidates.isEmpty()) unique = true;
+			if (unique == null && (longs ? longCandidates.isEmpty() : candidates.isEmpty())) unique = true;
 			filter = null;
 			phase = PHASE_BETWEEN_PASSES;
 			break;
@@ -113,6 +175,8 @@ public class UniquenessChecker<T> {
 			if (unique == null) unique = true;
 			candidates = null;
 			witnesses = null;
+			longCandidates = null;
+			longWitnesses = null;
 			phase = PHASE_POST_PASS_2;
 			break;
 			default: throw new IllegalStateException();
@@ -0,0 +1,79 @@
+package com.tomgibara.crinch.record.compact;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LoserTreeTest extends TestCase {
+
+	private static final Comparator<Integer> sIntComparator = new Comparator<Integer>() {
+		@Override
+		public int compare(Integer a, Integer b) {
+			return a.compareTo(b);
+		}
+	};
+
+	public void testEmpty() {
+		LoserTree<Integer> tree = new LoserTree<Integer>(new ArrayList<Iterator<Integer>>(), sIntComparator);
+		assertFalse(tree.hasNext());
+		try {
+			tree.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			/* expected */
+		}
+	}
+
+	public void testMerge() {
+		Random r = new Random(0L);
+		for (int k = 1; k <= 40; k++) {
+			List<Integer> expected = new ArrayList<Integer>();
+			List<Iterator<Integer>> sources = new ArrayList<Iterator<Integer>>();
+			for (int i = 0; i < k; i++) {
+				// some sources are empty and values are often repeated
+				int size = r.nextInt(4) == 0 ? 0 : r.nextInt(50);
+				List<Integer> list = new ArrayList<Integer>();
+				for (int j = 0; j < size; j++) list.add(r.nextInt(100));
+				Collections.sort(list);
+				expected.addAll(list);
+				sources.add(list.iterator());
+			}
+			Collections.sort(expected);
+			List<Integer> actual = new ArrayList<Integer>();
+			for (LoserTree<Integer> tree = new LoserTree<Integer>(sources, sIntComparator); tree.hasNext();) {
+				actual.add(tree.next());
+			}
+			assertEquals(expected, actual);
+		}
+	}
+
+	public void testStability() {
+		// orders only by the tens digit, so the units record the source
+		Comparator<Integer> tens = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return a / 10 - b / 10;
+			}
+		};
+		List<Iterator<Integer>> sources = new ArrayList<Iterator<Integer>>();
+		for (int i = 0; i < 7; i++) {
+			List<Integer> list = new ArrayList<Integer>();
+			for (int j = 0; j < 5; j++) list.add(j * 10 + i);
+			sources.add(list.iterator());
+		}
+		LoserTree<Integer> tree = new LoserTree<Integer>(sources, tens);
+		for (int j = 0; j < 5; j++) {
+			for (int i = 0; i < 7; i++) {
+				assertEquals(j * 10 + i, tree.next().intValue());
+			}
+		}
+		assertFalse(tree.hasNext());
+	}
+
+}
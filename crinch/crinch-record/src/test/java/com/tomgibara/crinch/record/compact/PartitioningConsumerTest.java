@@ -0,0 +1,173 @@
+package com.tomgibara.crinch.record.compact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.record.LinearProducer;
+import com.tomgibara.crinch.record.LinearRecord;
+import com.tomgibara.crinch.record.RecordProducer;
+import com.tomgibara.crinch.record.RecordSequence;
+import com.tomgibara.crinch.record.StringRecord;
+import com.tomgibara.crinch.record.def.SubRecordDef;
+import com.tomgibara.crinch.record.process.NullLogger;
+import com.tomgibara.crinch.record.process.ProcessContext;
+import com.tomgibara.crinch.record.process.RecordProcessor;
+import com.tomgibara.crinch.record.process.StdProcessContext;
+
+public class PartitioningConsumerTest extends TestCase {
+
+	private static final int RECORD_COUNT = 2000;
+	private static final int KEY_COUNT = 50;
+
+	private static final SubRecordDef keyDef = new SubRecordDef(new int[] {0});
+
+	private File dir;
+	private StdProcessContext context;
+	private RecordProcessor processor;
+	private LinearProducer producer;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("partitioning", "");
+		dir.delete();
+		dir.mkdirs();
+		context = new StdProcessContext();
+		context.setLogger(new NullLogger());
+		context.setDataDir(dir);
+		context.setDataName("test");
+		context.setClean(true);
+		processor = new RecordProcessor(context);
+		producer = new LinearProducer(new Producer());
+		assertTrue(processor.process(producer, new TypeConsumer()));
+		context.setClean(false);
+		assertTrue(processor.process(producer, new StatsConsumer()));
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : dir.listFiles()) file.delete();
+		dir.delete();
+	}
+
+	public void testPartitionsByKey() {
+		assertTrue(processor.process(producer, new PartitioningConsumer(keyDef, 4)));
+		int[] partitions = readPartitions(4);
+		int nonEmpty = checkPartitions(partitions, 4);
+		assertTrue(nonEmpty > 1);
+	}
+
+	public void testConsistentRepartitioning() {
+		assertTrue(processor.process(producer, new PartitioningConsumer(keyDef, 4)));
+		int[] four = readPartitions(4);
+		assertTrue(processor.process(producer, new PartitioningConsumer(keyDef, 5)));
+		int[] five = readPartitions(5);
+		checkPartitions(five, 5);
+		// records only ever move to the new partition
+		for (int i = 0; i < RECORD_COUNT; i++) {
+			assertTrue(five[i] == four[i] || five[i] == 4);
+		}
+	}
+
+	public void testWeights() {
+		assertTrue(processor.process(producer, new PartitioningConsumer(keyDef, new double[] {1.0, 0.0, 2.0})));
+		int[] partitions = readPartitions(3);
+		checkPartitions(partitions, 3);
+		for (int partition : partitions) {
+			assertTrue(partition != 1);
+		}
+	}
+
+	// every record appears in exactly one partition, and records with equal keys share a partition
+	private int checkPartitions(int[] partitions, int count) {
+		int[] keyPartitions = new int[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; i++) keyPartitions[i] = -1;
+		boolean[] used = new boolean[count];
+		for (int i = 0; i < RECORD_COUNT; i++) {
+			int partition = partitions[i];
+			assertTrue(partition >= 0 && partition < count);
+			int key = i % KEY_COUNT;
+			if (keyPartitions[key] == -1) keyPartitions[key] = partition;
+			assertEquals(keyPartitions[key], partition);
+			used[partition] = true;
+		}
+		int nonEmpty = 0;
+		for (boolean b : used) if (b) nonEmpty++;
+		return nonEmpty;
+	}
+
+	// the partition of each record indexed by its value
+	private int[] readPartitions(int count) {
+		int[] partitions = new int[RECORD_COUNT];
+		for (int i = 0; i < RECORD_COUNT; i++) partitions[i] = -1;
+		for (int partition = 0; partition < count; partition++) {
+			CompactProducer compact = new CompactProducer(PartitioningConsumer.partitionType(partition, count), null);
+			compact.prepare(context);
+			RecordSequence<LinearRecord> sequence = compact.open();
+			try {
+				while (sequence.hasNext()) {
+					LinearRecord record = sequence.next();
+					long key = record.nextLong();
+					int value = (int) record.nextLong();
+					record.release();
+					assertEquals(value % KEY_COUNT, key);
+					assertEquals(-1, partitions[value]);
+					partitions[value] = partition;
+				}
+			} finally {
+				sequence.close();
+				compact.complete();
+			}
+		}
+		for (int partition : partitions) {
+			assertTrue(partition != -1);
+		}
+		return partitions;
+	}
+
+	private static class Producer implements RecordProducer<StringRecord> {
+
+		@Override
+		public void prepare(ProcessContext context) {
+		}
+
+		@Override
+		public RecordSequence<StringRecord> open() {
+			return new RecordSequence<StringRecord>() {
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return index < RECORD_COUNT;
+				}
+
+				@Override
+				public StringRecord next() {
+					String[] values = { Integer.toString(index % KEY_COUNT), Integer.toString(index) };
+					return new StringRecord(index, index++, values);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		@Override
+		public void complete() {
+		}
+
+	}
+
+}
@@ -0,0 +1,180 @@
+package com.tomgibara.crinch.record.compact;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.record.LinearProducer;
+import com.tomgibara.crinch.record.LinearRecord;
+import com.tomgibara.crinch.record.RecordProducer;
+import com.tomgibara.crinch.record.RecordSequence;
+import com.tomgibara.crinch.record.StringRecord;
+import com.tomgibara.crinch.record.def.ColumnOrder;
+import com.tomgibara.crinch.record.def.SubRecordDef;
+import com.tomgibara.crinch.record.process.NullLogger;
+import com.tomgibara.crinch.record.process.ProcessContext;
+import com.tomgibara.crinch.record.process.RecordProcessor;
+import com.tomgibara.crinch.record.process.StdProcessContext;
+
+public class SortConsumerTest extends TestCase {
+
+	private static final int RECORD_COUNT = 2000;
+	private static final int KEY_COUNT = 50;
+	// small enough that the records spill into more runs than can be merged at once
+	private static final int RUN_SIZE = 7;
+
+	private File dir;
+	private StdProcessContext context;
+	private RecordProcessor processor;
+	private LinearProducer producer;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("sorting", "");
+		dir.delete();
+		dir.mkdirs();
+		context = new StdProcessContext();
+		context.setLogger(new NullLogger());
+		context.setDataDir(dir);
+		context.setDataName("test");
+		context.setClean(true);
+		processor = new RecordProcessor(context);
+		producer = new LinearProducer(new Producer());
+		assertTrue(processor.process(producer, new TypeConsumer()));
+		context.setClean(false);
+		assertTrue(processor.process(producer, new StatsConsumer()));
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : dir.listFiles()) file.delete();
+		dir.delete();
+	}
+
+	public void testSortInMemory() {
+		checkSorted(RECORD_COUNT + 1);
+	}
+
+	public void testSortRuns() {
+		assertTrue(RECORD_COUNT / RUN_SIZE > SortConsumer.MAX_MERGE_WIDTH);
+		checkSorted(RUN_SIZE);
+	}
+
+	public void testShuffleRuns() {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("shuffle.hashSeed", "7");
+		SubRecordDef def = new SubRecordDef(properties);
+
+		assertTrue(processor.process(producer, new SortConsumer(def, RUN_SIZE)));
+		List<String> spilled = readRecords(def);
+		context.setClean(true);
+		assertTrue(processor.process(producer, new SortConsumer(def, RECORD_COUNT + 1)));
+		context.setClean(false);
+		List<String> unspilled = readRecords(def);
+
+		// merged runs must match the hash order of a single in-memory sort
+		assertEquals(unspilled, spilled);
+		assertEquals(expectedRecords(), sorted(spilled));
+		assertFalse(expectedRecords().equals(spilled));
+		checkRunsDeleted();
+	}
+
+	private void checkSorted(int runSize) {
+		List<ColumnOrder.Indexed> orders = Collections.singletonList(new ColumnOrder.Indexed(0, new ColumnOrder(0, ColumnOrder.Sort.ASCENDING, true)));
+		SubRecordDef def = new SubRecordDef(orders);
+		assertTrue(processor.process(producer, new SortConsumer(def, runSize)));
+		List<String> records = readRecords(def);
+		assertEquals(expectedRecords(), records);
+		checkRunsDeleted();
+	}
+
+	private void checkRunsDeleted() {
+		for (String name : dir.list()) {
+			assertFalse(name, name.contains("sort-run-"));
+		}
+	}
+
+	// each record as "value,key", which sorts by value since values are zero padded
+	private List<String> readRecords(SubRecordDef def) {
+		List<String> records = new ArrayList<String>();
+		CompactProducer compact = new CompactProducer(def);
+		compact.prepare(context);
+		RecordSequence<LinearRecord> sequence = compact.open();
+		try {
+			while (sequence.hasNext()) {
+				LinearRecord record = sequence.next();
+				long value = record.nextLong();
+				long key = record.nextLong();
+				record.release();
+				assertEquals(value % KEY_COUNT, key);
+				records.add(String.format("%05d,%d", value, key));
+			}
+		} finally {
+			sequence.close();
+			compact.complete();
+		}
+		return records;
+	}
+
+	private List<String> expectedRecords() {
+		List<String> records = new ArrayList<String>();
+		for (int value = 0; value < RECORD_COUNT; value++) {
+			records.add(String.format("%05d,%d", value, value % KEY_COUNT));
+		}
+		return records;
+	}
+
+	private static List<String> sorted(List<String> list) {
+		list = new ArrayList<String>(list);
+		Collections.sort(list);
+		return list;
+	}
+
+	private static class Producer implements RecordProducer<StringRecord> {
+
+		@Override
+		public void prepare(ProcessContext context) {
+		}
+
+		@Override
+		public RecordSequence<StringRecord> open() {
+			return new RecordSequence<StringRecord>() {
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return index < RECORD_COUNT;
+				}
+
+				@Override
+				public StringRecord next() {
+					// a fixed permutation of the values, so that the input is unsorted
+					int value = (index * 7919) % RECORD_COUNT;
+					String[] values = { Integer.toString(value), Integer.toString(value % KEY_COUNT) };
+					return new StringRecord(index, index++, values);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		@Override
+		public void complete() {
+		}
+
+	}
+
+}
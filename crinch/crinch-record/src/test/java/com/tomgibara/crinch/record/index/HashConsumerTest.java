@@ -0,0 +1,136 @@
+package com.tomgibara.crinch.record.index;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import com.tomgibara.crinch.record.LinearProducer;
+import com.tomgibara.crinch.record.LinearRecord;
+import com.tomgibara.crinch.record.ParsedRecord;
+import com.tomgibara.crinch.record.RecordProducer;
+import com.tomgibara.crinch.record.RecordSequence;
+import com.tomgibara.crinch.record.StringRecord;
+import com.tomgibara.crinch.record.compact.CompactConsumer;
+import com.tomgibara.crinch.record.compact.CompactProducer;
+import com.tomgibara.crinch.record.compact.StatsConsumer;
+import com.tomgibara.crinch.record.compact.TypeConsumer;
+import com.tomgibara.crinch.record.def.SubRecordDef;
+import com.tomgibara.crinch.record.process.NullLogger;
+import com.tomgibara.crinch.record.process.ProcessContext;
+import com.tomgibara.crinch.record.process.RecordProcessor;
+import com.tomgibara.crinch.record.process.StdProcessContext;
+
+public class HashConsumerTest extends TestCase {
+
+	private static final int RECORD_COUNT = 2000;
+	private static final int GROUP_COUNT = 50;
+
+	private static final SubRecordDef keyDef = new SubRecordDef(new int[] {0});
+
+	private File dir;
+	private StdProcessContext context;
+	private RecordProcessor processor;
+
+	@Override
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("hash", "");
+		dir.delete();
+		dir.mkdirs();
+		context = new StdProcessContext();
+		context.setLogger(new NullLogger());
+		context.setDataDir(dir);
+		context.setDataName("test");
+		context.setClean(true);
+		processor = new RecordProcessor(context);
+		LinearProducer producer = new LinearProducer(new Producer());
+		assertTrue(processor.process(producer, new TypeConsumer()));
+		context.setClean(false);
+		assertTrue(processor.process(producer, new StatsConsumer()));
+		assertTrue(processor.process(producer, new CompactConsumer()));
+	}
+
+	@Override
+	protected void tearDown() {
+		for (File file : dir.listFiles()) file.delete();
+		dir.delete();
+	}
+
+	public void testRoundTrip() {
+		// hash over the compacted records so that positions locate them
+		assertTrue(processor.process(new CompactProducer(), new HashConsumer(keyDef)));
+
+		CompactProducer compact = new CompactProducer();
+		compact.prepare(context);
+		HashProducer hash = new HashProducer(keyDef);
+		hash.prepare(context);
+		CompactProducer.Accessor records = compact.open();
+		HashProducer.Accessor accessor = hash.open().setRecords(records);
+		try {
+			for (int i = 0; i < RECORD_COUNT; i++) {
+				accessor.setKey(key(i));
+				assertTrue(accessor.hasNext());
+				LinearRecord record = accessor.next();
+				assertEquals(i, record.nextShort());
+				assertEquals(i % GROUP_COUNT, record.nextByte());
+				assertEquals(i, record.getOrdinal());
+				record.release();
+				assertFalse(accessor.hasNext());
+			}
+			// absent keys may hash onto a record but must not match it
+			for (int i = RECORD_COUNT; i < 2 * RECORD_COUNT; i++) {
+				accessor.setKey(key(i));
+				assertFalse(accessor.hasNext());
+			}
+		} finally {
+			accessor.close();
+			records.close();
+			hash.complete();
+			compact.complete();
+		}
+	}
+
+	private LinearRecord key(int i) {
+		return new ParsedRecord(context.getColumnParser(), new StringRecord(0, 0, Integer.toString(i)));
+	}
+
+	private static class Producer implements RecordProducer<StringRecord> {
+
+		@Override
+		public void prepare(ProcessContext context) {
+		}
+
+		@Override
+		public RecordSequence<StringRecord> open() {
+			return new RecordSequence<StringRecord>() {
+				private int index = 0;
+
+				@Override
+				public boolean hasNext() {
+					return index < RECORD_COUNT;
+				}
+
+				@Override
+				public StringRecord next() {
+					String[] values = { Integer.toString(index), Integer.toString(index % GROUP_COUNT) };
+					return new StringRecord(index, index++, values);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		@Override
+		public void complete() {
+		}
+
+	}
+
+}
@@ -17,4 +17,21 @@ public class UniquenessCheckerTest extends TestCase {
 		
 	}
 	
+	public void testLongs() {
+		assertTrue(checkLongs(1000, 1000));
+		assertFalse(checkLongs(1000, 999));
+	}
+	
+	// checks the values 0 to count-1, followed by the given value
+	private boolean checkLongs(int count, long last) {
+		UniquenessChecker<Long> checker = UniquenessChecker.forLongs(count + 1);
+		while (!checker.isUniquenessDetermined()) {
+			checker.beginPass();
+			for (long i = 0; i < count; i++) checker.add(i);
+			checker.add(last);
+			checker.endPass();
+		}
+		return checker.isUnique();
+	}
+	
 }
@@ -119,6 +119,7 @@ public class ByteWriteStream extends AbstractWriteStream {
 			int c = bytes.length;
 			c += c < DEFAULT_CAPACITY ? DEFAULT_CAPACITY : c;
 			if (c - bytes.length > MAX_CAPACITY_INCR) c = bytes.length + MAX_CAPACITY_INCR;
+			if (c < position + n) c = position + n;
 			bytes = Arrays.copyOf(bytes, c);
 		}
 		